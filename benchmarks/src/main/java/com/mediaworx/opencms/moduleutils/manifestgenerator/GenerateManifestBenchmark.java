@@ -0,0 +1,123 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlFileWriteException;
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlParseException;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for complete manifest generation runs (scan, parse, sibling handling, render and write) on synthetic
+ * module trees.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerateManifestBenchmark {
+
+	/** Approximate number of resources (files and folders) in the synthetic module */
+	@Param({ "1000", "10000", "100000" })
+	public int numResources;
+
+	/** Number of folder levels below the module folder */
+	@Param({ "3" })
+	public int depth;
+
+	/** Share of files that are siblings */
+	@Param({ "0.05" })
+	public double siblingRatio;
+
+	/** Number of properties per resource */
+	@Param({ "3" })
+	public int numProperties;
+
+	/** Number of access control entries per resource */
+	@Param({ "2" })
+	public int numAccessEntries;
+
+	/** Flag indicating if dates and UUIDs are stored as meta variables (and replaced by the generator) */
+	@Param({ "true", "false" })
+	public boolean useVariables;
+
+	/** Number of parser threads */
+	@Param({ "1", "4" })
+	public int parallelism;
+
+	private File manifestRoot;
+	private OpenCmsModuleManifestGenerator generator;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		SyntheticModuleTree tree = new SyntheticModuleTree();
+		tree.setNumResources(numResources);
+		tree.setDepth(depth);
+		tree.setSiblingRatio(siblingRatio);
+		tree.setNumProperties(numProperties);
+		tree.setNumAccessEntries(numAccessEntries);
+		tree.setUseVariables(useVariables);
+		manifestRoot = Files.createTempDirectory("manifest-benchmark").toFile();
+		tree.write(manifestRoot.toPath());
+
+		generator = new OpenCmsModuleManifestGenerator();
+		generator.setReplaceDateVariables(useVariables);
+		generator.setReplaceIdVariables(useVariables);
+		generator.setParallelism(parallelism);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(manifestRoot);
+	}
+
+	@Benchmark
+	public void generateManifest() throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		generator.generateManifest(manifestRoot, null);
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the manifest generator benchmarks with the GC profiler enabled, so allocation rates (bytes per operation) and
+ * GC counts are reported next to the timings. All standard JMH command line options are supported, e.g.
+ * <code>java -jar benchmarks.jar ManifestPhasesBenchmark -p numResources=10000</code>.
+ */
+public class ManifestBenchmarks {
+
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
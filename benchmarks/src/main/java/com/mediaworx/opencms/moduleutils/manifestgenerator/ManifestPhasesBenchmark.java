@@ -0,0 +1,229 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlParseException;
+import com.mediaworx.xmlutils.XmlHelper;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the single phases of a manifest generation run: scanning the manifest root, parsing the meta files,
+ * sibling handling, rendering the file nodes and writing the manifest. Every phase works on the results of the
+ * previous phases prepared during setup, so the phases can be measured separately.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManifestPhasesBenchmark {
+
+	/** Approximate number of resources (files and folders) in the synthetic module */
+	@Param({ "1000", "10000", "100000" })
+	public int numResources;
+
+	/** Share of files that are siblings */
+	@Param({ "0.05" })
+	public double siblingRatio;
+
+	/** Number of properties per resource */
+	@Param({ "3" })
+	public int numProperties;
+
+	/** Number of access control entries per resource */
+	@Param({ "2" })
+	public int numAccessEntries;
+
+	/** Flag indicating if dates and UUIDs are stored as meta variables */
+	@Param({ "true" })
+	public boolean useVariables;
+
+	private Path manifestRoot;
+	private Set<String> excludedPaths;
+	private List<MetaFileEntry> entries;
+	private MetaFileReader metaFileReader;
+	private XMLInputFactory inputFactory;
+	private MetaFileReader.ReadBuffers readBuffers;
+	private FragmentTemplate[] templates;
+	private MetaVariableValues[] values;
+	private String[] resourceIds;
+	private boolean[] removeSource;
+	private Document manifestStub;
+	private Node filesNode;
+	private Path manifest;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		SyntheticModuleTree tree = new SyntheticModuleTree();
+		tree.setNumResources(numResources);
+		tree.setSiblingRatio(siblingRatio);
+		tree.setNumProperties(numProperties);
+		tree.setNumAccessEntries(numAccessEntries);
+		tree.setUseVariables(useVariables);
+		manifestRoot = Files.createTempDirectory("manifest-benchmark");
+		tree.write(manifestRoot);
+
+		Path manifestStubPath = manifestRoot.resolve("manifest_stub.xml");
+		manifest = manifestRoot.resolve("manifest.xml");
+		excludedPaths = new HashSet<>(Arrays.asList(manifestStubPath.toString(), manifest.toString()));
+		entries = scan();
+		metaFileReader = new MetaFileReader(OpenCmsModuleManifestGenerator.CDATA_NODE_NAMES);
+		inputFactory = MetaFileReader.createInputFactory();
+		readBuffers = new MetaFileReader.ReadBuffers();
+
+		int numEntries = entries.size();
+		templates = new FragmentTemplate[numEntries];
+		values = new MetaVariableValues[numEntries];
+		resourceIds = new String[numEntries];
+		removeSource = new boolean[numEntries];
+		SiblingTracker siblings = new SiblingTracker();
+		String date = "Mon, 13 Jan 2014 12:13:24 GMT";
+		for (int i = 0; i < numEntries; i++) {
+			MetaFileEntry entry = entries.get(i);
+			templates[i] = read(entry);
+			values[i] = new MetaVariableValues();
+			String vfsPath = entry.path.substring(manifestRoot.toString().length() + 1);
+			values[i].set(MetaVariable.SOURCE, vfsPath);
+			values[i].set(MetaVariable.DESTINATION, vfsPath);
+			values[i].set(MetaVariable.DATELASTMODIFIED, date);
+			values[i].set(MetaVariable.DATECREATED, date);
+			values[i].set(MetaVariable.UUIDSTRUCTURE, UUID.randomUUID().toString());
+			values[i].set(MetaVariable.UUIDRESOURCE, UUID.randomUUID().toString());
+			resourceIds[i] = templates[i].renderResourceId(values[i]);
+			removeSource[i] = siblings.isSourceRemoved(templates[i], resourceIds[i]);
+		}
+
+		XmlHelper xmlHelper = new XmlHelper();
+		manifestStub = xmlHelper.parseFile(manifestStubPath.toString(), null);
+		filesNode = xmlHelper.getSingleNodeForXPath(manifestStub, "/export/files");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(manifestRoot.toFile());
+	}
+
+	/**
+	 * Lists all meta files and folders.
+	 */
+	@Benchmark
+	public List<MetaFileEntry> scan() throws IOException {
+		return OpenCmsModuleManifestGenerator.createMetaFileScanner(manifestRoot.toString(), ScanFilter.ACCEPT_ALL).scan(manifestRoot, excludedPaths);
+	}
+
+	/**
+	 * Reads all meta files into fragment templates.
+	 */
+	@Benchmark
+	public void parse(Blackhole blackhole) {
+		for (MetaFileEntry entry : entries) {
+			blackhole.consume(read(entry));
+		}
+	}
+
+	/**
+	 * Renders the resource ids and checks which siblings lose their source node.
+	 */
+	@Benchmark
+	public int siblings() throws OpenCmsMetaXmlParseException {
+		SiblingTracker siblings = new SiblingTracker();
+		int numRemovedSources = 0;
+		for (int i = 0; i < templates.length; i++) {
+			if (siblings.isSourceRemoved(templates[i], templates[i].renderResourceId(values[i]))) {
+				numRemovedSources++;
+			}
+		}
+		return numRemovedSources;
+	}
+
+	/**
+	 * Renders all file nodes (replacing the meta variables) without writing them anywhere.
+	 */
+	@Benchmark
+	public void render() throws IOException {
+		for (int i = 0; i < templates.length; i++) {
+			templates[i].render(NullWriter.NULL_WRITER, values[i], removeSource[i]);
+		}
+	}
+
+	/**
+	 * Writes the complete manifest file from the prepared fragment templates.
+	 */
+	@Benchmark
+	public void write() throws IOException, XMLStreamException, OpenCmsMetaXmlParseException {
+		try (OutputStream out = new FileOutputStream(manifest.toFile())) {
+			ManifestWriter manifestWriter = new ManifestWriter(out, OpenCmsModuleManifestGenerator.CDATA_NODE_NAMES);
+			manifestWriter.writeManifest(manifestStub, filesNode, null, () -> {
+				for (int i = 0; i < templates.length; i++) {
+					manifestWriter.writeFileNode(templates[i], values[i], removeSource[i]);
+				}
+			});
+		}
+	}
+
+	private FragmentTemplate read(MetaFileEntry entry) {
+		FragmentTemplate template = metaFileReader.read(inputFactory, readBuffers, entry.metaXmlFilePath, entry.folder, entry.metaFileSize, entry.metaFileLastModified);
+		if (template == null) {
+			throw new IllegalStateException("The synthetic meta file " + entry.metaXmlFilePath + " doesn't match the standard layout");
+		}
+		return template;
+	}
+}
@@ -0,0 +1,329 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Generates synthetic module trees (manifest stub plus VFS file and folder meta files) for benchmarks. The resources
+ * are spread over a folder hierarchy of the configured depth, a part of the files can be created as siblings (pairs
+ * of files pointing to the same resource) and the number of properties and access control entries per resource is
+ * configurable. The content is generated from a fixed seed, so trees generated with the same settings are identical.
+ * <br />
+ * <br />
+ * Usage (to generate a tree for manual tests): <code>SyntheticModuleTree &lt;target folder&gt; [number of
+ * resources]</code>
+ */
+public class SyntheticModuleTree {
+
+	/** Name of the generated module */
+	public static final String MODULE_NAME = "com.mediaworx.opencms.benchmark";
+
+	/** VFS path of the module folder, all generated resources are stored below this folder */
+	private static final String MODULE_FOLDER = "system/modules/" + MODULE_NAME;
+
+	/** Average number of files per leaf folder */
+	private static final int FILES_PER_FOLDER = 20;
+
+	/** Date used for all resources if dates are not stored as meta variables */
+	private static final String RESOURCE_DATE = "Mon, 13 Jan 2014 12:13:24 GMT";
+
+	/** Approximate number of resources (files and folders) */
+	private int numResources = 1000;
+
+	/** Number of folder levels below the module folder */
+	private int depth = 3;
+
+	/** Share of files that are created as siblings, between 0 and 1 */
+	private double siblingRatio = 0.05;
+
+	/** Number of properties per resource */
+	private int numProperties = 3;
+
+	/** Number of access control entries per resource */
+	private int numAccessEntries = 2;
+
+	/** Flag indicating if dates and UUIDs are stored as meta variables */
+	private boolean useVariables = true;
+
+	/** Seed for the random generator used to create UUIDs and siblings */
+	private long seed = 4711;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: SyntheticModuleTree <target folder> [number of resources]");
+			System.exit(1);
+		}
+		SyntheticModuleTree tree = new SyntheticModuleTree();
+		if (args.length > 1) {
+			tree.setNumResources(Integer.parseInt(args[1]));
+		}
+		tree.write(Paths.get(args[0]));
+	}
+
+	/**
+	 * Writes the manifest stub and the meta files to the given folder.
+	 * @param manifestRoot  the folder the tree is written to, created if it doesn't exist
+	 * @throws IOException if a file can not be written
+	 */
+	public void write(Path manifestRoot) throws IOException {
+		Random random = new Random(seed);
+		Files.createDirectories(manifestRoot);
+		writeFile(manifestRoot.resolve("manifest_stub.xml"), getManifestStub());
+
+		// leaf folders are numbered, the digits of the number (base fanout) are the folder names on each level
+		int numLeafFolders = Math.max(1, numResources / (FILES_PER_FOLDER + 1));
+		int levels = Math.max(1, depth);
+		int fanout = Math.max(2, (int)Math.ceil(Math.pow(numLeafFolders, 1.0 / levels)));
+		List<String> leafFolders = new ArrayList<>(numLeafFolders);
+		TreeSet<String> folders = new TreeSet<>();
+		folders.add("system");
+		folders.add("system/modules");
+		folders.add(MODULE_FOLDER);
+		for (int i = 0; i < numLeafFolders; i++) {
+			StringBuilder folder = new StringBuilder(MODULE_FOLDER);
+			int number = i;
+			for (int level = 0; level < levels; level++) {
+				folder.append("/folder").append(number % fanout);
+				number /= fanout;
+				folders.add(folder.toString());
+			}
+			leafFolders.add(folder.toString());
+		}
+		for (String folder : folders) {
+			Files.createDirectories(manifestRoot.resolve(folder));
+			writeFile(manifestRoot.resolve(folder + ".ocmsfolder.xml"), getFolderMetaFile(random));
+		}
+
+		// siblings are created in pairs of consecutive files (stored in different folders), the probability of starting
+		// a pair is chosen so that the share of siblings matches the sibling ratio
+		int numFiles = Math.max(0, numResources - folders.size());
+		double pairProbability = siblingRatio / (2 - siblingRatio);
+		String[] resourceIds = new String[numFiles];
+		boolean[] isSibling = new boolean[numFiles];
+		for (int i = 0; i < numFiles; i++) {
+			if (i > 0 && !isSibling[i - 1] && random.nextDouble() < pairProbability) {
+				resourceIds[i] = resourceIds[i - 1];
+				isSibling[i] = true;
+				isSibling[i - 1] = true;
+			}
+			else {
+				resourceIds[i] = createUUID(random);
+			}
+		}
+		for (int i = 0; i < numFiles; i++) {
+			String file = leafFolders.get(i % numLeafFolders) + "/file" + i + ".jsp";
+			writeFile(manifestRoot.resolve(file + ".ocmsfile.xml"), getFileMetaFile(random, resourceIds[i], isSibling[i]));
+		}
+	}
+
+	private String getManifestStub() {
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+				"\n" +
+				"<export>\n" +
+				"    <info>\n" +
+				"        <creator>Admin</creator>\n" +
+				"        <opencms_version>17.0</opencms_version>\n" +
+				"        <createdate>" + (useVariables ? OpenCmsModuleManifestGenerator.META_VAR_CREATEDATE : RESOURCE_DATE) + "</createdate>\n" +
+				"        <infoproject>Offline</infoproject>\n" +
+				"        <export_version>10</export_version>\n" +
+				"    </info>\n" +
+				"    <module>\n" +
+				"        <name>" + MODULE_NAME + "</name>\n" +
+				"        <nicename><![CDATA[Benchmark Module]]></nicename>\n" +
+				"        <class/>\n" +
+				"        <description><![CDATA[Synthetic module used for benchmarks]]></description>\n" +
+				"        <version>1.0</version>\n" +
+				"        <authorname><![CDATA[mediaworx]]></authorname>\n" +
+				"        <authoremail><![CDATA[info@mediaworx.com]]></authoremail>\n" +
+				"        <datecreated/>\n" +
+				"        <userinstalled/>\n" +
+				"        <dateinstalled/>\n" +
+				"        <dependencies/>\n" +
+				"        <exportpoints/>\n" +
+				"        <resources>\n" +
+				"            <resource uri=\"/" + MODULE_FOLDER + "/\"/>\n" +
+				"        </resources>\n" +
+				"        <parameters/>\n" +
+				"    </module>\n" +
+				"    <files/>\n" +
+				"</export>\n";
+	}
+
+	private String getFolderMetaFile(Random random) {
+		StringBuilder xml = new StringBuilder(1024);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n\n");
+		xml.append("<file>\n");
+		appendResourceData(xml, "    ", "folder", getUUID(random, OpenCmsModuleManifestGenerator.META_VAR_UUIDSTRUCTURE), null);
+		xml.append("</file>\n");
+		return xml.toString();
+	}
+
+	private String getFileMetaFile(Random random, String resourceId, boolean isSibling) {
+		StringBuilder xml = new StringBuilder(2048);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n\n");
+		xml.append("<fileinfo>\n");
+		xml.append("    <file>\n");
+		xml.append("        <source>").append(OpenCmsModuleManifestGenerator.META_VAR_SOURCE).append("</source>\n");
+		// siblings need a shared resource id, so it is never replaced by a variable
+		String uuidResource = isSibling ? resourceId : getUUID(random, OpenCmsModuleManifestGenerator.META_VAR_UUIDRESOURCE);
+		appendResourceData(xml, "        ", "jsp", getUUID(random, OpenCmsModuleManifestGenerator.META_VAR_UUIDSTRUCTURE), uuidResource);
+		xml.append("    </file>\n");
+		xml.append("    <siblingcount>").append(isSibling ? 2 : 1).append("</siblingcount>\n");
+		xml.append("</fileinfo>\n");
+		return xml.toString();
+	}
+
+	private void appendResourceData(StringBuilder xml, String indent, String type, String uuidStructure, String uuidResource) {
+		String date = useVariables ? OpenCmsModuleManifestGenerator.META_VAR_DATELASTMODIFIED : RESOURCE_DATE;
+		String dateCreated = useVariables ? OpenCmsModuleManifestGenerator.META_VAR_DATECREATED : RESOURCE_DATE;
+		xml.append(indent).append("<destination>").append(OpenCmsModuleManifestGenerator.META_VAR_DESTINATION).append("</destination>\n");
+		xml.append(indent).append("<type>").append(type).append("</type>\n");
+		xml.append(indent).append("<uuidstructure>").append(uuidStructure).append("</uuidstructure>\n");
+		if (uuidResource != null) {
+			xml.append(indent).append("<uuidresource>").append(uuidResource).append("</uuidresource>\n");
+		}
+		xml.append(indent).append("<datelastmodified>").append(date).append("</datelastmodified>\n");
+		xml.append(indent).append("<userlastmodified>Admin</userlastmodified>\n");
+		xml.append(indent).append("<datecreated>").append(dateCreated).append("</datecreated>\n");
+		xml.append(indent).append("<usercreated>Admin</usercreated>\n");
+		xml.append(indent).append("<flags>0</flags>\n");
+		if (numProperties > 0) {
+			xml.append(indent).append("<properties>\n");
+			for (int i = 0; i < numProperties; i++) {
+				xml.append(indent).append(i % 2 == 0 ? "    <property>\n" : "    <property type=\"shared\">\n");
+				xml.append(indent).append("        <name>property").append(i).append("</name>\n");
+				xml.append(indent).append("        <value><![CDATA[Value of property ").append(i).append(" & <more>]]></value>\n");
+				xml.append(indent).append("    </property>\n");
+			}
+			xml.append(indent).append("</properties>\n");
+		}
+		else {
+			xml.append(indent).append("<properties/>\n");
+		}
+		xml.append(indent).append("<relations/>\n");
+		if (numAccessEntries > 0) {
+			xml.append(indent).append("<accesscontrol>\n");
+			for (int i = 0; i < numAccessEntries; i++) {
+				xml.append(indent).append("    <accessentry>\n");
+				xml.append(indent).append("        <uuidprincipal>GROUP.Group").append(i).append("</uuidprincipal>\n");
+				xml.append(indent).append("        <flags>32</flags>\n");
+				xml.append(indent).append("        <permissionset>\n");
+				xml.append(indent).append("            <allowed>").append(i).append("</allowed>\n");
+				xml.append(indent).append("            <denied>0</denied>\n");
+				xml.append(indent).append("        </permissionset>\n");
+				xml.append(indent).append("    </accessentry>\n");
+			}
+			xml.append(indent).append("</accesscontrol>\n");
+		}
+		else {
+			xml.append(indent).append("<accesscontrol/>\n");
+		}
+	}
+
+	private String getUUID(Random random, String variable) {
+		// the random UUID is always created, so the generated siblings don't depend on the variable setting
+		String uuid = createUUID(random);
+		return useVariables ? variable : uuid;
+	}
+
+	private static String createUUID(Random random) {
+		return new UUID(random.nextLong(), random.nextLong()).toString();
+	}
+
+	private static void writeFile(Path path, String content) throws IOException {
+		Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Sets the approximate number of resources (files and folders), default is 1000.
+	 * @param numResources  the number of resources
+	 */
+	public void setNumResources(int numResources) {
+		this.numResources = numResources;
+	}
+
+	/**
+	 * Sets the number of folder levels below the module folder, default is 3.
+	 * @param depth the number of folder levels
+	 */
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+	/**
+	 * Sets the share of files that are created as siblings, default is 0.05.
+	 * @param siblingRatio  share of siblings, between 0 and 1
+	 */
+	public void setSiblingRatio(double siblingRatio) {
+		this.siblingRatio = siblingRatio;
+	}
+
+	/**
+	 * Sets the number of properties per resource, default is 3.
+	 * @param numProperties the number of properties
+	 */
+	public void setNumProperties(int numProperties) {
+		this.numProperties = numProperties;
+	}
+
+	/**
+	 * Sets the number of access control entries per resource, default is 2.
+	 * @param numAccessEntries  the number of access control entries
+	 */
+	public void setNumAccessEntries(int numAccessEntries) {
+		this.numAccessEntries = numAccessEntries;
+	}
+
+	/**
+	 * Sets the flag indicating if dates and UUIDs are stored as meta variables (the resource id of siblings is never
+	 * stored as variable), default is <code>true</code>.
+	 * @param useVariables  <code>true</code> if meta variables should be used, <code>false</code> otherwise
+	 */
+	public void setUseVariables(boolean useVariables) {
+		this.useVariables = useVariables;
+	}
+
+	/**
+	 * Sets the seed used to generate UUIDs and siblings.
+	 * @param seed  the seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache for parsed meta files ({@link FragmentTemplate}s), bounded by the approximate heap size of the cached
+ * templates. Templates are stored by meta file path and are only returned if the meta file's size and modification
+ * date are unchanged. The cache may be used by multiple parser threads.
+ * <br />
+ * <br />
+ * Cached templates share their repeated subtrees (see {@link SharedSubtree}), the cache owns the table they are
+ * interned in, so interned subtrees don't outlive the cache.
+ */
+class FragmentCache {
+
+	/** maximum number of bytes occupied by the cached templates */
+	private final long maxBytes;
+
+	/** templates by meta file path, in access order (least recently used first) */
+	private final LinkedHashMap<String, FragmentTemplate> templates = new LinkedHashMap<>(1024, 0.75f, true);
+
+	/** the subtrees shared by the cached templates */
+	private final SharedSubtree.Table subtrees = new SharedSubtree.Table();
+
+	/** approximate number of bytes occupied by the cached templates */
+	private long currentBytes = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Creates a new fragment cache.
+	 * @param maxBytes maximum number of bytes occupied by the cached templates
+	 */
+	FragmentCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the cached template for the given meta file.
+	 * @param metaXmlFilePath       path of the meta file
+	 * @param metaFileSize          current size of the meta file
+	 * @param metaFileLastModified  current modification date of the meta file
+	 * @return  the cached template, <code>null</code> if there is none or the meta file was changed since it was
+	 *          cached
+	 */
+	synchronized FragmentTemplate get(String metaXmlFilePath, long metaFileSize, long metaFileLastModified) {
+		FragmentTemplate template = templates.get(metaXmlFilePath);
+		if (template != null && template.metaFileSize == metaFileSize && template.metaFileLastModified == metaFileLastModified) {
+			hits++;
+			return template;
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Adds the template to the cache, replacing an outdated template for the same meta file. The least recently used
+	 * templates are evicted if the cache grows bigger than its maximum size. The cache keeps a copy of the template
+	 * sharing its repeated subtrees with the other cached templates (interned without holding the cache's lock).
+	 * @param template  the template to be cached
+	 * @return  the cached copy of the template (to be used instead of the template), the template itself if it isn't
+	 *          cached because it is too big
+	 */
+	FragmentTemplate put(FragmentTemplate template) {
+		if (template.estimateSize() > maxBytes) {
+			return template;
+		}
+		FragmentTemplate interned = template.internSubtrees(subtrees);
+		long templateSize = interned.estimateSize();
+		synchronized (this) {
+			FragmentTemplate replaced = templates.put(interned.metaXmlFilePath, interned);
+			if (replaced != null) {
+				currentBytes -= replaced.estimateSize();
+			}
+			currentBytes += templateSize;
+
+			Iterator<Map.Entry<String, FragmentTemplate>> leastRecentlyUsed = templates.entrySet().iterator();
+			while (currentBytes > maxBytes && leastRecentlyUsed.hasNext()) {
+				currentBytes -= leastRecentlyUsed.next().getValue().estimateSize();
+				leastRecentlyUsed.remove();
+			}
+		}
+		return interned;
+	}
+
+	/**
+	 * Removes the template of the given meta file from the cache.
+	 * @param metaXmlFilePath   path of the meta file
+	 */
+	synchronized void remove(String metaXmlFilePath) {
+		FragmentTemplate removed = templates.remove(metaXmlFilePath);
+		if (removed != null) {
+			currentBytes -= removed.estimateSize();
+		}
+	}
+
+	/**
+	 * Removes all templates from the cache.
+	 */
+	synchronized void clear() {
+		templates.clear();
+		currentBytes = 0;
+	}
+
+	/**
+	 * @return a short summary of the cache usage (for logging purposes)
+	 */
+	synchronized String getStatistics() {
+		return templates.size() + " fragments (" + currentBytes + " bytes, " + subtrees.size() + " shared subtrees), " + hits + " hits, " + misses + " misses";
+	}
+}
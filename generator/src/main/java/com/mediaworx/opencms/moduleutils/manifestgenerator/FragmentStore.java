@@ -0,0 +1,758 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.ManifestWriter.SerializedFileNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent store for parsed meta files ({@link FragmentTemplate}s) that survives the JVM, so a fresh build only
+ * parses the meta files changed since the previous build. Fragments are stored by meta file path (relative to the
+ * manifest root, so the store stays valid if the checkout is moved) together with the SHA-256 hash of the meta file's
+ * content. A stored fragment is used if the meta file's size and modification date are unchanged, or otherwise if the
+ * hash of its content is unchanged (a fresh checkout changes all modification dates, but hashing a meta file is much
+ * cheaper than parsing it).
+ * <br />
+ * <br />
+ * The store is a single append-only file: a header followed by one record per stored fragment. Records written when
+ * a meta file changed supersede the older record for the same path. The file is memory-mapped when the store is
+ * opened, stored fragments are decoded straight from the mapping. After a complete run the records of meta files that
+ * were not part of the run are marked as dead. The store is compacted (the live records are copied to a new file that
+ * replaces the old one) when it is opened and more than half of it is taken by superseded or dead records. Compaction
+ * is done before the store file is mapped, since a mapped file can't be replaced on every platform (on Windows a
+ * mapping is only released by the garbage collector).
+ * <br />
+ * <br />
+ * A damaged store never leads to a wrong manifest: records have a checksum that is verified before a fragment is
+ * used (a damaged record is parsed again and replaced), a record cut off by a crash is truncated when the store is
+ * opened and a store with an unknown header is discarded. Only one run at a time can use a store file (a lock file
+ * next to it is locked while the store is open, so the store file itself can be replaced), concurrent runs generate
+ * their manifest without the store.
+ */
+class FragmentStore implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FragmentStore.class);
+
+	/** Magic number at the start of the store file ("OCMSFRAG") */
+	private static final long FILE_MAGIC = 0x4F434D5346524147L;
+
+	/** Version of the store format, stores with another version are discarded */
+	private static final int FORMAT_VERSION = 2;
+
+	/** Size of the file header: magic number and format version */
+	private static final int FILE_HEADER_SIZE = 12;
+
+	/** Magic number at the start of every record */
+	private static final int RECORD_MAGIC = 0x46524147;
+
+	/** Magic number replacing the one of a record whose meta file doesn't exist anymore */
+	private static final int DEAD_RECORD_MAGIC = 0x44454144;
+
+	/**
+	 * Size of the record header: magic number, body length, checksum of the body and the meta file's modification
+	 * date. The modification date is not covered by the checksum, it is updated in place and only used to skip
+	 * hashing the meta file (the hash is always verified otherwise).
+	 */
+	private static final int RECORD_HEADER_SIZE = 20;
+
+	/** Offset of the modification date within the record header */
+	private static final int LAST_MODIFIED_OFFSET = 12;
+
+	/** Maximum size of a record body, longer lengths are treated as damage */
+	private static final int MAX_BODY_SIZE = 64 * 1024 * 1024;
+
+	/** Algorithm used to hash the meta files' content */
+	private static final String HASH_ALGORITHM = "SHA-256";
+
+	/** Length of the content hash in bytes */
+	private static final int HASH_LENGTH = 32;
+
+	/** File name suffix of temporary files written during compaction */
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	/** File name suffix of the lock file next to the store file */
+	private static final String LOCK_FILE_SUFFIX = ".lock";
+
+	/** Position and state of a stored record */
+	private static class Record {
+
+		/** position of the record in the store file */
+		final long position;
+
+		/** size of the record including its header */
+		final int size;
+
+		/** flag indicating if the record was used in the current run */
+		boolean used;
+
+		Record(long position, int size) {
+			this.position = position;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Result of a lookup in the store: the stored fragment or, if there is none, the hash of the meta file's content
+	 * needed to store the fragment once the meta file is parsed. The hash is computed before the meta file is parsed,
+	 * so a meta file changed in between is never stored with an outdated hash.
+	 */
+	static class Lookup {
+
+		/** path of the meta file relative to the manifest root */
+		private final String relativePath;
+
+		/** hash of the meta file's content, <code>null</code> if the content could not be read */
+		private final byte[] contentHash;
+
+		/** the stored fragment, <code>null</code> if there is none or it is outdated */
+		final FragmentTemplate template;
+
+		private Lookup(String relativePath, byte[] contentHash, FragmentTemplate template) {
+			this.relativePath = relativePath;
+			this.contentHash = contentHash;
+			this.template = template;
+		}
+	}
+
+	/** root path of the manifest meta data, stored paths are relative to it */
+	private final String manifestRootPath;
+
+	private final FileChannel channel;
+
+	/** channel of the lock file */
+	private final FileChannel lockChannel;
+
+	private final FileLock lock;
+
+	/** the part of the store file that existed when the store was opened */
+	private final MappedByteBuffer mapping;
+
+	/** records by relative meta file path, only the latest live record per path is contained */
+	private final Map<String, Record> records;
+
+	/** position at which the next record is written */
+	private long endPosition;
+
+	private long hits = 0;
+	private long hashedHits = 0;
+	private long misses = 0;
+	private long damagedRecords = 0;
+
+	private FragmentStore(String manifestRootPath, FileChannel channel, Map<String, Record> records, long endPosition, FileChannel lockChannel, FileLock lock) throws IOException {
+		this.manifestRootPath = manifestRootPath;
+		this.channel = channel;
+		this.records = records;
+		this.endPosition = endPosition;
+		this.lockChannel = lockChannel;
+		this.lock = lock;
+		mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(endPosition, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Opens (or creates) the store file, compacting it first if necessary. If the store is used by another run, the
+	 * run has to do without it.
+	 * @param storePath         path of the store file
+	 * @param manifestRootPath  root path of the manifest meta data
+	 * @return  the opened store, <code>null</code> if the store is used by another run
+	 * @throws IOException if the store file can not be opened or read
+	 */
+	static FragmentStore open(Path storePath, String manifestRootPath) throws IOException {
+		Path parent = storePath.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		Path lockPath = storePath.resolveSibling(storePath.getFileName() + LOCK_FILE_SUFFIX);
+		FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		FileLock lock = null;
+		FileChannel channel = null;
+		try {
+			try {
+				lock = lockChannel.tryLock();
+			}
+			catch (OverlappingFileLockException e) {
+				// locked by another run in this JVM
+				lock = null;
+			}
+			if (lock == null) {
+				lockChannel.close();
+				LOG.info("The fragment store {} is used by another run, all meta files are parsed", storePath);
+				return null;
+			}
+
+			channel = FileChannel.open(storePath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			Map<String, Record> records = new HashMap<>();
+			long endPosition = readStore(storePath, channel, records);
+			if (needsCompaction(records, endPosition)) {
+				channel.close();
+				channel = null;
+				try {
+					endPosition = compact(storePath, records, endPosition);
+				}
+				catch (IOException e) {
+					// the positions of the records are unchanged, the store is compacted by a later run
+					LOG.warn("The fragment store " + storePath + " could not be compacted", e);
+				}
+				channel = FileChannel.open(storePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			}
+			return new FragmentStore(manifestRootPath, channel, records, endPosition, lockChannel, lock);
+		}
+		catch (IOException | RuntimeException e) {
+			if (channel != null) {
+				channel.close();
+			}
+			lockChannel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the index of the given store file (see {@link #readRecordIndex(FileChannel, long, Map)}), a store with an
+	 * unknown format is discarded and damaged bytes at the end are truncated.
+	 * @param storePath the path of the store file (for logging purposes)
+	 * @param channel   channel of the store file, the file is not mapped yet
+	 * @param records   map the records are added to
+	 * @return  the end of the last complete record
+	 * @throws IOException if the store file can not be read or written
+	 */
+	private static long readStore(Path storePath, FileChannel channel, Map<String, Record> records) throws IOException {
+		long size = channel.size();
+		if (!hasValidHeader(channel, size)) {
+			if (size > 0) {
+				LOG.warn("The fragment store {} has an unknown format, it is discarded", storePath);
+			}
+			channel.truncate(0);
+			writeHeader(channel);
+			return FILE_HEADER_SIZE;
+		}
+		long endPosition = readRecordIndex(channel, size, records);
+		if (endPosition < size) {
+			LOG.warn("The fragment store {} ends with {} damaged bytes (probably written by an interrupted run), they are discarded", storePath, size - endPosition);
+			channel.truncate(endPosition);
+		}
+		return endPosition;
+	}
+
+	private static boolean hasValidHeader(FileChannel channel, long size) throws IOException {
+		if (size < FILE_HEADER_SIZE) {
+			return false;
+		}
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+		readFully(channel, header, 0);
+		return header.getLong(0) == FILE_MAGIC && header.getInt(8) == FORMAT_VERSION;
+	}
+
+	private static void writeHeader(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+		header.putLong(FILE_MAGIC).putInt(FORMAT_VERSION).flip();
+		writeFully(channel, header, 0);
+	}
+
+	/**
+	 * Builds the index of the stored records. Only the record headers and paths are read, the checksum of a record is
+	 * verified when its fragment is used. A dead record removes the older records of its path.
+	 * @param channel   channel of the store file
+	 * @param size      size of the store file
+	 * @param records   map the live records are added to
+	 * @return  the end of the last complete record
+	 * @throws IOException if the store file can not be read
+	 */
+	private static long readRecordIndex(FileChannel channel, long size, Map<String, Record> records) throws IOException {
+		long position = FILE_HEADER_SIZE;
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE + 4);
+		while (position + RECORD_HEADER_SIZE + 4 <= size) {
+			header.clear();
+			readFully(channel, header, position);
+			int magic = header.getInt(0);
+			int bodySize = header.getInt(4);
+			if ((magic != RECORD_MAGIC && magic != DEAD_RECORD_MAGIC) || bodySize < 4 || bodySize > MAX_BODY_SIZE || position + RECORD_HEADER_SIZE + bodySize > size) {
+				break;
+			}
+			int pathLength = header.getInt(RECORD_HEADER_SIZE);
+			if (pathLength < 0 || pathLength > bodySize - 4) {
+				break;
+			}
+			ByteBuffer path = ByteBuffer.allocate(pathLength);
+			readFully(channel, path, position + RECORD_HEADER_SIZE + 4);
+			path.flip();
+			String relativePath = StandardCharsets.UTF_8.decode(path).toString();
+			Record record = new Record(position, RECORD_HEADER_SIZE + bodySize);
+			if (magic == RECORD_MAGIC) {
+				records.put(relativePath, record);
+			}
+			else {
+				records.remove(relativePath);
+			}
+			position += record.size;
+		}
+		return position;
+	}
+
+	/**
+	 * Looks up the stored fragment for the given meta file. Only the index and the counters are accessed under the
+	 * store's lock, the record is read, verified and decoded without it (the mapping is read-only and records are
+	 * never changed once they are in the index, except for the modification date), so parser threads don't wait for
+	 * each other.
+	 * @param metaXmlFilePath       path of the meta file
+	 * @param metaFileSize          current size of the meta file
+	 * @param metaFileLastModified  current modification date of the meta file
+	 * @return  the lookup result containing the stored fragment (or the data needed to store the fragment)
+	 */
+	Lookup get(String metaXmlFilePath, long metaFileSize, long metaFileLastModified) {
+		String relativePath = getRelativePath(metaXmlFilePath);
+		Record record = getRecord(relativePath);
+		ByteBuffer body = record != null ? readBody(relativePath, record) : null;
+		if (body != null && body.getLong(0) == metaFileSize && getLastModified(record) == metaFileLastModified) {
+			synchronized (this) {
+				record.used = true;
+				hits++;
+			}
+			return new Lookup(relativePath, null, decode(metaXmlFilePath, metaFileSize, metaFileLastModified, body));
+		}
+
+		// size or date changed (or there is no intact record), the content has to be compared
+		byte[] contentHash = hashContent(metaXmlFilePath);
+		if (body == null || contentHash == null || body.getLong(0) != metaFileSize || !hasContentHash(body, contentHash)) {
+			synchronized (this) {
+				misses++;
+			}
+			return new Lookup(relativePath, contentHash, null);
+		}
+		synchronized (this) {
+			record.used = true;
+			hashedHits++;
+		}
+		updateLastModified(record, metaFileLastModified);
+		return new Lookup(relativePath, null, decode(metaXmlFilePath, metaFileSize, metaFileLastModified, body));
+	}
+
+	/**
+	 * @param relativePath  path of a meta file relative to the manifest root
+	 * @return  the latest live record of the meta file, <code>null</code> if there is none
+	 */
+	private synchronized Record getRecord(String relativePath) {
+		return records.get(relativePath);
+	}
+
+	/**
+	 * Stores the fragment parsed after an unsuccessful lookup, replacing the outdated record.
+	 * @param lookup    the lookup result
+	 * @param template  the parsed fragment
+	 */
+	void put(Lookup lookup, FragmentTemplate template) {
+		if (lookup.template != null || lookup.contentHash == null) {
+			return;
+		}
+		ByteBuffer record = encode(lookup.relativePath, lookup.contentHash, template);
+		synchronized (this) {
+			try {
+				writeFully(channel, record, endPosition);
+			}
+			catch (IOException e) {
+				// the fragment is parsed again by the next run
+				LOG.warn("The fragment of {} could not be stored", template.metaXmlFilePath, e);
+				return;
+			}
+			Record stored = new Record(endPosition, record.limit());
+			stored.used = true;
+			endPosition += stored.size;
+			records.put(lookup.relativePath, stored);
+		}
+	}
+
+	/**
+	 * Reads the body of the given record and verifies its checksum, called without holding the store's lock. A damaged
+	 * record is removed from the index.
+	 * @param relativePath  the record's meta file path
+	 * @param record        the record
+	 * @return  the record's body, <code>null</code> if the record is damaged
+	 */
+	private ByteBuffer readBody(String relativePath, Record record) {
+		try {
+			ByteBuffer header = read(record.position, RECORD_HEADER_SIZE);
+			ByteBuffer body = read(record.position + RECORD_HEADER_SIZE, record.size - RECORD_HEADER_SIZE);
+			CRC32 checksum = new CRC32();
+			checksum.update(body.duplicate());
+			if ((int)checksum.getValue() == header.getInt(8)) {
+				// skip the path, it was checked when the index was built
+				int pathLength = body.getInt(0);
+				body.position(4 + pathLength);
+				return body.slice();
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			LOG.debug("The stored fragment of {} could not be read", relativePath, e);
+		}
+		LOG.warn("The stored fragment of {} is damaged, the meta file is parsed again", relativePath);
+		synchronized (this) {
+			// the record may have been replaced in the meantime
+			records.remove(relativePath, record);
+			damagedRecords++;
+		}
+		return null;
+	}
+
+	private long getLastModified(Record record) {
+		try {
+			return read(record.position + LAST_MODIFIED_OFFSET, 8).getLong(0);
+		}
+		catch (IOException e) {
+			return Long.MIN_VALUE;
+		}
+	}
+
+	private void updateLastModified(Record record, long lastModified) {
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		buffer.putLong(0, lastModified);
+		try {
+			writeFully(channel, buffer, record.position + LAST_MODIFIED_OFFSET);
+		}
+		catch (IOException e) {
+			// the content is hashed again by the next run
+			LOG.debug("The modification date of a stored fragment could not be updated", e);
+		}
+	}
+
+	private static boolean hasContentHash(ByteBuffer body, byte[] contentHash) {
+		for (int i = 0; i < HASH_LENGTH; i++) {
+			if (body.get(8 + i) != contentHash[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Record layout (after the record header): path, meta file size, content hash, number of siblings, position of
+	 * the source node, type, resource id, structure id and the serialized file node. Strings are stored as UTF-8
+	 * with their length in bytes (-1 for <code>null</code>).
+	 * @param relativePath  path of the meta file relative to the manifest root
+	 * @param contentHash   hash of the meta file's content
+	 * @param template      the fragment
+	 * @return  the complete record, ready to be written
+	 */
+	private static ByteBuffer encode(String relativePath, byte[] contentHash, FragmentTemplate template) {
+		byte[] path = relativePath.getBytes(StandardCharsets.UTF_8);
+		byte[] type = toBytes(template.type);
+		byte[] resourceId = toBytes(template.resourceId);
+		byte[] structureId = toBytes(template.structureId);
+		SerializedFileNode fileNode = template.getFileNode();
+		byte[] xml = fileNode.xml.getBytes(StandardCharsets.UTF_8);
+		int bodySize = 4 + path.length + 8 + HASH_LENGTH + 12 + sizeOf(type) + sizeOf(resourceId) + sizeOf(structureId) + sizeOf(xml);
+
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + bodySize);
+		record.position(RECORD_HEADER_SIZE);
+		putBytes(record, path);
+		record.putLong(template.metaFileSize);
+		record.put(contentHash);
+		record.putInt(template.numSiblings);
+		record.putInt(fileNode.sourceStart);
+		record.putInt(fileNode.sourceEnd);
+		putBytes(record, type);
+		putBytes(record, resourceId);
+		putBytes(record, structureId);
+		putBytes(record, xml);
+
+		record.position(RECORD_HEADER_SIZE);
+		CRC32 checksum = new CRC32();
+		checksum.update(record);
+		record.putInt(0, RECORD_MAGIC);
+		record.putInt(4, bodySize);
+		record.putInt(8, (int)checksum.getValue());
+		record.putLong(LAST_MODIFIED_OFFSET, template.metaFileLastModified);
+		record.position(0);
+		return record;
+	}
+
+	/**
+	 * Decodes the fragment from a record body (without the path).
+	 * @param metaXmlFilePath       path of the meta file
+	 * @param metaFileSize          current size of the meta file
+	 * @param metaFileLastModified  current modification date of the meta file
+	 * @param body                  the record body, starting at the meta file size
+	 * @return  the fragment
+	 */
+	private static FragmentTemplate decode(String metaXmlFilePath, long metaFileSize, long metaFileLastModified, ByteBuffer body) {
+		body.position(8 + HASH_LENGTH);
+		int numSiblings = body.getInt();
+		int sourceStart = body.getInt();
+		int sourceEnd = body.getInt();
+		String type = getString(body);
+		String resourceId = getString(body);
+		String structureId = getString(body);
+		String xml = getString(body);
+		SerializedFileNode fileNode = new SerializedFileNode(xml, sourceStart, sourceEnd);
+		return new FragmentTemplate(metaXmlFilePath, metaFileSize, metaFileLastModified, fileNode, type, numSiblings, resourceId, structureId);
+	}
+
+	private static byte[] toBytes(String value) {
+		return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+	}
+
+	private static int sizeOf(byte[] bytes) {
+		return 4 + (bytes != null ? bytes.length : 0);
+	}
+
+	private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+		if (bytes == null) {
+			buffer.putInt(-1);
+		}
+		else {
+			buffer.putInt(bytes.length);
+			buffer.put(bytes);
+		}
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		ByteBuffer bytes = buffer.slice();
+		bytes.limit(length);
+		buffer.position(buffer.position() + length);
+		return StandardCharsets.UTF_8.decode(bytes).toString();
+	}
+
+	/**
+	 * @param metaXmlFilePath   path of the meta file
+	 * @return  the hash of the meta file's content, <code>null</code> if the meta file can not be read (the error is
+	 *          reported when the meta file is parsed)
+	 */
+	private static byte[] hashContent(String metaXmlFilePath) {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM).digest(Files.readAllBytes(Paths.get(metaXmlFilePath)));
+		}
+		catch (IOException e) {
+			return null;
+		}
+		catch (NoSuchAlgorithmException e) {
+			// every Java runtime is required to support SHA-256
+			throw new IllegalStateException(HASH_ALGORITHM + " is not supported", e);
+		}
+	}
+
+	/**
+	 * @param metaXmlFilePath   path of a meta file below the manifest root
+	 * @return  the path relative to the manifest root, with "/" as separator
+	 */
+	private String getRelativePath(String metaXmlFilePath) {
+		return metaXmlFilePath.substring(manifestRootPath.length() + 1).replace(File.separatorChar, '/');
+	}
+
+	/**
+	 * Reads a part of the store file, from the mapping if the part was mapped when the store was opened.
+	 * @param position  position in the store file
+	 * @param length    number of bytes to be read
+	 * @return  buffer containing the bytes (position 0, limit <code>length</code>)
+	 * @throws IOException if the store file can not be read
+	 */
+	private ByteBuffer read(long position, int length) throws IOException {
+		if (position + length <= mapping.limit()) {
+			ByteBuffer part = mapping.duplicate();
+			part.position((int)position);
+			part.limit((int)position + length);
+			return part.slice();
+		}
+		ByteBuffer part = ByteBuffer.allocate(length);
+		readFully(channel, part, position);
+		part.flip();
+		return part;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new IOException("Unexpected end of the fragment store");
+			}
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+	/**
+	 * Checks if more than half of the store file is taken by records that are not live (superseded, damaged or dead
+	 * records).
+	 * @param records       the live records
+	 * @param endPosition   the end of the last complete record
+	 * @return  <code>true</code> if the store should be compacted
+	 */
+	private static boolean needsCompaction(Map<String, Record> records, long endPosition) {
+		long liveBytes = 0;
+		for (Record record : records.values()) {
+			liveBytes += record.size;
+		}
+		return endPosition - FILE_HEADER_SIZE > 2 * liveBytes;
+	}
+
+	/**
+	 * Copies the live records to a new store file that replaces the given one. The store file must not be open (and
+	 * never have been mapped by this JVM, a mapping is only released by the garbage collector).
+	 * @param storePath     path of the store file
+	 * @param records       the live records, their positions are updated to the new store file
+	 * @param endPosition   the end of the last complete record
+	 * @return  the end of the last record in the new store file
+	 * @throws IOException if the new store file can not be written or can not replace the store file, the store file
+	 *                     and the records are unchanged then
+	 */
+	private static long compact(Path storePath, Map<String, Record> records, long endPosition) throws IOException {
+		// keep the order of the records, so the old file is read sequentially
+		List<Map.Entry<String, Record>> liveRecords = new ArrayList<>(records.entrySet());
+		liveRecords.sort((r1, r2) -> Long.compare(r1.getValue().position, r2.getValue().position));
+
+		Path tempPath = storePath.resolveSibling(storePath.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_FILE_SUFFIX);
+		Map<String, Record> compactedRecords = new HashMap<>();
+		long size = FILE_HEADER_SIZE;
+		try {
+			try (FileChannel source = FileChannel.open(storePath, StandardOpenOption.READ);
+					FileChannel target = FileChannel.open(tempPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+				writeHeader(target);
+				for (Map.Entry<String, Record> entry : liveRecords) {
+					Record record = entry.getValue();
+					ByteBuffer buffer = ByteBuffer.allocate(record.size);
+					readFully(source, buffer, record.position);
+					buffer.flip();
+					writeFully(target, buffer, size);
+					compactedRecords.put(entry.getKey(), new Record(size, record.size));
+					size += record.size;
+				}
+				target.force(false);
+			}
+			try {
+				Files.move(tempPath, storePath, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempPath, storePath, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(tempPath);
+		}
+		records.putAll(compactedRecords);
+		LOG.info("fragment store compacted: {} of {} bytes kept", size, endPosition);
+		return size;
+	}
+
+	/**
+	 * Marks the records of all meta files that were not looked up as dead, they belong to meta files that don't exist
+	 * anymore. Dead records are removed when the store is compacted by the next run. Must only be called after a
+	 * complete run, when every meta file of the module was looked up since the store was opened.
+	 */
+	synchronized void markUnusedRecordsDead() {
+		ByteBuffer magic = ByteBuffer.allocate(4);
+		magic.putInt(0, DEAD_RECORD_MAGIC);
+		for (Iterator<Record> iterator = records.values().iterator(); iterator.hasNext();) {
+			Record record = iterator.next();
+			if (record.used) {
+				continue;
+			}
+			magic.clear();
+			try {
+				writeFully(channel, magic, record.position);
+			}
+			catch (IOException e) {
+				// the record is kept until a later run marks it
+				LOG.debug("A stored fragment could not be marked as dead", e);
+				return;
+			}
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Marks the stored fragment of the given meta file as used without reading it (when the fragment was taken from
+	 * the in-process {@link FragmentCache}), so it isn't marked as dead after the run.
+	 * @param metaXmlFilePath   path of the meta file
+	 */
+	synchronized void markUsed(String metaXmlFilePath) {
+		Record record = records.get(getRelativePath(metaXmlFilePath));
+		if (record != null) {
+			record.used = true;
+		}
+	}
+
+	/**
+	 * @return a short summary of the store usage (for logging purposes)
+	 */
+	synchronized String getStatistics() {
+		return records.size() + " fragments (" + endPosition + " bytes), " + hits + " hits, " + hashedHits + " hits after hashing, " + misses + " misses, " + damagedRecords + " damaged";
+	}
+
+	/**
+	 * Closes the store file and releases the lock. Appended records are not forced to the disk, a record that is cut
+	 * off is discarded by the next run.
+	 * @throws IOException if the store file can not be closed
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			channel.close();
+		}
+		finally {
+			try {
+				if (lock.isValid()) {
+					lock.release();
+				}
+			}
+			finally {
+				lockChannel.close();
+			}
+		}
+	}
+}
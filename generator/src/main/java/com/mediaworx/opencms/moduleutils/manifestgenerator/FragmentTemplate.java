@@ -0,0 +1,341 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.ManifestWriter.SerializedFileNode;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * The serialized file node of a meta file with its meta variables (like <code>${destination}</code>) still in place,
+ * plus the sibling information of the meta file. The file node is compiled into {@link MetaVariableTemplate}s once,
+ * templates don't depend on generated values, so they can be cached and rendered with new values for every manifest.
+ * <br />
+ * <br />
+ * The <code>properties</code> and <code>accesscontrol</code> nodes of most meta files are repeated verbatim (like
+ * all files of a folder sharing the same permissions). A template kept by the {@link FragmentCache} is therefore
+ * replaced by a copy (see {@link #internSubtrees(SharedSubtree.Table)}) that shares these subtrees as
+ * {@link SharedSubtree}s and only holds the remaining parts of the file node.
+ */
+class FragmentTemplate {
+
+	/** Names of the file node's children that are interned (unless they contain meta variables) */
+	private static final String[] SHARED_NODE_NAMES = new String[] { "properties", "accesscontrol" };
+
+	/** Minimum length of an interned subtree, shorter subtrees are not worth a shared instance */
+	private static final int MIN_SHARED_LENGTH = 64;
+
+	/** Line break and indentation preceding the children of the file node */
+	private static final String CHILD_INDENT = ManifestWriter.getIndent(ManifestWriter.FILE_NODE_DEPTH + 1);
+
+	private static final String CDATA_START = "<![CDATA[";
+	private static final String CDATA_END = "]]>";
+
+	/** Shared subtree ranges of a template that doesn't share subtrees */
+	private static final int[] NO_SHARED_RANGES = new int[0];
+
+	/** Shared subtrees of a template that doesn't share subtrees */
+	private static final SharedSubtree[] NO_SHARED_SUBTREES = new SharedSubtree[0];
+
+	/** path of the meta file */
+	final String metaXmlFilePath;
+
+	/** size of the meta file when it was read */
+	final long metaFileSize;
+
+	/** modification date of the meta file when it was read */
+	final long metaFileLastModified;
+
+	/** resource type, <code>null</code> if the file node doesn't contain a type */
+	final String type;
+
+	/** number of siblings, always 0 for folders */
+	final int numSiblings;
+
+	/**
+	 * resource id (may be a meta variable), <code>null</code> for folders or if the file node doesn't contain a
+	 * resource id (only files with less than two siblings may lack one)
+	 */
+	final String resourceId;
+
+	/** structure id (may be a meta variable), <code>null</code> if the file node doesn't contain a structure id */
+	final String structureId;
+
+	/**
+	 * the compiled parts of the file node, the file node consists of <code>parts[0]</code>, <code>shared[0]</code>,
+	 * <code>parts[1]</code>, ..., <code>shared[n-1]</code>, <code>parts[n]</code>
+	 */
+	private final MetaVariableTemplate[] parts;
+
+	/** the interned subtrees between the parts, empty if the template doesn't share subtrees */
+	private final SharedSubtree[] shared;
+
+	/** index of the part containing the source node, -1 if the position of the source node is not known */
+	private final int sourcePart;
+
+	/** start index of the source node (including its indentation) in its part */
+	private final int sourceStart;
+
+	/** end index (exclusive) of the source node in its part */
+	private final int sourceEnd;
+
+	/** the compiled resource id, <code>null</code> if there is no resource id */
+	private final MetaVariableTemplate resourceIdTemplate;
+
+	/** the compiled structure id, <code>null</code> if there is no structure id */
+	private final MetaVariableTemplate structureIdTemplate;
+
+	/**
+	 * Creates a template holding the complete file node (no shared subtrees).
+	 * @param metaXmlFilePath       path of the meta file
+	 * @param metaFileSize          size of the meta file when it was read
+	 * @param metaFileLastModified  modification date of the meta file when it was read
+	 * @param fileNode              the serialized file node containing meta variables
+	 * @param type                  resource type, may be <code>null</code>
+	 * @param numSiblings           number of siblings, 0 for folders
+	 * @param resourceId            resource id (may be a meta variable), may be <code>null</code>
+	 * @param structureId           structure id (may be a meta variable), may be <code>null</code>
+	 */
+	FragmentTemplate(String metaXmlFilePath, long metaFileSize, long metaFileLastModified, SerializedFileNode fileNode, String type, int numSiblings, String resourceId, String structureId) {
+		this(metaXmlFilePath, metaFileSize, metaFileLastModified, fileNode, type, numSiblings, resourceId, structureId, null);
+	}
+
+	/**
+	 * Creates a template, the file node is split at the subtrees that can be shared if a subtree table is given.
+	 * @param subtrees  the table the shared subtrees are interned in, <code>null</code> to keep the file node in one part
+	 */
+	private FragmentTemplate(String metaXmlFilePath, long metaFileSize, long metaFileLastModified, SerializedFileNode fileNode, String type, int numSiblings, String resourceId, String structureId, SharedSubtree.Table subtrees) {
+		this.metaXmlFilePath = metaXmlFilePath;
+		this.metaFileSize = metaFileSize;
+		this.metaFileLastModified = metaFileLastModified;
+		this.type = type != null ? type.trim() : null;
+		this.numSiblings = numSiblings;
+		this.resourceId = resourceId;
+		this.structureId = structureId;
+
+		String xml = fileNode.xml;
+		int[] sharedRanges = subtrees != null ? findSharedRanges(fileNode) : NO_SHARED_RANGES;
+		int numShared = sharedRanges.length / 2;
+		parts = new MetaVariableTemplate[numShared + 1];
+		shared = numShared > 0 ? new SharedSubtree[numShared] : NO_SHARED_SUBTREES;
+		int part = -1;
+		int sourceOffset = 0;
+		int partStart = 0;
+		for (int i = 0; i <= numShared; i++) {
+			int partEnd = i < numShared ? sharedRanges[2 * i] : xml.length();
+			parts[i] = MetaVariableTemplate.compileXml(xml.substring(partStart, partEnd));
+			if (part < 0 && fileNode.hasSourcePosition() && fileNode.sourceStart >= partStart && fileNode.sourceEnd <= partEnd) {
+				part = i;
+				sourceOffset = partStart;
+			}
+			if (i < numShared) {
+				shared[i] = subtrees.intern(xml.substring(partEnd, sharedRanges[2 * i + 1]));
+				partStart = sharedRanges[2 * i + 1];
+			}
+		}
+		sourcePart = part;
+		sourceStart = part >= 0 ? fileNode.sourceStart - sourceOffset : -1;
+		sourceEnd = part >= 0 ? fileNode.sourceEnd - sourceOffset : -1;
+
+		resourceIdTemplate = resourceId != null ? MetaVariableTemplate.compileText(resourceId) : null;
+		structureIdTemplate = structureId != null ? MetaVariableTemplate.compileText(structureId) : null;
+	}
+
+	/**
+	 * Returns a copy of this template that shares its <code>properties</code> and <code>accesscontrol</code> subtrees
+	 * with the other templates interned in the same table. Only worth it for templates that are kept (compiling the
+	 * copy costs about as much as compiling the template).
+	 * @param subtrees  the table the shared subtrees are interned in
+	 * @return  the copy, or this template if it has no subtrees that can be shared (or shares them already)
+	 */
+	FragmentTemplate internSubtrees(SharedSubtree.Table subtrees) {
+		if (shared.length > 0) {
+			return this;
+		}
+		FragmentTemplate interned = new FragmentTemplate(metaXmlFilePath, metaFileSize, metaFileLastModified, getFileNode(), type, numSiblings, resourceId, structureId, subtrees);
+		return interned.shared.length > 0 ? interned : this;
+	}
+
+	/**
+	 * Finds the subtrees of the file node that can be interned: children named in {@link #SHARED_NODE_NAMES} that
+	 * don't contain meta variables or the source node and don't start or end inside a CDATA section.
+	 * @param fileNode  the serialized file node
+	 * @return  start and end index (exclusive) of each subtree in ascending order
+	 */
+	private static int[] findSharedRanges(SerializedFileNode fileNode) {
+		String xml = fileNode.xml;
+		int[] ranges = new int[2 * SHARED_NODE_NAMES.length];
+		int count = 0;
+		for (String nodeName : SHARED_NODE_NAMES) {
+			int start = xml.indexOf(CHILD_INDENT + "<" + nodeName + ">");
+			if (start < 0 || isInCdata(xml, start)) {
+				continue;
+			}
+			String endTag = CHILD_INDENT + "</" + nodeName + ">";
+			int end = xml.indexOf(endTag, start);
+			if (end < 0) {
+				continue;
+			}
+			end += endTag.length();
+			if (end - start < MIN_SHARED_LENGTH || isInCdata(xml, end) || containsVariable(xml, start, end)) {
+				continue;
+			}
+			if (fileNode.hasSourcePosition() && start < fileNode.sourceEnd && end > fileNode.sourceStart) {
+				continue;
+			}
+			// the ranges are kept in ascending order, overlapping ranges are dropped
+			int insertAt = 0;
+			while (insertAt < count && ranges[insertAt] < start) {
+				insertAt += 2;
+			}
+			if ((insertAt > 0 && ranges[insertAt - 1] > start) || (insertAt < count && ranges[insertAt] < end)) {
+				continue;
+			}
+			System.arraycopy(ranges, insertAt, ranges, insertAt + 2, count - insertAt);
+			ranges[insertAt] = start;
+			ranges[insertAt + 1] = end;
+			count += 2;
+		}
+		return Arrays.copyOf(ranges, count);
+	}
+
+	/**
+	 * @return  <code>true</code> if the given index of the serialized XML lies inside a CDATA section
+	 */
+	private static boolean isInCdata(String xml, int index) {
+		return xml.lastIndexOf(CDATA_START, index - 1) > xml.lastIndexOf(CDATA_END, index - 1);
+	}
+
+	/**
+	 * @return  <code>true</code> if the range of the serialized XML may contain a meta variable
+	 */
+	private static boolean containsVariable(String xml, int start, int end) {
+		int dollar = xml.indexOf('$', start);
+		return dollar >= 0 && dollar < end;
+	}
+
+	/**
+	 * Renders the file node to the given writer, meta variables are replaced by the given values (XML escaped, or
+	 * split for CDATA sections).
+	 * @param out           the writer
+	 * @param values        the values for the meta variables
+	 * @param removeSource  <code>true</code> if the source node should be left out (used for siblings)
+	 * @throws IOException if writing fails
+	 */
+	void render(Writer out, MetaVariableValues values, boolean removeSource) throws IOException {
+		for (int i = 0; i < parts.length; i++) {
+			if (removeSource && i == sourcePart) {
+				parts[i].render(out, values, sourceStart, sourceEnd);
+			}
+			else {
+				parts[i].render(out, values, -1, -1);
+			}
+			if (i < shared.length) {
+				shared[i].writeTo(out);
+			}
+		}
+	}
+
+	/**
+	 * Returns the resource id with meta variables replaced.
+	 * @param values    the values for the meta variables
+	 * @return  the resource id, <code>null</code> for folders or if the file node doesn't contain a resource id
+	 */
+	String renderResourceId(MetaVariableValues values) {
+		return resourceIdTemplate != null ? resourceIdTemplate.render(values) : null;
+	}
+
+	/**
+	 * Returns the structure id with meta variables replaced.
+	 * @param values    the values for the meta variables
+	 * @return  the structure id, <code>null</code> if the file node doesn't contain a structure id
+	 */
+	String renderStructureId(MetaVariableValues values) {
+		return structureIdTemplate != null ? structureIdTemplate.render(values) : null;
+	}
+
+	/**
+	 * @return <code>true</code> if the position of the source node is known
+	 */
+	boolean hasSourcePosition() {
+		return sourcePart >= 0;
+	}
+
+	/**
+	 * @return the length of the serialized file node (with meta variables in place)
+	 */
+	int getXmlLength() {
+		int length = 0;
+		for (MetaVariableTemplate part : parts) {
+			length += part.getText().length();
+		}
+		for (SharedSubtree subtree : shared) {
+			length += subtree.xml.length();
+		}
+		return length;
+	}
+
+	/**
+	 * Reassembles the serialized file node the template was compiled from.
+	 * @return  the serialized file node, with meta variables in place
+	 */
+	SerializedFileNode getFileNode() {
+		if (parts.length == 1) {
+			return new SerializedFileNode(parts[0].getText(), sourceStart, sourceEnd);
+		}
+		StringBuilder xml = new StringBuilder(getXmlLength());
+		int absoluteSourceStart = -1;
+		int absoluteSourceEnd = -1;
+		for (int i = 0; i < parts.length; i++) {
+			if (i == sourcePart) {
+				absoluteSourceStart = xml.length() + sourceStart;
+				absoluteSourceEnd = xml.length() + sourceEnd;
+			}
+			xml.append(parts[i].getText());
+			if (i < shared.length) {
+				xml.append(shared[i].xml);
+			}
+		}
+		return new SerializedFileNode(xml.toString(), absoluteSourceStart, absoluteSourceEnd);
+	}
+
+	/**
+	 * @return the approximate number of bytes occupied by this template on the heap, interned subtrees are not
+	 *         counted since they are shared with other templates
+	 */
+	long estimateSize() {
+		long chars = metaXmlFilePath.length() + (type != null ? type.length() : 0) + (resourceId != null ? resourceId.length() : 0) + (structureId != null ? structureId.length() : 0);
+		for (MetaVariableTemplate part : parts) {
+			chars += part.getText().length();
+		}
+		return 2 * chars + 256 + 64L * shared.length;
+	}
+}
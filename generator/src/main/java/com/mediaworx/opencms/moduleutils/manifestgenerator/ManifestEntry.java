@@ -0,0 +1,174 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+/**
+ * A VFS file or folder as it is added to the manifest: its file node with meta variables replaced, plus the result of
+ * sibling handling and of the duplicate structure id check. Entries are returned by
+ * {@link OpenCmsModuleManifestGenerator#streamManifestEntries(java.io.File, String)} in manifest order. Instances are not
+ * changed once they have been handed out.
+ */
+public class ManifestEntry {
+
+	/** Maximum capacity of a render buffer that is kept for the next file node */
+	private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+	/**
+	 * Buffer the file node is rendered to by {@link #getFileNodeXml()}, one per thread so it can be reused for all
+	 * entries (entries may be read by any thread)
+	 */
+	private static final ThreadLocal<StringWriter> RENDER_BUFFER = ThreadLocal.withInitial(() -> new StringWriter(4096));
+
+	/** the fragment template containing the file node and sibling information */
+	final FragmentTemplate template;
+
+	/** the values for the meta variables in the template */
+	final MetaVariableValues values;
+
+	/** <code>true</code> for VFS folders, <code>false</code> for VFS files */
+	private final boolean folder;
+
+	/** time spent parsing the meta file and replacing its meta variables */
+	long parseNanos;
+
+	/** <code>true</code> if the source node is left out, because another sibling of the resource came first */
+	boolean sourceRemoved;
+
+	/** <code>true</code> if another VFS file or folder came first with the same structure id */
+	boolean duplicateStructureId;
+
+	ManifestEntry(FragmentTemplate template, MetaVariableValues values, boolean folder) {
+		this.template = template;
+		this.values = values;
+		this.folder = folder;
+	}
+
+	/**
+	 * @return the VFS path of the file or folder (the file node's destination)
+	 */
+	public String getVfsPath() {
+		return values.get(MetaVariable.DESTINATION);
+	}
+
+	/**
+	 * @return the path of the meta file the entry was read from
+	 */
+	public String getMetaXmlFilePath() {
+		return template.metaXmlFilePath;
+	}
+
+	/**
+	 * @return <code>true</code> if the entry is a VFS folder, <code>false</code> if it is a VFS file
+	 */
+	public boolean isFolder() {
+		return folder;
+	}
+
+	/**
+	 * @return the resource type (like <code>plain</code> or <code>folder</code>), <code>null</code> if the file node
+	 *         doesn't contain a type
+	 */
+	public String getType() {
+		return template.type;
+	}
+
+	/**
+	 * @return  the structure id with meta variables replaced, <code>null</code> if the file node doesn't contain a
+	 *          structure id
+	 */
+	public String getStructureId() {
+		return trim(template.renderStructureId(values));
+	}
+
+	/**
+	 * @return  the resource id with meta variables replaced, <code>null</code> for folders or if the file node doesn't
+	 *          contain a resource id
+	 */
+	public String getResourceId() {
+		return trim(template.renderResourceId(values));
+	}
+
+	/**
+	 * @return the number of siblings of the VFS file, 0 for folders
+	 */
+	public int getNumSiblings() {
+		return template.numSiblings;
+	}
+
+	/**
+	 * @return  <code>true</code> if the file node's source node is left out, because the file is a sibling of a
+	 *          resource that already has been added by another sibling
+	 */
+	public boolean isSourceRemoved() {
+		return sourceRemoved;
+	}
+
+	/**
+	 * @return  <code>true</code> if the structure id already has been used by an earlier VFS file or folder (OpenCms
+	 *          refuses to import such modules)
+	 */
+	public boolean isDuplicateStructureId() {
+		return duplicateStructureId;
+	}
+
+	/**
+	 * @return  the file node exactly as it is written to the manifest (the source node of siblings may be left out,
+	 *          see {@link #isSourceRemoved()}), without indentation of the file node itself
+	 */
+	public String getFileNodeXml() {
+		StringWriter out = RENDER_BUFFER.get();
+		out.getBuffer().setLength(0);
+		try {
+			template.render(out, values, sourceRemoved);
+		}
+		catch (IOException e) {
+			// not thrown by StringWriter
+			throw new UncheckedIOException(e);
+		}
+		String xml = out.toString();
+		if (out.getBuffer().capacity() > MAX_RETAINED_BUFFER_SIZE) {
+			// grown by an unusually large file node
+			RENDER_BUFFER.remove();
+		}
+		return xml;
+	}
+
+	private static String trim(String id) {
+		return id != null ? id.trim() : null;
+	}
+
+	@Override
+	public String toString() {
+		return getVfsPath() + " (" + getType() + ")";
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.XmlParserPool.Parsers;
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlParseException;
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.UncheckedMetaXmlParseException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Turns the sorted meta file entries of a run into {@link ManifestEntry manifest entries}. The entries are produced
+ * lazily: a meta file is parsed when its entry is requested, in parallel mode a window of meta files ahead of the
+ * consumer is parsed on a fork join pool, and whenever an entry is handed out the next meta file is submitted, so the
+ * parser threads keep working while the entries are written. Siblings and duplicate structure ids are resolved while
+ * the entries are handed out, so an iterator is used for one manifest only and by one thread. It has to be closed to
+ * cancel the parse tasks that are still pending.
+ * <br />
+ * If the consumer doesn't keep the entries (like the manifest writer), it can {@link #recycle(ManifestEntry) recycle}
+ * every entry once it's done with it, the entry's meta variable values are reused for one of the next entries then.
+ */
+class ManifestEntryIterator implements Iterator<ManifestEntry>, AutoCloseable {
+
+	/**
+	 * Number of meta files per parser thread that are parsed ahead of the consumer (keeps the number of parsed but not
+	 * yet consumed meta files small)
+	 */
+	private static final int PARSE_WINDOW_SIZE_PER_THREAD = 64;
+
+	/**
+	 * Approximate heap size of a tracked structure id (index slot plus the meta file path), used to limit the number
+	 * of tracked structure ids to an eighth of the memory budget
+	 */
+	static final int STRUCTURE_ID_BYTES = 160;
+
+	/**
+	 * Parses a single VFS file meta file or folder, called concurrently (with different parsers) in parallel mode.
+	 */
+	interface MetaFileParser {
+
+		/**
+		 * @param fileOrDir VFS file meta file or folder entry
+		 * @param parsers   the parsers to be used (not used by other threads at the same time)
+		 * @param values    object receiving the meta variable values of the entry (may contain the values of a
+		 *                  recycled entry)
+		 * @return  the entry, sibling handling is done by the iterator
+		 * @throws OpenCmsMetaXmlParseException if the meta file can not be read or parsed
+		 */
+		ManifestEntry parse(MetaFileEntry fileOrDir, Parsers parsers, MetaVariableValues values) throws OpenCmsMetaXmlParseException;
+	}
+
+	private final RunContext run;
+	private final Iterator<MetaFileEntry> metaFilesAndDirs;
+	private final MetaFileParser parser;
+
+	/** parsers used in sequential mode */
+	private final Parsers parsers;
+
+	/** pool the parser threads borrow their parsers from */
+	private final XmlParserPool parserPool;
+
+	private final SiblingTracker siblings = new SiblingTracker();
+	private final StructureIdTracker structureIds;
+
+	/** the parser threads (shared with other runs), <code>null</code> in sequential mode */
+	private final ForkJoinPool parserThreads;
+	private final int windowSize;
+
+	/** the parse tasks that have been submitted but whose entries haven't been handed out yet, in manifest order */
+	private final Deque<Future<ManifestEntry>> window = new ArrayDeque<>();
+
+	/** values of recycled entries, <code>null</code> if entries are not recycled */
+	private final Deque<MetaVariableValues> recycledValues;
+
+	/**
+	 * Creates an iterator parsing the meta files sequentially or (if parser threads are given) on a fork join pool.
+	 * @param run               settings of the current run
+	 * @param metaFilesAndDirs  VFS file meta file and folder entries, sorted by path
+	 * @param parser            parses single meta files
+	 * @param parsers           the parsers to be used in sequential mode
+	 * @param parserPool        pool the parser threads borrow their parsers from in parallel mode
+	 * @param parserThreads     the threads parsing the meta files in parallel mode (not shut down by the iterator),
+	 *                          <code>null</code> to parse the meta files sequentially
+	 * @param recycleEntries    <code>true</code> if the consumer recycles the entries (see {@link #recycle(ManifestEntry)})
+	 */
+	ManifestEntryIterator(RunContext run, Iterator<MetaFileEntry> metaFilesAndDirs, MetaFileParser parser, Parsers parsers, XmlParserPool parserPool, ForkJoinPool parserThreads, boolean recycleEntries) {
+		this.run = run;
+		this.metaFilesAndDirs = metaFilesAndDirs;
+		this.parser = parser;
+		this.parsers = parsers;
+		this.parserPool = parserPool;
+		this.parserThreads = parserThreads;
+		// with a memory budget only as many structure ids are tracked as fit into an eighth of the budget
+		structureIds = run.memoryBudget > 0 ? new StructureIdTracker((int)Math.min(Integer.MAX_VALUE, run.memoryBudget / 8 / STRUCTURE_ID_BYTES)) : new StructureIdTracker();
+		windowSize = parserThreads != null ? parserThreads.getParallelism() * PARSE_WINDOW_SIZE_PER_THREAD : 1;
+		recycledValues = recycleEntries ? new ArrayDeque<>(windowSize + 1) : null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !window.isEmpty() || metaFilesAndDirs.hasNext();
+	}
+
+	/**
+	 * Returns the next entry, see {@link #nextEntry()}.
+	 * @return  the next entry
+	 * @throws UncheckedMetaXmlParseException if the meta file can not be read or parsed, or the source node of a
+	 *                                        sibling can not be removed
+	 */
+	@Override
+	public ManifestEntry next() {
+		try {
+			return nextEntry();
+		}
+		catch (OpenCmsMetaXmlParseException e) {
+			throw new UncheckedMetaXmlParseException(e);
+		}
+	}
+
+	/**
+	 * Parses the next meta file (or waits for its parse task) and resolves its siblings and structure id.
+	 * @return  the next entry
+	 * @throws OpenCmsMetaXmlParseException if the meta file can not be read or parsed, or the source node of a sibling
+	 *                                      can not be removed
+	 * @throws NoSuchElementException if there are no more entries
+	 */
+	ManifestEntry nextEntry() throws OpenCmsMetaXmlParseException {
+		ManifestEntry entry;
+		if (parserThreads == null) {
+			MetaFileEntry fileOrDir = metaFilesAndDirs.next();
+			entry = parser.parse(fileOrDir, parsers, getValues());
+			run.metrics.addPhase(ManifestGenerationPhase.META_PARSE, entry.parseNanos, 1);
+		}
+		else {
+			// the window is filled on the first call, afterwards one meta file is submitted per entry handed out
+			while (window.size() < windowSize && metaFilesAndDirs.hasNext()) {
+				submitParseTask(metaFilesAndDirs.next());
+			}
+			if (window.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			long waitStart = System.nanoTime();
+			entry = getParseResult(window.poll());
+			run.metrics.addPhase(ManifestGenerationPhase.META_PARSE, System.nanoTime() - waitStart, 1);
+		}
+		resolve(entry);
+		return entry;
+	}
+
+	/**
+	 * Submits a meta file to the parser threads, the task is queued behind the tasks of the meta files before it.
+	 * @param fileOrDir VFS file meta file or folder entry
+	 */
+	private void submitParseTask(MetaFileEntry fileOrDir) {
+		// the values are taken on the consumer's thread, recycled values are handed over with the task
+		MetaVariableValues values = getValues();
+		window.add(parserThreads.submit(() -> {
+			// parsers are not thread safe, so each task borrows its own from the shared pool
+			Parsers taskParsers = parserPool.borrow();
+			try {
+				return parser.parse(fileOrDir, taskParsers, values);
+			}
+			finally {
+				parserPool.release(taskParsers);
+			}
+		}));
+	}
+
+	/**
+	 * Waits for a parse task to finish and returns its result, exceptions thrown by the task are rethrown.
+	 * @param parseResult   future of the parse task
+	 * @return  the parsed entry
+	 * @throws OpenCmsMetaXmlParseException if the meta file could not be read or parsed or the thread was interrupted
+	 */
+	private static ManifestEntry getParseResult(Future<ManifestEntry> parseResult) throws OpenCmsMetaXmlParseException {
+		try {
+			return parseResult.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OpenCmsMetaXmlParseException("Parsing the meta files was interrupted", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof OpenCmsMetaXmlParseException) {
+				throw (OpenCmsMetaXmlParseException)cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new OpenCmsMetaXmlParseException("A meta file could not be parsed", cause);
+		}
+	}
+
+	/**
+	 * Handles siblings according to OpenCms standard (if multiple siblings are pointing to the same resource, only the
+	 * first gets a source node) and checks the structure id, so entries must be resolved in manifest order.
+	 * @param entry the parsed entry
+	 * @throws OpenCmsMetaXmlParseException if the source node of a sibling can not be removed
+	 */
+	private void resolve(ManifestEntry entry) throws OpenCmsMetaXmlParseException {
+		FragmentTemplate template = entry.template;
+		MetricsRecorder metrics = run.metrics;
+		metrics.metaFileParsed(template.metaXmlFilePath, entry.parseNanos);
+		long start = System.nanoTime();
+		boolean hasSiblings = template.numSiblings >= 2;
+		entry.sourceRemoved = siblings.isSourceRemoved(template, hasSiblings ? template.renderResourceId(entry.values) : null);
+		entry.duplicateStructureId = structureIds.isDuplicate(template, template.renderStructureId(entry.values));
+		metrics.siblingsResolved(hasSiblings, entry.sourceRemoved, entry.duplicateStructureId, System.nanoTime() - start);
+	}
+
+	/**
+	 * @return  the values of a recycled entry, new values if there are none
+	 */
+	private MetaVariableValues getValues() {
+		MetaVariableValues values = recycledValues != null ? recycledValues.poll() : null;
+		return values != null ? values : new MetaVariableValues();
+	}
+
+	/**
+	 * Recycles an entry the consumer is done with, its meta variable values are reused for one of the next entries.
+	 * The entry must not be used afterwards. Ignored if the iterator was created without recycling.
+	 * @param entry an entry returned by this iterator
+	 */
+	void recycle(ManifestEntry entry) {
+		if (recycledValues != null) {
+			recycledValues.add(entry.values);
+		}
+	}
+
+	/**
+	 * Cancels the parse tasks that are still pending, entries that have been parsed but not handed out are discarded.
+	 */
+	@Override
+	public void close() {
+		for (Future<ManifestEntry> parseTask : window) {
+			parseTask.cancel(false);
+		}
+		window.clear();
+	}
+}
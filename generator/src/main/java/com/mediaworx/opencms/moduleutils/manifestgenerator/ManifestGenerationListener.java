@@ -0,0 +1,45 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+/**
+ * Listener receiving the metrics of manifest generation runs, see
+ * {@link OpenCmsModuleManifestGenerator#addListener(ManifestGenerationListener)}. Listeners are called on the thread
+ * that generated the manifest, so listeners registered on a generator that is used for concurrent runs must be thread
+ * safe.
+ */
+@FunctionalInterface
+public interface ManifestGenerationListener {
+
+	/**
+	 * Called after a manifest has been written successfully.
+	 * @param metrics   the metrics of the run (phase durations, counts, bytes read and written, slowest meta files)
+	 */
+	void manifestGenerated(ManifestGenerationMetrics metrics);
+}
@@ -0,0 +1,214 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Metrics of a single manifest generation run: wall time and item counts for every
+ * {@link ManifestGenerationPhase}, bytes read and written, sibling handling counts and the meta files that took
+ * longest to parse. Instances are immutable.
+ */
+public class ManifestGenerationMetrics {
+
+	private final String manifestRootPath;
+	private final Duration totalDuration;
+	private final Map<ManifestGenerationPhase, Duration> phaseDurations;
+	private final Map<ManifestGenerationPhase, Integer> phaseCounts;
+	private final long bytesRead;
+	private final long bytesWritten;
+	private final boolean manifestChanged;
+	private final int numMetaFilesRead;
+	private final int numSiblings;
+	private final int numRemovedSourceNodes;
+	private final int numDuplicateStructureIds;
+	private final List<MetaFileTiming> slowestMetaFiles;
+
+	ManifestGenerationMetrics(String manifestRootPath, Duration totalDuration, EnumMap<ManifestGenerationPhase, Duration> phaseDurations, EnumMap<ManifestGenerationPhase, Integer> phaseCounts, long bytesRead, long bytesWritten, boolean manifestChanged, int numMetaFilesRead, int numSiblings, int numRemovedSourceNodes, int numDuplicateStructureIds, List<MetaFileTiming> slowestMetaFiles) {
+		this.manifestRootPath = manifestRootPath;
+		this.totalDuration = totalDuration;
+		this.phaseDurations = Collections.unmodifiableMap(phaseDurations);
+		this.phaseCounts = Collections.unmodifiableMap(phaseCounts);
+		this.bytesRead = bytesRead;
+		this.bytesWritten = bytesWritten;
+		this.manifestChanged = manifestChanged;
+		this.numMetaFilesRead = numMetaFilesRead;
+		this.numSiblings = numSiblings;
+		this.numRemovedSourceNodes = numRemovedSourceNodes;
+		this.numDuplicateStructureIds = numDuplicateStructureIds;
+		this.slowestMetaFiles = Collections.unmodifiableList(slowestMetaFiles);
+	}
+
+	/**
+	 * @return the root folder of the manifest meta data
+	 */
+	public String getManifestRootPath() {
+		return manifestRootPath;
+	}
+
+	/**
+	 * @return the wall time of the whole run
+	 */
+	public Duration getTotalDuration() {
+		return totalDuration;
+	}
+
+	/**
+	 * @param phase the phase
+	 * @return  the wall time spent in the given phase
+	 */
+	public Duration getPhaseDuration(ManifestGenerationPhase phase) {
+		return phaseDurations.get(phase);
+	}
+
+	/**
+	 * @param phase the phase
+	 * @return  the number of items handled in the given phase (see {@link ManifestGenerationPhase} for the meaning of
+	 *          the counts)
+	 */
+	public int getPhaseCount(ManifestGenerationPhase phase) {
+		return phaseCounts.get(phase);
+	}
+
+	/**
+	 * @return  number of bytes read from the manifest stub, the meta files (meta files taken from the fragment cache
+	 *          are not counted) and the real files added to the module ZIP
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return number of bytes written to the (temporary) manifest file
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * @return  <code>true</code> if the manifest file was replaced, <code>false</code> if the existing manifest had the
+	 *          same content and was kept
+	 */
+	public boolean isManifestChanged() {
+		return manifestChanged;
+	}
+
+	/**
+	 * @return number of meta files read from the disk (not taken from the fragment cache)
+	 */
+	public int getNumMetaFilesRead() {
+		return numMetaFilesRead;
+	}
+
+	/**
+	 * @return number of files with at least two siblings
+	 */
+	public int getNumSiblings() {
+		return numSiblings;
+	}
+
+	/**
+	 * @return  number of siblings whose source node was removed, because another sibling pointing to the same resource
+	 *          already contained the source node
+	 */
+	public int getNumRemovedSourceNodes() {
+		return numRemovedSourceNodes;
+	}
+
+	/**
+	 * @return  number of files and folders whose structure id already was used by another file or folder (OpenCms
+	 *          can't import modules containing duplicate structure ids)
+	 */
+	public int getNumDuplicateStructureIds() {
+		return numDuplicateStructureIds;
+	}
+
+	/**
+	 * @return the meta files that took longest to parse, slowest first
+	 */
+	public List<MetaFileTiming> getSlowestMetaFiles() {
+		return slowestMetaFiles;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder summary = new StringBuilder(256);
+		summary.append(manifestRootPath).append(": ").append(totalDuration.toMillis()).append(" ms (");
+		for (ManifestGenerationPhase phase : ManifestGenerationPhase.values()) {
+			if (phase.ordinal() > 0) {
+				summary.append(", ");
+			}
+			summary.append(phase.name().toLowerCase()).append(' ').append(phaseDurations.get(phase).toMillis()).append(" ms/").append(phaseCounts.get(phase));
+		}
+		summary.append("), ").append(bytesRead).append(" bytes read (").append(numMetaFilesRead).append(" meta files), ");
+		summary.append(bytesWritten).append(manifestChanged ? " bytes written, " : " bytes written (unchanged), ").append(numSiblings).append(" siblings (");
+		summary.append(numRemovedSourceNodes).append(" source nodes removed), ");
+		summary.append(numDuplicateStructureIds).append(" duplicate structure ids");
+		return summary.toString();
+	}
+
+	/**
+	 * Parse time of a single meta file.
+	 */
+	public static class MetaFileTiming {
+
+		private final String metaXmlFilePath;
+		private final Duration parseDuration;
+
+		MetaFileTiming(String metaXmlFilePath, Duration parseDuration) {
+			this.metaXmlFilePath = metaXmlFilePath;
+			this.parseDuration = parseDuration;
+		}
+
+		/**
+		 * @return path of the meta file
+		 */
+		public String getMetaXmlFilePath() {
+			return metaXmlFilePath;
+		}
+
+		/**
+		 * @return  time spent reading the meta file (or taking it from the fragment cache) and replacing its meta
+		 *          variables
+		 */
+		public Duration getParseDuration() {
+			return parseDuration;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%s (%.3f ms)", metaXmlFilePath, parseDuration.toNanos() / 1000000.0);
+		}
+	}
+}
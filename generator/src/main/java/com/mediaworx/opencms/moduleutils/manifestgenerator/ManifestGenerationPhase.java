@@ -0,0 +1,76 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+/**
+ * Phases of a manifest generation run, see {@link ManifestGenerationMetrics}. Meta files are parsed, checked for
+ * siblings and written one after the other while the manifest is streamed to the disk, so the durations of all
+ * phases after {@link #SCAN} are the accumulated times spent in each phase.
+ */
+public enum ManifestGenerationPhase {
+
+	/** Parsing the manifest stub, count is always 1 */
+	STUB_PARSE,
+
+	/**
+	 * Listing the meta files and folders below the manifest root (and reading the real files' dates, if needed), count
+	 * is the number of VFS files and folders found
+	 */
+	SCAN,
+
+	/**
+	 * Parsing the meta files and replacing meta variables, count is the number of VFS files and folders. In parallel
+	 * mode the duration is the time spent waiting for the parser threads.
+	 */
+	META_PARSE,
+
+	/**
+	 * Checking which siblings keep their source node (and checking structure ids for duplicates), count is the number
+	 * of files with at least two siblings
+	 */
+	SIBLING_RESOLUTION,
+
+	/** Writing the manifest's XML (stub sections and file nodes), count is the number of file nodes */
+	SERIALIZATION,
+
+	/** Writing the manifest's bytes to the disk, count is the number of write operations on the manifest file */
+	WRITE,
+
+	/**
+	 * Adding the real files to the module ZIP (waiting for the compression threads and writing the archive), only used
+	 * if the module is packaged. Count is the number of entries in the module ZIP.
+	 */
+	PACKAGING,
+
+	/**
+	 * Checking the meta files for structural problems before the manifest is generated (only used if pre-validation
+	 * is enabled), count is the number of VFS files and folders checked
+	 */
+	VALIDATION
+}
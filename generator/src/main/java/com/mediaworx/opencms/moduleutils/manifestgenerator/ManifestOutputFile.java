@@ -0,0 +1,171 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The target of a manifest write. The manifest is written to a temporary file in the manifest's folder and hashed
+ * while it is written. When the manifest is complete, the temporary file is moved into place atomically, unless the
+ * existing manifest has the same content (then the existing file is left untouched, so file watchers and rebuilds
+ * aren't triggered). If the manifest is not committed, the temporary file is deleted on close and the existing
+ * manifest is kept.
+ */
+class ManifestOutputFile implements Closeable {
+
+	/** File name suffix of temporary manifest files */
+	static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	/** Algorithm used to compare the new manifest with the existing one */
+	private static final String HASH_ALGORITHM = "SHA-256";
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private final Path manifestPath;
+	private final Path tempPath;
+	private final MessageDigest digest;
+	private final MeteredOutputStream meteredStream;
+	private final OutputStream outputStream;
+	private boolean committed;
+
+	/**
+	 * Creates the temporary file for a new manifest.
+	 * @param manifestPath  path of the manifest
+	 * @throws IOException if the temporary file can not be created
+	 */
+	ManifestOutputFile(Path manifestPath) throws IOException {
+		this.manifestPath = manifestPath;
+		tempPath = manifestPath.resolveSibling(manifestPath.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_FILE_SUFFIX);
+		digest = createDigest();
+		meteredStream = new MeteredOutputStream(Files.newOutputStream(tempPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+		outputStream = new DigestOutputStream(meteredStream, digest);
+	}
+
+	/**
+	 * @return the stream the manifest is written to (unbuffered, the manifest writer adds its own buffer)
+	 */
+	OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	/**
+	 * @return the stream writing to the disk, used for the write metrics
+	 */
+	MeteredOutputStream getMeteredStream() {
+		return meteredStream;
+	}
+
+	/**
+	 * Completes the manifest. The temporary file is moved into place, or discarded if the existing manifest has the
+	 * same content. If the manifest can't be moved into place (like on Windows while the manifest is opened by another
+	 * process), the manifest is not committed and the temporary file is deleted on close.
+	 * @return <code>true</code> if the manifest was replaced, <code>false</code> if it was unchanged
+	 * @throws IOException if the manifest can not be completed or moved into place
+	 */
+	boolean commit() throws IOException {
+		outputStream.close();
+		byte[] hash = digest.digest();
+		boolean changed = !Files.isRegularFile(manifestPath) || Files.size(manifestPath) != meteredStream.getBytesWritten() || !Arrays.equals(hash, hashFile(manifestPath));
+		if (changed) {
+			try {
+				Files.move(tempPath, manifestPath, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempPath, manifestPath, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		else {
+			Files.delete(tempPath);
+		}
+		committed = true;
+		return changed;
+	}
+
+	/**
+	 * Closes the stream and deletes the temporary file, unless the manifest was committed.
+	 * @throws IOException if the stream can not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (committed) {
+			return;
+		}
+		try {
+			outputStream.close();
+		}
+		finally {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+
+	/**
+	 * Checks if the given path is the path of a temporary manifest file.
+	 * @param manifestPath  path of the manifest
+	 * @param path          the path to check
+	 * @return  <code>true</code> if the path belongs to a temporary file of the given manifest
+	 */
+	static boolean isTempFile(String manifestPath, String path) {
+		return path.endsWith(TEMP_FILE_SUFFIX) && path.startsWith(manifestPath + ".");
+	}
+
+	private static byte[] hashFile(Path path) throws IOException {
+		MessageDigest fileDigest = createDigest();
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		try (InputStream in = Files.newInputStream(path)) {
+			int numBytes;
+			while ((numBytes = in.read(buffer)) != -1) {
+				fileDigest.update(buffer, 0, numBytes);
+			}
+		}
+		return fileDigest.digest();
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		}
+		catch (NoSuchAlgorithmException e) {
+			// every Java platform has to support SHA-256
+			throw new IllegalStateException(HASH_ALGORITHM + " is not supported", e);
+		}
+	}
+}
@@ -0,0 +1,655 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlFileWriteException;
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlParseException;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits an existing module manifest into the manifest stub and one meta file per VFS file and folder, the reverse of
+ * generating the manifest. The manifest is streamed twice with StAX: the first pass counts the file nodes per
+ * resource id (the sibling counts), the second pass reads one file node at a time and hands it to a thread pool that
+ * serializes and writes its meta file. Only a limited number of file nodes is pending at the same time, so apart
+ * from the sibling counts (about 20 bytes per resource id) memory doesn't depend on the size of the manifest.
+ * <br />
+ * <br />
+ * Meta files are written with the same layout and formatting the generator reads (the file node is indented like in
+ * the manifest, text of the CDATA nodes is written as CDATA section): <code>file</code> for VFS folders,
+ * <code>fileinfo/file</code> plus <code>fileinfo/siblingcount</code> for VFS files. File nodes without a source node
+ * and without a resource id are folders. Siblings whose source node was removed in the manifest get a source node
+ * pointing to their own destination again, so generating the manifest from the meta files (without replacing meta
+ * variables) results in the original manifest.
+ */
+class ManifestSplitter implements Closeable {
+
+	private static final String EXPORT_NODE_NAME = "export";
+	private static final String FILES_NODE_NAME = "files";
+	private static final String FILEINFO_NODE_NAME = "fileinfo";
+	private static final String FILE_NODE_NAME = "file";
+	private static final String SIBLINGCOUNT_NODE_NAME = "siblingcount";
+	private static final String SOURCE_NODE_NAME = "source";
+	private static final String DESTINATION_NODE_NAME = "destination";
+	private static final String RESOURCEID_NODE_NAME = "uuidresource";
+
+	/** Element names on the path to the resource ids of the file nodes */
+	private static final String[] RESOURCEID_NODE_PATH = new String[] { EXPORT_NODE_NAME, FILES_NODE_NAME, FILE_NODE_NAME, RESOURCEID_NODE_NAME };
+
+	/** Number of file nodes written by one task */
+	private static final int BATCH_SIZE = 64;
+
+	/** Number of pending batches per thread, limits the number of file nodes held in memory */
+	private static final int PENDING_BATCHES_PER_THREAD = 4;
+
+	/** root path of the manifest meta data the stub and meta files are written to */
+	private final String manifestRootPath;
+
+	/** normalized absolute root path, no meta file is written outside of it */
+	private final Path normalizedManifestRoot;
+
+	/** path of the manifest stub file */
+	private final String manifestStubPath;
+
+	/** Names of the nodes whose content is written as CDATA section */
+	private final Set<String> cdataNodes;
+
+	private final ExecutorService executor;
+
+	private final int maxPendingBatches;
+
+	/** batches submitted to the executor that haven't been checked for errors yet, in submission order */
+	private final Deque<Future<Void>> pendingBatches = new ArrayDeque<>();
+
+	/** file nodes not submitted yet */
+	private List<FileNode> batch = new ArrayList<>(BATCH_SIZE);
+
+	/** number of file nodes per resource id, resource ids that aren't UUIDs are not counted (they have no siblings) */
+	private final UuidIndex siblingCounts = new UuidIndex();
+
+	private int numFiles;
+	private int numFolders;
+
+	/**
+	 * Creates a new splitter, it has to be closed to stop its threads.
+	 * @param manifestRootPath  root path of the manifest meta data the stub and meta files are written to
+	 * @param manifestStubPath  path of the manifest stub file
+	 * @param cdataNodes        names of the nodes whose content is written as CDATA section
+	 * @param numThreads        number of threads writing the meta files
+	 */
+	ManifestSplitter(String manifestRootPath, String manifestStubPath, Set<String> cdataNodes, int numThreads) {
+		this.manifestRootPath = manifestRootPath;
+		normalizedManifestRoot = Paths.get(manifestRootPath).toAbsolutePath().normalize();
+		this.manifestStubPath = manifestStubPath;
+		this.cdataNodes = cdataNodes;
+		executor = Executors.newFixedThreadPool(numThreads, runnable -> {
+			Thread thread = new Thread(runnable, "manifest-splitter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		maxPendingBatches = numThreads * PENDING_BATCHES_PER_THREAD;
+	}
+
+	/**
+	 * Splits the given manifest.
+	 * @param inputFactory  StAX factory created with {@link MetaFileReader#createInputFactory()} (must not be used by
+	 *                      other threads at the same time)
+	 * @param manifestPath  path of the manifest
+	 * @throws OpenCmsMetaXmlParseException if the manifest can not be read or parsed, or if a file node has no valid
+	 *                                      destination
+	 * @throws OpenCmsMetaXmlFileWriteException if the manifest stub or a meta file can not be written
+	 */
+	void split(XMLInputFactory inputFactory, Path manifestPath) throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		try {
+			countSiblings(inputFactory, manifestPath);
+		}
+		catch (IOException e) {
+			throw new OpenCmsMetaXmlParseException("The manifest " + manifestPath + " could not be read", e);
+		}
+		catch (XMLStreamException e) {
+			throw new OpenCmsMetaXmlParseException("The manifest " + manifestPath + " could not be parsed", e);
+		}
+
+		Element manifestStub;
+		try {
+			manifestStub = readManifest(inputFactory, manifestPath);
+			if (!batch.isEmpty()) {
+				submitBatch();
+			}
+			while (!pendingBatches.isEmpty()) {
+				checkNextBatch();
+			}
+		}
+		catch (XMLStreamException e) {
+			throw new OpenCmsMetaXmlParseException("The manifest " + manifestPath + " could not be parsed", e);
+		}
+		catch (IOException e) {
+			throw new OpenCmsMetaXmlFileWriteException("The meta files could not be written to " + manifestRootPath, e);
+		}
+
+		try {
+			write(Paths.get(manifestStubPath), serializeManifestStub(manifestStub));
+		}
+		catch (IOException | XMLStreamException e) {
+			throw new OpenCmsMetaXmlFileWriteException("The manifest stub " + manifestStubPath + " could not be written", e);
+		}
+	}
+
+	/**
+	 * @return  the number of VFS file meta files written
+	 */
+	int getNumFiles() {
+		return numFiles;
+	}
+
+	/**
+	 * @return  the number of VFS folder meta files written
+	 */
+	int getNumFolders() {
+		return numFolders;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * First pass: counts the file nodes per resource id, only the resource id nodes are looked at.
+	 */
+	private void countSiblings(XMLInputFactory inputFactory, Path manifestPath) throws IOException, XMLStreamException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(manifestPath))) {
+			XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+			try {
+				// depth of the current element and number of elements on the path to the resource id nodes matched so far
+				int depth = 0;
+				int matchedDepth = 0;
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						if (depth == matchedDepth && depth < RESOURCEID_NODE_PATH.length && RESOURCEID_NODE_PATH[depth].equals(reader.getLocalName())) {
+							if (depth == RESOURCEID_NODE_PATH.length - 1) {
+								// reads up to the end element, so the depth doesn't change
+								String resourceId = reader.getElementText().trim();
+								if (UuidIndex.isUuid(resourceId)) {
+									siblingCounts.increment(UuidIndex.getMostSignificantBits(resourceId), UuidIndex.getLeastSignificantBits(resourceId));
+								}
+								continue;
+							}
+							matchedDepth++;
+						}
+						depth++;
+					}
+					else if (event == XMLStreamConstants.END_ELEMENT) {
+						depth--;
+						if (matchedDepth > depth) {
+							matchedDepth = depth;
+						}
+					}
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Second pass: reads the manifest, the file nodes are passed to the writing threads as soon as they are read.
+	 * @return  the manifest without file nodes (the manifest stub)
+	 * @throws IOException if the manifest can not be read or a writing thread failed
+	 * @throws XMLStreamException if the manifest can not be parsed
+	 * @throws OpenCmsMetaXmlParseException if the manifest is not a module manifest or a file node has no valid
+	 *                                      destination
+	 */
+	private Element readManifest(XMLInputFactory inputFactory, Path manifestPath) throws IOException, XMLStreamException, OpenCmsMetaXmlParseException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(manifestPath))) {
+			XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+			try {
+				while (reader.hasNext()) {
+					if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+						if (!EXPORT_NODE_NAME.equals(reader.getLocalName())) {
+							throw new OpenCmsMetaXmlParseException("The root node of " + manifestPath + " is <" + reader.getLocalName() + ">, expected <" + EXPORT_NODE_NAME + ">", null);
+						}
+						return readElement(reader, 0);
+					}
+				}
+				throw new OpenCmsMetaXmlParseException("The manifest " + manifestPath + " doesn't contain any elements", null);
+			}
+			finally {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads the element the reader is positioned at (up to its end element). The file nodes of the files node are not
+	 * added to the files node, they are passed to the writing threads.
+	 * @param reader    the reader, positioned at the element's start element
+	 * @param depth     depth of the element in the manifest
+	 * @return  the element
+	 */
+	private Element readElement(XMLStreamReader reader, int depth) throws IOException, XMLStreamException, OpenCmsMetaXmlParseException {
+		Element element = new Element(reader);
+		boolean filesNode = depth == 1 && FILES_NODE_NAME.equals(element.name);
+		while (true) {
+			switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					if (filesNode && FILE_NODE_NAME.equals(reader.getLocalName())) {
+						addFileNode(readElement(reader, depth + 1));
+					}
+					else {
+						element.children.add(readElement(reader, depth + 1));
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+					// the whitespace between the file nodes is dropped, so the files node doesn't grow
+					if (!filesNode || !reader.isWhiteSpace()) {
+						element.children.add(reader.getText());
+					}
+					break;
+				case XMLStreamConstants.CDATA:
+					element.children.add(reader.getText());
+					element.hasCdata = true;
+					break;
+				case XMLStreamConstants.COMMENT:
+					element.children.add(new Comment(reader.getText()));
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					return element;
+				default:
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Prepares a file node read from the manifest and adds it to the current batch.
+	 * @param fileNode  the file node
+	 * @throws IOException if a writing thread failed or the current thread was interrupted
+	 * @throws OpenCmsMetaXmlParseException if the file node has no valid destination
+	 */
+	private void addFileNode(Element fileNode) throws IOException, OpenCmsMetaXmlParseException {
+		Element destinationNode = fileNode.getChild(DESTINATION_NODE_NAME);
+		String destination = destinationNode != null ? destinationNode.getTextContent().trim() : "";
+		while (destination.startsWith("/")) {
+			destination = destination.substring(1);
+		}
+		if (destination.isEmpty()) {
+			throw new OpenCmsMetaXmlParseException("The manifest contains a file node without destination", null);
+		}
+		for (String name : destination.split("/")) {
+			if (name.isEmpty() || ".".equals(name) || "..".equals(name) || name.indexOf('\\') != -1 || name.indexOf(':') != -1) {
+				// the meta file would be written to another folder (maybe outside of the manifest root), backslashes
+				// and colons are no valid VFS name characters, but separators or drive letters on Windows
+				throw new OpenCmsMetaXmlParseException("The manifest contains a file node with the invalid destination " + destination, null);
+			}
+		}
+
+		Element resourceIdNode = fileNode.getChild(RESOURCEID_NODE_NAME);
+		boolean hasSource = fileNode.getChild(SOURCE_NODE_NAME) != null;
+		boolean folder = !hasSource && resourceIdNode == null;
+		int siblingCount = 0;
+		if (!folder) {
+			String resourceId = resourceIdNode != null ? resourceIdNode.getTextContent().trim() : null;
+			siblingCount = UuidIndex.isUuid(resourceId) ? Math.max(1, siblingCounts.get(UuidIndex.getMostSignificantBits(resourceId), UuidIndex.getLeastSignificantBits(resourceId))) : 1;
+			if (!hasSource) {
+				// the source node of a sibling was removed, the sibling's meta file gets its own source node again
+				Element sourceNode = new Element(SOURCE_NODE_NAME);
+				sourceNode.children.add(destination);
+				fileNode.children.add(fileNode.indexOfFirstChildElement(), sourceNode);
+			}
+			numFiles++;
+		}
+		else {
+			numFolders++;
+		}
+
+		batch.add(new FileNode(fileNode, destination, folder, siblingCount));
+		if (batch.size() == BATCH_SIZE) {
+			submitBatch();
+			while (pendingBatches.size() > maxPendingBatches) {
+				checkNextBatch();
+			}
+		}
+	}
+
+	private void submitBatch() {
+		List<FileNode> fileNodes = batch;
+		batch = new ArrayList<>(BATCH_SIZE);
+		pendingBatches.add(executor.submit(() -> {
+			for (FileNode fileNode : fileNodes) {
+				writeMetaFile(fileNode);
+			}
+			return null;
+		}));
+	}
+
+	/**
+	 * Waits for the oldest pending batch and rethrows its error, if any.
+	 */
+	private void checkNextBatch() throws IOException {
+		try {
+			pendingBatches.poll().get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Writing the meta files was interrupted");
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			throw new IOException("Writing the meta files failed", cause);
+		}
+	}
+
+	/**
+	 * Writes the meta file of a file node (runs on the executor). For folders the folder itself is created as well,
+	 * since the generator finds folders by scanning the manifest root.
+	 * @param fileNode  the file node
+	 * @throws IOException if the meta file can not be written or would be written outside of the manifest root
+	 * @throws XMLStreamException if the file node can not be serialized
+	 */
+	private void writeMetaFile(FileNode fileNode) throws IOException, XMLStreamException {
+		Path metaFilePath = getPathBelowManifestRoot(Paths.get(OpenCmsModuleManifestGenerator.getMetaInfoPath(manifestRootPath, "/" + fileNode.destination, fileNode.folder)));
+		if (fileNode.folder) {
+			Files.createDirectories(getPathBelowManifestRoot(Paths.get(manifestRootPath, fileNode.destination)));
+		}
+		write(metaFilePath, serializeMetaFile(fileNode));
+	}
+
+	/**
+	 * Resolves a path to be written, destinations are checked when the file nodes are read, but the file system
+	 * decides which paths actually end up outside of the manifest root.
+	 * @param path  the path of a file or folder below the manifest root
+	 * @return  the normalized absolute path
+	 * @throws IOException if the path is not below the manifest root
+	 */
+	private Path getPathBelowManifestRoot(Path path) throws IOException {
+		Path normalizedPath = path.toAbsolutePath().normalize();
+		if (!normalizedPath.startsWith(normalizedManifestRoot) || normalizedPath.equals(normalizedManifestRoot)) {
+			throw new IOException(path + " is not below the manifest root " + manifestRootPath);
+		}
+		return normalizedPath;
+	}
+
+	private static void write(Path path, String content) throws IOException {
+		Path parent = path.getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param fileNode  the file node
+	 * @return  the content of the file node's meta file
+	 */
+	private String serializeMetaFile(FileNode fileNode) throws XMLStreamException {
+		StringWriter stringWriter = new StringWriter(2048);
+		XMLStreamWriter writer = ManifestWriter.createFragmentWriter(stringWriter);
+		writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+		if (fileNode.folder) {
+			writeElement(writer, fileNode.element, 0);
+		}
+		else {
+			ManifestWriter.writeIndent(writer, 0);
+			writer.writeStartElement(FILEINFO_NODE_NAME);
+			writeElement(writer, fileNode.element, 1);
+			ManifestWriter.writeIndent(writer, 1);
+			writer.writeStartElement(SIBLINGCOUNT_NODE_NAME);
+			writer.writeCharacters(String.valueOf(fileNode.siblingCount));
+			writer.writeEndElement();
+			ManifestWriter.writeIndent(writer, 0);
+			writer.writeEndElement();
+		}
+		writer.writeCharacters("\n");
+		writer.writeEndDocument();
+		writer.flush();
+		writer.close();
+		return stringWriter.toString();
+	}
+
+	/**
+	 * @param manifestStub  the manifest without file nodes
+	 * @return  the content of the manifest stub file
+	 */
+	private String serializeManifestStub(Element manifestStub) throws XMLStreamException {
+		StringWriter stringWriter = new StringWriter(4096);
+		XMLStreamWriter writer = ManifestWriter.createFragmentWriter(stringWriter);
+		writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+		writeElement(writer, manifestStub, 0);
+		writer.writeCharacters("\n");
+		writer.writeEndDocument();
+		writer.flush();
+		writer.close();
+		return stringWriter.toString();
+	}
+
+	/**
+	 * Writes an element like the manifest writer does: elements without child elements (or comments) are written in
+	 * a single line, whitespace between elements is replaced by indentation.
+	 */
+	private void writeElement(XMLStreamWriter writer, Element element, int depth) throws XMLStreamException {
+		ManifestWriter.writeIndent(writer, depth);
+		if (element.hasChildElementsOrComments()) {
+			writer.writeStartElement(element.name);
+			writeAttributes(writer, element);
+			for (Object child : element.children) {
+				if (child instanceof Element) {
+					writeElement(writer, (Element)child, depth + 1);
+				}
+				else if (child instanceof Comment) {
+					ManifestWriter.writeIndent(writer, depth + 1);
+					writer.writeComment(((Comment)child).text);
+				}
+				else if (StringUtils.isNotBlank((String)child)) {
+					// text between elements (mixed content)
+					writer.writeCharacters((String)child);
+				}
+			}
+			ManifestWriter.writeIndent(writer, depth);
+			writer.writeEndElement();
+			return;
+		}
+
+		String text = element.getTextContent();
+		if (ManifestWriter.isEmptyContent(text, element.hasCdata)) {
+			writer.writeEmptyElement(element.name);
+			writeAttributes(writer, element);
+			return;
+		}
+		writer.writeStartElement(element.name);
+		writeAttributes(writer, element);
+		ManifestWriter.writeTextContent(writer, element.name, text, cdataNodes);
+		writer.writeEndElement();
+	}
+
+	private static void writeAttributes(XMLStreamWriter writer, Element element) throws XMLStreamException {
+		for (int i = 0; i < element.attributes.length; i += 2) {
+			writer.writeAttribute(element.attributes[i], element.attributes[i + 1]);
+		}
+	}
+
+	/**
+	 * Element read from the manifest, the children are elements, text (strings) and comments.
+	 */
+	private static class Element {
+
+		private static final String[] NO_ATTRIBUTES = new String[0];
+
+		final String name;
+
+		/** attribute names (with prefix) at even, values at odd positions */
+		final String[] attributes;
+
+		final List<Object> children = new ArrayList<>();
+
+		/** flag indicating if the element directly contains a CDATA section */
+		boolean hasCdata;
+
+		Element(String name) {
+			this.name = name;
+			attributes = NO_ATTRIBUTES;
+		}
+
+		/**
+		 * Creates the element the reader is positioned at, without children.
+		 */
+		Element(XMLStreamReader reader) {
+			name = reader.getLocalName();
+			int numAttributes = reader.getAttributeCount();
+			attributes = numAttributes > 0 ? new String[2 * numAttributes] : NO_ATTRIBUTES;
+			for (int i = 0; i < numAttributes; i++) {
+				String prefix = reader.getAttributePrefix(i);
+				String localName = reader.getAttributeLocalName(i);
+				attributes[2 * i] = prefix != null && !prefix.isEmpty() ? prefix + ":" + localName : localName;
+				attributes[2 * i + 1] = reader.getAttributeValue(i);
+			}
+		}
+
+		/**
+		 * @return  the first child element with the given name, <code>null</code> if there is none
+		 */
+		Element getChild(String childName) {
+			for (Object child : children) {
+				if (child instanceof Element && childName.equals(((Element)child).name)) {
+					return (Element)child;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * @return  the index of the first child element (the number of children if there is none)
+		 */
+		int indexOfFirstChildElement() {
+			for (int i = 0; i < children.size(); i++) {
+				if (children.get(i) instanceof Element) {
+					return i;
+				}
+			}
+			return children.size();
+		}
+
+		boolean hasChildElementsOrComments() {
+			for (Object child : children) {
+				if (!(child instanceof String)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return  the text of the element and its descendants
+		 */
+		String getTextContent() {
+			StringBuilder text = new StringBuilder();
+			appendTextContent(text);
+			return text.toString();
+		}
+
+		private void appendTextContent(StringBuilder text) {
+			for (Object child : children) {
+				if (child instanceof String) {
+					text.append((String)child);
+				}
+				else if (child instanceof Element) {
+					((Element)child).appendTextContent(text);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Comment read from the manifest.
+	 */
+	private static class Comment {
+
+		final String text;
+
+		Comment(String text) {
+			this.text = text;
+		}
+	}
+
+	/**
+	 * A file node with the information needed to write its meta file.
+	 */
+	private static class FileNode {
+
+		final Element element;
+
+		/** VFS path of the file or folder (without leading "/") */
+		final String destination;
+
+		final boolean folder;
+
+		/** number of file nodes sharing the file's resource, 0 for folders */
+		final int siblingCount;
+
+		FileNode(Element element, String destination, boolean folder, int siblingCount) {
+			this.element = element;
+			this.destination = destination;
+			this.folder = folder;
+			this.siblingCount = siblingCount;
+		}
+	}
+}
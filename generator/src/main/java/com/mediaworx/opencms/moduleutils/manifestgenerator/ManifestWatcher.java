@@ -0,0 +1,440 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlFileWriteException;
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the manifest of a module up to date while its meta files change. The watcher generates the manifest once when
+ * it is started and then watches the manifest root (including all sub folders) for changes. Changes arriving in quick
+ * succession (like a sync from the IDE connector) are collected until no more changes arrive for the debounce delay,
+ * then only the changed meta files are read again and the manifest is rewritten from the entries kept in memory.
+ * Siblings are resolved again on every rewrite, so source nodes are handled correctly when siblings are added or
+ * removed.
+ * <br />
+ * <br />
+ * Watchers are created with {@link OpenCmsModuleManifestGenerator#createWatcher(File, String)}, the generator's settings
+ * (and listeners) are used for every rewrite. A watcher can either be started in its own thread with {@link #start()}
+ * or be run in the current thread with {@link #run()}, it is stopped with {@link #close()}.
+ */
+public class ManifestWatcher implements Runnable, Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ManifestWatcher.class);
+
+	/** Maximum delay of a rewrite (as multiple of the debounce delay) if changes keep arriving */
+	private static final int MAX_DELAY_FACTOR = 10;
+
+	/** the generator used to write the manifest */
+	private final OpenCmsModuleManifestGenerator generator;
+
+	/** root path of the manifest meta data */
+	private final String manifestRootPath;
+
+	/** root path of the real files, may be null */
+	private final String realFileRootPath;
+
+	/** paths of the files below the manifest root that are not meta files (stub and manifest) */
+	private final Set<String> excludedPaths;
+
+	/** the parsed meta files, kept for the lifetime of the watcher */
+	private final FragmentCache fragmentCache = new FragmentCache(Long.MAX_VALUE);
+
+	/** all VFS file meta file and folder entries by path (sorted like the entries returned by the scanner) */
+	private final NavigableMap<String, MetaFileEntry> entries = new TreeMap<>();
+
+	/** the folders registered with the watch service */
+	private final Map<WatchKey, Path> watchedFolders = new HashMap<>();
+
+	private final WatchService watchService;
+
+	/** the filter used by the last scan, changes of files and folders it rejects are ignored */
+	private ScanFilter scanFilter = ScanFilter.ACCEPT_ALL;
+
+	/** the real files' modification dates, <code>null</code> if not needed */
+	private RealFileIndex realFileIndex;
+
+	/** time without changes after which the manifest is rewritten */
+	private volatile long debounceMillis = 200;
+
+	private volatile boolean closed;
+
+	private Thread watcherThread;
+
+	/**
+	 * Creates a new watcher, it has to be started with {@link #start()} or {@link #run()}.
+	 * @param generator         the generator used to write the manifest
+	 * @param manifestRoot      root folder of the manifest meta data
+	 * @param realFileRootPath  root path of the real files, may be null
+	 * @throws IOException if the watch service can not be created
+	 */
+	ManifestWatcher(OpenCmsModuleManifestGenerator generator, File manifestRoot, String realFileRootPath) throws IOException {
+		this.generator = generator;
+		this.manifestRootPath = manifestRoot.getPath();
+		this.realFileRootPath = realFileRootPath;
+		excludedPaths = OpenCmsModuleManifestGenerator.getExcludedPaths(manifestRootPath);
+		watchService = manifestRoot.toPath().getFileSystem().newWatchService();
+	}
+
+	/**
+	 * Generates the manifest and starts watching the manifest root in a new (daemon) thread.
+	 * @throws OpenCmsMetaXmlParseException     if the manifest stub file or any meta file can not be read or parsed
+	 * @throws OpenCmsMetaXmlFileWriteException if the manifest file can not be written
+	 */
+	public synchronized void start() throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		if (watcherThread != null) {
+			throw new IllegalStateException("The watcher for " + manifestRootPath + " has already been started");
+		}
+		initialize();
+		watcherThread = new Thread(this::watch, "manifest-watcher-" + new File(manifestRootPath).getName());
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+	}
+
+	/**
+	 * Generates the manifest and watches the manifest root in the current thread until the watcher is closed (or the
+	 * thread is interrupted). Errors during the initial generation are logged, the watcher keeps waiting for changes.
+	 */
+	@Override
+	public void run() {
+		try {
+			initialize();
+		}
+		catch (OpenCmsMetaXmlParseException | OpenCmsMetaXmlFileWriteException e) {
+			LOG.error("The manifest for " + manifestRootPath + " could not be generated", e);
+		}
+		watch();
+	}
+
+	/**
+	 * Stops watching, a manifest rewrite in progress is completed.
+	 * @throws IOException if the watch service can not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		watchService.close();
+	}
+
+	/**
+	 * Sets the time without changes after which the manifest is rewritten. If changes keep arriving, the manifest is
+	 * rewritten after ten times the debounce delay at the latest.
+	 * @param debounceMillis    the debounce delay in milliseconds, default is 200
+	 */
+	public void setDebounceMillis(long debounceMillis) {
+		this.debounceMillis = debounceMillis;
+	}
+
+	/**
+	 * Scans the manifest root, registers all folders with the watch service and generates the manifest.
+	 */
+	private void initialize() throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		MetricsRecorder metrics = generator.createMetricsRecorder(manifestRootPath);
+		realFileIndex = generator.getRealFileIndex(realFileRootPath, metrics);
+		RunContext run = generator.createRunContext(manifestRootPath, realFileRootPath, realFileIndex, fragmentCache, metrics);
+		scanFilter = OpenCmsModuleManifestGenerator.getScanFilter(run);
+		entries.clear();
+		for (MetaFileEntry entry : generator.scanMetaFiles(run)) {
+			entries.put(entry.path, entry);
+		}
+		try {
+			registerFolders(Paths.get(manifestRootPath));
+		}
+		catch (IOException e) {
+			throw new OpenCmsMetaXmlParseException("The folders below " + manifestRootPath + " could not be watched", e);
+		}
+		generator.generateManifest(run, new ArrayList<>(entries.values()));
+	}
+
+	/**
+	 * Waits for changes and rewrites the manifest, until the watcher is closed.
+	 */
+	private void watch() {
+		LOG.info("watching {}", manifestRootPath);
+		try {
+			while (!closed) {
+				Set<Path> changedPaths = new LinkedHashSet<>();
+				boolean overflow = collectChanges(watchService.take(), changedPaths);
+
+				// wait until no more changes arrive (but not forever)
+				long debounce = debounceMillis;
+				long deadline = System.currentTimeMillis() + debounce * MAX_DELAY_FACTOR;
+				WatchKey key;
+				while (System.currentTimeMillis() < deadline && (key = watchService.poll(debounce, TimeUnit.MILLISECONDS)) != null) {
+					overflow |= collectChanges(key, changedPaths);
+				}
+				refresh(changedPaths, overflow);
+			}
+		}
+		catch (ClosedWatchServiceException e) {
+			// the watcher was closed
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		LOG.info("stopped watching {}", manifestRootPath);
+	}
+
+	/**
+	 * Collects the changed paths of the given watch key.
+	 * @return <code>true</code> if events were lost (so everything has to be scanned again)
+	 */
+	private boolean collectChanges(WatchKey key, Set<Path> changedPaths) {
+		boolean overflow = false;
+		Path folder = watchedFolders.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				overflow = true;
+			}
+			else if (folder != null) {
+				changedPaths.add(folder.resolve((Path)event.context()));
+			}
+		}
+		// keys of deleted folders become invalid
+		if (!key.reset()) {
+			watchedFolders.remove(key);
+		}
+		return overflow;
+	}
+
+	/**
+	 * Updates the entries for the changed paths and rewrites the manifest. Errors are logged, the watcher continues
+	 * with the next changes (meta files may be invalid while they are being synced). If the scan is restricted to the
+	 * module resources, a change of the manifest stub leads to a new scan (the module resources may have changed).
+	 */
+	private void refresh(Set<Path> changedPaths, boolean overflow) {
+		long start = System.nanoTime();
+		MetricsRecorder metrics = generator.createMetricsRecorder(manifestRootPath);
+		RunContext run = generator.createRunContext(manifestRootPath, realFileRootPath, realFileIndex, fragmentCache, metrics);
+		try {
+			if (overflow) {
+				LOG.info("changes below {} were lost, scanning all meta files", manifestRootPath);
+				initialize();
+				return;
+			}
+			if (run.moduleResourcesOnly && changedPaths.contains(Paths.get(OpenCmsModuleManifestGenerator.getManifestStubPath(manifestRootPath)))) {
+				LOG.info("manifest stub below {} changed, scanning the module resources again", manifestRootPath);
+				initialize();
+				return;
+			}
+			boolean manifestAffected = false;
+			for (Path changedPath : changedPaths) {
+				manifestAffected |= applyChange(changedPath);
+			}
+			if (!manifestAffected) {
+				return;
+			}
+			LOG.debug("{} changes below {}", changedPaths.size(), manifestRootPath);
+			metrics.addPhase(ManifestGenerationPhase.SCAN, System.nanoTime() - start, changedPaths.size());
+			generator.generateManifest(run, new ArrayList<>(entries.values()));
+		}
+		catch (OpenCmsMetaXmlParseException | OpenCmsMetaXmlFileWriteException e) {
+			LOG.error("The manifest for " + manifestRootPath + " could not be updated", e);
+		}
+		catch (IOException e) {
+			LOG.error("The changes below " + manifestRootPath + " could not be read", e);
+		}
+	}
+
+	/**
+	 * Updates the entries for a changed file or folder.
+	 * @param path  the path of the changed file or folder
+	 * @return <code>true</code> if the change affects the manifest
+	 * @throws IOException if the attributes of the changed file or a new folder's content can not be read
+	 */
+	private boolean applyChange(Path path) throws IOException {
+		String pathString = path.toString();
+		String manifestPath = OpenCmsModuleManifestGenerator.getManifestPath(manifestRootPath);
+		if (pathString.equals(manifestPath) || ManifestOutputFile.isTempFile(manifestPath, pathString)) {
+			// written by the generator
+			return false;
+		}
+		if (excludedPaths.contains(pathString)) {
+			// the manifest stub is parsed for every rewrite
+			return true;
+		}
+		if (pathString.endsWith(OpenCmsModuleManifestGenerator.FOLDER_META_SUFFIX)) {
+			String folderPath = pathString.substring(0, pathString.length() - OpenCmsModuleManifestGenerator.FOLDER_META_SUFFIX.length());
+			// a deleted folder is handled by the folder's own event
+			Path folder = Paths.get(folderPath);
+			if (!scanFilter.acceptFolder(getManifestRoot(), folder)) {
+				return false;
+			}
+			BasicFileAttributes folderAttributes = readAttributes(folder);
+			if (folderAttributes != null && folderAttributes.isDirectory()) {
+				updateFolder(folderPath, folderAttributes);
+			}
+			return true;
+		}
+
+		BasicFileAttributes attributes = readAttributes(path);
+		if (attributes == null) {
+			removeEntries(pathString);
+		}
+		else if (attributes.isDirectory()) {
+			if (!scanFilter.acceptFolder(getManifestRoot(), path)) {
+				return false;
+			}
+			// new folders may already contain files and folders
+			registerFolders(path);
+			for (MetaFileEntry entry : OpenCmsModuleManifestGenerator.createMetaFileScanner(manifestRootPath, scanFilter).scan(path, excludedPaths)) {
+				updateEntry(entry);
+			}
+			updateFolder(pathString, attributes);
+		}
+		else {
+			if (!scanFilter.acceptFile(getManifestRoot(), path, OpenCmsModuleManifestGenerator.FILE_META_SUFFIX)) {
+				return false;
+			}
+			long lastModified = attributes.lastModifiedTime().toMillis();
+			updateEntry(new MetaFileEntry(pathString, pathString, false, lastModified, attributes.size(), lastModified));
+		}
+		return true;
+	}
+
+	/**
+	 * Updates the entry of a folder, including the attributes of its meta file.
+	 */
+	private void updateFolder(String folderPath, BasicFileAttributes folderAttributes) throws IOException {
+		String metaXmlFilePath = folderPath + OpenCmsModuleManifestGenerator.FOLDER_META_SUFFIX;
+		BasicFileAttributes metaFileAttributes = readAttributes(Paths.get(metaXmlFilePath));
+		long metaFileSize = metaFileAttributes != null ? metaFileAttributes.size() : -1;
+		long metaFileLastModified = metaFileAttributes != null ? metaFileAttributes.lastModifiedTime().toMillis() : -1;
+		updateEntry(new MetaFileEntry(folderPath, metaXmlFilePath, true, folderAttributes.lastModifiedTime().toMillis(), metaFileSize, metaFileLastModified));
+	}
+
+	/**
+	 * Adds or replaces an entry, the meta file will be read again on the next rewrite.
+	 */
+	private void updateEntry(MetaFileEntry entry) {
+		entries.put(entry.path, entry);
+		fragmentCache.remove(entry.metaXmlFilePath);
+		refreshRealFile(entry.path);
+	}
+
+	/**
+	 * Removes the entry for a deleted file or folder, for folders the entries of all files and folders below the folder
+	 * are removed as well.
+	 */
+	private void removeEntries(String path) {
+		List<MetaFileEntry> removedEntries = new ArrayList<>();
+		MetaFileEntry removedEntry = entries.remove(path);
+		if (removedEntry != null) {
+			removedEntries.add(removedEntry);
+		}
+		// all paths below the folder start with the folder path followed by the separator
+		NavigableMap<String, MetaFileEntry> folderContent = entries.subMap(path + File.separatorChar, true, path + (char)(File.separatorChar + 1), false);
+		removedEntries.addAll(folderContent.values());
+		folderContent.clear();
+		for (MetaFileEntry entry : removedEntries) {
+			fragmentCache.remove(entry.metaXmlFilePath);
+			refreshRealFile(entry.path);
+		}
+	}
+
+	/**
+	 * Reads the modification date of the real file belonging to the given entry path again.
+	 */
+	private void refreshRealFile(String path) {
+		if (realFileIndex != null) {
+			realFileIndex.refresh(OpenCmsModuleManifestGenerator.getRealFilePath(manifestRootPath, realFileRootPath, path));
+		}
+	}
+
+	/**
+	 * Registers the given folder and all its sub folders with the watch service, folders rejected by the scan filter
+	 * are not watched.
+	 */
+	private void registerFolders(Path folder) throws IOException {
+		Files.walkFileTree(folder, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+				if (!dir.toString().equals(manifestRootPath) && !scanFilter.acceptFolder(getManifestRoot(), dir)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+				watchedFolders.put(key, dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * @return the manifest root
+	 */
+	private Path getManifestRoot() {
+		return Paths.get(manifestRootPath);
+	}
+
+	/**
+	 * @return the attributes of the file or folder at the given path, <code>null</code> if it doesn't exist
+	 */
+	private static BasicFileAttributes readAttributes(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return null;
+		}
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class);
+		}
+		catch (NoSuchFileException e) {
+			// deleted in the meantime
+			return null;
+		}
+	}
+}
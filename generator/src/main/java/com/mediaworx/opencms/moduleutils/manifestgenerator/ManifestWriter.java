@@ -0,0 +1,600 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlParseException;
+import org.apache.commons.lang3.StringUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Streams a module manifest to an output stream. The sections of the manifest stub are written with a StAX writer,
+ * the file nodes are written one by one as pre-serialized XML (see {@link #serializeFileNode(Node, Node, Set)}), so
+ * the complete manifest never has to be held in memory.
+ */
+class ManifestWriter {
+
+	/** Factory for StAX writers, factories are thread safe once they are configured */
+	private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	/** String used to indent one level in the manifest */
+	private static final String INDENT = "    ";
+
+	/** Line breaks and indentations for the usual node depths, created once */
+	private static final String[] INDENTS = createIndents(16);
+
+	/** Depth of the file nodes in the manifest (export/files/file) */
+	static final int FILE_NODE_DEPTH = 2;
+
+	/** Size of the output buffer */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** Name of the node containing the module version */
+	private static final String VERSION_NODE_NAME = "version";
+
+	/** Name of the version node's parent node */
+	private static final String MODULE_NODE_NAME = "module";
+
+	/** Writer all output goes to, both StAX output and pre-serialized file nodes */
+	private final Utf8Writer out;
+
+	/** StAX writer used for the manifest stub sections */
+	private final XMLStreamWriter xmlWriter;
+
+	/** Names of the nodes whose content is written as CDATA section */
+	private final Set<String> cdataNodes;
+
+	/**
+	 * Callback writing the file nodes into the files node of the manifest.
+	 */
+	interface FileNodesWriter {
+
+		/**
+		 * Writes all file nodes using {@link ManifestWriter#writeFileNode(FragmentTemplate, MetaVariableValues, boolean)}.
+		 * @throws OpenCmsMetaXmlParseException if any meta file can not be read or parsed
+		 * @throws IOException if writing fails
+		 * @throws XMLStreamException if writing fails
+		 */
+		void writeFileNodes() throws OpenCmsMetaXmlParseException, IOException, XMLStreamException;
+	}
+
+	/**
+	 * Creates a new manifest writer writing UTF-8 encoded XML to the given stream. The stream is buffered by the
+	 * writer, it is not closed by the writer.
+	 * @param outputStream  stream the manifest is written to
+	 * @param cdataNodes    names of the nodes whose content is written as CDATA section
+	 * @throws XMLStreamException if the StAX writer can not be created
+	 */
+	ManifestWriter(OutputStream outputStream, Set<String> cdataNodes) throws XMLStreamException {
+		out = new Utf8Writer(outputStream, BUFFER_SIZE);
+		xmlWriter = XML_OUTPUT_FACTORY.createXMLStreamWriter(new NonFlushingWriter(out));
+		this.cdataNodes = cdataNodes;
+	}
+
+	/**
+	 * Creates a set of CDATA node names.
+	 * @param cdataNodes    names of the nodes whose content is written as CDATA section
+	 * @return set containing the given node names
+	 */
+	static Set<String> toNodeNameSet(String[] cdataNodes) {
+		return new HashSet<>(Arrays.asList(cdataNodes));
+	}
+
+	/**
+	 * Writes the manifest: the manifest stub with the file nodes written by <code>fileNodesWriter</code> inserted into
+	 * the files node.
+	 * @param manifestStub      the parsed manifest stub
+	 * @param filesNode         the files node of the manifest stub
+	 * @param moduleVersion     module version replacing the version node's content, ignored if blank
+	 * @param fileNodesWriter   callback writing the file nodes
+	 * @throws OpenCmsMetaXmlParseException if any meta file can not be read or parsed
+	 * @throws IOException if writing fails
+	 * @throws XMLStreamException if writing fails
+	 */
+	void writeManifest(Document manifestStub, Node filesNode, String moduleVersion, FileNodesWriter fileNodesWriter) throws OpenCmsMetaXmlParseException, IOException, XMLStreamException {
+		xmlWriter.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+		writeStubNode(manifestStub.getDocumentElement(), 0, filesNode, moduleVersion, fileNodesWriter);
+		xmlWriter.writeCharacters("\n");
+		xmlWriter.writeEndDocument();
+		xmlWriter.flush();
+		xmlWriter.close();
+		out.flush();
+	}
+
+	/**
+	 * Renders a pre-serialized file node directly into the files node.
+	 * @param fileNode      the file node template
+	 * @param values        the values for the meta variables contained in the file node
+	 * @param removeSource  <code>true</code> if the source node should be left out (used for siblings)
+	 * @throws IOException if writing fails
+	 * @throws XMLStreamException if writing fails
+	 */
+	void writeFileNode(FragmentTemplate fileNode, MetaVariableValues values, boolean removeSource) throws IOException, XMLStreamException {
+		// pending StAX output has to be written before the raw xml
+		closePendingTag(xmlWriter);
+		xmlWriter.flush();
+		fileNode.render(out, values, removeSource);
+	}
+
+	/**
+	 * Serializes a file node of a meta file so it can be written with
+	 * {@link #writeFileNode(FragmentTemplate, MetaVariableValues, boolean)}. The position of the source node is tracked, so it can be
+	 * left out for siblings.
+	 * @param fileNode      the file node
+	 * @param sourceNode    the file node's source node, may be <code>null</code> if the position is not needed
+	 * @param cdataNodes    names of the nodes whose content is written as CDATA section
+	 * @return the serialized file node
+	 * @throws XMLStreamException if serializing fails
+	 */
+	static SerializedFileNode serializeFileNode(Node fileNode, Node sourceNode, Set<String> cdataNodes) throws XMLStreamException {
+		StringWriter stringWriter = new StringWriter(2048);
+		XMLStreamWriter fragmentWriter = createFragmentWriter(stringWriter);
+		SourcePositionTracker sourcePosition = new SourcePositionTracker(sourceNode, stringWriter);
+		writeNode(fragmentWriter, fileNode, FILE_NODE_DEPTH, cdataNodes, sourcePosition);
+		fragmentWriter.flush();
+		fragmentWriter.close();
+		return new SerializedFileNode(stringWriter.toString(), sourcePosition.start, sourcePosition.end);
+	}
+
+	/**
+	 * Creates a StAX writer for serializing file nodes.
+	 * @param stringWriter  the writer the file node is serialized to
+	 * @return  the StAX writer
+	 * @throws XMLStreamException if the StAX writer can not be created
+	 */
+	static XMLStreamWriter createFragmentWriter(StringWriter stringWriter) throws XMLStreamException {
+		return XML_OUTPUT_FACTORY.createXMLStreamWriter(stringWriter);
+	}
+
+	/**
+	 * Writes a node of the manifest stub, the version node gets the given module version and the file nodes are
+	 * inserted into the files node.
+	 */
+	private void writeStubNode(Node node, int depth, Node filesNode, String moduleVersion, FileNodesWriter fileNodesWriter) throws OpenCmsMetaXmlParseException, IOException, XMLStreamException {
+		if (node == filesNode) {
+			writeIndent(xmlWriter, depth);
+			xmlWriter.writeStartElement(node.getNodeName());
+			writeAttributes(xmlWriter, node);
+			for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+				writeNode(xmlWriter, child, depth + 1, cdataNodes, null);
+			}
+			fileNodesWriter.writeFileNodes();
+			writeIndent(xmlWriter, depth);
+			xmlWriter.writeEndElement();
+		}
+		else if (isModuleVersionNode(node) && StringUtils.isNotBlank(moduleVersion)) {
+			writeIndent(xmlWriter, depth);
+			xmlWriter.writeStartElement(node.getNodeName());
+			writeAttributes(xmlWriter, node);
+			xmlWriter.writeCharacters(moduleVersion);
+			xmlWriter.writeEndElement();
+		}
+		else if (node.getNodeType() == Node.ELEMENT_NODE && hasChildElementsOrComments(node)) {
+			writeIndent(xmlWriter, depth);
+			xmlWriter.writeStartElement(node.getNodeName());
+			writeAttributes(xmlWriter, node);
+			for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+				writeStubNode(child, depth + 1, filesNode, moduleVersion, fileNodesWriter);
+			}
+			writeIndent(xmlWriter, depth);
+			xmlWriter.writeEndElement();
+		}
+		else {
+			writeNode(xmlWriter, node, depth, cdataNodes, null);
+		}
+	}
+
+	/**
+	 * Checks if the given node is the module's version node (export/module/version).
+	 */
+	private static boolean isModuleVersionNode(Node node) {
+		Node parent = node.getParentNode();
+		return node.getNodeType() == Node.ELEMENT_NODE
+				&& VERSION_NODE_NAME.equals(node.getNodeName())
+				&& parent != null
+				&& MODULE_NODE_NAME.equals(parent.getNodeName());
+	}
+
+	/**
+	 * Writes the given node and all its descendants indented for the given depth. Whitespace between elements is
+	 * replaced by the writer's own indentation.
+	 */
+	private static void writeNode(XMLStreamWriter writer, Node node, int depth, Set<String> cdataNodes, SourcePositionTracker sourcePosition) throws XMLStreamException {
+		switch (node.getNodeType()) {
+			case Node.ELEMENT_NODE:
+				if (sourcePosition != null && node == sourcePosition.sourceNode) {
+					sourcePosition.markStart(writer);
+					writeElement(writer, node, depth, cdataNodes, sourcePosition);
+					sourcePosition.markEnd(writer);
+				}
+				else {
+					writeElement(writer, node, depth, cdataNodes, sourcePosition);
+				}
+				break;
+			case Node.TEXT_NODE:
+			case Node.CDATA_SECTION_NODE:
+				// text between elements (mixed content), whitespace only text is replaced by indentation
+				if (StringUtils.isNotBlank(node.getNodeValue())) {
+					writer.writeCharacters(node.getNodeValue());
+				}
+				break;
+			case Node.COMMENT_NODE:
+				writeIndent(writer, depth);
+				writer.writeComment(node.getNodeValue());
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Writes an element, elements without child elements (or comments) are written in a single line, their text content is written
+	 * as CDATA section if the element name is contained in <code>cdataNodes</code>.
+	 */
+	private static void writeElement(XMLStreamWriter writer, Node element, int depth, Set<String> cdataNodes, SourcePositionTracker sourcePosition) throws XMLStreamException {
+		writeIndent(writer, depth);
+		if (hasChildElementsOrComments(element)) {
+			writer.writeStartElement(element.getNodeName());
+			writeAttributes(writer, element);
+			for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+				writeNode(writer, child, depth + 1, cdataNodes, sourcePosition);
+			}
+			writeIndent(writer, depth);
+			writer.writeEndElement();
+			return;
+		}
+
+		String text = element.getTextContent();
+		if (isEmptyContent(text, hasCdataSection(element))) {
+			writer.writeEmptyElement(element.getNodeName());
+			writeAttributes(writer, element);
+			return;
+		}
+		writer.writeStartElement(element.getNodeName());
+		writeAttributes(writer, element);
+		writeTextContent(writer, element.getNodeName(), text, cdataNodes);
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Checks if an element without child elements is written as empty element (whitespace only text is dropped
+	 * unless it is contained in a CDATA section).
+	 * @param text      the element's text content
+	 * @param hasCdata  <code>true</code> if the element contains a CDATA section
+	 * @return  <code>true</code> if the element is written as empty element
+	 */
+	static boolean isEmptyContent(CharSequence text, boolean hasCdata) {
+		return text.length() == 0 || (StringUtils.isBlank(text) && !hasCdata);
+	}
+
+	/**
+	 * Writes the text content of an element without child elements, as CDATA section if the element name is
+	 * contained in <code>cdataNodes</code>.
+	 * @param writer        the StAX writer
+	 * @param elementName   name of the element
+	 * @param text          text content of the element
+	 * @param cdataNodes    names of the nodes whose content is written as CDATA section
+	 * @throws XMLStreamException if writing fails
+	 */
+	static void writeTextContent(XMLStreamWriter writer, String elementName, String text, Set<String> cdataNodes) throws XMLStreamException {
+		if (cdataNodes.contains(elementName)) {
+			// "]]>" can not be contained in a CDATA section, so the section is split
+			writer.writeCData(text.replace("]]>", "]]]]><![CDATA[>"));
+		}
+		else {
+			writer.writeCharacters(text);
+		}
+	}
+
+	private static void writeAttributes(XMLStreamWriter writer, Node element) throws XMLStreamException {
+		NamedNodeMap attributes = element.getAttributes();
+		if (attributes == null) {
+			return;
+		}
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Node attribute = attributes.item(i);
+			writer.writeAttribute(attribute.getNodeName(), attribute.getNodeValue());
+		}
+	}
+
+	static void writeIndent(XMLStreamWriter writer, int depth) throws XMLStreamException {
+		writer.writeCharacters(getIndent(depth));
+	}
+
+	private static String[] createIndents(int numDepths) {
+		String[] indents = new String[numDepths];
+		for (int depth = 0; depth < numDepths; depth++) {
+			indents[depth] = "\n" + StringUtils.repeat(INDENT, depth);
+		}
+		return indents;
+	}
+
+	/**
+	 * @param depth the depth of a node
+	 * @return  the line break and indentation preceding a node of the given depth
+	 */
+	static String getIndent(int depth) {
+		return depth < INDENTS.length ? INDENTS[depth] : "\n" + StringUtils.repeat(INDENT, depth);
+	}
+
+	/**
+	 * StAX writers write the closing bracket of a start tag lazily, writing empty characters forces it out.
+	 */
+	static void closePendingTag(XMLStreamWriter writer) throws XMLStreamException {
+		writer.writeCharacters("");
+	}
+
+	/**
+	 * Checks if the node has child nodes that are written on separate lines (elements and comments).
+	 */
+	private static boolean hasChildElementsOrComments(Node node) {
+		NodeList children = node.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			short childType = children.item(i).getNodeType();
+			if (childType == Node.ELEMENT_NODE || childType == Node.COMMENT_NODE) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasCdataSection(Node node) {
+		for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.CDATA_SECTION_NODE) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * File node serialized as XML, including the indentation preceding the file node.
+	 */
+	static class SerializedFileNode {
+
+		/** the serialized file node */
+		final String xml;
+
+		/** start index of the source node (including its indentation) in <code>xml</code>, -1 if not tracked */
+		final int sourceStart;
+
+		/** end index (exclusive) of the source node in <code>xml</code>, -1 if not tracked */
+		final int sourceEnd;
+
+		SerializedFileNode(String xml, int sourceStart, int sourceEnd) {
+			this.xml = xml;
+			this.sourceStart = sourceStart;
+			this.sourceEnd = sourceEnd;
+		}
+
+		/**
+		 * @return <code>true</code> if the position of the source node is known
+		 */
+		boolean hasSourcePosition() {
+			return sourceStart >= 0;
+		}
+	}
+
+	/**
+	 * Tracks the position of the source node while a file node is serialized.
+	 */
+	private static class SourcePositionTracker {
+
+		private final Node sourceNode;
+		private final StringWriter target;
+		private int start = -1;
+		private int end = -1;
+
+		private SourcePositionTracker(Node sourceNode, StringWriter target) {
+			this.sourceNode = sourceNode;
+			this.target = target;
+		}
+
+		private void markStart(XMLStreamWriter writer) throws XMLStreamException {
+			start = currentPosition(writer);
+		}
+
+		private void markEnd(XMLStreamWriter writer) throws XMLStreamException {
+			end = currentPosition(writer);
+		}
+
+		private int currentPosition(XMLStreamWriter writer) throws XMLStreamException {
+			closePendingTag(writer);
+			writer.flush();
+			return target.getBuffer().length();
+		}
+	}
+
+	/**
+	 * Writer ignoring flush calls, so flushing the StAX writer before writing pre-serialized file nodes only moves the
+	 * StAX writer's buffer content to the underlying writer instead of flushing the whole chain down to the disk.
+	 */
+	private static class NonFlushingWriter extends FilterWriter {
+
+		private NonFlushingWriter(Writer out) {
+			super(out);
+		}
+
+		@Override
+		public void flush() {
+			// the output is flushed by the ManifestWriter when the manifest is complete
+		}
+
+		@Override
+		public void close() {
+			// the underlying writer is closed by the owner of the output stream
+		}
+	}
+
+	/**
+	 * Buffered writer encoding its output as UTF-8, it can additionally copy pre-encoded subtrees to the output (see
+	 * {@link SharedSubtree}). Malformed surrogates are replaced by "?", like the UTF-8 encoder of an
+	 * {@link java.io.OutputStreamWriter} does.
+	 */
+	static final class Utf8Writer extends Writer {
+
+		/** the stream the encoded output is written to */
+		private final OutputStream out;
+
+		/** the output buffer */
+		private final byte[] buffer;
+
+		/** number of bytes in the buffer */
+		private int count;
+
+		/** high surrogate waiting for its low surrogate, 0 if there is none */
+		private char pendingHighSurrogate;
+
+		private Utf8Writer(OutputStream out, int bufferSize) {
+			this.out = out;
+			buffer = new byte[bufferSize];
+		}
+
+		/**
+		 * Writes UTF-8 encoded bytes.
+		 * @param bytes the encoded bytes
+		 * @throws IOException if writing fails
+		 */
+		void writeEncoded(byte[] bytes) throws IOException {
+			writePendingSurrogate();
+			if (bytes.length > buffer.length - count) {
+				flushBuffer();
+				if (bytes.length > buffer.length) {
+					out.write(bytes);
+					return;
+				}
+			}
+			System.arraycopy(bytes, 0, buffer, count, bytes.length);
+			count += bytes.length;
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			writeChar((char)c);
+		}
+
+		@Override
+		public void write(char[] chars, int off, int len) throws IOException {
+			for (int i = off; i < off + len; i++) {
+				writeChar(chars[i]);
+			}
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			for (int i = off; i < off + len; i++) {
+				writeChar(str.charAt(i));
+			}
+		}
+
+		private void writeChar(char c) throws IOException {
+			// a character takes up to four bytes (a replaced high surrogate plus three bytes for the character)
+			if (count > buffer.length - 4) {
+				flushBuffer();
+			}
+			if (pendingHighSurrogate != 0) {
+				char highSurrogate = pendingHighSurrogate;
+				pendingHighSurrogate = 0;
+				if (Character.isLowSurrogate(c)) {
+					int codePoint = Character.toCodePoint(highSurrogate, c);
+					buffer[count++] = (byte)(0xF0 | (codePoint >> 18));
+					buffer[count++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+					buffer[count++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+					buffer[count++] = (byte)(0x80 | (codePoint & 0x3F));
+					return;
+				}
+				buffer[count++] = '?';
+			}
+			if (c < 0x80) {
+				buffer[count++] = (byte)c;
+			}
+			else if (c < 0x800) {
+				buffer[count++] = (byte)(0xC0 | (c >> 6));
+				buffer[count++] = (byte)(0x80 | (c & 0x3F));
+			}
+			else if (Character.isHighSurrogate(c)) {
+				pendingHighSurrogate = c;
+			}
+			else if (Character.isLowSurrogate(c)) {
+				buffer[count++] = '?';
+			}
+			else {
+				buffer[count++] = (byte)(0xE0 | (c >> 12));
+				buffer[count++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				buffer[count++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+
+		/**
+		 * Replaces a high surrogate that is not followed by a low surrogate.
+		 */
+		private void writePendingSurrogate() throws IOException {
+			if (pendingHighSurrogate != 0) {
+				pendingHighSurrogate = 0;
+				write('?');
+			}
+		}
+
+		private void flushBuffer() throws IOException {
+			if (count > 0) {
+				out.write(buffer, 0, count);
+				count = 0;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			flushBuffer();
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			writePendingSurrogate();
+			flush();
+			out.close();
+		}
+	}
+}
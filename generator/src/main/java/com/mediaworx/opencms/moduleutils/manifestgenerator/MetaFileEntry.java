@@ -0,0 +1,63 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+/**
+ * A VFS file or folder found by the {@link MetaFileScanner}, carrying the file attributes read during the scan so
+ * they don't have to be read again.
+ */
+class MetaFileEntry {
+
+	/** path of the VFS file meta file or of the folder, used to sort the entries */
+	final String path;
+
+	/** path of the meta file (for folders the path of the folder meta file next to the folder) */
+	final String metaXmlFilePath;
+
+	/** <code>true</code> if the entry is a VFS folder, <code>false</code> for VFS files */
+	final boolean folder;
+
+	/** modification date of the meta file or folder at <code>path</code> */
+	final long lastModified;
+
+	/** size of the meta file, -1 if the meta file doesn't exist */
+	final long metaFileSize;
+
+	/** modification date of the meta file, -1 if the meta file doesn't exist */
+	final long metaFileLastModified;
+
+	MetaFileEntry(String path, String metaXmlFilePath, boolean folder, long lastModified, long metaFileSize, long metaFileLastModified) {
+		this.path = path;
+		this.metaXmlFilePath = metaXmlFilePath;
+		this.folder = folder;
+		this.lastModified = lastModified;
+		this.metaFileSize = metaFileSize;
+		this.metaFileLastModified = metaFileLastModified;
+	}
+}
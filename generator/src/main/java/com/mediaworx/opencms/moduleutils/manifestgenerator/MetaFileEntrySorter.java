@@ -0,0 +1,392 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts meta file entries by path with a bounded amount of heap (external merge sort). Entries are collected in a
+ * buffer, whenever the buffer exceeds its maximum size it is sorted and spilled to a temporary file as a sorted run.
+ * The runs are merged while the sorted entries are iterated, so only one entry per run (plus a read buffer) is held
+ * in memory. If there are more runs than can be merged at once, runs are merged into larger runs first. The sort
+ * order is the same as the one of {@link MetaFileScanner#scan(Path, java.util.Set)}. Temporary files are deleted on
+ * close.
+ */
+class MetaFileEntrySorter implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MetaFileEntrySorter.class);
+
+	/** Maximum number of runs merged at once */
+	private static final int MAX_MERGE_RUNS = 64;
+
+	/** Size of the read and write buffers of run files */
+	private static final int RUN_BUFFER_SIZE = 32 * 1024;
+
+	/** Approximate heap size of an entry without its path strings */
+	private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+	private static final byte FLAG_FOLDER = 1;
+	private static final byte FLAG_SEPARATE_META_FILE = 2;
+
+	private static final Comparator<MetaFileEntry> ENTRY_ORDER = Comparator.comparing(entry -> entry.path);
+
+	/** approximate maximum heap size of the buffered entries */
+	private final long maxBufferBytes;
+
+	/** the entries that haven't been spilled yet */
+	private final List<MetaFileEntry> buffer = new ArrayList<>();
+
+	/** approximate heap size of the buffered entries */
+	private long bufferBytes;
+
+	/** the spilled runs */
+	private final List<Run> runs = new ArrayList<>();
+
+	/** readers opened for iterating the sorted entries, closed on close */
+	private final List<RunReader> readers = new ArrayList<>();
+
+	/** total number of entries added */
+	private int size;
+
+	/**
+	 * Creates a new sorter.
+	 * @param maxBufferBytes    approximate maximum heap size of the buffered entries, entries are spilled to temporary
+	 *                          files when the buffer exceeds this size
+	 */
+	MetaFileEntrySorter(long maxBufferBytes) {
+		this.maxBufferBytes = maxBufferBytes;
+	}
+
+	/**
+	 * Adds an entry, the buffered entries are spilled if the buffer is full.
+	 * @param entry the entry
+	 * @throws IOException if spilling the buffered entries fails
+	 */
+	void add(MetaFileEntry entry) throws IOException {
+		buffer.add(entry);
+		bufferBytes += estimateSize(entry);
+		size++;
+		if (bufferBytes > maxBufferBytes) {
+			spill();
+		}
+	}
+
+	/**
+	 * @return the number of entries added
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of sorted runs spilled to temporary files
+	 */
+	int getNumRuns() {
+		return runs.size();
+	}
+
+	/**
+	 * Returns the entries sorted by path. If nothing has been spilled, the buffer is sorted in memory, otherwise the
+	 * remaining entries are spilled and the runs are merged while the entries are iterated. Reading a run while
+	 * iterating may fail, in that case the iterator throws an {@link UncheckedIOException}. No more entries may be
+	 * added afterwards.
+	 * @return  iterator over the sorted entries
+	 * @throws IOException if spilling or merging runs fails
+	 */
+	Iterator<MetaFileEntry> iterator() throws IOException {
+		if (runs.isEmpty()) {
+			buffer.sort(ENTRY_ORDER);
+			return buffer.iterator();
+		}
+		spill();
+		while (runs.size() > MAX_MERGE_RUNS) {
+			mergeRuns();
+		}
+		return new MergeIterator(openReaders(runs));
+	}
+
+	/**
+	 * Sorts the buffered entries and writes them to a new run.
+	 */
+	private void spill() throws IOException {
+		if (buffer.isEmpty()) {
+			return;
+		}
+		buffer.sort(ENTRY_ORDER);
+		runs.add(writeRun(buffer.iterator(), buffer.size()));
+		LOG.debug("Spilled {} meta file entries to sorted run {}", buffer.size(), runs.size());
+		buffer.clear();
+		bufferBytes = 0;
+	}
+
+	/**
+	 * Merges the first {@link #MAX_MERGE_RUNS} runs into one run.
+	 */
+	private void mergeRuns() throws IOException {
+		List<Run> mergedRuns = new ArrayList<>(runs.subList(0, MAX_MERGE_RUNS));
+		int numEntries = 0;
+		for (Run run : mergedRuns) {
+			numEntries += run.numEntries;
+		}
+		List<RunReader> mergedReaders = openReaders(mergedRuns);
+		Run run;
+		try {
+			run = writeRun(new MergeIterator(mergedReaders), numEntries);
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		finally {
+			for (RunReader reader : mergedReaders) {
+				reader.close();
+				readers.remove(reader);
+			}
+		}
+		for (Run mergedRun : mergedRuns) {
+			Files.deleteIfExists(mergedRun.path);
+		}
+		runs.subList(0, MAX_MERGE_RUNS).clear();
+		runs.add(run);
+	}
+
+	private List<RunReader> openReaders(List<Run> runsToRead) throws IOException {
+		List<RunReader> runReaders = new ArrayList<>(runsToRead.size());
+		for (Run run : runsToRead) {
+			RunReader reader = new RunReader(run);
+			readers.add(reader);
+			runReaders.add(reader);
+		}
+		return runReaders;
+	}
+
+	/**
+	 * Writes the given sorted entries to a new temporary run file.
+	 */
+	private Run writeRun(Iterator<MetaFileEntry> entries, int numEntries) throws IOException {
+		Path path = Files.createTempFile("manifest-entries", ".run");
+		Run run = new Run(path, numEntries);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), RUN_BUFFER_SIZE))) {
+			while (entries.hasNext()) {
+				writeEntry(out, entries.next());
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(path);
+			throw e;
+		}
+		return run;
+	}
+
+	private static void writeEntry(DataOutputStream out, MetaFileEntry entry) throws IOException {
+		boolean separateMetaFile = !entry.metaXmlFilePath.equals(entry.path);
+		out.writeByte((entry.folder ? FLAG_FOLDER : 0) | (separateMetaFile ? FLAG_SEPARATE_META_FILE : 0));
+		writeString(out, entry.path);
+		if (separateMetaFile) {
+			writeString(out, entry.metaXmlFilePath);
+		}
+		out.writeLong(entry.lastModified);
+		out.writeLong(entry.metaFileSize);
+		out.writeLong(entry.metaFileLastModified);
+	}
+
+	private static MetaFileEntry readEntry(DataInputStream in) throws IOException {
+		byte flags = in.readByte();
+		String path = readString(in);
+		String metaXmlFilePath = (flags & FLAG_SEPARATE_META_FILE) != 0 ? readString(in) : path;
+		long lastModified = in.readLong();
+		long metaFileSize = in.readLong();
+		long metaFileLastModified = in.readLong();
+		return new MetaFileEntry(path, metaXmlFilePath, (flags & FLAG_FOLDER) != 0, lastModified, metaFileSize, metaFileLastModified);
+	}
+
+	/**
+	 * Strings are written as length and UTF-8 bytes ({@link DataOutputStream#writeUTF(String)} is limited to 64 KB).
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param entry the entry
+	 * @return the approximate number of bytes occupied by the entry on the heap
+	 */
+	private static long estimateSize(MetaFileEntry entry) {
+		long chars = entry.path.length() + (entry.metaXmlFilePath != entry.path ? entry.metaXmlFilePath.length() : 0);
+		return 2 * chars + ENTRY_OVERHEAD_BYTES;
+	}
+
+	/**
+	 * Closes all run readers and deletes the temporary run files.
+	 * @throws IOException if closing or deleting fails
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+		for (RunReader reader : readers) {
+			try {
+				reader.close();
+			}
+			catch (IOException e) {
+				failure = e;
+			}
+		}
+		readers.clear();
+		for (Run run : runs) {
+			try {
+				Files.deleteIfExists(run.path);
+			}
+			catch (IOException e) {
+				failure = e;
+			}
+		}
+		runs.clear();
+		buffer.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * A sorted run stored in a temporary file.
+	 */
+	private static class Run {
+
+		private final Path path;
+		private final int numEntries;
+
+		private Run(Path path, int numEntries) {
+			this.path = path;
+			this.numEntries = numEntries;
+		}
+	}
+
+	/**
+	 * Reads the entries of a run one by one, the current entry is the next one to be merged.
+	 */
+	private static class RunReader implements Closeable {
+
+		private final DataInputStream in;
+
+		/** number of entries not read yet */
+		private int remaining;
+
+		/** the current entry, <code>null</code> if all entries have been read */
+		private MetaFileEntry current;
+
+		private RunReader(Run run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.path), RUN_BUFFER_SIZE));
+			remaining = run.numEntries;
+		}
+
+		/**
+		 * Reads the next entry into {@link #current}.
+		 * @return <code>false</code> if there are no more entries
+		 */
+		private boolean advance() throws IOException {
+			if (remaining == 0) {
+				current = null;
+				return false;
+			}
+			current = readEntry(in);
+			remaining--;
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * Merges sorted runs, always returns the smallest current entry of all runs.
+	 */
+	private static class MergeIterator implements Iterator<MetaFileEntry> {
+
+		private final PriorityQueue<RunReader> queue;
+
+		private MergeIterator(List<RunReader> runReaders) throws IOException {
+			queue = new PriorityQueue<>(Math.max(1, runReaders.size()), (reader1, reader2) -> ENTRY_ORDER.compare(reader1.current, reader2.current));
+			for (RunReader reader : runReaders) {
+				if (reader.advance()) {
+					queue.add(reader);
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !queue.isEmpty();
+		}
+
+		@Override
+		public MetaFileEntry next() {
+			RunReader reader = queue.poll();
+			if (reader == null) {
+				throw new NoSuchElementException();
+			}
+			MetaFileEntry entry = reader.current;
+			try {
+				if (reader.advance()) {
+					queue.add(reader);
+				}
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException("A sorted run of meta file entries could not be read", e);
+			}
+			return entry;
+		}
+	}
+}
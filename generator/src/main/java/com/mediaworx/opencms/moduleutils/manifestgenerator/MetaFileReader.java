@@ -0,0 +1,562 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.ManifestWriter.SerializedFileNode;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fast reader for meta files following the fixed meta file layout (<code>fileinfo/file</code> plus
+ * <code>fileinfo/siblingcount</code> for VFS files, <code>file</code> for VFS folders). The file node, sibling count,
+ * resource id and the position of the source node are extracted in a single streaming pass, no DOM is built and no
+ * XPath is evaluated. The serialized file node is identical to the one created from the DOM by
+ * {@link ManifestWriter#serializeFileNode(org.w3c.dom.Node, org.w3c.dom.Node, Set)}.
+ * <br />
+ * If a meta file doesn't match the expected layout (or contains anything the fast reader doesn't handle, like
+ * comments, namespaces, DTDs or mixed content) <code>null</code> is returned and the caller has to fall back to DOM
+ * parsing, which also takes care of reporting errors.
+ * <br />
+ * The buffers needed for reading are kept in {@link ReadBuffers} that are reused for all meta files read by a thread,
+ * together with the StAX reader (reused by the factory), so only the serialized file node is allocated per meta file.
+ */
+class MetaFileReader {
+
+	private static final String FILEINFO_NODE_NAME = "fileinfo";
+	private static final String FILE_NODE_NAME = "file";
+	private static final String SIBLINGCOUNT_NODE_NAME = "siblingcount";
+	private static final String RESOURCEID_NODE_NAME = "uuidresource";
+	private static final String STRUCTUREID_NODE_NAME = "uuidstructure";
+	private static final String TYPE_NODE_NAME = "type";
+	private static final String SOURCE_NODE_NAME = "source";
+
+	/** JDK specific property making the StAX reader report CDATA sections as such */
+	private static final String REPORT_CDATA_PROPERTY = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+	/** JDK specific property making the StAX factory reuse a closed reader instead of creating a new one */
+	private static final String REUSE_INSTANCE_PROPERTY = "reuse-instance";
+
+	/** DOM order of attributes (sorted by name) */
+	private static final Comparator<String[]> ATTRIBUTE_ORDER = Comparator.comparing(attribute -> attribute[0]);
+
+	/** Names of the nodes whose content is written as CDATA section */
+	private final Set<String> cdataNodes;
+
+	/**
+	 * Creates a new meta file reader.
+	 * @param cdataNodes    names of the nodes whose content is written as CDATA section
+	 */
+	MetaFileReader(Set<String> cdataNodes) {
+		this.cdataNodes = cdataNodes;
+	}
+
+	/**
+	 * Creates a StAX factory configured for reading meta files. StAX factories are not guaranteed to be thread safe,
+	 * so every parser thread needs its own (see {@link XmlParserPool}). If supported, the factory reuses the last
+	 * reader it created once that reader is closed.
+	 * @return  the factory
+	 */
+	static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+		if (factory.isPropertySupported(REPORT_CDATA_PROPERTY)) {
+			factory.setProperty(REPORT_CDATA_PROPERTY, Boolean.TRUE);
+		}
+		if (factory.isPropertySupported(REUSE_INSTANCE_PROPERTY)) {
+			factory.setProperty(REUSE_INSTANCE_PROPERTY, Boolean.TRUE);
+		}
+		return factory;
+	}
+
+	/**
+	 * Reads the given meta file.
+	 * @param inputFactory          StAX factory created with {@link #createInputFactory()} (must not be used by other
+	 *                              threads at the same time)
+	 * @param buffers               the buffers of the current thread (must not be used by other threads at the same
+	 *                              time)
+	 * @param metaXmlFilePath       path of the VFS file or folder meta file
+	 * @param isFolder              <code>true</code> if the meta file is a VFS folder meta file, <code>false</code>
+	 *                              otherwise
+	 * @param metaFileSize          size of the meta file (used as cache key)
+	 * @param metaFileLastModified  modification date of the meta file (used as cache key)
+	 * @return  the fragment template, <code>null</code> if the meta file can't be handled by the fast reader
+	 */
+	FragmentTemplate read(XMLInputFactory inputFactory, ReadBuffers buffers, String metaXmlFilePath, boolean isFolder, long metaFileSize, long metaFileLastModified) {
+		try {
+			XMLStreamReader reader = inputFactory.createXMLStreamReader(buffers.readFile(Paths.get(metaXmlFilePath)));
+			try {
+				return isFolder
+						? readFolderMetaFile(reader, buffers, metaXmlFilePath, metaFileSize, metaFileLastModified)
+						: readFileMetaFile(reader, buffers, metaXmlFilePath, metaFileSize, metaFileLastModified);
+			}
+			finally {
+				// a closed reader is reused by the factory
+				reader.close();
+			}
+		}
+		catch (IOException | XMLStreamException | UnsupportedLayoutException e) {
+			// the serializer may have stopped in the middle of the file node, so it's not reused
+			buffers.serializer = null;
+			// the DOM parser takes over (and reports the error if there is one)
+			return null;
+		}
+	}
+
+	private FragmentTemplate readFolderMetaFile(XMLStreamReader reader, ReadBuffers buffers, String metaXmlFilePath, long metaFileSize, long metaFileLastModified) throws XMLStreamException, UnsupportedLayoutException {
+		nextRootElement(reader, FILE_NODE_NAME);
+		FileNodeSerializer serializer = buffers.getSerializer(cdataNodes);
+		serializer.serialize(reader);
+		readToEnd(reader);
+		return new FragmentTemplate(metaXmlFilePath, metaFileSize, metaFileLastModified, serializer.toSerializedFileNode(), serializer.type, 0, null, serializer.structureId);
+	}
+
+	private FragmentTemplate readFileMetaFile(XMLStreamReader reader, ReadBuffers buffers, String metaXmlFilePath, long metaFileSize, long metaFileLastModified) throws XMLStreamException, UnsupportedLayoutException {
+		nextRootElement(reader, FILEINFO_NODE_NAME);
+		FileNodeSerializer serializer = null;
+		String siblingCount = null;
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = getName(reader);
+				if (FILE_NODE_NAME.equals(name) && serializer == null) {
+					serializer = buffers.getSerializer(cdataNodes);
+					serializer.serialize(reader);
+				}
+				else if (SIBLINGCOUNT_NODE_NAME.equals(name) && siblingCount == null && reader.getAttributeCount() == 0) {
+					siblingCount = reader.getElementText();
+				}
+				else {
+					throw new UnsupportedLayoutException();
+				}
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				break;
+			}
+			else {
+				checkIgnorableEvent(reader, event);
+			}
+		}
+		readToEnd(reader);
+		if (serializer == null || siblingCount == null) {
+			throw new UnsupportedLayoutException();
+		}
+		int numSiblings;
+		try {
+			numSiblings = Integer.parseInt(siblingCount);
+		}
+		catch (NumberFormatException e) {
+			throw new UnsupportedLayoutException();
+		}
+		if (numSiblings >= 2 && serializer.resourceId == null) {
+			throw new UnsupportedLayoutException();
+		}
+		return new FragmentTemplate(metaXmlFilePath, metaFileSize, metaFileLastModified, serializer.toSerializedFileNode(), serializer.type, numSiblings, serializer.resourceId, serializer.structureId);
+	}
+
+	/**
+	 * Moves the reader to the root element and checks its name.
+	 */
+	private static void nextRootElement(XMLStreamReader reader, String expectedName) throws XMLStreamException, UnsupportedLayoutException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if (!expectedName.equals(getName(reader))) {
+					throw new UnsupportedLayoutException();
+				}
+				return;
+			}
+			if (event == XMLStreamConstants.DTD || event == XMLStreamConstants.ENTITY_REFERENCE) {
+				throw new UnsupportedLayoutException();
+			}
+		}
+		throw new UnsupportedLayoutException();
+	}
+
+	/**
+	 * Reads the rest of the document following the root element, so malformed documents are detected.
+	 */
+	private static void readToEnd(XMLStreamReader reader) throws XMLStreamException, UnsupportedLayoutException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event != XMLStreamConstants.END_DOCUMENT) {
+				checkIgnorableEvent(reader, event);
+			}
+		}
+	}
+
+	/**
+	 * Whitespace, comments and processing instructions are ignored outside of the file node, anything else means the
+	 * meta file layout is not supported.
+	 */
+	private static void checkIgnorableEvent(XMLStreamReader reader, int event) throws UnsupportedLayoutException {
+		switch (event) {
+			case XMLStreamConstants.COMMENT:
+			case XMLStreamConstants.PROCESSING_INSTRUCTION:
+			case XMLStreamConstants.SPACE:
+				return;
+			case XMLStreamConstants.CHARACTERS:
+				if (reader.isWhiteSpace()) {
+					return;
+				}
+				throw new UnsupportedLayoutException();
+			default:
+				throw new UnsupportedLayoutException();
+		}
+	}
+
+	/**
+	 * Returns the element name like DOM's <code>getNodeName()</code> (qualified name).
+	 */
+	private static String getName(XMLStreamReader reader) throws UnsupportedLayoutException {
+		if (reader.getNamespaceCount() > 0) {
+			// namespace declarations are attributes for the DOM parser, so they are left to it
+			throw new UnsupportedLayoutException();
+		}
+		String prefix = reader.getPrefix();
+		return StringUtils.isEmpty(prefix) ? reader.getLocalName() : prefix + ":" + reader.getLocalName();
+	}
+
+	/**
+	 * The buffers a thread uses for reading meta files: the content of the current meta file and the serializer of
+	 * its file node. Reused for all meta files read by the thread, buffers grown by an unusually large meta file are
+	 * dropped afterwards. Not thread safe, every parser thread has its own (see {@link XmlParserPool}).
+	 */
+	static class ReadBuffers {
+
+		/** Initial size of the buffer holding the meta file (large enough for most meta files) */
+		private static final int INITIAL_FILE_BUFFER_SIZE = 8192;
+
+		/** Maximum size of a buffer that is kept for the next meta file */
+		private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+		/** content of the meta file that is currently read */
+		private byte[] fileBuffer = new byte[INITIAL_FILE_BUFFER_SIZE];
+
+		/** stream passed to the StAX reader, reading from <code>fileBuffer</code> */
+		private final ReusableByteArrayInputStream fileStream = new ReusableByteArrayInputStream();
+
+		/** serializer of the file node, <code>null</code> if a new one is needed */
+		private FileNodeSerializer serializer;
+
+		/**
+		 * Reads the given file into the file buffer.
+		 * @param path  the file
+		 * @return  stream reading the file's content from the buffer, valid until the next file is read
+		 * @throws IOException if the file can not be read
+		 */
+		private InputStream readFile(Path path) throws IOException {
+			if (fileBuffer.length > MAX_RETAINED_BUFFER_SIZE) {
+				fileBuffer = new byte[INITIAL_FILE_BUFFER_SIZE];
+			}
+			int length = 0;
+			try (InputStream in = Files.newInputStream(path)) {
+				int numRead;
+				while ((numRead = in.read(fileBuffer, length, fileBuffer.length - length)) >= 0) {
+					length += numRead;
+					if (length == fileBuffer.length) {
+						fileBuffer = Arrays.copyOf(fileBuffer, 2 * fileBuffer.length);
+					}
+				}
+			}
+			fileStream.setContent(fileBuffer, length);
+			return fileStream;
+		}
+
+		/**
+		 * Returns the serializer for the next file node.
+		 * @param cdataNodes    names of the nodes whose content is written as CDATA section
+		 * @return  the serializer, reset for a new file node
+		 * @throws XMLStreamException if a new serializer is needed and its StAX writer can not be created
+		 */
+		private FileNodeSerializer getSerializer(Set<String> cdataNodes) throws XMLStreamException {
+			if (serializer == null || serializer.stringWriter.getBuffer().capacity() > MAX_RETAINED_BUFFER_SIZE) {
+				serializer = new FileNodeSerializer();
+			}
+			serializer.reset(cdataNodes);
+			return serializer;
+		}
+	}
+
+	/**
+	 * A byte array input stream whose content can be replaced.
+	 */
+	private static class ReusableByteArrayInputStream extends ByteArrayInputStream {
+
+		private ReusableByteArrayInputStream() {
+			super(new byte[0]);
+		}
+
+		private void setContent(byte[] content, int length) {
+			buf = content;
+			pos = 0;
+			count = length;
+			mark = 0;
+		}
+	}
+
+	/**
+	 * Serializes a file node while it is read. Elements are written as soon as it is known whether they have child
+	 * elements, so the formatting is the same as for DOM serialization. The serializer is reused for the file nodes
+	 * read by a thread (see {@link ReadBuffers}), it is reset before each file node.
+	 */
+	private static class FileNodeSerializer {
+
+		private final StringWriter stringWriter = new StringWriter(2048);
+		private final XMLStreamWriter writer;
+
+		/** names of the nodes whose content is written as CDATA section */
+		private Set<String> cdataNodes;
+
+		/** element whose start tag is not written yet (it's unknown yet whether it has child elements) */
+		private String pendingName;
+		private final List<String[]> pendingAttributes = new ArrayList<>();
+		private final StringBuilder pendingText = new StringBuilder();
+		private boolean pendingHasCdata;
+
+		/** text of the uuidresource, uuidstructure or type child that is currently read */
+		private final StringBuilder idText = new StringBuilder();
+
+		/** text content of the first uuidresource child of the file node */
+		private String resourceId;
+
+		/** text content of the first uuidstructure child of the file node */
+		private String structureId;
+
+		/** text content of the first type child of the file node */
+		private String type;
+
+		private int sourceStart = -1;
+		private int sourceEnd = -1;
+
+		private FileNodeSerializer() throws XMLStreamException {
+			writer = ManifestWriter.createFragmentWriter(stringWriter);
+		}
+
+		/**
+		 * Prepares the serializer for the next file node. The StAX writer is kept, it is back at the document level
+		 * once a file node has been serialized completely.
+		 * @param cdataNodes    names of the nodes whose content is written as CDATA section
+		 */
+		private void reset(Set<String> cdataNodes) {
+			this.cdataNodes = cdataNodes;
+			stringWriter.getBuffer().setLength(0);
+			pendingName = null;
+			resourceId = null;
+			structureId = null;
+			type = null;
+			sourceStart = -1;
+			sourceEnd = -1;
+		}
+
+		/**
+		 * Serializes the element the reader is positioned at, when this method returns the reader is positioned at
+		 * the element's end tag.
+		 */
+		private void serialize(XMLStreamReader reader) throws XMLStreamException, UnsupportedLayoutException {
+			int depth = ManifestWriter.FILE_NODE_DEPTH;
+			int fileNodeDepth = depth;
+			boolean inSource = false;
+			String currentChildName = null;
+			// true while the text of the uuidresource, uuidstructure or type child is read
+			boolean inIdNode = false;
+			startElement(reader);
+			while (reader.hasNext()) {
+				int event = reader.next();
+				switch (event) {
+					case XMLStreamConstants.START_ELEMENT:
+						openPendingElement(depth);
+						depth++;
+						if (depth == fileNodeDepth + 1) {
+							currentChildName = getName(reader);
+							if (SOURCE_NODE_NAME.equals(currentChildName) && sourceStart < 0) {
+								sourceStart = currentPosition();
+								inSource = true;
+							}
+							if ((RESOURCEID_NODE_NAME.equals(currentChildName) && resourceId == null) || (STRUCTUREID_NODE_NAME.equals(currentChildName) && structureId == null) || (TYPE_NODE_NAME.equals(currentChildName) && type == null)) {
+								idText.setLength(0);
+								inIdNode = true;
+							}
+						}
+						startElement(reader);
+						break;
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.SPACE:
+					case XMLStreamConstants.CDATA:
+						if (pendingName == null) {
+							// text following a child element, only whitespace is allowed here
+							if (!reader.isWhiteSpace()) {
+								throw new UnsupportedLayoutException();
+							}
+							break;
+						}
+						pendingText.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+						if (event == XMLStreamConstants.CDATA) {
+							pendingHasCdata = true;
+						}
+						if (inIdNode) {
+							idText.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+						}
+						break;
+					case XMLStreamConstants.END_ELEMENT:
+						endElement(depth);
+						if (depth == fileNodeDepth + 1) {
+							if (inSource) {
+								sourceEnd = currentPosition();
+								inSource = false;
+							}
+							if (inIdNode) {
+								if (RESOURCEID_NODE_NAME.equals(currentChildName)) {
+									resourceId = idText.toString();
+								}
+								else if (STRUCTUREID_NODE_NAME.equals(currentChildName)) {
+									structureId = idText.toString();
+								}
+								else {
+									type = idText.toString();
+								}
+								inIdNode = false;
+							}
+						}
+						if (depth == fileNodeDepth) {
+							// an empty file node's tag is closed here, so the writer can be reused
+							ManifestWriter.closePendingTag(writer);
+							writer.flush();
+							return;
+						}
+						depth--;
+						break;
+					default:
+						// comments, processing instructions and entity references are left to the DOM parser
+						throw new UnsupportedLayoutException();
+				}
+			}
+			throw new UnsupportedLayoutException();
+		}
+
+		private void startElement(XMLStreamReader reader) throws UnsupportedLayoutException {
+			pendingName = getName(reader);
+			pendingAttributes.clear();
+			for (int i = 0; i < reader.getAttributeCount(); i++) {
+				String prefix = reader.getAttributePrefix(i);
+				String name = StringUtils.isEmpty(prefix) ? reader.getAttributeLocalName(i) : prefix + ":" + reader.getAttributeLocalName(i);
+				pendingAttributes.add(new String[] { name, reader.getAttributeValue(i) });
+			}
+			if (pendingAttributes.size() > 1) {
+				// the DOM keeps attributes sorted by name
+				pendingAttributes.sort(ATTRIBUTE_ORDER);
+			}
+			pendingText.setLength(0);
+			pendingHasCdata = false;
+		}
+
+		/**
+		 * Writes the start tag of the pending element, called when it turns out it has child elements.
+		 */
+		private void openPendingElement(int depth) throws XMLStreamException, UnsupportedLayoutException {
+			if (pendingName == null) {
+				return;
+			}
+			if (StringUtils.isNotBlank(pendingText) || pendingHasCdata) {
+				// mixed content
+				throw new UnsupportedLayoutException();
+			}
+			ManifestWriter.writeIndent(writer, depth);
+			writer.writeStartElement(pendingName);
+			writeAttributes();
+			pendingName = null;
+		}
+
+		private void endElement(int depth) throws XMLStreamException {
+			if (pendingName == null) {
+				// element with child elements
+				ManifestWriter.writeIndent(writer, depth);
+				writer.writeEndElement();
+				return;
+			}
+			ManifestWriter.writeIndent(writer, depth);
+			if (ManifestWriter.isEmptyContent(pendingText, pendingHasCdata)) {
+				writer.writeEmptyElement(pendingName);
+				writeAttributes();
+			}
+			else {
+				writer.writeStartElement(pendingName);
+				writeAttributes();
+				ManifestWriter.writeTextContent(writer, pendingName, pendingText.toString(), cdataNodes);
+				writer.writeEndElement();
+			}
+			pendingName = null;
+		}
+
+		private void writeAttributes() throws XMLStreamException {
+			for (String[] attribute : pendingAttributes) {
+				writer.writeAttribute(attribute[0], attribute[1]);
+			}
+		}
+
+		private int currentPosition() throws XMLStreamException {
+			ManifestWriter.closePendingTag(writer);
+			writer.flush();
+			return stringWriter.getBuffer().length();
+		}
+
+		private SerializedFileNode toSerializedFileNode() throws XMLStreamException {
+			// the writer is flushed at the end of the file node already, it's not closed since it is reused
+			return new SerializedFileNode(stringWriter.toString(), sourceStart, sourceEnd);
+		}
+	}
+
+	/**
+	 * Thrown if a meta file doesn't match the layout supported by the fast reader.
+	 */
+	private static class UnsupportedLayoutException extends Exception {
+
+		private UnsupportedLayoutException() {
+			super(null, null, false, false);
+		}
+	}
+}
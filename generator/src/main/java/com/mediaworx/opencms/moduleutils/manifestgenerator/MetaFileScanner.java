@@ -0,0 +1,233 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Scans the manifest root for VFS file meta files and folders in a single pass. The file attributes of every entry
+ * are read once during the walk and handed to the generator with the entry. Folders rejected by the scanner's
+ * {@link ScanFilter} are pruned, their content is never listed.
+ */
+class MetaFileScanner {
+
+	/**
+	 * Receives the entries found by {@link #scan(Path, Set, EntryConsumer)}.
+	 */
+	interface EntryConsumer {
+
+		/**
+		 * Handles an entry found during the scan.
+		 * @param entry the entry
+		 * @throws IOException if handling the entry fails (the scan is aborted)
+		 */
+		void accept(MetaFileEntry entry) throws IOException;
+	}
+
+	/** The manifest root, the filter is applied to paths relative to it */
+	private final Path manifestRoot;
+
+	/** File name suffix for VFS folder meta files */
+	private final String folderMetaSuffix;
+
+	/** File name suffix for VFS file meta files */
+	private final String fileMetaSuffix;
+
+	/** Filter deciding which files and folders are listed */
+	private final ScanFilter filter;
+
+	/**
+	 * Creates a new scanner.
+	 * @param manifestRoot      the manifest root
+	 * @param folderMetaSuffix  file name suffix for VFS folder meta files
+	 * @param fileMetaSuffix    file name suffix for VFS file meta files
+	 * @param filter            filter deciding which files and folders are listed
+	 */
+	MetaFileScanner(Path manifestRoot, String folderMetaSuffix, String fileMetaSuffix, ScanFilter filter) {
+		this.manifestRoot = manifestRoot;
+		this.folderMetaSuffix = folderMetaSuffix;
+		this.fileMetaSuffix = fileMetaSuffix;
+		this.filter = filter;
+	}
+
+	/**
+	 * Lists all VFS folders and VFS file meta files below the given root, sorted by path (so folders are listed before
+	 * their content). VFS folder meta files are not listed as separate entries, their attributes are attached to the
+	 * entry of the corresponding folder.
+	 * @param root          the manifest root (or a folder below it, which is not listed itself)
+	 * @param excludedPaths paths of files that are not listed (like the manifest stub), temporary files left over from
+	 *                      writing one of them (see {@link ManifestOutputFile}) aren't listed either
+	 * @return  the sorted list of entries
+	 * @throws IOException if a folder or the attributes of a file can not be read
+	 */
+	List<MetaFileEntry> scan(Path root, Set<String> excludedPaths) throws IOException {
+		List<Path> folders = new ArrayList<>();
+		Map<String, BasicFileAttributes> attributesByPath = new HashMap<>();
+		List<MetaFileEntry> entries = new ArrayList<>();
+
+		Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+				// the manifest root itself is not part of the VFS
+				if (!dir.equals(root)) {
+					if (!filter.acceptFolder(manifestRoot, dir)) {
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					folders.add(dir);
+					attributesByPath.put(dir.toString(), attributes);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				String path = file.toString();
+				if (path.endsWith(folderMetaSuffix)) {
+					// folder meta files are attached to their folders
+					attributesByPath.put(path, attributes);
+				}
+				else if (!isExcluded(path, excludedPaths) && filter.acceptFile(manifestRoot, file, fileMetaSuffix)) {
+					long lastModified = attributes.lastModifiedTime().toMillis();
+					entries.add(new MetaFileEntry(path, path, false, lastModified, attributes.size(), lastModified));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		for (Path folder : folders) {
+			String path = folder.toString();
+			String metaXmlFilePath = path + folderMetaSuffix;
+			BasicFileAttributes folderAttributes = attributesByPath.get(path);
+			BasicFileAttributes metaFileAttributes = attributesByPath.get(metaXmlFilePath);
+			long metaFileSize = metaFileAttributes != null ? metaFileAttributes.size() : -1;
+			long metaFileLastModified = metaFileAttributes != null ? metaFileAttributes.lastModifiedTime().toMillis() : -1;
+			entries.add(new MetaFileEntry(path, metaXmlFilePath, true, folderAttributes.lastModifiedTime().toMillis(), metaFileSize, metaFileLastModified));
+		}
+
+		// Sort files and directories alphabetically (all paths share the root prefix, so this is the same order as
+		// sorting by absolute path)
+		entries.sort(Comparator.comparing(entry -> entry.path));
+		return entries;
+	}
+
+	/**
+	 * Passes all VFS folders and VFS file meta files below the given root to the given consumer in the order they are
+	 * found (unsorted), nothing is kept in memory. The attributes of each VFS folder meta file are read separately
+	 * when its folder is found.
+	 * @param root          the manifest root (or a folder below it, which is not listed itself)
+	 * @param excludedPaths paths of files that are not listed (like the manifest stub), temporary files left over from
+	 *                      writing one of them (see {@link ManifestOutputFile}) aren't listed either
+	 * @param consumer      consumer receiving the entries
+	 * @throws IOException if a folder or the attributes of a file can not be read, or if the consumer fails
+	 */
+	void scan(Path root, Set<String> excludedPaths, EntryConsumer consumer) throws IOException {
+		Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+				// the manifest root itself is not part of the VFS
+				if (!dir.equals(root)) {
+					if (!filter.acceptFolder(manifestRoot, dir)) {
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					String path = dir.toString();
+					String metaXmlFilePath = path + folderMetaSuffix;
+					BasicFileAttributes metaFileAttributes = readAttributes(metaXmlFilePath);
+					long metaFileSize = metaFileAttributes != null ? metaFileAttributes.size() : -1;
+					long metaFileLastModified = metaFileAttributes != null ? metaFileAttributes.lastModifiedTime().toMillis() : -1;
+					consumer.accept(new MetaFileEntry(path, metaXmlFilePath, true, attributes.lastModifiedTime().toMillis(), metaFileSize, metaFileLastModified));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				String path = file.toString();
+				// folder meta files are read with their folders
+				if (!path.endsWith(folderMetaSuffix) && !isExcluded(path, excludedPaths) && filter.acceptFile(manifestRoot, file, fileMetaSuffix)) {
+					long lastModified = attributes.lastModifiedTime().toMillis();
+					consumer.accept(new MetaFileEntry(path, path, false, lastModified, attributes.size(), lastModified));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Checks if a file is excluded from the scan. A temporary file of an excluded file (like the manifest) is left
+	 * over if a run is killed while it is writing, it is excluded as well since it is no meta file.
+	 * @param path          path of a file
+	 * @param excludedPaths paths of files that are not listed
+	 * @return  <code>true</code> if the file is one of the excluded files or a temporary file of one of them
+	 */
+	private static boolean isExcluded(String path, Set<String> excludedPaths) {
+		if (excludedPaths.contains(path)) {
+			return true;
+		}
+		if (!path.endsWith(ManifestOutputFile.TEMP_FILE_SUFFIX)) {
+			return false;
+		}
+		for (String excludedPath : excludedPaths) {
+			if (ManifestOutputFile.isTempFile(excludedPath, path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param path  path of a file
+	 * @return  the file's attributes, <code>null</code> if the file doesn't exist
+	 * @throws IOException if the attributes can not be read
+	 */
+	private static BasicFileAttributes readAttributes(String path) throws IOException {
+		try {
+			return Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+		}
+		catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,487 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.XmlParserPool.Parsers;
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlParseException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks the meta files found by the scan for structural problems before the manifest is generated, so broken meta
+ * files are reported in one go instead of one after the other deep into a run. Only the scan's entries and a
+ * lightweight StAX read of each meta file are used (no DOM, no serialization): folders without meta file, meta files
+ * that are not well-formed or don't follow the meta file layout, missing or non-numeric sibling counts, siblings
+ * without resource id, invalid UUIDs, duplicate structure ids and meta variables that are not going to be replaced.
+ * <br />
+ * <br />
+ * Entries are passed to the validator in batches which are checked on a thread pool, the results are merged in the
+ * order the entries were passed (so duplicate structure ids are reported for the later meta file, like during
+ * generation). The validator can be used as consumer of the scan, only a limited number of batches is pending at the
+ * same time.
+ */
+class MetaFileValidator implements MetaFileScanner.EntryConsumer, Closeable {
+
+	private static final String FILEINFO_NODE_NAME = "fileinfo";
+	private static final String FILE_NODE_NAME = "file";
+	private static final String SIBLINGCOUNT_NODE_NAME = "siblingcount";
+	private static final String TYPE_NODE_NAME = "type";
+	private static final String STRUCTUREID_NODE_NAME = "uuidstructure";
+	private static final String RESOURCEID_NODE_NAME = "uuidresource";
+	private static final String DATELASTMODIFIED_NODE_NAME = "datelastmodified";
+	private static final String DATECREATED_NODE_NAME = "datecreated";
+
+	/** Number of entries checked by one task */
+	private static final int BATCH_SIZE = 256;
+
+	/** Number of pending batches per thread, limits the memory used if the validator is fed by the scan */
+	private static final int PENDING_BATCHES_PER_THREAD = 4;
+
+	/** settings of the current run (the variable replacement flags decide which variables are allowed) */
+	private final RunContext run;
+
+	/** suffix of VFS file meta files */
+	private final String fileMetaSuffix;
+
+	/** suffix of VFS folder meta files */
+	private final String folderMetaSuffix;
+
+	/** pool the checking threads borrow their parsers from */
+	private final XmlParserPool parserPool;
+
+	private final ExecutorService executor;
+
+	private final int maxPendingBatches;
+
+	/** batches submitted to the executor whose results haven't been merged yet, in submission order */
+	private final Deque<Future<BatchResult>> pendingBatches = new ArrayDeque<>();
+
+	/** entries not submitted yet */
+	private List<MetaFileEntry> batch = new ArrayList<>(BATCH_SIZE);
+
+	/** problems found in the merged batches */
+	private final List<MetaFileProblem> problems = new ArrayList<>();
+
+	/** structure ids seen so far, the values are indexes into {@link #structureIdPaths} */
+	private final UuidIndex structureIds = new UuidIndex();
+
+	/** paths of the meta files whose structure ids have been added */
+	private final List<String> structureIdPaths = new ArrayList<>();
+
+	/** maximum number of structure ids tracked, later ids are only checked against the tracked ones */
+	private final int maxStructureIds;
+
+	/** number of entries passed to the validator */
+	private int numEntries;
+
+	/**
+	 * Creates a new validator, it has to be closed to stop its threads.
+	 * @param run               settings of the current run
+	 * @param fileMetaSuffix    suffix of VFS file meta files
+	 * @param folderMetaSuffix  suffix of VFS folder meta files
+	 * @param parserPool        pool the checking threads borrow their parsers from
+	 */
+	MetaFileValidator(RunContext run, String fileMetaSuffix, String folderMetaSuffix, XmlParserPool parserPool) {
+		this.run = run;
+		this.fileMetaSuffix = fileMetaSuffix;
+		this.folderMetaSuffix = folderMetaSuffix;
+		this.parserPool = parserPool;
+		// validation is always parallel, reading the headers is I/O bound
+		int numThreads = run.parallelism > 1 ? run.parallelism : Runtime.getRuntime().availableProcessors();
+		executor = Executors.newFixedThreadPool(numThreads, runnable -> {
+			Thread thread = new Thread(runnable, "meta-file-validator");
+			thread.setDaemon(true);
+			return thread;
+		});
+		maxPendingBatches = numThreads * PENDING_BATCHES_PER_THREAD;
+		maxStructureIds = run.memoryBudget > 0 ? (int)Math.min(Integer.MAX_VALUE, run.memoryBudget / 8 / ManifestEntryIterator.STRUCTURE_ID_BYTES) : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Adds an entry to be checked.
+	 * @param entry the entry
+	 * @throws IOException if a checking thread failed or the current thread was interrupted while waiting for the
+	 *                     pending batches
+	 */
+	@Override
+	public void accept(MetaFileEntry entry) throws IOException {
+		batch.add(entry);
+		numEntries++;
+		if (batch.size() == BATCH_SIZE) {
+			submitBatch();
+			while (pendingBatches.size() > maxPendingBatches) {
+				mergeNextBatch();
+			}
+		}
+	}
+
+	/**
+	 * Waits until all entries are checked.
+	 * @return  the problems found, sorted by path
+	 * @throws OpenCmsMetaXmlParseException if a checking thread failed or the current thread was interrupted
+	 */
+	List<MetaFileProblem> finish() throws OpenCmsMetaXmlParseException {
+		try {
+			if (!batch.isEmpty()) {
+				submitBatch();
+			}
+			while (!pendingBatches.isEmpty()) {
+				mergeNextBatch();
+			}
+		}
+		catch (IOException e) {
+			throw new OpenCmsMetaXmlParseException("The meta files could not be validated", e);
+		}
+		problems.sort(Comparator.comparing(MetaFileProblem::getPath));
+		return problems;
+	}
+
+	/**
+	 * @return the number of entries passed to the validator
+	 */
+	int getNumEntries() {
+		return numEntries;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	private void submitBatch() {
+		List<MetaFileEntry> entries = batch;
+		batch = new ArrayList<>(BATCH_SIZE);
+		pendingBatches.add(executor.submit(() -> checkBatch(entries)));
+	}
+
+	/**
+	 * Merges the result of the oldest pending batch: its problems are added and its structure ids are checked for
+	 * duplicates.
+	 */
+	private void mergeNextBatch() throws IOException {
+		BatchResult result;
+		try {
+			result = pendingBatches.poll().get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Validating the meta files was interrupted");
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new IOException("Validating the meta files failed", cause);
+		}
+		problems.addAll(result.problems);
+		for (int i = 0; i < result.structureIds.size(); i++) {
+			String structureId = result.structureIds.get(i);
+			String metaXmlFilePath = result.structureIdPaths.get(i);
+			long mostSigBits = UuidIndex.getMostSignificantBits(structureId);
+			long leastSigBits = UuidIndex.getLeastSignificantBits(structureId);
+			int firstIndex;
+			if (structureIds.size() < maxStructureIds) {
+				firstIndex = structureIds.putIfAbsent(mostSigBits, leastSigBits, structureIdPaths.size());
+				if (firstIndex < 0) {
+					structureIdPaths.add(metaXmlFilePath);
+					continue;
+				}
+			}
+			else {
+				firstIndex = structureIds.get(mostSigBits, leastSigBits);
+				if (firstIndex < 0) {
+					continue;
+				}
+			}
+			problems.add(new MetaFileProblem(metaXmlFilePath, "duplicate structure id " + structureId + ", it is used by " + structureIdPaths.get(firstIndex) + " as well"));
+		}
+	}
+
+	/**
+	 * Checks a batch of entries (runs on the executor).
+	 * @param entries   the entries
+	 * @return  the problems and structure ids found
+	 * @throws OpenCmsMetaXmlParseException if no parsers are available
+	 */
+	private BatchResult checkBatch(List<MetaFileEntry> entries) throws OpenCmsMetaXmlParseException {
+		BatchResult result = new BatchResult();
+		Parsers parsers = parserPool.borrow();
+		try {
+			for (MetaFileEntry entry : entries) {
+				check(parsers.inputFactory, entry, result);
+			}
+		}
+		finally {
+			parserPool.release(parsers);
+		}
+		return result;
+	}
+
+	/**
+	 * Checks a single VFS file meta file or folder.
+	 * @param inputFactory  StAX factory of the current thread
+	 * @param entry         the entry
+	 * @param result        result receiving the problems and the structure id
+	 */
+	private void check(XMLInputFactory inputFactory, MetaFileEntry entry, BatchResult result) {
+		if (entry.folder && entry.metaFileSize < 0) {
+			String folderName = Paths.get(entry.path).getFileName().toString();
+			result.problems.add(new MetaFileProblem(entry.path, "the folder has no meta file (" + folderName + folderMetaSuffix + ")"));
+			return;
+		}
+		String metaXmlFilePath = entry.metaXmlFilePath;
+		if (!entry.folder && !metaXmlFilePath.endsWith(fileMetaSuffix)) {
+			result.problems.add(new MetaFileProblem(metaXmlFilePath, "not a meta file (the name doesn't end with " + fileMetaSuffix + "), remove it or exclude it from the scan"));
+			return;
+		}
+
+		Header header;
+		try {
+			header = readHeader(inputFactory, metaXmlFilePath, entry.folder);
+		}
+		catch (IOException e) {
+			result.problems.add(new MetaFileProblem(metaXmlFilePath, "the meta file can not be read (" + e.getMessage() + ")"));
+			return;
+		}
+		catch (XMLStreamException e) {
+			result.problems.add(new MetaFileProblem(metaXmlFilePath, "the meta file can not be parsed (" + e.getMessage() + ")"));
+			return;
+		}
+
+		String rootNodeName = entry.folder ? FILE_NODE_NAME : FILEINFO_NODE_NAME;
+		if (!rootNodeName.equals(header.rootNodeName)) {
+			result.problems.add(new MetaFileProblem(metaXmlFilePath, "the root node is <" + header.rootNodeName + ">, expected <" + rootNodeName + ">"));
+			return;
+		}
+		if (!entry.folder) {
+			if (!header.hasFileNode) {
+				result.problems.add(new MetaFileProblem(metaXmlFilePath, "there is no file node (/fileinfo/file)"));
+				return;
+			}
+			checkSiblingCount(metaXmlFilePath, header, result);
+		}
+		if (isBlank(header.type)) {
+			result.problems.add(new MetaFileProblem(metaXmlFilePath, "the resource type is missing"));
+		}
+		checkId(metaXmlFilePath, "structure id", header.structureId, OpenCmsModuleManifestGenerator.META_VAR_UUIDSTRUCTURE, true, result);
+		if (!entry.folder) {
+			checkId(metaXmlFilePath, "resource id", header.resourceId, OpenCmsModuleManifestGenerator.META_VAR_UUIDRESOURCE, false, result);
+		}
+		checkDate(metaXmlFilePath, header.dateLastModified, OpenCmsModuleManifestGenerator.META_VAR_DATELASTMODIFIED, result);
+		checkDate(metaXmlFilePath, header.dateCreated, OpenCmsModuleManifestGenerator.META_VAR_DATECREATED, result);
+	}
+
+	private static void checkSiblingCount(String metaXmlFilePath, Header header, BatchResult result) {
+		if (header.siblingCount == null) {
+			result.problems.add(new MetaFileProblem(metaXmlFilePath, "the sibling count is missing (/fileinfo/siblingcount)"));
+			return;
+		}
+		int numSiblings;
+		try {
+			numSiblings = Integer.parseInt(header.siblingCount.trim());
+		}
+		catch (NumberFormatException e) {
+			result.problems.add(new MetaFileProblem(metaXmlFilePath, "the sibling count \"" + header.siblingCount + "\" is not a number"));
+			return;
+		}
+		if (numSiblings < 1) {
+			result.problems.add(new MetaFileProblem(metaXmlFilePath, "the sibling count is " + numSiblings + ", it must be at least 1"));
+		}
+		else if (numSiblings >= 2 && isBlank(header.resourceId)) {
+			result.problems.add(new MetaFileProblem(metaXmlFilePath, "the file has " + numSiblings + " siblings, but no resource id"));
+		}
+	}
+
+	/**
+	 * Checks a structure or resource id: it has to be a UUID, or the meta variable if id variables are replaced.
+	 * Structure ids that are UUIDs are added to the result for the duplicate check.
+	 */
+	private void checkId(String metaXmlFilePath, String description, String id, String variable, boolean required, BatchResult result) {
+		if (isBlank(id)) {
+			if (required) {
+				result.problems.add(new MetaFileProblem(metaXmlFilePath, "the " + description + " is missing"));
+			}
+			return;
+		}
+		id = id.trim();
+		if (variable.equals(id)) {
+			if (!run.replaceIdVariables) {
+				result.problems.add(new MetaFileProblem(metaXmlFilePath, "the " + description + " is the meta variable " + variable + ", but id variables are not replaced"));
+			}
+		}
+		else if (!UuidIndex.isUuid(id)) {
+			result.problems.add(new MetaFileProblem(metaXmlFilePath, "the " + description + " \"" + id + "\" is not a valid UUID"));
+		}
+		else if (required) {
+			result.structureIds.add(id);
+			result.structureIdPaths.add(metaXmlFilePath);
+		}
+	}
+
+	private void checkDate(String metaXmlFilePath, String date, String variable, BatchResult result) {
+		if (date != null && variable.equals(date.trim()) && !run.replaceDateVariables) {
+			result.problems.add(new MetaFileProblem(metaXmlFilePath, "the meta variable " + variable + " is used, but date variables are not replaced"));
+		}
+	}
+
+	/**
+	 * Reads the values checked by the validator from a meta file in a single streaming pass: the root node, the file
+	 * node's type, ids and dates and (for VFS files) the sibling count.
+	 * @param inputFactory      StAX factory of the current thread
+	 * @param metaXmlFilePath   path of the meta file
+	 * @param isFolder          <code>true</code> for VFS folder meta files
+	 * @return  the values read
+	 * @throws IOException if the meta file can not be read
+	 * @throws XMLStreamException if the meta file is not well-formed
+	 */
+	private static Header readHeader(XMLInputFactory inputFactory, String metaXmlFilePath, boolean isFolder) throws IOException, XMLStreamException {
+		Header header = new Header();
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(metaXmlFilePath)))) {
+			XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+			try {
+				// the file node is the root node of folder meta files and a child of the root node of file meta files
+				int fileNodeDepth = isFolder ? 1 : 2;
+				int depth = 0;
+				boolean inFileNode = false;
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.END_ELEMENT) {
+						depth--;
+						if (depth < fileNodeDepth) {
+							inFileNode = false;
+						}
+						continue;
+					}
+					if (event != XMLStreamConstants.START_ELEMENT) {
+						continue;
+					}
+					depth++;
+					String name = reader.getLocalName();
+					if (depth == 1) {
+						header.rootNodeName = name;
+						if (isFolder) {
+							inFileNode = FILE_NODE_NAME.equals(name);
+						}
+					}
+					else if (!isFolder && depth == 2) {
+						if (FILE_NODE_NAME.equals(name)) {
+							header.hasFileNode = true;
+							inFileNode = true;
+						}
+						else if (SIBLINGCOUNT_NODE_NAME.equals(name)) {
+							header.siblingCount = reader.getElementText();
+							depth--;
+						}
+					}
+					else if (inFileNode && depth == fileNodeDepth + 1 && header.setFileNodeValue(name, reader)) {
+						// the text was read up to the end element
+						depth--;
+					}
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+		return header;
+	}
+
+	private static boolean isBlank(String value) {
+		return value == null || value.trim().isEmpty();
+	}
+
+	/**
+	 * The values read from a meta file.
+	 */
+	private static class Header {
+		String rootNodeName;
+		boolean hasFileNode;
+		String siblingCount;
+		String type;
+		String structureId;
+		String resourceId;
+		String dateLastModified;
+		String dateCreated;
+
+		/**
+		 * Reads the value of a child node of the file node, if it is one of the checked nodes.
+		 * @return  <code>true</code> if the node's text was read (up to its end element)
+		 */
+		boolean setFileNodeValue(String name, XMLStreamReader reader) throws XMLStreamException {
+			switch (name) {
+				case TYPE_NODE_NAME:
+					type = reader.getElementText();
+					return true;
+				case STRUCTUREID_NODE_NAME:
+					structureId = reader.getElementText();
+					return true;
+				case RESOURCEID_NODE_NAME:
+					resourceId = reader.getElementText();
+					return true;
+				case DATELASTMODIFIED_NODE_NAME:
+					dateLastModified = reader.getElementText();
+					return true;
+				case DATECREATED_NODE_NAME:
+					dateCreated = reader.getElementText();
+					return true;
+				default:
+					return false;
+			}
+		}
+	}
+
+	/**
+	 * The problems and structure ids found in a batch.
+	 */
+	private static class BatchResult {
+		final List<MetaFileProblem> problems = new ArrayList<>();
+		final List<String> structureIds = new ArrayList<>();
+		final List<String> structureIdPaths = new ArrayList<>();
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+/**
+ * The meta variables that may be used in meta files, see the <code>META_VAR_*</code> constants of
+ * {@link OpenCmsModuleManifestGenerator}.
+ */
+enum MetaVariable {
+
+	SOURCE(OpenCmsModuleManifestGenerator.META_VAR_SOURCE),
+	DESTINATION(OpenCmsModuleManifestGenerator.META_VAR_DESTINATION),
+	UUIDSTRUCTURE(OpenCmsModuleManifestGenerator.META_VAR_UUIDSTRUCTURE),
+	UUIDRESOURCE(OpenCmsModuleManifestGenerator.META_VAR_UUIDRESOURCE),
+	DATELASTMODIFIED(OpenCmsModuleManifestGenerator.META_VAR_DATELASTMODIFIED),
+	DATECREATED(OpenCmsModuleManifestGenerator.META_VAR_DATECREATED),
+	CREATEDATE(OpenCmsModuleManifestGenerator.META_VAR_CREATEDATE);
+
+	/** all meta variables (cached, <code>values()</code> creates a new array on every call) */
+	private static final MetaVariable[] ALL = values();
+
+	/** the placeholder used in meta files, e.g. <code>${source}</code> */
+	private final String placeholder;
+
+	MetaVariable(String placeholder) {
+		this.placeholder = placeholder;
+	}
+
+	/**
+	 * @return the placeholder used in meta files, e.g. <code>${source}</code>
+	 */
+	String getPlaceholder() {
+		return placeholder;
+	}
+
+	/**
+	 * @return the number of meta variables
+	 */
+	static int count() {
+		return ALL.length;
+	}
+
+	/**
+	 * Returns the meta variable whose placeholder starts at the given position of the text.
+	 * @param text      the text
+	 * @param position  position of the placeholder's "$"
+	 * @return  the meta variable, <code>null</code> if there is no known placeholder at the given position
+	 */
+	static MetaVariable forPlaceholderAt(String text, int position) {
+		for (MetaVariable variable : ALL) {
+			if (text.startsWith(variable.placeholder, position)) {
+				return variable;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import org.apache.commons.io.output.StringBuilderWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Text containing meta variables, split once into literal segments and variables, so it can be rendered with
+ * different values in a single pass without searching for the variables again. Values are escaped depending on their
+ * position in the text (XML text, CDATA section or raw text).
+ */
+class MetaVariableTemplate {
+
+	private static final String CDATA_START = "<![CDATA[";
+	private static final String CDATA_END = "]]>";
+
+	/** values are XML escaped */
+	private static final byte MODE_XML = 0;
+
+	/** values are inserted into a CDATA section, contained CDATA end markers are split */
+	private static final byte MODE_CDATA = 1;
+
+	/** values are inserted as they are */
+	private static final byte MODE_RAW = 2;
+
+	/** Shared arrays of the templates without variables */
+	private static final int[] NO_STARTS = new int[0];
+	private static final MetaVariable[] NO_VARIABLES = new MetaVariable[0];
+	private static final byte[] NO_MODES = new byte[0];
+
+	/** the original text */
+	private final String text;
+
+	/** start positions of the variables in the text */
+	private final int[] variableStarts;
+
+	/** the variables */
+	private final MetaVariable[] variables;
+
+	/** escaping mode for each variable */
+	private final byte[] modes;
+
+	private MetaVariableTemplate(String text, int[] variableStarts, MetaVariable[] variables, byte[] modes) {
+		this.text = text;
+		this.variableStarts = variableStarts;
+		this.variables = variables;
+		this.modes = modes;
+	}
+
+	/**
+	 * Compiles serialized XML, values are escaped for XML text or CDATA sections.
+	 * @param xml   the serialized XML
+	 * @return  the compiled template
+	 */
+	static MetaVariableTemplate compileXml(String xml) {
+		return compile(xml, true);
+	}
+
+	/**
+	 * Compiles plain text, values are inserted without escaping.
+	 * @param text  the text
+	 * @return  the compiled template
+	 */
+	static MetaVariableTemplate compileText(String text) {
+		return compile(text, false);
+	}
+
+	private static MetaVariableTemplate compile(String text, boolean isXml) {
+		// the text is scanned twice (counting the variables first), so no temporary lists are needed
+		int numVariables = findVariables(text, isXml, null, null, null);
+		if (numVariables == 0) {
+			return new MetaVariableTemplate(text, NO_STARTS, NO_VARIABLES, NO_MODES);
+		}
+		int[] starts = new int[numVariables];
+		MetaVariable[] variables = new MetaVariable[numVariables];
+		byte[] modes = new byte[numVariables];
+		findVariables(text, isXml, starts, variables, modes);
+		return new MetaVariableTemplate(text, starts, variables, modes);
+	}
+
+	/**
+	 * Finds the meta variables in the text.
+	 * @param text      the text
+	 * @param isXml     <code>true</code> if the text is serialized XML
+	 * @param starts    receives the start positions of the variables, <code>null</code> if the variables are only
+	 *                  counted
+	 * @param variables receives the variables, <code>null</code> if the variables are only counted
+	 * @param modes     receives the escaping mode for each variable, <code>null</code> if the variables are only
+	 *                  counted
+	 * @return  the number of variables
+	 */
+	private static int findVariables(String text, boolean isXml, int[] starts, MetaVariable[] variables, byte[] modes) {
+		if (text.indexOf('$') < 0) {
+			return 0;
+		}
+		int numVariables = 0;
+		boolean inCdata = false;
+		int i = 0;
+		while (i < text.length()) {
+			char c = text.charAt(i);
+			if (c == '$') {
+				MetaVariable variable = MetaVariable.forPlaceholderAt(text, i);
+				if (variable != null) {
+					if (starts != null) {
+						starts[numVariables] = i;
+						variables[numVariables] = variable;
+						modes[numVariables] = !isXml ? MODE_RAW : inCdata ? MODE_CDATA : MODE_XML;
+					}
+					numVariables++;
+					i += variable.getPlaceholder().length();
+					continue;
+				}
+			}
+			else if (isXml && c == '<' && text.startsWith(CDATA_START, i)) {
+				inCdata = true;
+				i += CDATA_START.length();
+				continue;
+			}
+			else if (isXml && inCdata && c == ']' && text.startsWith(CDATA_END, i)) {
+				inCdata = false;
+				i += CDATA_END.length();
+				continue;
+			}
+			i++;
+		}
+		return numVariables;
+	}
+
+	/**
+	 * @return <code>true</code> if the text contains at least one meta variable
+	 */
+	boolean hasVariables() {
+		return variables.length > 0;
+	}
+
+	/**
+	 * @return the original text
+	 */
+	String getText() {
+		return text;
+	}
+
+	/**
+	 * Renders the template with the given values to the given writer, leaving out the range
+	 * [<code>skipStart</code>, <code>skipEnd</code>) of the original text. The range must not cut through a variable.
+	 * @param out       the writer
+	 * @param values    the values for the meta variables
+	 * @param skipStart start of the range to be left out, -1 if nothing is to be left out
+	 * @param skipEnd   end (exclusive) of the range to be left out
+	 * @throws IOException if writing fails
+	 */
+	void render(Writer out, MetaVariableValues values, int skipStart, int skipEnd) throws IOException {
+		int literalStart = 0;
+		for (int v = 0; v < variables.length; v++) {
+			int variableStart = variableStarts[v];
+			int variableEnd = variableStart + variables[v].getPlaceholder().length();
+			writeLiteral(out, literalStart, variableStart, skipStart, skipEnd);
+			if (skipStart < 0 || variableStart < skipStart || variableStart >= skipEnd) {
+				String value = values.get(variables[v]);
+				if (value == null) {
+					out.write(text, variableStart, variableEnd - variableStart);
+				}
+				else {
+					writeValue(out, value, modes[v]);
+				}
+			}
+			literalStart = variableEnd;
+		}
+		writeLiteral(out, literalStart, text.length(), skipStart, skipEnd);
+	}
+
+	/**
+	 * Renders the template with the given values.
+	 * @param values    the values for the meta variables
+	 * @return  the rendered text
+	 */
+	String render(MetaVariableValues values) {
+		if (!hasVariables()) {
+			return text;
+		}
+		if (variables.length == 1 && modes[0] == MODE_RAW && variables[0].getPlaceholder().length() == text.length()) {
+			// the text is just the variable (like most ids), so the value can be used as it is
+			String value = values.get(variables[0]);
+			return value != null ? value : text;
+		}
+		StringBuilderWriter out = new StringBuilderWriter(text.length() + 64);
+		try {
+			render(out, values, -1, -1);
+		}
+		catch (IOException e) {
+			// can't happen when writing to a StringBuilder
+			throw new IllegalStateException(e);
+		}
+		return out.toString();
+	}
+
+	private void writeLiteral(Writer out, int start, int end, int skipStart, int skipEnd) throws IOException {
+		if (skipStart < 0) {
+			if (end > start) {
+				out.write(text, start, end - start);
+			}
+			return;
+		}
+		int beforeSkipEnd = Math.min(end, skipStart);
+		if (beforeSkipEnd > start) {
+			out.write(text, start, beforeSkipEnd - start);
+		}
+		int afterSkipStart = Math.max(start, skipEnd);
+		if (end > afterSkipStart) {
+			out.write(text, afterSkipStart, end - afterSkipStart);
+		}
+	}
+
+	private static void writeValue(Writer out, String value, byte mode) throws IOException {
+		if (mode == MODE_RAW) {
+			out.write(value);
+			return;
+		}
+		int unescapedStart = 0;
+		for (int i = 0; i < value.length(); i++) {
+			String escaped = mode == MODE_CDATA ? escapeCdata(value, i) : escapeXml(value.charAt(i));
+			if (escaped != null) {
+				out.write(value, unescapedStart, i - unescapedStart);
+				out.write(escaped);
+				unescapedStart = i + 1;
+			}
+		}
+		out.write(value, unescapedStart, value.length() - unescapedStart);
+	}
+
+	private static String escapeXml(char c) {
+		switch (c) {
+			case '&':
+				return "&amp;";
+			case '<':
+				return "&lt;";
+			case '>':
+				return "&gt;";
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * "]]>" can not be contained in a CDATA section, so the section is split at the "&gt;".
+	 */
+	private static String escapeCdata(String value, int i) {
+		if (value.charAt(i) == '>' && i >= 2 && value.charAt(i - 1) == ']' && value.charAt(i - 2) == ']') {
+			return "]]><![CDATA[>";
+		}
+		return null;
+	}
+}
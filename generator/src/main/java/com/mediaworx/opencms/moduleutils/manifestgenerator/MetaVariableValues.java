@@ -0,0 +1,65 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import java.util.Arrays;
+
+/**
+ * Values for the meta variables of one VFS file or folder. Variables without a value are not replaced. Instances may
+ * be reused for multiple entries (see {@link #clear()}).
+ */
+class MetaVariableValues {
+
+	private final String[] values = new String[MetaVariable.count()];
+
+	/**
+	 * Sets the value for the given meta variable.
+	 * @param variable  the meta variable
+	 * @param value     the value, <code>null</code> if the variable should not be replaced
+	 */
+	void set(MetaVariable variable, String value) {
+		values[variable.ordinal()] = value;
+	}
+
+	/**
+	 * Returns the value for the given meta variable.
+	 * @param variable  the meta variable
+	 * @return  the value, <code>null</code> if the variable should not be replaced
+	 */
+	String get(MetaVariable variable) {
+		return values[variable.ordinal()];
+	}
+
+	/**
+	 * Removes all values.
+	 */
+	void clear() {
+		Arrays.fill(values, null);
+	}
+}
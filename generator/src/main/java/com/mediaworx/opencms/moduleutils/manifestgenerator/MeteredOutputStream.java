@@ -0,0 +1,102 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream counting the bytes written to the underlying stream and the time spent writing them. Meant to wrap
+ * unbuffered file streams below a buffer, so only a few (large) writes are measured.
+ */
+class MeteredOutputStream extends FilterOutputStream {
+
+	private long bytesWritten;
+	private long writeNanos;
+	private int numWrites;
+
+	MeteredOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		long start = System.nanoTime();
+		out.write(b);
+		writeNanos += System.nanoTime() - start;
+		bytesWritten++;
+		numWrites++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		long start = System.nanoTime();
+		out.write(b, off, len);
+		writeNanos += System.nanoTime() - start;
+		bytesWritten += len;
+		numWrites++;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		long start = System.nanoTime();
+		out.flush();
+		writeNanos += System.nanoTime() - start;
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		long start = System.nanoTime();
+		out.close();
+		writeNanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * @return number of bytes written
+	 */
+	long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * @return time spent writing, flushing and closing the underlying stream
+	 */
+	long getWriteNanos() {
+		return writeNanos;
+	}
+
+	/**
+	 * @return number of write operations on the underlying stream
+	 */
+	int getNumWrites() {
+		return numWrites;
+	}
+}
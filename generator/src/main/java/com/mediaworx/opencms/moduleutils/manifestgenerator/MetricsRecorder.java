@@ -0,0 +1,175 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.ManifestGenerationMetrics.MetaFileTiming;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the metrics of a single manifest generation run. Only bytes and files read may be recorded by parser
+ * threads, everything else is recorded by the thread generating the manifest. Recording only adds up a few numbers
+ * (plus a heap update for slow meta files), so metrics are always collected.
+ */
+class MetricsRecorder {
+
+	private final String manifestRootPath;
+
+	/** start of the run, see {@link System#nanoTime()} */
+	private final long startNanos;
+
+	private final long[] phaseNanos = new long[ManifestGenerationPhase.values().length];
+	private final int[] phaseCounts = new int[ManifestGenerationPhase.values().length];
+
+	private final LongAdder bytesRead = new LongAdder();
+	private final AtomicInteger numMetaFilesRead = new AtomicInteger();
+	private long bytesWritten;
+	private boolean manifestChanged;
+	private int numSiblings;
+	private int numRemovedSourceNodes;
+	private int numDuplicateStructureIds;
+
+	/** maximum number of slow meta files tracked */
+	private final int numSlowestMetaFiles;
+
+	/** the slowest meta files so far, fastest first (so the fastest can be replaced by slower meta files) */
+	private final PriorityQueue<MetaFileTiming> slowestMetaFiles;
+
+	/**
+	 * Creates a new recorder, the run's duration is measured from now.
+	 * @param manifestRootPath      root path of the manifest meta data
+	 * @param numSlowestMetaFiles   number of slowest meta files to be tracked
+	 */
+	MetricsRecorder(String manifestRootPath, int numSlowestMetaFiles) {
+		this.manifestRootPath = manifestRootPath;
+		this.numSlowestMetaFiles = Math.max(0, numSlowestMetaFiles);
+		slowestMetaFiles = new PriorityQueue<>(this.numSlowestMetaFiles + 1, Comparator.comparing(MetaFileTiming::getParseDuration));
+		startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Adds time and items to a phase.
+	 * @param phase     the phase
+	 * @param nanos     time spent in the phase
+	 * @param count     number of items handled
+	 */
+	void addPhase(ManifestGenerationPhase phase, long nanos, int count) {
+		phaseNanos[phase.ordinal()] += nanos;
+		phaseCounts[phase.ordinal()] += count;
+	}
+
+	/**
+	 * Records a file read from the disk, may be called by parser threads.
+	 * @param numBytes  size of the file
+	 * @param metaFile  <code>true</code> for meta files, <code>false</code> for other files (like the manifest stub)
+	 */
+	void fileRead(long numBytes, boolean metaFile) {
+		bytesRead.add(numBytes);
+		if (metaFile) {
+			numMetaFilesRead.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Records the parse time of a meta file, so the slowest meta files can be reported.
+	 * @param metaXmlFilePath   path of the meta file
+	 * @param nanos             time spent parsing the meta file
+	 */
+	void metaFileParsed(String metaXmlFilePath, long nanos) {
+		if (numSlowestMetaFiles == 0) {
+			return;
+		}
+		if (slowestMetaFiles.size() < numSlowestMetaFiles || nanos > slowestMetaFiles.peek().getParseDuration().toNanos()) {
+			slowestMetaFiles.add(new MetaFileTiming(metaXmlFilePath, Duration.ofNanos(nanos)));
+			if (slowestMetaFiles.size() > numSlowestMetaFiles) {
+				slowestMetaFiles.poll();
+			}
+		}
+	}
+
+	/**
+	 * Records the sibling and structure id check of a file or folder.
+	 * @param hasSiblings           <code>true</code> if the file has at least two siblings
+	 * @param sourceRemoved         <code>true</code> if the file's source node was removed
+	 * @param duplicateStructureId  <code>true</code> if the structure id already was used by another file or folder
+	 * @param nanos                 time spent checking the siblings and the structure id
+	 */
+	void siblingsResolved(boolean hasSiblings, boolean sourceRemoved, boolean duplicateStructureId, long nanos) {
+		phaseNanos[ManifestGenerationPhase.SIBLING_RESOLUTION.ordinal()] += nanos;
+		if (hasSiblings) {
+			phaseCounts[ManifestGenerationPhase.SIBLING_RESOLUTION.ordinal()]++;
+			numSiblings++;
+		}
+		if (sourceRemoved) {
+			numRemovedSourceNodes++;
+		}
+		if (duplicateStructureId) {
+			numDuplicateStructureIds++;
+		}
+	}
+
+	/**
+	 * Records the completed manifest output. The time spent for serialization is the time spent writing the manifest
+	 * minus the time spent in the other phases during that time (parsing, sibling resolution, packaging and writing to
+	 * the disk).
+	 * @param manifestNanos     time spent writing the manifest (including parsing the meta files)
+	 * @param numFileNodes      number of file nodes written
+	 * @param output            the stream the manifest was written to
+	 * @param changed           <code>false</code> if the existing manifest had the same content and was kept
+	 */
+	void manifestWritten(long manifestNanos, int numFileNodes, MeteredOutputStream output, boolean changed) {
+		bytesWritten = output.getBytesWritten();
+		manifestChanged = changed;
+		addPhase(ManifestGenerationPhase.WRITE, output.getWriteNanos(), output.getNumWrites());
+		long otherNanos = phaseNanos[ManifestGenerationPhase.META_PARSE.ordinal()] + phaseNanos[ManifestGenerationPhase.SIBLING_RESOLUTION.ordinal()] + phaseNanos[ManifestGenerationPhase.PACKAGING.ordinal()] + output.getWriteNanos();
+		addPhase(ManifestGenerationPhase.SERIALIZATION, Math.max(0, manifestNanos - otherNanos), numFileNodes);
+	}
+
+	/**
+	 * @return the metrics collected so far, the total duration is measured up to now
+	 */
+	ManifestGenerationMetrics toMetrics() {
+		EnumMap<ManifestGenerationPhase, Duration> durations = new EnumMap<>(ManifestGenerationPhase.class);
+		EnumMap<ManifestGenerationPhase, Integer> counts = new EnumMap<>(ManifestGenerationPhase.class);
+		for (ManifestGenerationPhase phase : ManifestGenerationPhase.values()) {
+			durations.put(phase, Duration.ofNanos(phaseNanos[phase.ordinal()]));
+			counts.put(phase, phaseCounts[phase.ordinal()]);
+		}
+		List<MetaFileTiming> slowest = new ArrayList<>(slowestMetaFiles);
+		slowest.sort(Comparator.comparing(MetaFileTiming::getParseDuration).reversed());
+		return new ManifestGenerationMetrics(manifestRootPath, Duration.ofNanos(System.nanoTime() - startNanos), durations, counts, bytesRead.sum(), bytesWritten, manifestChanged, numMetaFilesRead.get(), numSiblings, numRemovedSourceNodes, numDuplicateStructureIds, slowest);
+	}
+}
@@ -0,0 +1,585 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an importable module ZIP in a single pass. Real files are split into blocks that are read and deflated in
+ * parallel (each block is primed with the end of the previous block, like pigz does), the compressed blocks are
+ * written in the order the files were added. The number of blocks in flight is limited, so the memory used doesn't
+ * depend on the size of the module. The manifest is deflated while it is streamed and added as the last entry.
+ * <br />
+ * <br />
+ * Archives with more than 65535 entries or more than 4 GB are written in ZIP64 format, single files must be smaller
+ * than 4 GB.
+ */
+class ModuleZipWriter implements Closeable {
+
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+
+	/** General purpose flag: CRC and sizes follow the data */
+	private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+
+	/** General purpose flag: file names are UTF-8 encoded */
+	private static final int FLAG_UTF8 = 1 << 11;
+
+	private static final int METHOD_STORED = 0;
+	private static final int METHOD_DEFLATED = 8;
+
+	private static final int VERSION_DEFAULT = 20;
+	private static final int VERSION_ZIP64 = 45;
+
+	private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+
+	private static final long MAX_UINT32 = 0xFFFFFFFFL;
+	private static final int MAX_UINT16 = 0xFFFF;
+
+	/** Size of the blocks deflated in parallel */
+	private static final int BLOCK_SIZE = 1024 * 1024;
+
+	/** Size of the preset dictionary taken from the previous block */
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+
+	/** Maximum number of uncompressed bytes in flight (read or being deflated, but not yet written) */
+	private static final long MAX_PENDING_BYTES = 64L * BLOCK_SIZE;
+
+	private static final int OUTPUT_BUFFER_SIZE = 256 * 1024;
+
+	private final OutputStream out;
+	private final ForkJoinPool pool;
+	private final MetricsRecorder metrics;
+
+	/** blocks submitted for compression, in archive order */
+	private final Deque<PendingBlock> pendingBlocks = new ArrayDeque<>();
+	private long pendingBytes;
+
+	/** the entries written so far, for the central directory */
+	private final List<ZipEntryInfo> writtenEntries = new ArrayList<>();
+
+	/** current position in the archive */
+	private long position;
+
+	/**
+	 * Creates (or replaces) the module ZIP.
+	 * @param zipFile       path of the module ZIP
+	 * @param parallelism   number of threads used to read and deflate the real files
+	 * @param metrics       metrics of the current run, real file bytes are counted as bytes read
+	 * @throws IOException if the file can not be created
+	 */
+	ModuleZipWriter(Path zipFile, int parallelism, MetricsRecorder metrics) throws IOException {
+		out = new BufferedOutputStream(Files.newOutputStream(zipFile), OUTPUT_BUFFER_SIZE);
+		pool = new ForkJoinPool(Math.max(1, parallelism));
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Adds a real file to the archive. The file is read and deflated in the background, this only blocks if too many
+	 * bytes are in flight.
+	 * @param name      name of the entry (the VFS path, without leading slash)
+	 * @param file      the real file
+	 * @throws IOException if the file can not be read, or if writing previous entries fails
+	 */
+	void addFile(String name, Path file) throws IOException {
+		long size = Files.size(file);
+		if (size >= MAX_UINT32) {
+			throw new IOException("The real file " + file + " is too large for the module ZIP (4 GB or more)");
+		}
+		PendingFile pendingFile = new PendingFile(name, size, Files.getLastModifiedTime(file).toMillis());
+		int numBlocks = (int)Math.max(1, (size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+		for (int i = 0; i < numBlocks; i++) {
+			long blockStart = (long)i * BLOCK_SIZE;
+			int blockLength = (int)Math.min(BLOCK_SIZE, size - blockStart);
+			while (pendingBytes + blockLength > MAX_PENDING_BYTES && !pendingBlocks.isEmpty()) {
+				writeNextBlock();
+			}
+			boolean last = i == numBlocks - 1;
+			Future<CompressedBlock> compressedBlock = pool.submit(() -> compressBlock(file, blockStart, blockLength, last));
+			pendingBlocks.add(new PendingBlock(pendingFile, i, last, blockLength, compressedBlock));
+			pendingBytes += blockLength;
+		}
+	}
+
+	/**
+	 * @return a new stream for the manifest, it deflates the manifest while it is written
+	 */
+	ManifestEntryStream createManifestStream() {
+		return new ManifestEntryStream();
+	}
+
+	/**
+	 * Writes all pending files, adds the manifest as the last entry and completes the archive with its central
+	 * directory.
+	 * @param manifestName  name of the manifest entry
+	 * @param manifest      the stream the manifest was written to
+	 * @throws IOException if writing fails
+	 */
+	void finish(String manifestName, ManifestEntryStream manifest) throws IOException {
+		while (!pendingBlocks.isEmpty()) {
+			writeNextBlock();
+		}
+		manifest.close();
+		ZipEntryInfo manifestEntry = new ZipEntryInfo(manifestName, METHOD_DEFLATED, 0, System.currentTimeMillis());
+		manifestEntry.crc = manifest.crc.getValue();
+		manifestEntry.size = manifest.size;
+		manifestEntry.compressedSize = manifest.deflated.size();
+		checkSize(manifestEntry);
+		writeLocalHeader(manifestEntry);
+		manifest.deflated.writeTo(out);
+		position += manifestEntry.compressedSize;
+		writtenEntries.add(manifestEntry);
+
+		writeCentralDirectory();
+		out.flush();
+	}
+
+	/**
+	 * @return number of entries written so far
+	 */
+	int getNumEntries() {
+		return writtenEntries.size();
+	}
+
+	/**
+	 * Closes the archive file and stops the compression threads. If {@link #finish(String, ManifestEntryStream)} wasn't
+	 * called, the archive is incomplete.
+	 * @throws IOException if the file can not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		pool.shutdownNow();
+		out.close();
+	}
+
+	/**
+	 * Waits for the next pending block and writes it, including the entry's header (first block) and data descriptor
+	 * (last block).
+	 */
+	private void writeNextBlock() throws IOException {
+		PendingBlock pendingBlock = pendingBlocks.poll();
+		CompressedBlock block = getCompressedBlock(pendingBlock.compressedBlock);
+		pendingBytes -= pendingBlock.length;
+		PendingFile file = pendingBlock.file;
+		file.crc.update(block.data, 0, pendingBlock.length);
+
+		if (pendingBlock.index == 0 && pendingBlock.last) {
+			// single block files are written with known sizes, stored if deflating doesn't help
+			boolean store = block.deflatedLength >= pendingBlock.length;
+			ZipEntryInfo entry = new ZipEntryInfo(file.name, store ? METHOD_STORED : METHOD_DEFLATED, 0, file.lastModified);
+			entry.crc = file.crc.getValue();
+			entry.size = file.size;
+			entry.compressedSize = store ? pendingBlock.length : block.deflatedLength;
+			writeLocalHeader(entry);
+			if (store) {
+				out.write(block.data, 0, pendingBlock.length);
+			}
+			else {
+				out.write(block.deflated, 0, block.deflatedLength);
+			}
+			position += entry.compressedSize;
+			writtenEntries.add(entry);
+			return;
+		}
+
+		if (pendingBlock.index == 0) {
+			file.entry = new ZipEntryInfo(file.name, METHOD_DEFLATED, FLAG_DATA_DESCRIPTOR, file.lastModified);
+			writeLocalHeader(file.entry);
+		}
+		out.write(block.deflated, 0, block.deflatedLength);
+		position += block.deflatedLength;
+		file.entry.compressedSize += block.deflatedLength;
+		if (pendingBlock.last) {
+			ZipEntryInfo entry = file.entry;
+			entry.crc = file.crc.getValue();
+			entry.size = file.size;
+			checkSize(entry);
+			writeInt(DATA_DESCRIPTOR_SIGNATURE);
+			writeInt(entry.crc);
+			writeInt(entry.compressedSize);
+			writeInt(entry.size);
+			writtenEntries.add(entry);
+		}
+	}
+
+	/**
+	 * Reads and deflates a block of a real file (executed by the compression threads).
+	 */
+	private CompressedBlock compressBlock(Path file, long blockStart, int blockLength, boolean last) throws IOException {
+		int dictionaryLength = (int)Math.min(DICTIONARY_SIZE, blockStart);
+		byte[] data = new byte[dictionaryLength + blockLength];
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			long readPosition = blockStart - dictionaryLength;
+			while (buffer.hasRemaining()) {
+				int numBytes = channel.read(buffer, readPosition);
+				if (numBytes < 0) {
+					throw new IOException("The real file " + file + " changed while it was added to the module ZIP");
+				}
+				readPosition += numBytes;
+			}
+		}
+		metrics.fileRead(blockLength, false);
+
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			if (dictionaryLength > 0) {
+				deflater.setDictionary(data, 0, dictionaryLength);
+			}
+			deflater.setInput(data, dictionaryLength, blockLength);
+			byte[] deflated = new byte[blockLength + blockLength / 1000 + 64];
+			int deflatedLength = 0;
+			if (last) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					if (deflatedLength == deflated.length) {
+						deflated = grow(deflated);
+					}
+					deflatedLength += deflater.deflate(deflated, deflatedLength, deflated.length - deflatedLength);
+				}
+			}
+			else {
+				// a sync flush ends the block on a byte boundary, so the next block can be appended
+				int numBytes;
+				do {
+					if (deflatedLength == deflated.length) {
+						deflated = grow(deflated);
+					}
+					numBytes = deflater.deflate(deflated, deflatedLength, deflated.length - deflatedLength, Deflater.SYNC_FLUSH);
+					deflatedLength += numBytes;
+				}
+				while (deflatedLength == deflated.length);
+			}
+			// the dictionary isn't part of the block's data
+			if (dictionaryLength > 0) {
+				System.arraycopy(data, dictionaryLength, data, 0, blockLength);
+			}
+			return new CompressedBlock(data, deflated, deflatedLength);
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] grow(byte[] buffer) {
+		byte[] grown = new byte[buffer.length * 2];
+		System.arraycopy(buffer, 0, grown, 0, buffer.length);
+		return grown;
+	}
+
+	private static CompressedBlock getCompressedBlock(Future<CompressedBlock> compressedBlock) throws IOException {
+		try {
+			return compressedBlock.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Writing the module ZIP was interrupted");
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new IOException("A real file could not be compressed", cause);
+		}
+	}
+
+	private static void checkSize(ZipEntryInfo entry) throws IOException {
+		if (entry.size >= MAX_UINT32 || entry.compressedSize >= MAX_UINT32) {
+			throw new IOException("The entry " + entry.name + " is too large for the module ZIP (4 GB or more)");
+		}
+	}
+
+	private void writeLocalHeader(ZipEntryInfo entry) throws IOException {
+		entry.localHeaderOffset = position;
+		boolean dataDescriptor = (entry.flags & FLAG_DATA_DESCRIPTOR) != 0;
+		writeInt(LOCAL_HEADER_SIGNATURE);
+		writeShort(VERSION_DEFAULT);
+		writeShort(entry.flags);
+		writeShort(entry.method);
+		writeInt(entry.dosTime);
+		writeInt(dataDescriptor ? 0 : entry.crc);
+		writeInt(dataDescriptor ? 0 : entry.compressedSize);
+		writeInt(dataDescriptor ? 0 : entry.size);
+		writeShort(entry.nameBytes.length);
+		writeShort(0);
+		writeBytes(entry.nameBytes);
+	}
+
+	private void writeCentralDirectory() throws IOException {
+		long centralDirectoryOffset = position;
+		for (ZipEntryInfo entry : writtenEntries) {
+			boolean zip64Offset = entry.localHeaderOffset >= MAX_UINT32;
+			writeInt(CENTRAL_HEADER_SIGNATURE);
+			writeShort(zip64Offset ? VERSION_ZIP64 : VERSION_DEFAULT);
+			writeShort(zip64Offset ? VERSION_ZIP64 : VERSION_DEFAULT);
+			writeShort(entry.flags);
+			writeShort(entry.method);
+			writeInt(entry.dosTime);
+			writeInt(entry.crc);
+			writeInt(entry.compressedSize);
+			writeInt(entry.size);
+			writeShort(entry.nameBytes.length);
+			writeShort(zip64Offset ? 12 : 0);
+			writeShort(0);
+			writeShort(0);
+			writeShort(0);
+			writeInt(0);
+			writeInt(zip64Offset ? MAX_UINT32 : entry.localHeaderOffset);
+			writeBytes(entry.nameBytes);
+			if (zip64Offset) {
+				writeShort(ZIP64_EXTRA_FIELD_ID);
+				writeShort(8);
+				writeLong(entry.localHeaderOffset);
+			}
+		}
+		long centralDirectorySize = position - centralDirectoryOffset;
+		int numEntries = writtenEntries.size();
+
+		boolean zip64 = numEntries >= MAX_UINT16 || centralDirectoryOffset >= MAX_UINT32 || centralDirectorySize >= MAX_UINT32;
+		if (zip64) {
+			long zip64EndOffset = position;
+			writeInt(ZIP64_END_SIGNATURE);
+			writeLong(44);
+			writeShort(VERSION_ZIP64);
+			writeShort(VERSION_ZIP64);
+			writeInt(0);
+			writeInt(0);
+			writeLong(numEntries);
+			writeLong(numEntries);
+			writeLong(centralDirectorySize);
+			writeLong(centralDirectoryOffset);
+
+			writeInt(ZIP64_LOCATOR_SIGNATURE);
+			writeInt(0);
+			writeLong(zip64EndOffset);
+			writeInt(1);
+		}
+
+		writeInt(END_SIGNATURE);
+		writeShort(0);
+		writeShort(0);
+		writeShort(Math.min(numEntries, MAX_UINT16));
+		writeShort(Math.min(numEntries, MAX_UINT16));
+		writeInt(Math.min(centralDirectorySize, MAX_UINT32));
+		writeInt(Math.min(centralDirectoryOffset, MAX_UINT32));
+		writeShort(0);
+	}
+
+	private void writeShort(int value) throws IOException {
+		out.write(value & 0xFF);
+		out.write((value >>> 8) & 0xFF);
+		position += 2;
+	}
+
+	private void writeInt(long value) throws IOException {
+		writeShort((int)(value & 0xFFFF));
+		writeShort((int)((value >>> 16) & 0xFFFF));
+	}
+
+	private void writeLong(long value) throws IOException {
+		writeInt(value & MAX_UINT32);
+		writeInt(value >>> 32);
+	}
+
+	private void writeBytes(byte[] bytes) throws IOException {
+		out.write(bytes);
+		position += bytes.length;
+	}
+
+	/**
+	 * Converts a date to the MS-DOS date and time format used in ZIP headers (local time, two second resolution).
+	 */
+	private static long toDosTime(long millisecondsSinceEpoch) {
+		LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millisecondsSinceEpoch), ZoneId.systemDefault());
+		if (time.getYear() < 1980) {
+			// earliest date that can be represented
+			return (1 << 21) | (1 << 16);
+		}
+		return (long)(time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16 | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+	}
+
+	/**
+	 * Stream deflating the manifest while it is written, the deflated manifest is kept in memory until the archive is
+	 * finished.
+	 */
+	static class ManifestEntryStream extends OutputStream {
+
+		private final CRC32 crc = new CRC32();
+		private final ByteArrayOutputStream deflated = new ByteArrayOutputStream(BLOCK_SIZE);
+		private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		private final OutputStream deflaterStream = new CheckedOutputStream(new DeflaterOutputStream(deflated, deflater, 64 * 1024), crc);
+		private long size;
+		private boolean closed;
+
+		private ManifestEntryStream() {
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			deflaterStream.write(b);
+			size++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			deflaterStream.write(b, off, len);
+			size += len;
+		}
+
+		/**
+		 * Completes the deflated manifest, called when the archive is finished (closing the manifest file doesn't
+		 * complete the entry).
+		 */
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				deflaterStream.close();
+				deflater.end();
+			}
+		}
+	}
+
+	/**
+	 * Central directory information of an entry.
+	 */
+	private static class ZipEntryInfo {
+
+		private final String name;
+		private final byte[] nameBytes;
+		private final int method;
+		private final int flags;
+		private final long dosTime;
+		private long crc;
+		private long size;
+		private long compressedSize;
+		private long localHeaderOffset;
+
+		private ZipEntryInfo(String name, int method, int flags, long lastModified) {
+			this.name = name;
+			this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+			this.method = method;
+			this.flags = flags | FLAG_UTF8;
+			this.dosTime = toDosTime(lastModified);
+		}
+	}
+
+	/**
+	 * A real file whose blocks are being compressed.
+	 */
+	private static class PendingFile {
+
+		private final String name;
+		private final long size;
+		private final long lastModified;
+		private final CRC32 crc = new CRC32();
+
+		/** entry of files with multiple blocks, created when the first block is written */
+		private ZipEntryInfo entry;
+
+		private PendingFile(String name, long size, long lastModified) {
+			this.name = name;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+
+	/**
+	 * A block of a real file submitted for compression.
+	 */
+	private static class PendingBlock {
+
+		private final PendingFile file;
+		private final int index;
+		private final boolean last;
+		private final int length;
+		private final Future<CompressedBlock> compressedBlock;
+
+		private PendingBlock(PendingFile file, int index, boolean last, int length, Future<CompressedBlock> compressedBlock) {
+			this.file = file;
+			this.index = index;
+			this.last = last;
+			this.length = length;
+			this.compressedBlock = compressedBlock;
+		}
+	}
+
+	/**
+	 * A compressed block, the uncompressed data is kept for the checksum (and for storing files that can't be
+	 * compressed).
+	 */
+	private static class CompressedBlock {
+
+		private final byte[] data;
+		private final byte[] deflated;
+		private final int deflatedLength;
+
+		private CompressedBlock(byte[] data, byte[] deflated, int deflatedLength) {
+			this.data = data;
+			this.deflated = deflated;
+			this.deflatedLength = deflatedLength;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Derives stable UUIDs for VFS files and folders from the module name and the VFS path, so repeated runs produce the
+ * same ids (and byte-identical manifests). The name is hashed with the 128 bit variant of MurmurHash3 (not
+ * cryptographic, but fast and well distributed), the UUIDs are marked as version 8 (custom) UUIDs. Structure and
+ * resource ids are hashed with different prefixes, so they never collide with each other.
+ */
+class NameBasedUuidGenerator {
+
+	private static final byte KIND_STRUCTURE = 's';
+	private static final byte KIND_RESOURCE = 'r';
+
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	/** the UTF-8 encoded module name */
+	private final byte[] moduleName;
+
+	/**
+	 * Creates a new generator for the given module.
+	 * @param moduleName    the module name (from the manifest stub)
+	 */
+	NameBasedUuidGenerator(String moduleName) {
+		this.moduleName = moduleName.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param vfsPath   VFS path of the file or folder
+	 * @return  the structure id for the file or folder
+	 */
+	String getStructureId(String vfsPath) {
+		return generate(KIND_STRUCTURE, vfsPath);
+	}
+
+	/**
+	 * @param vfsPath   VFS path of the file
+	 * @return  the resource id for the file
+	 */
+	String getResourceId(String vfsPath) {
+		return generate(KIND_RESOURCE, vfsPath);
+	}
+
+	private String generate(byte kind, String vfsPath) {
+		// module name, kind and path separated by zero bytes (which can't occur in UTF-8 encoded names)
+		byte[] path = vfsPath.getBytes(StandardCharsets.UTF_8);
+		byte[] name = new byte[moduleName.length + 3 + path.length];
+		System.arraycopy(moduleName, 0, name, 0, moduleName.length);
+		name[moduleName.length + 1] = kind;
+		System.arraycopy(path, 0, name, moduleName.length + 3, path.length);
+
+		long[] hash = murmur3(name);
+		long mostSigBits = (hash[0] & ~0xF000L) | 0x8000L;
+		long leastSigBits = (hash[1] & ~(0xC000L << 48)) | (0x8000L << 48);
+		return new UUID(mostSigBits, leastSigBits).toString();
+	}
+
+	/**
+	 * MurmurHash3 x64 128 bit with seed 0.
+	 */
+	private static long[] murmur3(byte[] data) {
+		long h1 = 0;
+		long h2 = 0;
+		int numBlocks = data.length / 16;
+		for (int i = 0; i < numBlocks; i++) {
+			long k1 = getLong(data, 16 * i);
+			long k2 = getLong(data, 16 * i + 8);
+			h1 ^= mixK1(k1);
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+			h2 ^= mixK2(k2);
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+
+		long k1 = 0;
+		long k2 = 0;
+		int tail = 16 * numBlocks;
+		for (int i = data.length - 1; i >= tail + 8; i--) {
+			k2 = k2 << 8 | (data[i] & 0xFFL);
+		}
+		for (int i = Math.min(data.length, tail + 8) - 1; i >= tail; i--) {
+			k1 = k1 << 8 | (data[i] & 0xFFL);
+		}
+		h1 ^= mixK1(k1);
+		h2 ^= mixK2(k2);
+
+		h1 ^= data.length;
+		h2 ^= data.length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+		return new long[] { h1, h2 };
+	}
+
+	private static long getLong(byte[] data, int offset) {
+		long value = 0;
+		for (int i = 7; i >= 0; i--) {
+			value = value << 8 | (data[offset + i] & 0xFFL);
+		}
+		return value;
+	}
+
+	private static long mixK1(long k1) {
+		k1 *= C1;
+		k1 = Long.rotateLeft(k1, 31);
+		k1 *= C2;
+		return k1;
+	}
+
+	private static long mixK2(long k2) {
+		k2 *= C2;
+		k2 = Long.rotateLeft(k2, 33);
+		k2 *= C1;
+		return k2;
+	}
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+}
@@ -0,0 +1,2070 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator, 
+ * please see the project website at GitHub: 
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *  
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation; either version 3 of the License, or (at your 
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License 
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, write to the Free Software Foundation, Inc., 
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.ManifestWriter.SerializedFileNode;
+import com.mediaworx.opencms.moduleutils.manifestgenerator.ModuleZipWriter.ManifestEntryStream;
+import com.mediaworx.opencms.moduleutils.manifestgenerator.XmlParserPool.Parsers;
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlFileWriteException;
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlParseException;
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlValidationException;
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.UncheckedMetaXmlParseException;
+import com.mediaworx.xmlutils.XmlHelper;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Generates the manifest.xml for OpenCms modules from meta files (manifest_stub.xml and separate meta files for all
+ * files and folders in the VFS). The manifest_stub.xml must contain all module specific data, structured exactly like
+ * in a standard OpenCms module manifest, but the files node must be empty.
+ * <br />
+ * <br />
+ * Sample manifest_stub.xml:
+ * <pre>
+ * &lt;export&gt;
+ *     &lt;info&gt;
+ *         &lt;creator&gt;Admin&lt;/creator&gt;
+ *         &lt;opencms_version&gt;8.5.1&lt;/opencms_version&gt;
+ *         &lt;createdate&gt;Tue, 17 Dec 2013 14:04:17 GMT&lt;/createdate&gt;
+ *         &lt;infoproject&gt;Offline&lt;/infoproject&gt;
+ *         &lt;export_version&gt;7&lt;/export_version&gt;
+ *     &lt;/info&gt;
+ *     &lt;module&gt;
+ *         &lt;name&gt;com.mediaworx.opencms.intellijconnector&lt;/name&gt;
+ *         &lt;nicename&gt;&lt;![CDATA[IntelliJ Plugin Connector]]&gt;&lt;/nicename&gt;
+ *         &lt;class/&gt;
+ *         &lt;description&gt;&lt;![CDATA[Connects the IntelliJ Plugin to OpenCms]]&gt;&lt;/description&gt;
+ *         &lt;version&gt;0.2&lt;/version&gt;
+ *         &lt;authorname&gt;&lt;![CDATA[Kai Widmann]]&gt;&lt;/authorname&gt;
+ *         &lt;authoremail&gt;&lt;![CDATA[widmann@mediaworx.com]]&gt;&lt;/authoremail&gt;
+ *         &lt;datecreated/&gt;
+ *         &lt;userinstalled/&gt;
+ *         &lt;dateinstalled/&gt;
+ *         &lt;dependencies/&gt;
+ *         &lt;exportpoints&gt;
+ *             &lt;exportpoint uri="/system/modules/com.mediaworx.opencms.intellijconnector/classes/" destination="WEB-INF/classes/"/&gt;
+ *         &lt;/exportpoints&gt;
+ *         &lt;resources&gt;
+ *             &lt;resource uri="/system/modules/com.mediaworx.opencms.intellijconnector/"/&gt;
+ *         &lt;/resources&gt;
+ *         &lt;parameters/&gt;
+ *     &lt;/module&gt;
+ *     &lt;files/&gt;
+ * &lt;/export&gt;
+ * </pre>
+ * <br />
+ * Meta-Files for VFS files must contain all the meta data for the file that is to be included in the manifest,
+ * structured like a file node (type != folder) in a standard OpenCms manifest file, plus additional information about
+ * the sibling count of the file, all wrapped in a fileinfo node. The file name for the meta file is equal to the VFS
+ * file name with ".ocmsfile.xml" added as suffix.
+ * <br />
+ * <br />
+ * Sample meta file for VFS files (test.jsp.ocmsfile.xml):
+ * <pre>
+ * &lt;fileinfo&gt;
+ *     &lt;file&gt;
+ *         &lt;source&gt;${source}&lt;/source&gt;
+ *         &lt;destination&gt;${destination}&lt;/destination&gt;
+ *         &lt;type&gt;jsp&lt;/type&gt;
+ *         &lt;uuidstructure&gt;c76b8773-7c44-11e3-92bb-210cc9a3bba6&lt;/uuidstructure&gt;
+ *         &lt;uuidresource&gt;c76b8774-7c44-11e3-92bb-210cc9a3bba6&lt;/uuidresource&gt;
+ *         &lt;datelastmodified&gt;Mon, 13 Jan 2014 12:13:24 GMT&lt;/datelastmodified&gt;
+ *         &lt;userlastmodified&gt;Admin&lt;/userlastmodified&gt;
+ *         &lt;datecreated&gt;Mon, 13 Jan 2014 11:20:59 GMT&lt;/datecreated&gt;
+ *         &lt;usercreated&gt;Admin&lt;/usercreated&gt;
+ *         &lt;flags&gt;0&lt;/flags&gt;
+ *         &lt;properties&gt;
+ *             &lt;property&gt;
+ *                 &lt;name&gt;Title&lt;/name&gt;
+ *                 &lt;value&gt;&lt;![CDATA[Test Formatter]]&gt;&lt;/value&gt;
+ *             &lt;/property&gt;
+ *             &lt;property type="shared"&gt;
+ *                 &lt;name&gt;export&lt;/name&gt;
+ *                 &lt;value&gt;&lt;![CDATA[false]]&gt;&lt;/value&gt;
+ *             &lt;/property&gt;
+ *         &lt;/properties&gt;
+ *         &lt;relations/&gt;
+ *         &lt;accesscontrol&gt;
+ *             &lt;accessentry&gt;
+ *                 &lt;uuidprincipal&gt;GROUP.Guests&lt;/uuidprincipal&gt;
+ *                 &lt;flags&gt;32&lt;/flags&gt;
+ *                 &lt;permissionset&gt;
+ *                     &lt;allowed&gt;0&lt;/allowed&gt;
+ *                     &lt;denied&gt;0&lt;/denied&gt;
+ *                 &lt;/permissionset&gt;
+ *             &lt;/accessentry&gt;
+ *             &lt;accessentry&gt;
+ *                 &lt;uuidprincipal&gt;GROUP.Users&lt;/uuidprincipal&gt;
+ *                 &lt;flags&gt;36&lt;/flags&gt;
+ *                 &lt;permissionset&gt;
+ *                     &lt;allowed&gt;23&lt;/allowed&gt;
+ *                     &lt;denied&gt;0&lt;/denied&gt;
+ *                 &lt;/permissionset&gt;
+ *             &lt;/accessentry&gt;
+ *             &lt;accessentry&gt;
+ *                 &lt;uuidprincipal&gt;USER.Admin&lt;/uuidprincipal&gt;
+ *                 &lt;flags&gt;16&lt;/flags&gt;
+ *                 &lt;permissionset&gt;
+ *                     &lt;allowed&gt;5&lt;/allowed&gt;
+ *                     &lt;denied&gt;26&lt;/denied&gt;
+ *                 &lt;/permissionset&gt;
+ *             &lt;/accessentry&gt;
+ *         &lt;/accesscontrol&gt;
+ *     &lt;/file&gt;
+ *     &lt;siblingcount&gt;1&lt;/siblingcount&gt;
+ * &lt;/fileinfo&gt;
+ * </pre>
+ * <br />
+ * Meta-Files for VFS folders must contain all the meta data for the folder that is to be included in the manifest,
+ * structured like a file node (type == folder) in a standard OpenCms manifest file. The file name for the meta file
+ * is equal to the VFS folder name with ".ocmsfolder.xml" added as suffix.
+ * <br />
+ * <br />
+ * Sample meta file for VFS files (formatter.ocmsfolder.xml):
+ * <pre>
+ * &lt;file&gt;
+ *     &lt;destination&gt;${destination}&lt;/destination&gt;
+ *     &lt;type&gt;folder&lt;/type&gt;
+ *     &lt;uuidstructure&gt;b9fb9670-7c44-11e3-92bb-210cc9a3bba6&lt;/uuidstructure&gt;
+ *     &lt;datelastmodified&gt;Mon, 13 Jan 2014 11:20:43 GMT&lt;/datelastmodified&gt;
+ *     &lt;userlastmodified&gt;Admin&lt;/userlastmodified&gt;
+ *     &lt;datecreated&gt;Mon, 13 Jan 2014 11:20:37 GMT&lt;/datecreated&gt;
+ *     &lt;usercreated&gt;Admin&lt;/usercreated&gt;
+ *     &lt;flags&gt;0&lt;/flags&gt;
+ *     &lt;properties&gt;
+ *         &lt;property&gt;
+ *             &lt;name&gt;Title&lt;/name&gt;
+ *             &lt;value&gt;&lt;![CDATA[Test Formatters]]&gt;&lt;/value&gt;
+ *         &lt;/property&gt;
+ *     &lt;/properties&gt;
+ *     &lt;relations/&gt;
+ *     &lt;accesscontrol/&gt;
+ * &lt;/file&gt;
+ * </pre>
+ * <br />
+ * When putting meta files into version control, there may occur a lot of conflicts because of differing dates (and
+ * UUIDs) on local development machines. To avoid conflicts manifest data can be stored with variables instead of dates
+ * (and UUIDs). The manifest generator replaces these variables with generated values when a manifest is created. The
+ * replacement of meta variables can be triggered separately for dates and UUIDs. We don't recommend storing UUIDs as
+ * meta variables
+ * <br />
+ * <br />
+ * Sample meta file for VFS files with variables instead of dates and UUIDs (formatter.ocmsfolder.xml):
+ * <pre>
+ * &lt;file&gt;
+ *     &lt;destination&gt;${destination}&lt;/destination&gt;
+ *     &lt;type&gt;folder&lt;/type&gt;
+ *     &lt;uuidstructure&gt;${uuidstructure}&lt;/uuidstructure&gt;
+ *     &lt;datelastmodified&gt;${datelastmodified}&lt;/datelastmodified&gt;
+ *     &lt;userlastmodified&gt;Admin&lt;/userlastmodified&gt;
+ *     &lt;datecreated&gt;${datecreated}&lt;/datecreated&gt;
+ *     &lt;usercreated&gt;Admin&lt;/usercreated&gt;
+ *     &lt;flags&gt;0&lt;/flags&gt;
+ *     &lt;properties&gt;
+ *         &lt;property&gt;
+ *             &lt;name&gt;Title&lt;/name&gt;
+ *             &lt;value&gt;&lt;![CDATA[Test Formatters]]&gt;&lt;/value&gt;
+ *         &lt;/property&gt;
+ *     &lt;/properties&gt;
+ *     &lt;relations/&gt;
+ *     &lt;accesscontrol/&gt;
+ * &lt;/file&gt;
+ * </pre>
+ * <br />
+ * mediaworx provides an OpenCms module for pulling the meta files from OpenCms
+ * (com.mediaworx.opencms.intellijconnector).<br />
+ * <br />
+ * Revision 1.7
+ */
+public class OpenCmsModuleManifestGenerator {
+
+	private static final Logger LOG = LoggerFactory.getLogger(OpenCmsModuleManifestGenerator.class);
+
+	/** File name of the module manifest stub file (standard OpenCms module manifest with an empty files node) */
+	private static final String FILENAME_MANIFEST_STUB = "manifest_stub.xml";
+
+	/** File name for the generated module manifest */
+	private static final String FILENAME_MANIFEST = "manifest.xml";
+
+	/** File name suffix for VFS folder meta files */
+	static final String FOLDER_META_SUFFIX = ".ocmsfolder.xml";
+
+	/** File name suffix for VFS file meta files */
+	static final String FILE_META_SUFFIX = ".ocmsfile.xml";
+
+	/** XPath pointing to the module name in the manifest stub file */
+	private static final String MODULE_NAME_NODE_XPATH = "/export/module/name";
+
+	/** XPath pointing to the files node in the manifest stub file */
+	private static final String FILES_NODE_XPATH = "/export/files";
+
+	/** XPath pointing to the file node in VFS file meta files */
+	private static final String FILE_NODE_XPATH = "/fileinfo/file";
+
+	/** XPath pointing to the siblingcount node in VFS file meta files */
+	private static final String SIBLINGCOUNT_NODE_XPATH = "/fileinfo/siblingcount";
+
+	/** XPath pointing to the uuidresource node in VFS file meta files (used to track siblings) */
+	private static final String RESOURCEID_NODE_XPATH = "/fileinfo/file/uuidresource";
+
+	/** XPath pointing to the uuidstructure node in VFS file meta files (used to detect duplicate structure ids) */
+	private static final String STRUCTUREID_NODE_XPATH = "/fileinfo/file/uuidstructure";
+
+	/** XPath pointing to the uuidstructure node in VFS folder meta files */
+	private static final String FOLDER_STRUCTUREID_NODE_XPATH = "/file/uuidstructure";
+
+	/** XPath pointing to the type node in VFS file meta files (reported by {@link ManifestEntry#getType()}) */
+	private static final String TYPE_NODE_XPATH = "/fileinfo/file/type";
+
+	/** XPath pointing to the type node in VFS folder meta files */
+	private static final String FOLDER_TYPE_NODE_XPATH = "/file/type";
+
+	/** XPath pointing to the source node in VFS file meta files */
+	private static final String SOURCE_NODE_XPATH = "/fileinfo/file/source";
+
+	/** Array of manifest nodes using CDATA sections */
+	private static final String[] CDATA_NODES = new String[] { "nicename", "description", "authorname", "authoremail", "value" };
+
+	/** Set of the manifest nodes using CDATA sections, see {@link #CDATA_NODES} */
+	static final Set<String> CDATA_NODE_NAMES = ManifestWriter.toNodeNameSet(CDATA_NODES);
+
+	/** Fast reader for meta files, the DOM parser is only used for meta files the fast reader doesn't handle */
+	private static final MetaFileReader META_FILE_READER = new MetaFileReader(CDATA_NODE_NAMES);
+
+	/**
+	 * XML parsers shared by all generators and runs, enough idle parsers are kept for several concurrent runs using
+	 * all cores
+	 */
+	private static final XmlParserPool XML_PARSERS = new XmlParserPool(4 * Runtime.getRuntime().availableProcessors());
+
+	/** Variable used as placeholder for the source path */
+	public static final String META_VAR_SOURCE = "${source}";
+
+	/** Variable used as placeholder for the destination path */
+	public static final String META_VAR_DESTINATION = "${destination}";
+
+	/** Variable used as placeholder for the structure UUID */
+	public static final String META_VAR_UUIDSTRUCTURE = "${uuidstructure}";
+
+	/** Variable used as placeholder for the resource UUID */
+	public static final String META_VAR_UUIDRESOURCE = "${uuidresource}";
+
+	/** Variable used as placeholder for the resource modification date */
+	public static final String META_VAR_DATELASTMODIFIED = "${datelastmodified}";
+
+	/** Variable used as placeholder for the resource creation date */
+	public static final String META_VAR_DATECREATED = "${datecreated}";
+
+	/** Variable used as placeholder for the manifest's creation date */
+	public static final String META_VAR_CREATEDATE = "${createdate}";
+
+	/**
+	 * Globs for files and folders below the manifest root that usually don't belong to a module: version control
+	 * folders, files created by the operating system and editor swap and backup files. They are not excluded unless
+	 * they are passed to {@link #setExcludes(Collection)}.
+	 */
+	public static final List<String> DEFAULT_EXCLUDES = Collections.unmodifiableList(Arrays.asList(".git", ".svn", ".hg", ".DS_Store", "Thumbs.db", "*.swp", "*.swo", "*~", ".#*"));
+
+	/** Maximum number of problems listed in the message of an {@link OpenCmsMetaXmlValidationException} */
+	private static final int MAX_PROBLEMS_IN_MESSAGE = 20;
+
+	/** Number of times the sample module is generated by {@link #warmUp()} */
+	private static final int WARM_UP_RUNS = 10;
+
+	/** Separator used in VFS paths */
+	private static final char VFS_SEPARATOR = '/';
+
+	/**
+	 * Module version to be used in the manifest, ignored if <code>null</code> or empty
+	 */
+	private volatile String moduleVersion;
+
+	/**
+	 * Flag indicating if date variables (<code>${datelastmodified}</code> and <code>${datecreated}</code>) should be
+	 * replaced with generated values.
+	 */
+	private volatile boolean replaceDateVariables = false;
+
+	/**
+	 * Flag indicating if UUID variables (<code>${uuidstructure}</code> and <code>${uuidresource}</code>) should be
+	 * replaced with generated values.
+	 */
+	private volatile boolean replaceIdVariables = false;
+
+	/**
+	 * Number of threads used to parse the meta files, if set to a value lower than 2 the meta files are parsed
+	 * sequentially
+	 */
+	private volatile int parallelism = 1;
+
+	/**
+	 * Approximate heap budget for a run in bytes, if set to a value lower than 1 the memory used by a run grows with
+	 * the number of meta files
+	 */
+	private volatile long memoryBudget = 0;
+
+	/**
+	 * Flag indicating if generated UUIDs (and the manifest's creation date) are derived from the module instead of
+	 * being random (or the current time).
+	 */
+	private volatile boolean deterministicIds = false;
+
+	/**
+	 * Filter compiled from the globs for VFS file meta files to be included (all meta files are included if empty) and
+	 * the globs for files and folders below the manifest root to be excluded. It holds both lists, so a run always sees
+	 * the includes and excludes of the same setter calls (the setters are synchronized, each one replaces the filter).
+	 */
+	private volatile ScanFilter scanFilter = ScanFilter.ACCEPT_ALL;
+
+	/**
+	 * Flag indicating if only the module resources declared in the manifest stub (and the folders on the way to them)
+	 * are scanned
+	 */
+	private volatile boolean moduleResourcesOnly = false;
+
+	/** Flag indicating if the meta files are validated (see {@link #validate(File)}) before a manifest is generated */
+	private volatile boolean validateBeforeGenerating = false;
+
+	/**
+	 * Cache for parsed meta files, used to avoid parsing unchanged meta files again when the generator is used for
+	 * multiple manifests. <code>null</code> if caching is disabled.
+	 */
+	private volatile FragmentCache fragmentCache;
+
+	/**
+	 * File of the persistent fragment store, used to avoid parsing meta files that are unchanged since the previous
+	 * run (even of another JVM). <code>null</code> if no store is used.
+	 */
+	private volatile File fragmentStoreFile;
+
+	/**
+	 * Threads parsing the meta files in parallel mode, shared by all runs of the generator. Created by the first
+	 * parallel run and replaced when the parallelism changes (the threads of a replaced pool end when they are idle).
+	 * <code>null</code> if no run used parallel parsing yet.
+	 */
+	private ForkJoinPool parserThreads;
+
+	/** Listeners receiving the metrics of every run */
+	private final List<ManifestGenerationListener> listeners = new CopyOnWriteArrayList<>();
+
+	/** Number of slowest meta files reported in the metrics of a run */
+	private volatile int numSlowestMetaFiles = 10;
+
+	/**
+	 * Creates a new manifest generator that can be used to generate the manifest.xml file for OpenCms modules, for
+	 * details see {@link OpenCmsModuleManifestGenerator}. The generator keeps no state between runs (except for the
+	 * optional fragment cache), so one instance can be used to generate several manifests concurrently. The settings
+	 * are read when a run starts, a setter called on any thread applies to all runs started after it returns.
+	 * @see OpenCmsModuleManifestGenerator
+	 */
+	public OpenCmsModuleManifestGenerator() {
+	}
+
+	/**
+	 * Generates the manifest.xml for OpenCms modules from meta files (manifest_stub.xml and separate meta files for
+	 * all
+	 * files and folders in the VFS).
+	 *
+	 * @param manifestRoot file representing the root folder of the manifest meta data (including manifest_stub.xml)
+	 * @throws OpenCmsMetaXmlParseException     if the XmlHelper can not be initialized or the manifest stub file or
+	 *                                          any
+	 *                                          meta file can not be read or parsed
+	 * @throws OpenCmsMetaXmlFileWriteException if the resulting manifest file can not be written
+	 * @deprecated This method is deprecated and will be removed in a future release. Please use
+	 *             {@link #generateManifest(File, String)} instead.
+	 */
+	@Deprecated
+	public void generateManifest(File manifestRoot) throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		generateManifest(manifestRoot, null);
+	}
+
+	/**
+	 * Generates the manifest.xml for OpenCms modules from meta files (manifest_stub.xml and separate meta files for all
+	 * files and folders in the VFS).
+	 * @param manifestRoot  file representing the root folder of the manifest meta data (including manifest_stub.xml)
+	 * @param realFileRootPath  root path under which the real files (not the meta files) are stored. Used to get the
+	 *                          modification date, may be null (if so the meta file's modification date is used)
+	 *
+	 * @throws OpenCmsMetaXmlParseException     if the XmlHelper can not be initialized or the manifest stub file or any
+	 *                                          meta file can not be read or parsed, or (as
+	 *                                          {@link OpenCmsMetaXmlValidationException}) if pre-validation is enabled
+	 *                                          and problems are found
+	 * @throws OpenCmsMetaXmlFileWriteException if the resulting manifest file can not be written
+	 */
+	public void generateManifest(File manifestRoot, String realFileRootPath) throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		MetricsRecorder metrics = createMetricsRecorder(manifestRoot.getPath());
+		RealFileIndex realFileIndex = getRealFileIndex(realFileRootPath, metrics);
+		RunContext run = createRunContext(manifestRoot.getPath(), realFileRootPath, realFileIndex, fragmentCache, metrics);
+		scanAndGenerateManifest(run);
+	}
+
+	/**
+	 * Generates the manifest.xml (like {@link #generateManifest(File, String)}) and packages it together with the real
+	 * files into an importable module ZIP in the same pass. The real files are taken from the real file root (at the
+	 * path given by each file's source node) and deflated in parallel on all available cores while the manifest is
+	 * written; siblings whose source node is removed don't get an entry of their own.
+	 * @param manifestRoot  file representing the root folder of the manifest meta data (including manifest_stub.xml)
+	 * @param realFileRootPath  root path under which the real files (not the meta files) are stored
+	 * @param moduleZip     the module ZIP to be written (an existing file is replaced)
+	 *
+	 * @throws OpenCmsMetaXmlParseException     if the XmlHelper can not be initialized or the manifest stub file or any
+	 *                                          meta file can not be read or parsed
+	 * @throws OpenCmsMetaXmlFileWriteException if the manifest file or the module ZIP can not be written, or if a real
+	 *                                          file can not be read
+	 */
+	public void generateModuleZip(File manifestRoot, String realFileRootPath, File moduleZip) throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		if (realFileRootPath == null || realFileRootPath.length() == 0) {
+			throw new IllegalArgumentException("The real file root path is needed to package the module");
+		}
+		MetricsRecorder metrics = createMetricsRecorder(manifestRoot.getPath());
+		RealFileIndex realFileIndex = getRealFileIndex(realFileRootPath, metrics);
+		boolean complete = false;
+		try (ModuleZipWriter zipWriter = new ModuleZipWriter(moduleZip.toPath(), Runtime.getRuntime().availableProcessors(), metrics)) {
+			RunContext run = createRunContext(manifestRoot.getPath(), realFileRootPath, realFileIndex, fragmentCache, zipWriter, metrics);
+			scanAndGenerateManifest(run);
+			complete = true;
+		}
+		catch (IOException e) {
+			throw new OpenCmsMetaXmlFileWriteException("The module ZIP " + moduleZip.getPath() + " could not be written", e);
+		}
+		finally {
+			// don't leave an incomplete module ZIP behind
+			if (!complete) {
+				moduleZip.delete();
+			}
+		}
+	}
+
+	/**
+	 * Returns the entries of the manifest.xml without writing the manifest: one {@link ManifestEntry} per VFS file and
+	 * folder in manifest order, with its type, UUIDs and sibling status. The meta files are listed when the stream is
+	 * created (their order depends on all of them), but they are only parsed as far as the stream is consumed, so a
+	 * consumer looking for a few entries doesn't pay for parsing the whole module. The generator's settings are used
+	 * like for {@link #generateManifest(File, String)} (in parallel mode a window of meta files is parsed ahead of the
+	 * consumer), listeners are not notified. The stream is sequential and has to be closed (preferably with
+	 * try-with-resources) to cancel pending parse tasks and release the temporary files used for sorting.
+	 * @param manifestRoot  file representing the root folder of the manifest meta data (including manifest_stub.xml)
+	 * @param realFileRootPath  root path under which the real files (not the meta files) are stored. Used to get the
+	 *                          modification date, may be null (if so the meta file's modification date is used)
+	 * @return  ordered stream of the manifest entries, throws {@link UncheckedMetaXmlParseException} while it is
+	 *          consumed if a meta file can not be read or parsed
+	 * @throws OpenCmsMetaXmlParseException if the XmlHelper can not be initialized, the meta files can not be listed or
+	 *                                      the manifest stub can not be parsed (only read for deterministic ids), or
+	 *                                      (as {@link OpenCmsMetaXmlValidationException}) if pre-validation is enabled
+	 *                                      and problems are found
+	 */
+	public Stream<ManifestEntry> streamManifestEntries(File manifestRoot, String realFileRootPath) throws OpenCmsMetaXmlParseException {
+		MetricsRecorder metrics = createMetricsRecorder(manifestRoot.getPath());
+		RealFileIndex realFileIndex = getRealFileIndex(realFileRootPath, metrics);
+		RunContext run = createRunContext(manifestRoot.getPath(), realFileRootPath, realFileIndex, fragmentCache, metrics);
+
+		MetaFileEntrySorter sorter = null;
+		Parsers parsers = null;
+		FragmentStore store = openFragmentStore(run);
+		if (store != null) {
+			run = run.withFragmentStore(store);
+		}
+		try {
+			Iterator<MetaFileEntry> metaFilesAndDirs;
+			int numEntries;
+			if (run.memoryBudget > 0) {
+				sorter = new MetaFileEntrySorter(run.memoryBudget / 2);
+				metaFilesAndDirs = scanAndValidateMetaFiles(run, sorter);
+				numEntries = sorter.size();
+			}
+			else {
+				List<MetaFileEntry> entryList = scanAndValidateMetaFiles(run);
+				metaFilesAndDirs = entryList.iterator();
+				numEntries = entryList.size();
+			}
+			parsers = XML_PARSERS.borrow();
+			if (run.deterministicIds) {
+				// the stub is only needed for the module name the ids are derived from
+				Document manifestStub = parseManifestStub(run, parsers.xmlHelper, getManifestStubPath(run.manifestRootPath));
+				run = withModuleUuidGenerator(run, parsers.xmlHelper, manifestStub);
+			}
+			// the entries are handed to the caller and may be kept, so they are not recycled
+			ManifestEntryIterator entries = createManifestEntryIterator(run, parsers, metaFilesAndDirs, false);
+			Parsers streamParsers = parsers;
+			MetaFileEntrySorter streamSorter = sorter;
+			return StreamSupport.stream(Spliterators.spliterator(entries, numEntries, Spliterator.ORDERED | Spliterator.NONNULL), false)
+					.onClose(() -> closeEntryStream(entries, streamParsers, streamSorter, store));
+		}
+		catch (OpenCmsMetaXmlParseException | RuntimeException e) {
+			closeEntryStream(null, parsers, sorter, store);
+			throw e;
+		}
+	}
+
+	/**
+	 * Releases the resources of a stream returned by {@link #streamManifestEntries(File, String)}.
+	 * @param entries   the stream's iterator, may be null
+	 * @param parsers   the parsers used in sequential mode, may be null
+	 * @param sorter    the sorter of a run with bounded memory, may be null
+	 * @param store     the fragment store, may be null
+	 */
+	private static void closeEntryStream(ManifestEntryIterator entries, Parsers parsers, MetaFileEntrySorter sorter, FragmentStore store) {
+		if (entries != null) {
+			entries.close();
+		}
+		if (parsers != null) {
+			XML_PARSERS.release(parsers);
+		}
+		if (sorter != null) {
+			try {
+				sorter.close();
+			}
+			catch (IOException e) {
+				LOG.warn("Temporary files used for sorting the meta files could not be deleted", e);
+			}
+		}
+		if (store != null) {
+			// the stream may not have been consumed completely, so no fragment is marked as dead
+			closeFragmentStore(store, false);
+		}
+	}
+
+	/**
+	 * Checks the meta files below the manifest root for structural problems without generating the manifest. Only the
+	 * directory scan and a lightweight read of each meta file (done in parallel) are used, so even large modules are
+	 * checked in seconds. All problems are reported at once: folders without meta file, files that are no meta files,
+	 * meta files that can not be parsed or don't follow the meta file layout, missing or non-numeric sibling counts,
+	 * siblings without resource id, missing or invalid UUIDs, duplicate structure ids and meta variables that are not
+	 * replaced with the generator's settings. The generator's scan settings (see {@link #setExcludes(Collection)}) are
+	 * used. To validate the meta files automatically before every run, see
+	 * {@link #setValidateBeforeGenerating(boolean)}.
+	 * @param manifestRoot  file representing the root folder of the manifest meta data (including manifest_stub.xml)
+	 * @return  the problems found sorted by path, an empty list if there are none
+	 * @throws OpenCmsMetaXmlParseException if the meta files can not be listed (or the module resources can not be
+	 *                                      read from the manifest stub)
+	 */
+	public List<MetaFileProblem> validate(File manifestRoot) throws OpenCmsMetaXmlParseException {
+		MetricsRecorder metrics = createMetricsRecorder(manifestRoot.getPath());
+		RunContext run = createRunContext(manifestRoot.getPath(), null, null, null, metrics);
+		if (run.memoryBudget <= 0) {
+			return validateMetaFiles(run, scanMetaFiles(run));
+		}
+		// with bounded memory the entries are validated while they are found instead of being collected
+		long phaseStart = System.nanoTime();
+		try (MetaFileValidator validator = createValidator(run)) {
+			try {
+				createMetaFileScanner(run.manifestRootPath, getScanFilter(run)).scan(Paths.get(run.manifestRootPath), getExcludedPaths(run.manifestRootPath), validator);
+			}
+			catch (IOException e) {
+				throw new OpenCmsMetaXmlParseException("The meta files below " + run.manifestRootPath + " could not be listed", e);
+			}
+			return finishValidation(run, validator, phaseStart);
+		}
+	}
+
+	/**
+	 * Validates the given entries, see {@link #validate(File)}.
+	 * @param run               settings of the current run
+	 * @param metaFilesAndDirs  VFS file meta file and folder entries, sorted by path
+	 * @return  the problems found sorted by path
+	 * @throws OpenCmsMetaXmlParseException if a validation thread fails or the current thread is interrupted
+	 */
+	private static List<MetaFileProblem> validateMetaFiles(RunContext run, List<MetaFileEntry> metaFilesAndDirs) throws OpenCmsMetaXmlParseException {
+		long phaseStart = System.nanoTime();
+		try (MetaFileValidator validator = createValidator(run)) {
+			for (MetaFileEntry entry : metaFilesAndDirs) {
+				validator.accept(entry);
+			}
+			return finishValidation(run, validator, phaseStart);
+		}
+		catch (IOException e) {
+			throw new OpenCmsMetaXmlParseException("The meta files below " + run.manifestRootPath + " could not be validated", e);
+		}
+	}
+
+	/**
+	 * @param run   settings of the current run
+	 * @return  a validator for the run's meta files, it has to be closed
+	 */
+	private static MetaFileValidator createValidator(RunContext run) {
+		return new MetaFileValidator(run, FILE_META_SUFFIX, FOLDER_META_SUFFIX, XML_PARSERS);
+	}
+
+	/**
+	 * Waits until the validator has checked all entries, the manifest stub is checked as well.
+	 * @param run           settings of the current run
+	 * @param validator     the validator
+	 * @param phaseStart    start of the validation, see {@link System#nanoTime()}
+	 * @return  the problems found sorted by path
+	 * @throws OpenCmsMetaXmlParseException if a validation thread fails or the current thread is interrupted
+	 */
+	private static List<MetaFileProblem> finishValidation(RunContext run, MetaFileValidator validator, long phaseStart) throws OpenCmsMetaXmlParseException {
+		List<MetaFileProblem> problems = validator.finish();
+		String manifestStubPath = getManifestStubPath(run.manifestRootPath);
+		if (!new File(manifestStubPath).isFile()) {
+			problems.add(0, new MetaFileProblem(manifestStubPath, "the manifest stub is missing"));
+		}
+		run.metrics.addPhase(ManifestGenerationPhase.VALIDATION, System.nanoTime() - phaseStart, validator.getNumEntries());
+		LOG.info("{} meta file entries validated in {} ms, {} problems found", validator.getNumEntries(), (System.nanoTime() - phaseStart) / 1000000, problems.size());
+		return problems;
+	}
+
+	/**
+	 * Throws an exception listing the given problems, if there are any.
+	 * @param run       settings of the current run
+	 * @param problems  the problems found by the validation
+	 * @throws OpenCmsMetaXmlValidationException if there are problems
+	 */
+	private static void failOnProblems(RunContext run, List<MetaFileProblem> problems) throws OpenCmsMetaXmlValidationException {
+		if (problems.isEmpty()) {
+			return;
+		}
+		StringBuilder message = new StringBuilder();
+		message.append(problems.size()).append(" problems found in the meta files below ").append(run.manifestRootPath).append(':');
+		for (MetaFileProblem problem : problems.subList(0, Math.min(problems.size(), MAX_PROBLEMS_IN_MESSAGE))) {
+			message.append("\n\t").append(problem);
+		}
+		if (problems.size() > MAX_PROBLEMS_IN_MESSAGE) {
+			message.append("\n\t... and ").append(problems.size() - MAX_PROBLEMS_IN_MESSAGE).append(" more");
+		}
+		throw new OpenCmsMetaXmlValidationException(message.toString(), problems);
+	}
+
+	/**
+	 * Splits an existing module manifest into the manifest stub and one meta file per VFS file and folder (using the
+	 * layout of {@link #getMetaInfoPath(String, String, boolean)}), the reverse of
+	 * {@link #generateManifest(File, String)}. This bootstraps the meta files of a new working copy from an exported
+	 * module instead of pulling every meta file from OpenCms. The sibling count of every VFS file is reconstructed from
+	 * the number of file nodes sharing its resource id, siblings whose source node was removed get their source node
+	 * back. Meta variables are not restored, the meta files contain the manifest's dates and UUIDs, so generating the
+	 * manifest from them without replacing meta variables results in the original manifest.
+	 * <br />
+	 * The manifest is streamed, the meta files are written in parallel (with the generator's parallelism, or on all
+	 * cores if parsing is sequential) and memory doesn't depend on the size of the manifest (except for a few bytes per
+	 * resource id used for the sibling counts). Existing meta files and an existing manifest stub are overwritten,
+	 * meta files of resources that are not contained in the manifest are left alone.
+	 * @param manifest      the manifest.xml to be split (like the manifest of a module ZIP exported from OpenCms)
+	 * @param manifestRoot  file representing the root folder the manifest stub and meta files are written to
+	 * @throws OpenCmsMetaXmlParseException     if the XML parsers can not be initialized or the manifest can not be read
+	 *                                          or parsed
+	 * @throws OpenCmsMetaXmlFileWriteException if the manifest stub or a meta file can not be written
+	 */
+	public void splitManifest(File manifest, File manifestRoot) throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		long start = System.nanoTime();
+		int numThreads = parallelism > 1 ? parallelism : Runtime.getRuntime().availableProcessors();
+		Parsers parsers = XML_PARSERS.borrow();
+		try (ManifestSplitter splitter = new ManifestSplitter(manifestRoot.getPath(), getManifestStubPath(manifestRoot.getPath()), CDATA_NODE_NAMES, numThreads)) {
+			splitter.split(parsers.inputFactory, manifest.toPath());
+			LOG.info("{} split into {} file and {} folder meta files in {} ms", manifest.getPath(), splitter.getNumFiles(), splitter.getNumFolders(), (System.nanoTime() - start) / 1000000);
+		}
+		finally {
+			XML_PARSERS.release(parsers);
+		}
+	}
+
+	/**
+	 * Creates a watcher that keeps the manifest.xml up to date while the meta files below the manifest root change. The
+	 * watcher uses this generator's settings, it has to be started with {@link ManifestWatcher#start()}.
+	 * @param manifestRoot  file representing the root folder of the manifest meta data (including manifest_stub.xml)
+	 * @param realFileRootPath  root path under which the real files (not the meta files) are stored, may be null
+	 * @return  the watcher
+	 * @throws IOException if the file system of the manifest root can not be watched
+	 */
+	public ManifestWatcher createWatcher(File manifestRoot, String realFileRootPath) throws IOException {
+		return new ManifestWatcher(this, manifestRoot, realFileRootPath);
+	}
+
+	/**
+	 * Warms up the XML parsers and the code generating manifests, so the first manifest generated in a long-lived
+	 * process (like an IDE) isn't several times slower than the following ones. Parsers for this generator's
+	 * parallelism are added to the pool shared by all generators, then a small sample module (written to a temporary
+	 * folder) is generated a few times with this generator's settings. Listeners are not notified about the sample
+	 * runs. Calling this is optional, it may be done in the background while the process is starting up.
+	 * @throws OpenCmsMetaXmlParseException     if the parsers can not be initialized or the sample module can not be
+	 *                                          parsed
+	 * @throws OpenCmsMetaXmlFileWriteException if the sample module or its manifest can not be written
+	 */
+	public void warmUp() throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		long start = System.nanoTime();
+		int parallelism = this.parallelism;
+		// one parser set for the manifest stub plus one per parser thread in parallel mode
+		XML_PARSERS.prefill(parallelism > 1 ? parallelism + 1 : 1);
+
+		// a generator without listeners and cache, so every run parses all meta files
+		OpenCmsModuleManifestGenerator generator = new OpenCmsModuleManifestGenerator();
+		generator.setParallelism(parallelism);
+		generator.setReplaceDateVariables(replaceDateVariables);
+		generator.setReplaceIdVariables(replaceIdVariables);
+		generator.setDeterministicIds(deterministicIds);
+		generator.setNumSlowestMetaFiles(0);
+		try (WarmUpModule module = WarmUpModule.create(FOLDER_META_SUFFIX, FILE_META_SUFFIX, FILENAME_MANIFEST_STUB)) {
+			for (int i = 0; i < WARM_UP_RUNS; i++) {
+				generator.generateManifest(module.getManifestRoot(), null);
+			}
+		}
+		catch (IOException e) {
+			throw new OpenCmsMetaXmlFileWriteException("The sample module used for warming up could not be written", e);
+		}
+		LOG.info("warm-up finished in {} ms, {} idle XML parsers", (System.nanoTime() - start) / 1000000, XML_PARSERS.getNumIdleParsers());
+	}
+
+	/**
+	 * Creates the metrics recorder for a new run.
+	 * @param manifestRootPath  root path of the manifest meta data
+	 * @return  the metrics recorder, the run's duration is measured from now
+	 */
+	MetricsRecorder createMetricsRecorder(String manifestRootPath) {
+		return new MetricsRecorder(manifestRootPath, numSlowestMetaFiles);
+	}
+
+	/**
+	 * Reads the modification dates of all real files, if they are needed (the real files' dates are only used to
+	 * replace date variables). If a memory budget is set, nothing is read in advance, the dates are read from the disk
+	 * when they are looked up.
+	 * @param realFileRootPath  root path under which the real files are stored, may be null
+	 * @param metrics           metrics of the current run
+	 * @return  the real file index, <code>null</code> if there is no real file root or date variables are not replaced
+	 * @throws OpenCmsMetaXmlParseException if the real files can not be listed
+	 */
+	RealFileIndex getRealFileIndex(String realFileRootPath, MetricsRecorder metrics) throws OpenCmsMetaXmlParseException {
+		if (!replaceDateVariables || realFileRootPath == null || realFileRootPath.length() == 0) {
+			return null;
+		}
+		if (memoryBudget > 0) {
+			return RealFileIndex.onDisk(realFileRootPath);
+		}
+		long phaseStart = System.nanoTime();
+		RealFileIndex realFileIndex;
+		try {
+			realFileIndex = RealFileIndex.scan(realFileRootPath);
+		}
+		catch (IOException e) {
+			throw new OpenCmsMetaXmlParseException("The real files below " + realFileRootPath + " could not be listed", e);
+		}
+		metrics.addPhase(ManifestGenerationPhase.SCAN, System.nanoTime() - phaseStart, 0);
+		return realFileIndex;
+	}
+
+	/**
+	 * Copies the generator's current settings into the context for a new run.
+	 * @param manifestRootPath  root path of the manifest meta data
+	 * @param realFileRootPath  root path under which the real files are stored, may be null
+	 * @param realFileIndex     the real files' modification dates, may be null
+	 * @param fragmentCache     cache for parsed meta files, may be null
+	 * @param metrics           metrics of the run
+	 * @return  the run context
+	 */
+	RunContext createRunContext(String manifestRootPath, String realFileRootPath, RealFileIndex realFileIndex, FragmentCache fragmentCache, MetricsRecorder metrics) {
+		return createRunContext(manifestRootPath, realFileRootPath, realFileIndex, fragmentCache, null, metrics);
+	}
+
+	/**
+	 * Copies the generator's current settings into the context for a new run that packages the module as well.
+	 * @param manifestRootPath  root path of the manifest meta data
+	 * @param realFileRootPath  root path under which the real files are stored, may be null
+	 * @param realFileIndex     the real files' modification dates, may be null
+	 * @param fragmentCache     cache for parsed meta files, may be null
+	 * @param moduleZip         writer for the module ZIP, may be null
+	 * @param metrics           metrics of the run
+	 * @return  the run context
+	 */
+	RunContext createRunContext(String manifestRootPath, String realFileRootPath, RealFileIndex realFileIndex, FragmentCache fragmentCache, ModuleZipWriter moduleZip, MetricsRecorder metrics) {
+		return new RunContext(manifestRootPath, realFileRootPath, realFileIndex, moduleVersion, replaceDateVariables, replaceIdVariables, deterministicIds, null, parallelism, memoryBudget, scanFilter, moduleResourcesOnly, validateBeforeGenerating, fragmentCache, null, moduleZip, metrics);
+	}
+
+	/**
+	 * Scans the meta files below the run's manifest root and generates the manifest, using the fragment store (see
+	 * {@link #setFragmentStore(File)}) if one is configured.
+	 * @param run   settings of the current run
+	 * @throws OpenCmsMetaXmlParseException     if the XmlHelper can not be initialized or the manifest stub file or any
+	 *                                          meta file can not be listed, read or parsed
+	 * @throws OpenCmsMetaXmlFileWriteException if the resulting manifest file can not be written
+	 */
+	private void scanAndGenerateManifest(RunContext run) throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		FragmentStore store = openFragmentStore(run);
+		if (store == null) {
+			scanMetaFilesAndGenerateManifest(run);
+			return;
+		}
+		boolean complete = false;
+		try {
+			scanMetaFilesAndGenerateManifest(run.withFragmentStore(store));
+			complete = true;
+		}
+		finally {
+			closeFragmentStore(store, complete);
+		}
+	}
+
+	/**
+	 * Scans the meta files below the run's manifest root and generates the manifest. If the run's memory is bounded,
+	 * the entries are not collected in a list but sorted with a {@link MetaFileEntrySorter}, which spills sorted runs
+	 * to temporary files and merges them while the manifest is written.
+	 * @param run   settings of the current run
+	 * @throws OpenCmsMetaXmlParseException     if the XmlHelper can not be initialized or the manifest stub file or any
+	 *                                          meta file can not be listed, read or parsed
+	 * @throws OpenCmsMetaXmlFileWriteException if the resulting manifest file can not be written
+	 */
+	private void scanMetaFilesAndGenerateManifest(RunContext run) throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		if (run.memoryBudget <= 0) {
+			generateManifest(run, scanAndValidateMetaFiles(run));
+			return;
+		}
+
+		// half of the budget is used for sorting, the rest is left for parsing and sibling handling
+		try (MetaFileEntrySorter sorter = new MetaFileEntrySorter(run.memoryBudget / 2)) {
+			Iterator<MetaFileEntry> metaFilesAndDirs = scanAndValidateMetaFiles(run, sorter);
+			try {
+				generateManifest(run, metaFilesAndDirs, sorter.size());
+			}
+			catch (UncheckedIOException e) {
+				throw new OpenCmsMetaXmlParseException("The sorted meta file entries could not be read", e.getCause());
+			}
+		}
+		catch (IOException e) {
+			// only thrown when closing the sorter, the manifest is complete at that point
+			LOG.warn("Temporary files used for sorting the meta files could not be deleted", e);
+		}
+	}
+
+	/**
+	 * Opens the fragment store configured with {@link #setFragmentStore(File)}. A store that can't be opened (or is
+	 * used by another run) is not an error, the run parses all meta files instead.
+	 * @param run   settings of the current run
+	 * @return  the opened store, <code>null</code> if no store is configured or it can't be used
+	 */
+	private FragmentStore openFragmentStore(RunContext run) {
+		File storeFile = fragmentStoreFile;
+		if (storeFile == null) {
+			return null;
+		}
+		try {
+			return FragmentStore.open(storeFile.toPath(), run.manifestRootPath);
+		}
+		catch (IOException e) {
+			LOG.warn("The fragment store " + storeFile.getPath() + " could not be opened, all meta files are parsed", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Closes the fragment store, after a complete run the fragments of meta files that don't exist anymore are marked
+	 * as dead (they are removed when the next run compacts the store). Errors are only logged, the manifest is
+	 * complete at that point.
+	 * @param store         the opened store
+	 * @param completeRun   <code>true</code> if the fragments of all meta files were looked up (the manifest was
+	 *                      generated successfully)
+	 */
+	private static void closeFragmentStore(FragmentStore store, boolean completeRun) {
+		LOG.info("fragment store: {}", store.getStatistics());
+		if (completeRun) {
+			store.markUnusedRecordsDead();
+		}
+		try {
+			store.close();
+		}
+		catch (IOException e) {
+			LOG.warn("The fragment store could not be closed", e);
+		}
+	}
+
+	/**
+	 * Lists all files and folders below the run's manifest root like {@link #scanMetaFiles(RunContext)}, but the
+	 * entries are not collected in a list, they are sorted by the given sorter (which may spill them to the disk). If
+	 * pre-validation is enabled, the entries are validated while they are found.
+	 * @param run       settings of the current run
+	 * @param sorter    the sorter receiving the entries
+	 * @return  iterator over the sorted entries, may throw {@link UncheckedIOException} if reading spilled entries
+	 *          fails
+	 * @throws OpenCmsMetaXmlParseException if the meta files can not be listed, or (as
+	 *                                      {@link OpenCmsMetaXmlValidationException}) if pre-validation is enabled and
+	 *                                      problems are found
+	 */
+	private static Iterator<MetaFileEntry> scanAndValidateMetaFiles(RunContext run, MetaFileEntrySorter sorter) throws OpenCmsMetaXmlParseException {
+		if (!run.validate) {
+			return scanMetaFiles(run, sorter, null);
+		}
+		long phaseStart = System.nanoTime();
+		try (MetaFileValidator validator = createValidator(run)) {
+			Iterator<MetaFileEntry> metaFilesAndDirs = scanMetaFiles(run, sorter, validator);
+			List<MetaFileProblem> problems = finishValidation(run, validator, phaseStart);
+			failOnProblems(run, problems);
+			return metaFilesAndDirs;
+		}
+	}
+
+	/**
+	 * Lists all files and folders below the run's manifest root and sorts them with the given sorter, see
+	 * {@link #scanAndValidateMetaFiles(RunContext, MetaFileEntrySorter)}.
+	 * @param run       settings of the current run
+	 * @param sorter    the sorter receiving the entries
+	 * @param validator validator receiving the entries as well, may be null
+	 * @return  iterator over the sorted entries
+	 * @throws OpenCmsMetaXmlParseException if the meta files can not be listed
+	 */
+	private static Iterator<MetaFileEntry> scanMetaFiles(RunContext run, MetaFileEntrySorter sorter, MetaFileValidator validator) throws OpenCmsMetaXmlParseException {
+		long phaseStart = System.nanoTime();
+		Iterator<MetaFileEntry> metaFilesAndDirs;
+		MetaFileScanner scanner = createMetaFileScanner(run.manifestRootPath, getScanFilter(run));
+		MetaFileScanner.EntryConsumer consumer = validator == null ? sorter::add : entry -> {
+			sorter.add(entry);
+			validator.accept(entry);
+		};
+		try {
+			scanner.scan(Paths.get(run.manifestRootPath), getExcludedPaths(run.manifestRootPath), consumer);
+			metaFilesAndDirs = sorter.iterator();
+		}
+		catch (IOException e) {
+			throw new OpenCmsMetaXmlParseException("The meta files below " + run.manifestRootPath + " could not be listed", e);
+		}
+		run.metrics.addPhase(ManifestGenerationPhase.SCAN, System.nanoTime() - phaseStart, sorter.size());
+		if (sorter.getNumRuns() > 0) {
+			LOG.info("{} meta file entries are merged from {} sorted runs on the disk (memory budget: {} bytes)", sorter.size(), sorter.getNumRuns(), run.memoryBudget);
+		}
+		return metaFilesAndDirs;
+	}
+
+	/**
+	 * Lists all files and folders below the run's manifest root like {@link #scanMetaFiles(RunContext)} and, if
+	 * pre-validation is enabled, validates them before they are returned.
+	 * @param run   settings of the current run
+	 * @return  sorted list of VFS file meta file and folder entries
+	 * @throws OpenCmsMetaXmlParseException if the meta files can not be listed, or (as
+	 *                                      {@link OpenCmsMetaXmlValidationException}) if pre-validation is enabled and
+	 *                                      problems are found
+	 */
+	private List<MetaFileEntry> scanAndValidateMetaFiles(RunContext run) throws OpenCmsMetaXmlParseException {
+		List<MetaFileEntry> metaFilesAndDirs = scanMetaFiles(run);
+		if (run.validate) {
+			failOnProblems(run, validateMetaFiles(run, metaFilesAndDirs));
+		}
+		return metaFilesAndDirs;
+	}
+
+	/**
+	 * Lists all files and folders below the run's manifest root in one pass, VFS folder meta files are attached to
+	 * their folders and the manifest stub file and the manifest file are excluded. Folders rejected by the run's
+	 * {@link ScanFilter} are pruned during the traversal.
+	 * @param run   settings of the current run
+	 * @return  sorted list of VFS file meta file and folder entries
+	 * @throws OpenCmsMetaXmlParseException if the meta files can not be listed (or the module resources can not be
+	 *                                      read from the manifest stub)
+	 */
+	List<MetaFileEntry> scanMetaFiles(RunContext run) throws OpenCmsMetaXmlParseException {
+		long phaseStart = System.nanoTime();
+		List<MetaFileEntry> metaFilesAndDirs;
+		MetaFileScanner scanner = createMetaFileScanner(run.manifestRootPath, getScanFilter(run));
+		try {
+			metaFilesAndDirs = scanner.scan(Paths.get(run.manifestRootPath), getExcludedPaths(run.manifestRootPath));
+		}
+		catch (IOException e) {
+			throw new OpenCmsMetaXmlParseException("The meta files below " + run.manifestRootPath + " could not be listed", e);
+		}
+		run.metrics.addPhase(ManifestGenerationPhase.SCAN, System.nanoTime() - phaseStart, metaFilesAndDirs.size());
+		return metaFilesAndDirs;
+	}
+
+	/**
+	 * @param manifestRootPath  root path of the manifest meta data
+	 * @param filter            filter deciding which files and folders are listed
+	 * @return a scanner for VFS file meta files and folders
+	 */
+	static MetaFileScanner createMetaFileScanner(String manifestRootPath, ScanFilter filter) {
+		return new MetaFileScanner(Paths.get(manifestRootPath), FOLDER_META_SUFFIX, FILE_META_SUFFIX, filter);
+	}
+
+	/**
+	 * Returns the filter for the run's scan. If the scan is restricted to the module resources, they are read from the
+	 * manifest stub (only the resource nodes are looked at, the stub is parsed completely when the manifest is
+	 * written).
+	 * @param run   settings of the current run
+	 * @return  the filter
+	 * @throws OpenCmsMetaXmlParseException if the module resources can not be read from the manifest stub or the stub
+	 *                                      doesn't declare any
+	 */
+	static ScanFilter getScanFilter(RunContext run) throws OpenCmsMetaXmlParseException {
+		if (!run.moduleResourcesOnly) {
+			return run.scanFilter;
+		}
+		String manifestStubPath = getManifestStubPath(run.manifestRootPath);
+		List<String> moduleResources;
+		Parsers parsers = XML_PARSERS.borrow();
+		try {
+			moduleResources = ScanFilter.readModuleResources(parsers.inputFactory, manifestStubPath);
+		}
+		catch (IOException e) {
+			throw new OpenCmsMetaXmlParseException("The manifest stub file could not be read", e);
+		}
+		catch (XMLStreamException e) {
+			throw new OpenCmsMetaXmlParseException("The manifest stub xml could not be parsed (parse error)", e);
+		}
+		finally {
+			XML_PARSERS.release(parsers);
+		}
+		if (moduleResources.isEmpty()) {
+			throw new OpenCmsMetaXmlParseException("The manifest stub doesn't declare any module resources (needed to restrict the scan to the module resources)", null);
+		}
+		LOG.debug("scanning module resources {}", moduleResources);
+		return run.scanFilter.restrictedTo(moduleResources);
+	}
+
+	/**
+	 * Returns the paths of the files below the manifest root that are not meta files (the manifest stub and the
+	 * manifest).
+	 * @param manifestRootPath  root path of the manifest meta data
+	 * @return  the paths of the files that are no meta files
+	 */
+	static Set<String> getExcludedPaths(String manifestRootPath) {
+		return new HashSet<>(Arrays.asList(getManifestStubPath(manifestRootPath), getManifestPath(manifestRootPath)));
+	}
+
+	/**
+	 * @param manifestRootPath  root path of the manifest meta data
+	 * @return  the path of the manifest stub file
+	 */
+	static String getManifestStubPath(String manifestRootPath) {
+		return manifestRootPath + File.separator + FILENAME_MANIFEST_STUB;
+	}
+
+	/**
+	 * @param manifestRootPath  root path of the manifest meta data
+	 * @return  the path of the manifest file
+	 */
+	static String getManifestPath(String manifestRootPath) {
+		return manifestRootPath + File.separator + FILENAME_MANIFEST;
+	}
+
+	/**
+	 * Generates the manifest from the given meta file and folder entries: the manifest stub is parsed and the manifest
+	 * is streamed to the disk, the file nodes are written while the meta files are parsed. Finally the metrics of the
+	 * run are passed to the listeners.
+	 * @param run               settings of the current run
+	 * @param metaFilesAndDirs  sorted list of VFS file meta file and folder entries
+	 * @throws OpenCmsMetaXmlParseException     if the XmlHelper can not be initialized or the manifest stub file or any
+	 *                                          meta file can not be read or parsed
+	 * @throws OpenCmsMetaXmlFileWriteException if the resulting manifest file can not be written
+	 */
+	void generateManifest(RunContext run, List<MetaFileEntry> metaFilesAndDirs) throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		generateManifest(run, metaFilesAndDirs.iterator(), metaFilesAndDirs.size());
+	}
+
+	/**
+	 * Generates the manifest from the given meta file and folder entries, see {@link #generateManifest(RunContext, List)}.
+	 * The entries are iterated once, while the manifest is written.
+	 * @param run               settings of the current run
+	 * @param metaFilesAndDirs  VFS file meta file and folder entries, sorted by path
+	 * @param numEntries        number of entries
+	 * @throws OpenCmsMetaXmlParseException     if the XmlHelper can not be initialized or the manifest stub file or any
+	 *                                          meta file can not be read or parsed
+	 * @throws OpenCmsMetaXmlFileWriteException if the resulting manifest file can not be written
+	 */
+	private void generateManifest(RunContext run, Iterator<MetaFileEntry> metaFilesAndDirs, int numEntries) throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		String manifestStubPath = getManifestStubPath(run.manifestRootPath);
+		String manifestPath = getManifestPath(run.manifestRootPath);
+		LOG.info("manifestStubPath: {}", manifestStubPath);
+
+		long phaseStart = System.nanoTime();
+		// the parsers are used for the stub and (in sequential mode) for the meta files, they are returned to the pool
+		// when the manifest is complete
+		Parsers parsers = XML_PARSERS.borrow();
+		try {
+			generateManifest(run, parsers, manifestStubPath, manifestPath, metaFilesAndDirs, numEntries, phaseStart);
+		}
+		finally {
+			XML_PARSERS.release(parsers);
+		}
+
+		if (run.realFileIndex != null) {
+			run.realFileIndex.logMissingFiles();
+		}
+		if (run.fragmentCache != null) {
+			LOG.info("fragment cache: {}", run.fragmentCache.getStatistics());
+		}
+		notifyListeners(run.metrics.toMetrics());
+	}
+
+	/**
+	 * Parses the manifest stub and writes the manifest.
+	 * @param run               settings of the current run
+	 * @param parsers           the parsers to be used for the stub and (in sequential mode) for the meta files
+	 * @param manifestStubPath  path of the manifest stub file
+	 * @param manifestPath      path of the manifest file
+	 * @param metaFilesAndDirs  VFS file meta file and folder entries, sorted by path
+	 * @param numEntries        number of entries
+	 * @param phaseStart        start of the stub parsing phase, see {@link System#nanoTime()}
+	 * @throws OpenCmsMetaXmlParseException     if the manifest stub file or any meta file can not be read or parsed
+	 * @throws OpenCmsMetaXmlFileWriteException if the resulting manifest file can not be written
+	 */
+	private void generateManifest(RunContext run, Parsers parsers, String manifestStubPath, String manifestPath, Iterator<MetaFileEntry> metaFilesAndDirs, int numEntries, long phaseStart) throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		XmlHelper xmlHelper = parsers.xmlHelper;
+		Document manifest = parseManifestStub(run, xmlHelper, manifestStubPath);
+		Node filesNode;
+		try {
+			filesNode = xmlHelper.getSingleNodeForXPath(manifest, FILES_NODE_XPATH);
+		}
+		catch (XPathExpressionException e) {
+			throw new OpenCmsMetaXmlParseException("The manifest stub xml could not be parsed (xpath error)", e);
+		}
+		run = withModuleUuidGenerator(run, xmlHelper, manifest);
+		run.metrics.addPhase(ManifestGenerationPhase.STUB_PARSE, System.nanoTime() - phaseStart, 1);
+		run.metrics.fileRead(new File(manifestStubPath).length(), false);
+
+		// stream the manifest to the disk, the file nodes are written while the meta files are parsed
+		writeManifest(run, parsers, manifestPath, manifest, filesNode, metaFilesAndDirs, numEntries);
+	}
+
+	/**
+	 * Parses the manifest stub, the <code>${createdate}</code> variable is replaced if date variables are replaced.
+	 * @param run               settings of the current run
+	 * @param xmlHelper         the XmlHelper to be used for parsing
+	 * @param manifestStubPath  path of the manifest stub file
+	 * @return  the parsed manifest stub
+	 * @throws OpenCmsMetaXmlParseException if the manifest stub file can not be read or parsed
+	 */
+	private static Document parseManifestStub(RunContext run, XmlHelper xmlHelper, String manifestStubPath) throws OpenCmsMetaXmlParseException {
+		Map<String,String> replacements = null;
+		if (run.replaceDateVariables) {
+			replacements = new HashMap<String, String>();
+			// for reproducible manifests the stub's date is used instead of the current time
+			long createDate = run.deterministicIds ? new File(manifestStubPath).lastModified() : System.currentTimeMillis();
+			replacements.put(META_VAR_CREATEDATE, ResourceDateFormatter.formatDate(createDate));
+		}
+		try {
+			return xmlHelper.parseFile(manifestStubPath, replacements);
+		}
+		catch (IOException e) {
+			throw new OpenCmsMetaXmlParseException("The manifest stub file could not be read", e);
+		}
+		catch (SAXException e) {
+			throw new OpenCmsMetaXmlParseException("The manifest stub xml could not be parsed (parse error)", e);
+		}
+	}
+
+	/**
+	 * If deterministic ids are enabled, returns a copy of the run context generating UUIDs derived from the module
+	 * name found in the manifest stub.
+	 * @param run           settings of the current run
+	 * @param xmlHelper     the XmlHelper to be used for the XPath evaluation
+	 * @param manifestStub  the parsed manifest stub
+	 * @return  the run context to be used for the meta files (the given one if deterministic ids are disabled)
+	 * @throws OpenCmsMetaXmlParseException if the manifest stub doesn't contain a module name
+	 */
+	private static RunContext withModuleUuidGenerator(RunContext run, XmlHelper xmlHelper, Document manifestStub) throws OpenCmsMetaXmlParseException {
+		if (!run.deterministicIds) {
+			return run;
+		}
+		String moduleName;
+		try {
+			moduleName = xmlHelper.getStringValueForXpath(manifestStub, MODULE_NAME_NODE_XPATH).trim();
+		}
+		catch (XPathExpressionException e) {
+			throw new OpenCmsMetaXmlParseException("The manifest stub xml could not be parsed (xpath error)", e);
+		}
+		if (moduleName.isEmpty()) {
+			throw new OpenCmsMetaXmlParseException("The manifest stub doesn't contain a module name (needed for deterministic ids)", null);
+		}
+		return run.withUuidGenerator(new NameBasedUuidGenerator(moduleName));
+	}
+
+	/**
+	 * Logs the metrics of a finished run and passes them to all registered listeners. Exceptions thrown by listeners
+	 * are logged, they don't affect the generated manifest.
+	 * @param metrics   the metrics of the run
+	 */
+	private void notifyListeners(ManifestGenerationMetrics metrics) {
+		LOG.info("manifest generated: {}", metrics);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("slowest meta files: {}", metrics.getSlowestMetaFiles());
+		}
+		for (ManifestGenerationListener listener : listeners) {
+			try {
+				listener.manifestGenerated(metrics);
+			}
+			catch (RuntimeException e) {
+				LOG.warn("Manifest generation listener " + listener + " failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Generates the manifests for several modules concurrently, at most <code>maxConcurrentModules</code> manifests
+	 * are generated at the same time. Each manifest is generated exactly like with
+	 * {@link #generateManifest(File, String)}, if parallel parsing is enabled the manifests share the generator's
+	 * parser threads (so no more than the configured parallelism threads are parsing meta files).
+	 * @param manifestRoots         map containing the root folders of the modules' manifest meta data (including
+	 *                              manifest_stub.xml) as keys and the corresponding root paths of the real files as
+	 *                              values (values may be null, see {@link #generateManifest(File, String)})
+	 * @param maxConcurrentModules  maximum number of manifests generated at the same time
+	 * @throws OpenCmsMetaXmlParseException     if the meta files of any module can not be read or parsed
+	 * @throws OpenCmsMetaXmlFileWriteException if the manifest of any module can not be written
+	 * @see #generateManifests(Map, ExecutorService)
+	 */
+	public void generateManifests(Map<File, String> manifestRoots, int maxConcurrentModules) throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		int numThreads = Math.max(1, Math.min(maxConcurrentModules, manifestRoots.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			generateManifests(manifestRoots, executor);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Generates the manifests for several modules concurrently on the given executor (which may be shared with other
+	 * tasks, it is not shut down). A failing module doesn't stop the other modules, all manifests that can be
+	 * generated are written. If one or more modules fail, the exception of the first failing module (in the map's
+	 * iteration order) is thrown, the exceptions of further failing modules are added as suppressed exceptions.
+	 * @param manifestRoots map containing the root folders of the modules' manifest meta data (including
+	 *                      manifest_stub.xml) as keys and the corresponding root paths of the real files as values
+	 *                      (values may be null, see {@link #generateManifest(File, String)})
+	 * @param executor      executor used to generate the manifests, its number of threads limits the number of
+	 *                      manifests generated at the same time
+	 * @throws OpenCmsMetaXmlParseException     if the meta files of any module can not be read or parsed, or if the
+	 *                                          current thread is interrupted while waiting for the manifests
+	 * @throws OpenCmsMetaXmlFileWriteException if the manifest of any module can not be written
+	 */
+	public void generateManifests(Map<File, String> manifestRoots, ExecutorService executor) throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		Map<File, Future<Void>> results = new LinkedHashMap<>();
+		for (Map.Entry<File, String> module : manifestRoots.entrySet()) {
+			File manifestRoot = module.getKey();
+			String realFileRootPath = module.getValue();
+			results.put(manifestRoot, executor.submit(() -> {
+				generateManifest(manifestRoot, realFileRootPath);
+				return null;
+			}));
+		}
+
+		Exception failure = null;
+		for (Map.Entry<File, Future<Void>> result : results.entrySet()) {
+			try {
+				result.getValue().get();
+			}
+			catch (InterruptedException e) {
+				for (Future<Void> pendingResult : results.values()) {
+					pendingResult.cancel(true);
+				}
+				Thread.currentThread().interrupt();
+				throw new OpenCmsMetaXmlParseException("Generating the manifests was interrupted", e);
+			}
+			catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Error) {
+					throw (Error)cause;
+				}
+				LOG.error("The manifest for " + result.getKey().getPath() + " could not be generated", cause);
+				if (failure == null) {
+					failure = (Exception)cause;
+				}
+				else {
+					failure.addSuppressed(cause);
+				}
+			}
+		}
+
+		if (failure instanceof OpenCmsMetaXmlParseException) {
+			throw (OpenCmsMetaXmlParseException)failure;
+		}
+		if (failure instanceof OpenCmsMetaXmlFileWriteException) {
+			throw (OpenCmsMetaXmlFileWriteException)failure;
+		}
+		if (failure != null) {
+			throw (RuntimeException)failure;
+		}
+	}
+
+	/**
+	 * Writes the manifest file to the disk. The stub's sections are streamed to the file, the meta files are parsed
+	 * and written to the files node one by one (in parallel mode the parser threads work ahead of the writer). If a
+	 * specific module version is set, it replaces the stub's version while streaming. The manifest is written to a
+	 * temporary file first and moved into place when it is complete, an existing manifest with the same content is not
+	 * replaced.
+	 * @param run               settings of the current run
+	 * @param parsers           the parsers to be used in sequential mode
+	 * @param manifestPath      path to the manifest file
+	 * @param manifestStub      the parsed manifest stub
+	 * @param filesNode         the files node of the manifest stub
+	 * @param metaFilesAndDirs  VFS file meta file and folder entries, sorted by path
+	 * @param numEntries        number of entries
+	 * @throws OpenCmsMetaXmlParseException     if any meta file can not be read or parsed
+	 * @throws OpenCmsMetaXmlFileWriteException if writing to disk fails
+	 */
+	private void writeManifest(RunContext run, Parsers parsers, String manifestPath, Document manifestStub, Node filesNode, Iterator<MetaFileEntry> metaFilesAndDirs, int numEntries) throws OpenCmsMetaXmlParseException, OpenCmsMetaXmlFileWriteException {
+		long start = System.nanoTime();
+		// an incomplete manifest is discarded on close, the existing manifest is kept in that case
+		try (ManifestOutputFile output = new ManifestOutputFile(Paths.get(manifestPath))) {
+			OutputStream manifestStream = output.getOutputStream();
+			ManifestEntryStream zipManifestStream = null;
+			if (run.moduleZip != null) {
+				// the manifest is written to the module ZIP as well
+				zipManifestStream = run.moduleZip.createManifestStream();
+				manifestStream = new TeeOutputStream(manifestStream, zipManifestStream);
+			}
+			ManifestWriter manifestWriter = new ManifestWriter(manifestStream, CDATA_NODE_NAMES);
+			manifestWriter.writeManifest(manifestStub, filesNode, run.moduleVersion, () -> writeMetaFiles(run, parsers, manifestWriter, metaFilesAndDirs));
+			boolean changed = output.commit();
+			run.metrics.manifestWritten(System.nanoTime() - start, numEntries, output.getMeteredStream(), changed);
+			if (!changed) {
+				LOG.info("manifest.xml is unchanged, the existing file was kept");
+			}
+			if (run.moduleZip != null) {
+				long packagingStart = System.nanoTime();
+				run.moduleZip.finish(FILENAME_MANIFEST, zipManifestStream);
+				run.metrics.addPhase(ManifestGenerationPhase.PACKAGING, System.nanoTime() - packagingStart, run.moduleZip.getNumEntries());
+			}
+		}
+		catch (IOException | XMLStreamException e) {
+			throw new OpenCmsMetaXmlFileWriteException(run.moduleZip != null ? "manifest.xml or the module ZIP could not be written" : "manifest.xml could not be written", e);
+		}
+	}
+
+	/**
+	 * Parses the meta files and writes their file nodes to the manifest, the file nodes are written while the
+	 * {@link ManifestEntryIterator} produces them. Written entries are recycled.
+	 * @param run               settings of the current run
+	 * @param parsers           the parsers to be used in sequential mode
+	 * @param manifestWriter    writer the file nodes are written to
+	 * @param metaFilesAndDirs  VFS file meta file and folder entries, sorted by path
+	 * @throws OpenCmsMetaXmlParseException if any meta file can not be read or parsed
+	 * @throws IOException if writing fails
+	 * @throws XMLStreamException if writing fails
+	 */
+	private void writeMetaFiles(RunContext run, Parsers parsers, ManifestWriter manifestWriter, Iterator<MetaFileEntry> metaFilesAndDirs) throws OpenCmsMetaXmlParseException, IOException, XMLStreamException {
+		try (ManifestEntryIterator entries = createManifestEntryIterator(run, parsers, metaFilesAndDirs, true)) {
+			while (entries.hasNext()) {
+				ManifestEntry entry = entries.nextEntry();
+				writeManifestEntry(run, manifestWriter, entry);
+				entries.recycle(entry);
+			}
+		}
+	}
+
+	/**
+	 * Creates the iterator producing the manifest entries of a run.
+	 * @param run               settings of the current run
+	 * @param parsers           the parsers to be used in sequential mode
+	 * @param metaFilesAndDirs  VFS file meta file and folder entries, sorted by path
+	 * @param recycleEntries    <code>true</code> if the entries are recycled once they have been written
+	 * @return  the iterator, it has to be closed
+	 */
+	private ManifestEntryIterator createManifestEntryIterator(RunContext run, Parsers parsers, Iterator<MetaFileEntry> metaFilesAndDirs, boolean recycleEntries) {
+		ForkJoinPool threads = run.parallelism > 1 ? getParserThreads(run.parallelism) : null;
+		return new ManifestEntryIterator(run, metaFilesAndDirs, (fileOrDir, entryParsers, values) -> parseMetaFile(run, entryParsers, fileOrDir, values), parsers, XML_PARSERS, threads, recycleEntries);
+	}
+
+	/**
+	 * Returns the generator's parser threads, the pool is created if there is none with the given parallelism yet.
+	 * Runs in progress keep using the pool they started with. The pool's threads are daemon threads and end when they
+	 * are idle, so the pool doesn't have to be shut down.
+	 * @param parallelism   number of parser threads
+	 * @return  the parser threads
+	 */
+	private synchronized ForkJoinPool getParserThreads(int parallelism) {
+		if (parserThreads == null || parserThreads.getParallelism() != parallelism) {
+			parserThreads = new ForkJoinPool(parallelism);
+		}
+		return parserThreads;
+	}
+
+	/**
+	 * Generates a random UUID
+	 * @return a random UUID
+	 */
+	private static String generateUUID()  {
+		return UUID.randomUUID().toString();
+	}
+
+	/**
+	 * Generates the structure id for a VFS file or folder, derived from the module name and the VFS path if
+	 * deterministic ids are enabled, random otherwise.
+	 * @param run       settings of the current run
+	 * @param vfsPath   VFS path of the file or folder
+	 * @return the structure id
+	 */
+	private static String generateStructureId(RunContext run, String vfsPath) {
+		return run.uuidGenerator != null ? run.uuidGenerator.getStructureId(vfsPath) : generateUUID();
+	}
+
+	/**
+	 * Generates the resource id for a VFS file, derived from the module name and the VFS path if deterministic ids are
+	 * enabled, random otherwise.
+	 * @param run       settings of the current run
+	 * @param vfsPath   VFS path of the file
+	 * @return the resource id
+	 */
+	private static String generateResourceId(RunContext run, String vfsPath) {
+		return run.uuidGenerator != null ? run.uuidGenerator.getResourceId(vfsPath) : generateUUID();
+	}
+
+	/**
+	 * Replaces System file separators with a forward slash ("/") that's needed for the VFS
+	 * @param path  the path containing system file separators
+	 * @return the path with file separators replaced by "/"
+	 */
+	private static String fixVfsFileSeparator(String path) {
+		return File.separatorChar == VFS_SEPARATOR ? path : path.replace(File.separatorChar, VFS_SEPARATOR);
+	}
+
+	/**
+	 * Returns the formatted modification date for the given entry. If a real file root path is set, the modification
+	 * date of the corresponding real file is used (looked up in the run's real file index), otherwise (or if there is
+	 * no real file) the meta file's date.
+	 * @param run       settings of the current run
+	 * @param parsers   the parsers of the current thread (providing the date formatter)
+	 * @param fileOrDir the entry of the VFS file meta file or folder
+	 * @return  formatted date as String
+	 */
+	private static String getFormattedDate(RunContext run, Parsers parsers, MetaFileEntry fileOrDir) {
+		long lastModified = 0;
+		if (run.realFileIndex != null) {
+			// missing real files are counted by the index and reported once the manifest is complete
+			lastModified = run.realFileIndex.getLastModified(run.manifestRootPath, fileOrDir.path);
+		}
+
+		// If no real file was found, use the meta file's date (read during the scan) as fallback
+		if (lastModified == 0) {
+			lastModified = fileOrDir.lastModified;
+		}
+		return parsers.dateFormatter.format(lastModified);
+	}
+
+	/**
+	 * Returns the path of the real file belonging to a VFS file meta file or folder.
+	 * @param manifestRootPath  root path of the manifest meta data
+	 * @param realFileRootPath  root path of the real files
+	 * @param metaFilePath      path of the VFS file meta file or folder
+	 * @return  the real file's path
+	 */
+	static String getRealFilePath(String manifestRootPath, String realFileRootPath, String metaFilePath) {
+		return metaFilePath.replace(manifestRootPath, realFileRootPath);
+	}
+
+	/**
+	 * Parses the meta file for the given VFS file meta file or folder and serializes its file node. Only reads the meta
+	 * file, the manifest is not touched, so this may be done concurrently for different meta files.
+	 * @param run       settings of the current run
+	 * @param parsers   the parsers to be used (must not be used by other threads at the same time)
+	 * @param fileOrDir VFS file meta file or folder entry
+	 * @param values    object receiving the meta variable values (new or recycled, see {@link ManifestEntryIterator})
+	 * @return the manifest entry (siblings not resolved yet)
+	 * @throws OpenCmsMetaXmlParseException if the meta file can not be read or parsed
+	 */
+	private ManifestEntry parseMetaFile(RunContext run, Parsers parsers, MetaFileEntry fileOrDir, MetaVariableValues values) throws OpenCmsMetaXmlParseException {
+		long start = System.nanoTime();
+		ManifestEntry entry;
+		if (fileOrDir.folder) {
+			entry = parseFolderMetaFile(run, parsers, fileOrDir, values);
+		}
+		else {
+			entry = parseFileMetaFile(run, parsers, fileOrDir, values);
+		}
+		entry.parseNanos = System.nanoTime() - start;
+		return entry;
+	}
+
+	/**
+	 * Writes a manifest entry to the manifest (siblings are resolved already, the source node of siblings may be left
+	 * out). If the module is packaged, the real file of every file node with a source node is added to the module
+	 * ZIP.
+	 * @param run               settings of the current run
+	 * @param manifestWriter    writer the file node is written to
+	 * @param entry             the manifest entry
+	 * @throws IOException if writing fails (or the real file can not be read)
+	 * @throws XMLStreamException if writing fails
+	 */
+	private static void writeManifestEntry(RunContext run, ManifestWriter manifestWriter, ManifestEntry entry) throws IOException, XMLStreamException {
+		FragmentTemplate template = entry.template;
+		manifestWriter.writeFileNode(template, entry.values, entry.sourceRemoved);
+
+		String source = entry.values.get(MetaVariable.SOURCE);
+		if (run.moduleZip != null && source != null && !entry.sourceRemoved) {
+			long start = System.nanoTime();
+			String vfsFilePath = template.metaXmlFilePath.substring(0, template.metaXmlFilePath.length() - FILE_META_SUFFIX.length());
+			run.moduleZip.addFile(source, Paths.get(getRealFilePath(run.manifestRootPath, run.realFileRootPath, vfsFilePath)));
+			run.metrics.addPhase(ManifestGenerationPhase.PACKAGING, System.nanoTime() - start, 0);
+		}
+	}
+
+	/**
+	 * Parses the meta information for the given folder.
+	 * @param run       settings of the current run
+	 * @param parsers   the parsers to be used
+	 * @param folder    the entry of the folder whose meta data is to be parsed
+	 * @param values    object receiving the meta variable values for the folder
+	 * @return the manifest entry for the folder
+	 * @throws OpenCmsMetaXmlParseException if the VFS folder meta file can not be read or parsed
+	 */
+	private ManifestEntry parseFolderMetaFile(RunContext run, Parsers parsers, MetaFileEntry folder, MetaVariableValues values) throws OpenCmsMetaXmlParseException {
+		LOG.debug("folder: {}", folder.path);
+		String metaXmlFilePath = folder.metaXmlFilePath;
+		LOG.debug("meta folder: {}", metaXmlFilePath);
+
+		String vfsPath = metaXmlFilePath.substring(run.manifestRootPath.length() + 1, metaXmlFilePath.length() - FOLDER_META_SUFFIX.length());
+		vfsPath = fixVfsFileSeparator(vfsPath);
+		values.clear();
+		values.set(MetaVariable.DESTINATION, vfsPath);
+
+		if (run.replaceDateVariables) {
+			String formattedDate = getFormattedDate(run, parsers, folder);
+			values.set(MetaVariable.DATELASTMODIFIED, formattedDate);
+			values.set(MetaVariable.DATECREATED, formattedDate);
+		}
+		if (run.replaceIdVariables) {
+			values.set(MetaVariable.UUIDSTRUCTURE, generateStructureId(run, vfsPath));
+		}
+
+		FragmentTemplate template = getFragmentTemplate(run, parsers, folder);
+		return new ManifestEntry(template, values, true);
+	}
+
+	/**
+	 * Parses the meta information contained in the file node of the given xml file. The resource Id is retrieved as
+	 * well, so siblings can be handled by the {@link ManifestEntryIterator} before the file node is added to the
+	 * manifest.
+	 * @param run       settings of the current run
+	 * @param parsers   the parsers to be used
+	 * @param metaFile  the entry of the meta file whose meta data (contained in the file node) is to be parsed
+	 * @param values    object receiving the meta variable values for the file
+	 * @return the manifest entry for the file
+	 * @throws OpenCmsMetaXmlParseException if the file meta file can not be read or parsed
+	 */
+	private ManifestEntry parseFileMetaFile(RunContext run, Parsers parsers, MetaFileEntry metaFile, MetaVariableValues values) throws OpenCmsMetaXmlParseException {
+		String metaXmlFilePath = metaFile.metaXmlFilePath;
+		LOG.debug("meta file:   {}", metaXmlFilePath);
+
+		String vfsPath;
+		try {
+			vfsPath = metaXmlFilePath.substring(run.manifestRootPath.length() + 1, metaXmlFilePath.length() - FILE_META_SUFFIX.length());
+		}
+		catch (StringIndexOutOfBoundsException e) {
+			LOG.error("Error getting vfs path for meta file " + metaXmlFilePath, e);
+			throw new OpenCmsMetaXmlParseException("Can't determine the VFS path for the meta file " + metaXmlFilePath, e);
+		}
+		vfsPath = fixVfsFileSeparator(vfsPath);
+		values.clear();
+		values.set(MetaVariable.SOURCE, vfsPath);
+		values.set(MetaVariable.DESTINATION, vfsPath);
+
+		if (run.replaceDateVariables) {
+			String formattedDate = getFormattedDate(run, parsers, metaFile);
+			values.set(MetaVariable.DATELASTMODIFIED, formattedDate);
+			values.set(MetaVariable.DATECREATED, formattedDate);
+		}
+		if (run.replaceIdVariables) {
+			values.set(MetaVariable.UUIDSTRUCTURE, generateStructureId(run, vfsPath));
+			values.set(MetaVariable.UUIDRESOURCE, generateResourceId(run, vfsPath));
+		}
+
+		FragmentTemplate template = getFragmentTemplate(run, parsers, metaFile);
+		return new ManifestEntry(template, values, false);
+	}
+
+	/**
+	 * Returns the fragment template for the given meta file. If the fragment cache is enabled and the meta file is
+	 * unchanged since it was cached, the cached template is used. Otherwise the template is taken from the fragment
+	 * store, if the run uses one and the meta file is unchanged since it was stored, or the meta file is parsed (and
+	 * the template is stored).
+	 * @param run       settings of the current run
+	 * @param parsers   the parsers to be used
+	 * @param fileOrDir the entry of the VFS file meta file or folder
+	 * @return the fragment template for the meta file
+	 * @throws OpenCmsMetaXmlParseException if the meta file can not be read or parsed
+	 */
+	private FragmentTemplate getFragmentTemplate(RunContext run, Parsers parsers, MetaFileEntry fileOrDir) throws OpenCmsMetaXmlParseException {
+		FragmentCache cache = run.fragmentCache;
+		FragmentTemplate template = cache != null ? cache.get(fileOrDir.metaXmlFilePath, fileOrDir.metaFileSize, fileOrDir.metaFileLastModified) : null;
+		FragmentStore store = run.fragmentStore;
+		if (template != null) {
+			if (store != null) {
+				store.markUsed(fileOrDir.metaXmlFilePath);
+			}
+			return template;
+		}
+		FragmentStore.Lookup lookup = null;
+		if (store != null) {
+			lookup = store.get(fileOrDir.metaXmlFilePath, fileOrDir.metaFileSize, fileOrDir.metaFileLastModified);
+			template = lookup.template;
+		}
+		if (template == null) {
+			template = readFragmentTemplate(parsers, fileOrDir.metaXmlFilePath, fileOrDir.folder, fileOrDir.metaFileSize, fileOrDir.metaFileLastModified);
+			run.metrics.fileRead(Math.max(0, fileOrDir.metaFileSize), true);
+			if (lookup != null) {
+				store.put(lookup, template);
+			}
+		}
+		if (cache != null) {
+			// the cached copy shares its repeated subtrees with the other cached templates
+			template = cache.put(template);
+		}
+		return template;
+	}
+
+	/**
+	 * Parses the given meta file and serializes its file node, meta variables are left in place. Meta files with the
+	 * standard layout are read by the fast {@link MetaFileReader}, all others are parsed with the DOM parser.
+	 * @param parsers               the parsers to be used
+	 * @param metaXmlFilePath       path pointing to the VFS file or folder meta file
+	 * @param isFolder              <code>true</code> if the meta file is a VFS folder meta file, <code>false</code>
+	 *                              otherwise
+	 * @param metaFileSize          size of the meta file (used as cache key)
+	 * @param metaFileLastModified  modification date of the meta file (used as cache key)
+	 * @return the fragment template for the meta file
+	 * @throws OpenCmsMetaXmlParseException if the meta file can not be read or parsed
+	 */
+	private FragmentTemplate readFragmentTemplate(Parsers parsers, String metaXmlFilePath, boolean isFolder, long metaFileSize, long metaFileLastModified) throws OpenCmsMetaXmlParseException {
+		FragmentTemplate template = META_FILE_READER.read(parsers.inputFactory, parsers.readBuffers, metaXmlFilePath, isFolder, metaFileSize, metaFileLastModified);
+		if (template != null) {
+			return template;
+		}
+		LOG.debug("meta file {} doesn't match the standard layout, using the DOM parser", metaXmlFilePath);
+		XmlHelper xmlHelper = parsers.xmlHelper;
+
+		if (isFolder) {
+			Document folderMetaInfo;
+			try {
+				// the whole content of the meta file is added as a child node to the files node
+				folderMetaInfo = xmlHelper.parseFile(metaXmlFilePath, null);
+			}
+			catch (IOException e) {
+				throw new OpenCmsMetaXmlParseException("The file " + metaXmlFilePath + " could not be read", e);
+			}
+			catch (SAXException e) {
+				throw new OpenCmsMetaXmlParseException("The xml from the file " + metaXmlFilePath + " could not be parsed", e);
+			}
+			SerializedFileNode folderNode = serializeFileNode(folderMetaInfo.getDocumentElement(), null, metaXmlFilePath);
+			String structureId = getOptionalValue(xmlHelper, folderMetaInfo, FOLDER_STRUCTUREID_NODE_XPATH, "structure id", metaXmlFilePath);
+			String type = getOptionalValue(xmlHelper, folderMetaInfo, FOLDER_TYPE_NODE_XPATH, "type", metaXmlFilePath);
+			return new FragmentTemplate(metaXmlFilePath, metaFileSize, metaFileLastModified, folderNode, type, 0, null, structureId);
+		}
+
+		Document fileMetaInfo = getFileMetaInfoFromXmlFile(xmlHelper, metaXmlFilePath);
+		Node fileNode = getFileNodeFromMetaInfo(xmlHelper, fileMetaInfo, metaXmlFilePath);
+		int numSiblings = getNumSiblingsForFile(xmlHelper, fileMetaInfo, metaXmlFilePath);
+
+		String resourceId;
+		Node sourceNode = null;
+		if (numSiblings >= 2) {
+			resourceId = getResourceIdForFile(xmlHelper, fileMetaInfo, metaXmlFilePath);
+			sourceNode = getSourceNodeForFile(xmlHelper, fileMetaInfo, metaXmlFilePath);
+		}
+		else {
+			resourceId = getOptionalValue(xmlHelper, fileMetaInfo, RESOURCEID_NODE_XPATH, "resource id", metaXmlFilePath);
+		}
+		SerializedFileNode serializedFileNode = serializeFileNode(fileNode, sourceNode, metaXmlFilePath);
+		String structureId = getOptionalValue(xmlHelper, fileMetaInfo, STRUCTUREID_NODE_XPATH, "structure id", metaXmlFilePath);
+		String type = getOptionalValue(xmlHelper, fileMetaInfo, TYPE_NODE_XPATH, "type", metaXmlFilePath);
+		return new FragmentTemplate(metaXmlFilePath, metaFileSize, metaFileLastModified, serializedFileNode, type, numSiblings, resourceId, structureId);
+	}
+
+	/**
+	 * Serializes the given file node, so it can be written to the manifest.
+	 * @param fileNode          the file node to be serialized
+	 * @param sourceNode        the file node's source node (its position is tracked for siblings), may be
+	 *                          <code>null</code>
+	 * @param metaXmlFilePath   path pointing to the meta file (only used for logging purposes)
+	 * @return  the serialized file node
+	 * @throws OpenCmsMetaXmlParseException if the file node can not be serialized
+	 */
+	private static SerializedFileNode serializeFileNode(Node fileNode, Node sourceNode, String metaXmlFilePath) throws OpenCmsMetaXmlParseException {
+		try {
+			return ManifestWriter.serializeFileNode(fileNode, sourceNode, CDATA_NODE_NAMES);
+		}
+		catch (XMLStreamException e) {
+			throw new OpenCmsMetaXmlParseException("The xml from the file " + metaXmlFilePath + " could not be serialized", e);
+		}
+	}
+
+	/**
+	 * Retrieves the XML Document from the VFS file meta file at the given path. Meta variables are not replaced.
+	 *
+	 * @param xmlHelper the XmlHelper to be used for parsing
+	 * @param metaXmlFilePath path pointing to the VFS file meta file
+	 * @return the XML Document contained in the meta file
+	 * @throws OpenCmsMetaXmlParseException if the VFS file meta file can not be read or parsed
+	 */
+	private Document getFileMetaInfoFromXmlFile(XmlHelper xmlHelper, String metaXmlFilePath) throws OpenCmsMetaXmlParseException {
+		Document fileMetaInfo;
+		try {
+			fileMetaInfo = xmlHelper.parseFile(metaXmlFilePath, null);
+		}
+		catch (IOException e) {
+			throw new OpenCmsMetaXmlParseException("The file " + metaXmlFilePath + " could not be read", e);
+		}
+		catch (SAXException e) {
+			throw new OpenCmsMetaXmlParseException("The xml from the file " + metaXmlFilePath + " could not be parsed (parse error)", e);
+		}
+		return fileMetaInfo;
+	}
+
+	/**
+	 * Retrieves the file node from the VFS file meta XML document (located at the XPath {@link #FILE_NODE_XPATH}).
+	 *
+	 * @param xmlHelper         the XmlHelper to be used for the XPath evaluation
+	 * @param fileMetaInfo      VFS file meta XML document
+	 * @param metaXmlFilePath   path pointing to the VFS file meta file (only used for logging purposes)
+	 * @return the file node to be added to the manifest
+	 * @throws OpenCmsMetaXmlParseException if the file node can not be found at the expected XPath
+	 *                                      (see {@link #FILE_NODE_XPATH})
+	 */
+	private Node getFileNodeFromMetaInfo(XmlHelper xmlHelper, Document fileMetaInfo, String metaXmlFilePath) throws OpenCmsMetaXmlParseException {
+		Node fileNode;
+
+		try {
+			fileNode = xmlHelper.getSingleNodeForXPath(fileMetaInfo, FILE_NODE_XPATH);
+		}
+		catch (XPathExpressionException e) {
+			throw new OpenCmsMetaXmlParseException("The xml from the file " + metaXmlFilePath + " could not be parsed (xpath error)", e);
+		}
+		return fileNode;
+	}
+
+	/**
+	 * Retrieves the number of siblings for the VFS file.
+	 * @param xmlHelper         the XmlHelper to be used for the XPath evaluation
+	 * @param metaInfo          VFS file meta XML document
+	 * @param metaXmlFilePath   path pointing to the VFS file meta file (only used for logging purposes)
+	 * @return the number of siblings for the VFS file
+	 * @throws OpenCmsMetaXmlParseException if the siblingcount node can not be found at the expected XPath
+	 *                                      (see {@link #SIBLINGCOUNT_NODE_XPATH})
+	 */
+	private int getNumSiblingsForFile(XmlHelper xmlHelper, Document metaInfo, String metaXmlFilePath) throws OpenCmsMetaXmlParseException {
+		int numSiblings;
+		try {
+			numSiblings = xmlHelper.getIntValueForXpath(metaInfo, SIBLINGCOUNT_NODE_XPATH);
+		}
+		catch (XPathExpressionException e) {
+			throw new OpenCmsMetaXmlParseException("Can't determine sibling count from " + metaXmlFilePath + " (xpath error)", e);
+		}
+		catch (NumberFormatException e) {
+			throw new OpenCmsMetaXmlParseException("Can't determine sibling count from " + metaXmlFilePath + " (not a number)", e);
+		}
+		return numSiblings;
+	}
+
+	/**
+	 * Retrieves the resource Id for the VFS file.
+	 * @param xmlHelper         the XmlHelper to be used for the XPath evaluation
+	 * @param metaInfo          VFS file meta XML document
+	 * @param metaXmlFilePath   path pointing to the VFS file meta file (only used for logging purposes)
+	 * @return the resource Id for the VFS file
+	 * @throws OpenCmsMetaXmlParseException if the uuidresource node can not be found at the expected XPath
+	 *                                      (see {@link #RESOURCEID_NODE_XPATH})
+	 */
+	private String getResourceIdForFile(XmlHelper xmlHelper, Document metaInfo, String metaXmlFilePath) throws OpenCmsMetaXmlParseException {
+		String resourceId;
+		try {
+			resourceId = xmlHelper.getStringValueForXpath(metaInfo, RESOURCEID_NODE_XPATH);
+		}
+		catch (XPathExpressionException e) {
+			throw new OpenCmsMetaXmlParseException("Can't determine resource id from " + metaXmlFilePath + " (xpath error)", e);
+		}
+		return resourceId;
+	}
+
+	/**
+	 * Retrieves the text of an optional node (like the structure Id) of the VFS file or folder.
+	 * @param xmlHelper         the XmlHelper to be used for the XPath evaluation
+	 * @param metaInfo          VFS file or folder meta XML document
+	 * @param xpath             XPath pointing to the node
+	 * @param description       description of the value (only used for logging purposes)
+	 * @param metaXmlFilePath   path pointing to the meta file (only used for logging purposes)
+	 * @return the node's text, <code>null</code> if there is no such node
+	 * @throws OpenCmsMetaXmlParseException if the XPath can not be evaluated
+	 */
+	private String getOptionalValue(XmlHelper xmlHelper, Document metaInfo, String xpath, String description, String metaXmlFilePath) throws OpenCmsMetaXmlParseException {
+		try {
+			Node node = xmlHelper.getSingleNodeForXPath(metaInfo, xpath);
+			return node != null ? node.getTextContent() : null;
+		}
+		catch (XPathExpressionException e) {
+			throw new OpenCmsMetaXmlParseException("Can't determine " + description + " from " + metaXmlFilePath + " (xpath error)", e);
+		}
+	}
+
+	/**
+	 * Retrieves the source node of the VFS file (used for siblings, only the first sibling keeps its source node).
+	 * @param xmlHelper         the XmlHelper to be used for the XPath evaluation
+	 * @param metaInfo          VFS file meta XML document
+	 * @param metaXmlFilePath   path pointing to the VFS file meta file (only used for logging purposes)
+	 * @return the source node, <code>null</code> if there is none
+	 * @throws OpenCmsMetaXmlParseException if the XPath {@link #SOURCE_NODE_XPATH} can not be evaluated
+	 */
+	private Node getSourceNodeForFile(XmlHelper xmlHelper, Document metaInfo, String metaXmlFilePath) throws OpenCmsMetaXmlParseException {
+		try {
+			return xmlHelper.getSingleNodeForXPath(metaInfo, SOURCE_NODE_XPATH);
+		}
+		catch (XPathExpressionException e) {
+			throw new OpenCmsMetaXmlParseException("Can't determine sibling's source node from " + metaXmlFilePath + " (xpath error)", e);
+		}
+	}
+
+	/**
+	 * Gets the path to the meta info file for the VFS file or folder at the given VFS path.
+	 * @param manifestRoot  root folder of the manifest meta files
+	 * @param vfsPath       VFS path of the given VFS file or folder
+	 * @param isFolder      <code>true</code> if the VFS resource is a folder, <code>false</code> otherwise
+	 * @return  "[vfsPath].ocmsfile.xml" for files, "[vfsPath].ocmsfolder.xml" for folders
+	 */
+	public static String getMetaInfoPath(String manifestRoot, String vfsPath, boolean isFolder) {
+		return manifestRoot + vfsPath + getMetaInfoSuffix(isFolder);
+	}
+
+	/**
+	 * Returns the suffix for the meta file depending in <code>isFolder</code>.
+	 * @param isFolder <code>true</code> if the suffix for folders should be returned, <code>false</code> otherwise
+	 * @return  ".ocmsfolder.xml" ({@link #FOLDER_META_SUFFIX} if <code>isFolder</code> is <code>true</code>,
+	 *          ".ocmsfile.xml" ({@link #FILE_META_SUFFIX} otherwise
+	 */
+	private static String getMetaInfoSuffix(boolean isFolder) {
+		return isFolder ? FOLDER_META_SUFFIX : FILE_META_SUFFIX;
+	}
+
+	/**
+	 * Allows to set a specific module version that is replacing the module version from the manifest stub.
+	 * @param moduleVersion the String to be used as the module version, if <code>null</code> or empty the version is
+	 *                      not changed
+	 */
+	public void setModuleVersion(String moduleVersion) {
+		this.moduleVersion = moduleVersion;
+	}
+
+	/**
+	 * Sets the flag indicating if date variables (<code>${datelastmodified}</code> and <code>${datecreated}</code>)
+	 * should be replaced with generated values.
+	 * @param replaceDateVariables <code>true</code> if date variables should be replaced, <code>false</code> otherwise
+	 */
+	public void setReplaceDateVariables(boolean replaceDateVariables) {
+		this.replaceDateVariables = replaceDateVariables;
+	}
+
+	/**
+	 * Sets the flag indicating if UUID variables (<code>${uuidstructure}</code> and <code>${uuidresource}</code>)
+	 * should be replaced with generated values.
+	 *
+	 * @param replaceIdVariables <code>true</code> if UUID variables should be replaced, <code>false</code> otherwise
+	 */
+	public void setReplaceIdVariables(boolean replaceIdVariables) {
+		this.replaceIdVariables = replaceIdVariables;
+	}
+
+	/**
+	 * Sets the flag indicating if UUIDs generated for <code>${uuidstructure}</code> and <code>${uuidresource}</code>
+	 * are derived from the module name (from the manifest stub) and the VFS path instead of being random. Repeated
+	 * runs then produce the same ids, and with date variables the stub's modification date is used as
+	 * <code>${createdate}</code>, so unchanged meta files result in a byte-identical manifest. Resource ids that are
+	 * set in the meta files (like the shared resource id of siblings) are not changed.
+	 * @param deterministicIds <code>true</code> if stable ids should be generated, <code>false</code> for random ids
+	 *                         (default)
+	 */
+	public void setDeterministicIds(boolean deterministicIds) {
+		this.deterministicIds = deterministicIds;
+	}
+
+	/**
+	 * Sets the number of threads used to parse the meta files. Parsing and variable replacement is done on a fork join
+	 * pool, the parsed meta files are added to the manifest in the same order as in sequential mode, so the resulting
+	 * manifest does not depend on the number of threads. The pool is shared by all runs of the generator (including the
+	 * manifests generated concurrently by {@link #generateManifests(Map, int)}), the threads parse ahead of the thread
+	 * writing the manifest.
+	 *
+	 * @param parallelism number of parser threads, values lower than 2 disable parallel parsing (default)
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets an approximate heap budget for generating a manifest, for modules too large to keep all meta file entries
+	 * in memory. With a budget, the meta file entries found by the scan are sorted in runs that are spilled to
+	 * temporary files whenever they exceed half of the budget, the runs are merged in VFS order while the manifest is
+	 * written (siblings are resolved during the merge). The real files' dates are read when they are needed instead of
+	 * being collected in advance, and duplicate structure ids are only tracked for as many resources as fit into an
+	 * eighth of the budget. Heap usage then doesn't depend on the number of resources (except for a few bytes per
+	 * resource shared by siblings), the fragment cache (see {@link #setFragmentCacheSize(long)}) is not part of the
+	 * budget. The resulting manifest is the same as without a budget.
+	 *
+	 * @param maxBytes  approximate heap budget in bytes, values lower than 1 disable the budget (default)
+	 */
+	public void setMemoryBudget(long maxBytes) {
+		this.memoryBudget = Math.max(0, maxBytes);
+	}
+
+	/**
+	 * Sets globs for the VFS file meta files to be included in the manifest, meta files not matching any of them are
+	 * skipped. Globs containing a "/" are matched against the path relative to the manifest root (like
+	 * <code>system/modules/&#42;&#42;.ocmsfile.xml</code>), all others against the file name only. Include globs don't
+	 * prune folders (folders are only excluded by exclude globs or by {@link #setModuleResourcesOnly(boolean)}).
+	 *
+	 * @param includes  the include globs, all meta files are included if <code>null</code> or empty (default)
+	 * @throws IllegalArgumentException if a glob is invalid
+	 */
+	public synchronized void setIncludes(Collection<String> includes) {
+		scanFilter = new ScanFilter(includes != null ? includes : Collections.emptyList(), scanFilter.getExcludes());
+	}
+
+	/**
+	 * Sets globs for the files and folders below the manifest root that are excluded from the manifest. Excluded
+	 * folders are pruned while the manifest root is scanned, so their content is never listed. Globs containing a "/"
+	 * are matched against the path relative to the manifest root, all others against the file or folder name only
+	 * (like <code>.git</code> or <code>*.swp</code>). Nothing is excluded by default, {@link #DEFAULT_EXCLUDES} contains
+	 * globs for version control folders and operating system and editor files that can be passed (alone or together
+	 * with additional globs). The excluded files and folders are logged on debug level.
+	 *
+	 * @param excludes  the exclude globs, nothing is excluded if <code>null</code> or empty (default)
+	 * @throws IllegalArgumentException if a glob is invalid
+	 */
+	public synchronized void setExcludes(Collection<String> excludes) {
+		scanFilter = new ScanFilter(scanFilter.getIncludes(), excludes != null ? excludes : Collections.emptyList());
+	}
+
+	/**
+	 * Sets the flag indicating if the scan is restricted to the module resources declared in the manifest stub
+	 * (<code>&lt;resources&gt;&lt;resource uri="..."/&gt;</code>). Folders on the way to a module resource (like
+	 * <code>system</code> and <code>system/modules</code>) are part of the manifest, but of their content only the
+	 * module resources are scanned; folders outside the module resources are never opened.
+	 *
+	 * @param moduleResourcesOnly   <code>true</code> to scan the module resources only, <code>false</code> to scan the
+	 *                              whole manifest root (default)
+	 */
+	public void setModuleResourcesOnly(boolean moduleResourcesOnly) {
+		this.moduleResourcesOnly = moduleResourcesOnly;
+	}
+
+	/**
+	 * Sets the flag indicating if the meta files are validated (see {@link #validate(File)}) before a manifest is
+	 * generated. If problems are found, an {@link OpenCmsMetaXmlValidationException} listing all of them is thrown
+	 * before any meta file is parsed, the existing manifest is not touched. The validation adds a lightweight read of
+	 * every meta file to each run (parsed fragments from the fragment cache are validated as well), so it is meant
+	 * for CI builds rather than for repeated generation in the IDE.
+	 *
+	 * @param validateBeforeGenerating  <code>true</code> to validate the meta files before generating, <code>false</code>
+	 *                                  otherwise (default)
+	 */
+	public void setValidateBeforeGenerating(boolean validateBeforeGenerating) {
+		this.validateBeforeGenerating = validateBeforeGenerating;
+	}
+
+	/**
+	 * Enables or disables the in-process fragment cache. With the cache enabled, parsed meta files are kept between
+	 * calls to {@link #generateManifest(File, String)} and are only parsed again if their size or modification date
+	 * changed. Meta variables are kept in the cached fragments and replaced with fresh values for every manifest, so
+	 * generated dates and UUIDs are the same as without caching. The least recently used fragments are evicted when
+	 * the cache exceeds the given size.
+	 *
+	 * @param maxBytes  approximate maximum heap size of the cached fragments in bytes, values lower than 1 disable
+	 *                  the cache (default)
+	 */
+	public void setFragmentCacheSize(long maxBytes) {
+		fragmentCache = maxBytes > 0 ? new FragmentCache(maxBytes) : null;
+	}
+
+	/**
+	 * Removes all fragments from the fragment cache (see {@link #setFragmentCacheSize(long)}).
+	 */
+	public void clearFragmentCache() {
+		FragmentCache cache = fragmentCache;
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Sets the file of a persistent fragment store, so meta files are only parsed if they changed since the previous
+	 * run, even if that run was done by another JVM (like the previous build on a CI server). The store keeps the
+	 * parsed fragments together with a hash of each meta file's content, a stored fragment is used if the meta file's
+	 * size and modification date or (after a fresh checkout) its content are unchanged. Meta variables are kept in the
+	 * stored fragments, so the manifest is the same as without the store. The store is memory-mapped while a manifest
+	 * is generated and is compacted (before it is mapped) when it contains too many outdated fragments; a damaged store
+	 * is repaired (damaged fragments are parsed again). Only one run at a time uses a store (it is locked with a file
+	 * next to it, named like the store file with the suffix ".lock"), concurrent runs parse all meta files.
+	 * One store per module is recommended, since fragments are stored by their path relative to the manifest root.
+	 *
+	 * @param storeFile the store file (created if it doesn't exist), <code>null</code> disables the store (default)
+	 */
+	public void setFragmentStore(File storeFile) {
+		this.fragmentStoreFile = storeFile;
+	}
+
+	/**
+	 * Registers a listener receiving the metrics (phase durations, counts, bytes read and written, sibling handling,
+	 * slowest meta files) of every manifest generated by this generator. Collecting the metrics is cheap, they are
+	 * collected (and logged) for every run whether there are listeners or not.
+	 * @param listener  the listener
+	 */
+	public void addListener(ManifestGenerationListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener registered with {@link #addListener(ManifestGenerationListener)}.
+	 * @param listener  the listener
+	 */
+	public void removeListener(ManifestGenerationListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Sets the number of meta files that took longest to parse reported in the metrics of a run (see
+	 * {@link ManifestGenerationMetrics#getSlowestMetaFiles()}).
+	 * @param numSlowestMetaFiles   number of meta files, 0 disables tracking slow meta files (default is 10)
+	 */
+	public void setNumSlowestMetaFiles(int numSlowestMetaFiles) {
+		this.numSlowestMetaFiles = numSlowestMetaFiles;
+	}
+
+	/**
+	 * Sets the flag indicating if meta variables (<code>${uuidstructure}</code>, <code>${uuidresource}</code>,
+	 * <code>${datelastmodified}</code> and <code>${datecreated}</code>) should be replaced with generated values.
+	 *
+	 * @param replaceMetaVariables <code>true</code> if meta variables should be replaced, <code>false</code> otherwise
+	 * @deprecated  Use {@link #setReplaceDateVariables(boolean)} and {@link #setReplaceIdVariables(boolean)} instead,
+	 *              may be removed in future versions.
+	 */
+	@Deprecated
+	public void setReplaceMetaVariables(boolean replaceMetaVariables) {
+		this.replaceDateVariables = replaceMetaVariables;
+		this.replaceIdVariables = replaceMetaVariables;
+	}
+}
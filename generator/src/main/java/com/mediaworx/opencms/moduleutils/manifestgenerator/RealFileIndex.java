@@ -0,0 +1,321 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Modification dates of all real (not meta) files and folders below the real file root, read in a single pass before
+ * the meta files are parsed. The dates are stored in two sorted arrays (relative paths and dates), so looking up the
+ * date of a real file doesn't touch the file system. Lookups of real files that don't exist are counted, so they can
+ * be reported in one summary instead of one log message per file. Single real files can be refreshed later (used by
+ * the watch mode when meta files change). For very large modules an index without arrays can be used, it reads the
+ * date of each real file from the disk when it is looked up.
+ */
+class RealFileIndex {
+
+	private static final Logger LOG = LoggerFactory.getLogger(RealFileIndex.class);
+
+	/** Maximum number of missing real files listed in the summary */
+	private static final int MAX_REPORTED_MISSING_FILES = 10;
+
+	/** Modification date used for refreshed real files that don't exist */
+	private static final long MISSING = 0;
+
+	/** The root path under which the real files are stored */
+	private final String realFileRootPath;
+
+	/**
+	 * Sorted paths of the real files and folders, relative to the real file root, <code>null</code> if the dates are
+	 * read on lookup
+	 */
+	private final String[] relativePaths;
+
+	/** Modification dates of the real files and folders, same order as {@link #relativePaths} */
+	private final long[] lastModifiedDates;
+
+	/** Modification dates of refreshed real files by relative path, {@link #MISSING} for files that don't exist */
+	private final Map<String, Long> refreshedLastModifiedDates = new ConcurrentHashMap<>();
+
+	/** Number of lookups for real files that don't exist */
+	private final AtomicInteger numMissingFiles = new AtomicInteger();
+
+	/** The first missing real files (at most {@link #MAX_REPORTED_MISSING_FILES}), listed in the summary */
+	private final List<String> reportedMissingFiles = new ArrayList<>();
+
+	private RealFileIndex(String realFileRootPath, String[] relativePaths, long[] lastModifiedDates) {
+		this.realFileRootPath = realFileRootPath;
+		this.relativePaths = relativePaths;
+		this.lastModifiedDates = lastModifiedDates;
+	}
+
+	/**
+	 * Reads the modification dates of all files and folders below the given root. Files or folders that can't be read
+	 * are skipped (they are reported as missing when their date is looked up).
+	 * @param realFileRootPath  the root path under which the real files are stored
+	 * @return  the index containing the modification dates
+	 * @throws IOException if walking the real file root fails
+	 */
+	static RealFileIndex scan(String realFileRootPath) throws IOException {
+		Path root = Paths.get(realFileRootPath);
+		DateCollector collector = new DateCollector(root);
+		Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, collector);
+
+		String[] relativePaths = collector.paths.toArray(new String[0]);
+		Arrays.sort(relativePaths);
+		long[] lastModifiedDates = new long[relativePaths.length];
+		for (int i = 0; i < relativePaths.length; i++) {
+			lastModifiedDates[Arrays.binarySearch(relativePaths, collector.paths.get(i))] = collector.dates[i];
+		}
+		return new RealFileIndex(realFileRootPath, relativePaths, lastModifiedDates);
+	}
+
+	/**
+	 * Creates an index that doesn't read anything in advance, the modification date of a real file is read from the
+	 * disk whenever it is looked up. Needs no memory per real file, but a file system access per lookup.
+	 * @param realFileRootPath  the root path under which the real files are stored
+	 * @return  the index
+	 */
+	static RealFileIndex onDisk(String realFileRootPath) {
+		return new RealFileIndex(realFileRootPath, null, null);
+	}
+
+	/**
+	 * Returns the modification date of the real file at the given path. If the file doesn't exist, it is counted as
+	 * missing (see {@link #logMissingFiles()}).
+	 * @param realFilePath  path of the real file, starting with the real file root path
+	 * @return  the modification date of the real file, 0 if the file doesn't exist
+	 */
+	long getLastModified(String realFilePath) {
+		String relativePath = getRelativePath(realFilePath);
+		Long refreshedLastModified = refreshedLastModifiedDates.isEmpty() ? null : refreshedLastModifiedDates.get(relativePath);
+		if (refreshedLastModified != null) {
+			if (refreshedLastModified != MISSING) {
+				return refreshedLastModified;
+			}
+		}
+		else if (relativePaths == null) {
+			// File.lastModified() returns 0 if the file doesn't exist
+			long lastModified = new File(realFilePath).lastModified();
+			if (lastModified != MISSING) {
+				return lastModified;
+			}
+		}
+		else {
+			int i = Arrays.binarySearch(relativePaths, relativePath);
+			if (i >= 0) {
+				return lastModifiedDates[i];
+			}
+		}
+
+		LOG.debug("Error in file date detection: real file not found at {}, using the meta file's date", realFilePath);
+		if (numMissingFiles.incrementAndGet() <= MAX_REPORTED_MISSING_FILES) {
+			synchronized (reportedMissingFiles) {
+				reportedMissingFiles.add(realFilePath);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the modification date of the real file belonging to a VFS file meta file or folder, see
+	 * {@link #getLastModified(String)}. If the dates are held in memory, the meta file's path relative to the manifest
+	 * root is looked up in place, so the lookup doesn't create the real file's path (unless the real file is missing or
+	 * real files have been refreshed).
+	 * @param manifestRootPath  root path of the manifest meta data
+	 * @param metaFilePath      path of the VFS file meta file or folder
+	 * @return  the modification date of the real file, 0 if the file doesn't exist
+	 */
+	long getLastModified(String manifestRootPath, String metaFilePath) {
+		if (relativePaths != null && refreshedLastModifiedDates.isEmpty() && metaFilePath.startsWith(manifestRootPath)) {
+			int i = binarySearch(metaFilePath, getRelativePathStart(metaFilePath, manifestRootPath.length()));
+			if (i >= 0) {
+				return lastModifiedDates[i];
+			}
+		}
+		return getLastModified(OpenCmsModuleManifestGenerator.getRealFilePath(manifestRootPath, realFileRootPath, metaFilePath));
+	}
+
+	/**
+	 * Searches the relative paths for the part of the given path starting at the given index.
+	 * @return  the index of the relative path, negative if it is not found (see {@link Arrays#binarySearch(Object[], Object)})
+	 */
+	private int binarySearch(String path, int start) {
+		int low = 0;
+		int high = relativePaths.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = compare(relativePaths[middle], path, start);
+			if (comparison < 0) {
+				low = middle + 1;
+			}
+			else if (comparison > 0) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Compares like {@link String#compareTo(String)}, the second string starting at the given index.
+	 */
+	private static int compare(String relativePath, String path, int start) {
+		int pathLength = path.length() - start;
+		int length = Math.min(relativePath.length(), pathLength);
+		for (int i = 0; i < length; i++) {
+			char c1 = relativePath.charAt(i);
+			char c2 = path.charAt(start + i);
+			if (c1 != c2) {
+				return c1 - c2;
+			}
+		}
+		return relativePath.length() - pathLength;
+	}
+
+	/**
+	 * Reads the modification date of the real file at the given path again, later lookups return the new date (or
+	 * report the file as missing if it doesn't exist any more).
+	 * @param realFilePath  path of the real file, starting with the real file root path
+	 */
+	void refresh(String realFilePath) {
+		// File.lastModified() returns 0 (MISSING) if the file doesn't exist
+		refreshedLastModifiedDates.put(getRelativePath(realFilePath), new File(realFilePath).lastModified());
+	}
+
+	/**
+	 * Strips the real file root path (and following file separators) from the given path.
+	 * @param realFilePath  path of the real file, starting with the real file root path
+	 * @return  the path relative to the real file root
+	 */
+	private String getRelativePath(String realFilePath) {
+		int start = realFilePath.startsWith(realFileRootPath) ? realFileRootPath.length() : 0;
+		return realFilePath.substring(getRelativePathStart(realFilePath, start));
+	}
+
+	/**
+	 * @param path      a path
+	 * @param rootEnd   end of the root path in <code>path</code>
+	 * @return  the start of the relative path (the separators following the root path are skipped)
+	 */
+	private static int getRelativePathStart(String path, int rootEnd) {
+		int start = rootEnd;
+		while (start < path.length() && (path.charAt(start) == '/' || path.charAt(start) == File.separatorChar)) {
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * Logs a single warning summarizing all real files that were looked up but don't exist, nothing is logged if all
+	 * real files were found. The missing files are reset, so the index can be used for the next run.
+	 */
+	void logMissingFiles() {
+		List<String> examples;
+		int numMissing;
+		synchronized (reportedMissingFiles) {
+			numMissing = numMissingFiles.getAndSet(0);
+			examples = new ArrayList<>(reportedMissingFiles);
+			reportedMissingFiles.clear();
+		}
+		if (numMissing == 0) {
+			return;
+		}
+		LOG.warn("Error in file date detection: {} real file(s) not found below {}, using the meta files' dates instead. {}: {}",
+				numMissing, realFileRootPath, numMissing > examples.size() ? "First missing files" : "Missing files", examples);
+	}
+
+	/**
+	 * Collects the relative paths and modification dates of the real files and folders in the order they are found,
+	 * the dates are kept unboxed.
+	 */
+	private static class DateCollector extends SimpleFileVisitor<Path> {
+
+		private final Path root;
+
+		/** relative paths of the real files and folders */
+		private final List<String> paths = new ArrayList<>();
+
+		/** modification dates, same order as {@link #paths} */
+		private long[] dates = new long[1024];
+
+		private DateCollector(Path root) {
+			this.root = root;
+		}
+
+		@Override
+		public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+			add(root.relativize(dir).toString(), attributes.lastModifiedTime().toMillis());
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+			// symbolic links are only reported (instead of their targets) if the target doesn't exist
+			if (!attributes.isSymbolicLink()) {
+				add(root.relativize(file).toString(), attributes.lastModifiedTime().toMillis());
+			}
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFileFailed(Path file, IOException e) {
+			LOG.debug("Real file {} could not be read: {}", file, e.toString());
+			return FileVisitResult.CONTINUE;
+		}
+
+		private void add(String relativePath, long lastModified) {
+			if (paths.size() == dates.length) {
+				dates = Arrays.copyOf(dates, 2 * dates.length);
+			}
+			dates[paths.size()] = lastModified;
+			paths.add(relativePath);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Formats resource dates for the manifest, like <code>Mon, 13 Jan 2014 12:13:24 GMT</code>. A DateTimeFormatter
+ * creates a dozen temporary objects for every date, this formatter writes the date into a reusable buffer instead and
+ * returns the previous string if a date falls into the same second as the date formatted before (files that are
+ * checked out or copied together share their modification dates).
+ * <br />
+ * <br />
+ * Formatters are not thread safe, every parser thread uses its own (see {@link XmlParserPool.Parsers}).
+ */
+class ResourceDateFormatter {
+
+	/**
+	 * The date format to use for resource creation/modification dates, this is exactly like the date format used by
+	 * OpenCms (the formatter is immutable, so it can be shared by concurrent runs)
+	 */
+	static final DateTimeFormatter RESOURCE_DATE_FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US).withZone(ZoneId.of("GMT"));
+
+	/** Abbreviated day names, starting with Thursday (January 1, 1970 was a Thursday) */
+	private static final String[] DAY_NAMES = new String[] { "Thu", "Fri", "Sat", "Sun", "Mon", "Tue", "Wed" };
+
+	/** Abbreviated month names */
+	private static final String[] MONTH_NAMES = new String[] { "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+
+	private static final String TIME_ZONE = " GMT";
+
+	/** Last second that is formatted in place (December 31, 9999, 23:59:59), later dates have more than four year digits */
+	private static final long MAX_SECOND = 253402300799L;
+
+	private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+	/** Buffer the date is formatted into */
+	private final char[] buffer = new char[29];
+
+	/** Second (since the epoch) of the last formatted date */
+	private long lastSecond = Long.MIN_VALUE;
+
+	/** The last formatted date */
+	private String lastDate;
+
+	/**
+	 * @param millisecondsSinceEpoch the milliseconds since January 1, 1970, 00:00:00 GMT
+	 * @return  the formatted date
+	 */
+	String format(long millisecondsSinceEpoch) {
+		long second = Math.floorDiv(millisecondsSinceEpoch, 1000);
+		if (second != lastSecond || lastDate == null) {
+			// dates before 1970 or after 9999 are rare enough to be left to the DateTimeFormatter
+			lastDate = second >= 0 && second <= MAX_SECOND ? formatInPlace(second) : formatDate(millisecondsSinceEpoch);
+			lastSecond = second;
+		}
+		return lastDate;
+	}
+
+	/**
+	 * Formats a date with a DateTimeFormatter (used where dates are formatted occasionally).
+	 * @param millisecondsSinceEpoch the milliseconds since January 1, 1970, 00:00:00 GMT
+	 * @return  the formatted date
+	 */
+	static String formatDate(long millisecondsSinceEpoch) {
+		return RESOURCE_DATE_FORMAT.format(Instant.ofEpochMilli(millisecondsSinceEpoch));
+	}
+
+	private String formatInPlace(long second) {
+		long epochDay = second / SECONDS_PER_DAY;
+		int secondOfDay = (int)(second % SECONDS_PER_DAY);
+
+		// converts the day to year, month and day of month (proleptic Gregorian calendar, the year starting in March)
+		long shiftedDay = epochDay + 719468;
+		long era = shiftedDay / 146097;
+		int dayOfEra = (int)(shiftedDay - era * 146097);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int shiftedMonth = (5 * dayOfYear + 2) / 153;
+		int dayOfMonth = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+		int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+		int year = (int)(era * 400) + yearOfEra + (month <= 2 ? 1 : 0);
+
+		int i = 0;
+		i = append(DAY_NAMES[(int)(epochDay % 7)], i);
+		buffer[i++] = ',';
+		buffer[i++] = ' ';
+		i = appendDigits(dayOfMonth, 2, i);
+		buffer[i++] = ' ';
+		i = append(MONTH_NAMES[month - 1], i);
+		buffer[i++] = ' ';
+		i = appendDigits(year, 4, i);
+		buffer[i++] = ' ';
+		i = appendDigits(secondOfDay / 3600, 2, i);
+		buffer[i++] = ':';
+		i = appendDigits(secondOfDay / 60 % 60, 2, i);
+		buffer[i++] = ':';
+		i = appendDigits(secondOfDay % 60, 2, i);
+		i = append(TIME_ZONE, i);
+		return new String(buffer, 0, i);
+	}
+
+	private int append(String text, int start) {
+		text.getChars(0, text.length(), buffer, start);
+		return start + text.length();
+	}
+
+	private int appendDigits(int value, int numDigits, int start) {
+		for (int i = start + numDigits - 1; i >= start; i--) {
+			buffer[i] = (char)('0' + value % 10);
+			value /= 10;
+		}
+		return start + numDigits;
+	}
+}
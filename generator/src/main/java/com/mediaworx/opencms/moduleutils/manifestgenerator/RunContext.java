@@ -0,0 +1,131 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+/**
+ * Immutable settings of a single manifest generation run. The generator's settings are copied into a new run context
+ * when a run starts, so changing the settings (or starting other runs) doesn't affect runs that are in progress.
+ */
+class RunContext {
+
+	/** The root path under which the manifest stub and all the meta files are stored */
+	final String manifestRootPath;
+
+	/**
+	 * The root path under which the real (not meta) files are stored. Used to get the modification date, may be null
+	 * (if so the meta file's modification date is used)
+	 */
+	final String realFileRootPath;
+
+	/**
+	 * Modification dates of the real files, <code>null</code> if there is no real file root or date variables are not
+	 * replaced
+	 */
+	final RealFileIndex realFileIndex;
+
+	/** Module version to be used in the manifest, ignored if <code>null</code> or empty */
+	final String moduleVersion;
+
+	/** Flag indicating if date variables should be replaced with generated values */
+	final boolean replaceDateVariables;
+
+	/** Flag indicating if UUID variables should be replaced with generated values */
+	final boolean replaceIdVariables;
+
+	/** Flag indicating if generated UUIDs and the manifest's creation date are derived from the module (stable) */
+	final boolean deterministicIds;
+
+	/** Generator for stable UUIDs, set once the module name is known, <code>null</code> for random UUIDs */
+	final NameBasedUuidGenerator uuidGenerator;
+
+	/** Number of threads used to parse the meta files */
+	final int parallelism;
+
+	/** Approximate heap budget of the run in bytes, 0 if the run's memory is not bounded */
+	final long memoryBudget;
+
+	/** Filter deciding which files and folders below the manifest root are scanned (include/exclude globs) */
+	final ScanFilter scanFilter;
+
+	/** Flag indicating if the scan is restricted to the module resources declared in the manifest stub */
+	final boolean moduleResourcesOnly;
+
+	/** Flag indicating if the meta files are validated before the manifest is generated */
+	final boolean validate;
+
+	/** Cache for parsed meta files, <code>null</code> if caching is disabled */
+	final FragmentCache fragmentCache;
+
+	/** Persistent store for parsed meta files, <code>null</code> if the run doesn't use a store */
+	final FragmentStore fragmentStore;
+
+	/** Writer for the module ZIP, <code>null</code> if only the manifest is generated */
+	final ModuleZipWriter moduleZip;
+
+	/** Collects the metrics of the run (the only part of the context that is changed during the run) */
+	final MetricsRecorder metrics;
+
+	RunContext(String manifestRootPath, String realFileRootPath, RealFileIndex realFileIndex, String moduleVersion, boolean replaceDateVariables, boolean replaceIdVariables, boolean deterministicIds, NameBasedUuidGenerator uuidGenerator, int parallelism, long memoryBudget, ScanFilter scanFilter, boolean moduleResourcesOnly, boolean validate, FragmentCache fragmentCache, FragmentStore fragmentStore, ModuleZipWriter moduleZip, MetricsRecorder metrics) {
+		this.manifestRootPath = manifestRootPath;
+		this.realFileRootPath = realFileRootPath;
+		this.realFileIndex = realFileIndex;
+		this.moduleVersion = moduleVersion;
+		this.replaceDateVariables = replaceDateVariables;
+		this.replaceIdVariables = replaceIdVariables;
+		this.deterministicIds = deterministicIds;
+		this.uuidGenerator = uuidGenerator;
+		this.parallelism = parallelism;
+		this.memoryBudget = memoryBudget;
+		this.scanFilter = scanFilter;
+		this.moduleResourcesOnly = moduleResourcesOnly;
+		this.validate = validate;
+		this.fragmentCache = fragmentCache;
+		this.fragmentStore = fragmentStore;
+		this.moduleZip = moduleZip;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Returns a copy of this context using the given generator for UUIDs.
+	 * @param uuidGenerator the generator for stable UUIDs
+	 * @return  the new context
+	 */
+	RunContext withUuidGenerator(NameBasedUuidGenerator uuidGenerator) {
+		return new RunContext(manifestRootPath, realFileRootPath, realFileIndex, moduleVersion, replaceDateVariables, replaceIdVariables, deterministicIds, uuidGenerator, parallelism, memoryBudget, scanFilter, moduleResourcesOnly, validate, fragmentCache, fragmentStore, moduleZip, metrics);
+	}
+
+	/**
+	 * Returns a copy of this context using the given fragment store.
+	 * @param fragmentStore the opened fragment store
+	 * @return  the new context
+	 */
+	RunContext withFragmentStore(FragmentStore fragmentStore) {
+		return new RunContext(manifestRootPath, realFileRootPath, realFileIndex, moduleVersion, replaceDateVariables, replaceIdVariables, deterministicIds, uuidGenerator, parallelism, memoryBudget, scanFilter, moduleResourcesOnly, validate, fragmentCache, fragmentStore, moduleZip, metrics);
+	}
+}
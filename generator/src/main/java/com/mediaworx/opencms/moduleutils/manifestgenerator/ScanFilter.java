@@ -0,0 +1,422 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides which files and folders below the manifest root are scanned. Folders that are not accepted are pruned
+ * during the traversal, so neither they nor their content are ever listed.
+ * <br />
+ * <br />
+ * Exclude globs apply to files and folders, include globs (if any) only to VFS file meta files (a folder can't be
+ * pruned by an include glob, since its content may still match). Globs containing a "/" are matched against the path
+ * relative to the manifest root (like <code>system/modules/&#42;&#42;/lib/&#42;.ocmsfile.xml</code>), all others
+ * against the file or folder name only (like <code>.DS_Store</code> or <code>*.swp</code>). Simple name globs (a
+ * literal name with at most one "*") are matched directly against the path string, so a file that is not matched by
+ * any path glob costs no allocation at all.
+ * <br />
+ * <br />
+ * A filter can additionally be restricted to the module resources declared in the manifest stub
+ * (<code>&lt;resources&gt;&lt;resource uri="..."/&gt;</code>). Folders on the way to a module resource are accepted,
+ * but only the content of the module resources themselves is scanned.
+ */
+class ScanFilter {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ScanFilter.class);
+
+	/** Filter accepting every file and folder */
+	static final ScanFilter ACCEPT_ALL = new ScanFilter(Collections.emptyList(), Collections.emptyList());
+
+	/** Element names on the path to the resource nodes in the manifest stub */
+	private static final String[] RESOURCE_NODE_PATH = new String[] { "export", "module", "resources", "resource" };
+
+	/** Name of the resource node's attribute containing the VFS path */
+	private static final String RESOURCE_URI_ATTRIBUTE = "uri";
+
+	/** Separator used in VFS paths and path globs */
+	private static final String VFS_SEPARATOR = "/";
+
+	/** The include globs the filter was created from */
+	private final List<String> includes;
+
+	/** The exclude globs the filter was created from */
+	private final List<String> excludes;
+
+	/** Matchers for the include globs matched against the relative path */
+	private final List<PathMatcher> includePathMatchers = new ArrayList<>();
+
+	/** Include globs matched against the file name */
+	private final List<NameGlob> includeNameGlobs = new ArrayList<>();
+
+	/** Matchers for the exclude globs matched against the relative path */
+	private final List<PathMatcher> excludePathMatchers = new ArrayList<>();
+
+	/** Exclude globs matched against the file or folder name */
+	private final List<NameGlob> excludeNameGlobs = new ArrayList<>();
+
+	/**
+	 * VFS paths of the module resources relative to the manifest root (without leading or trailing "/"),
+	 * <code>null</code> if the scan is not restricted to the module resources
+	 */
+	private final List<String> moduleResources;
+
+	/**
+	 * Creates a new filter, the globs are compiled for the default file system (the manifest root is always located
+	 * there).
+	 * @param includes  globs for VFS file meta files to be included, all meta files are included if empty
+	 * @param excludes  globs for files and folders to be excluded
+	 * @throws IllegalArgumentException if a glob is invalid
+	 */
+	ScanFilter(Collection<String> includes, Collection<String> excludes) {
+		this.includes = Collections.unmodifiableList(new ArrayList<>(includes));
+		this.excludes = Collections.unmodifiableList(new ArrayList<>(excludes));
+		FileSystem fileSystem = FileSystems.getDefault();
+		addMatchers(fileSystem, includes, includePathMatchers, includeNameGlobs);
+		addMatchers(fileSystem, excludes, excludePathMatchers, excludeNameGlobs);
+		moduleResources = null;
+	}
+
+	/**
+	 * Creates a copy of the given filter restricted to the given module resources.
+	 * @param filter            the filter to be copied
+	 * @param moduleResources   VFS paths of the module resources relative to the manifest root
+	 */
+	private ScanFilter(ScanFilter filter, List<String> moduleResources) {
+		includes = filter.includes;
+		excludes = filter.excludes;
+		includePathMatchers.addAll(filter.includePathMatchers);
+		includeNameGlobs.addAll(filter.includeNameGlobs);
+		excludePathMatchers.addAll(filter.excludePathMatchers);
+		excludeNameGlobs.addAll(filter.excludeNameGlobs);
+		this.moduleResources = moduleResources;
+	}
+
+	private static void addMatchers(FileSystem fileSystem, Collection<String> globs, List<PathMatcher> pathMatchers, List<NameGlob> nameGlobs) {
+		for (String glob : globs) {
+			PathMatcher matcher = fileSystem.getPathMatcher("glob:" + glob);
+			if (glob.contains(VFS_SEPARATOR)) {
+				pathMatchers.add(matcher);
+			}
+			else {
+				nameGlobs.add(new NameGlob(fileSystem, glob, matcher));
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of this filter that only accepts the given module resources (and the folders on the way to them).
+	 * @param moduleResourceUris    the VFS paths of the module resources, like they are declared in the manifest stub
+	 *                              (with leading "/", folders may end with "/")
+	 * @return  the restricted filter
+	 */
+	ScanFilter restrictedTo(Collection<String> moduleResourceUris) {
+		List<String> resources = new ArrayList<>(moduleResourceUris.size());
+		for (String uri : moduleResourceUris) {
+			String resource = uri.trim();
+			while (resource.startsWith(VFS_SEPARATOR)) {
+				resource = resource.substring(1);
+			}
+			while (resource.endsWith(VFS_SEPARATOR)) {
+				resource = resource.substring(0, resource.length() - 1);
+			}
+			resources.add(resource);
+		}
+		return new ScanFilter(this, resources);
+	}
+
+	/**
+	 * @return  the include globs the filter was created from (unmodifiable)
+	 */
+	List<String> getIncludes() {
+		return includes;
+	}
+
+	/**
+	 * @return  the exclude globs the filter was created from (unmodifiable)
+	 */
+	List<String> getExcludes() {
+		return excludes;
+	}
+
+	/**
+	 * @return  <code>true</code> if this filter is restricted to the module resources
+	 */
+	boolean isRestrictedToModuleResources() {
+		return moduleResources != null;
+	}
+
+	/**
+	 * Checks if a folder is scanned. Folders that are not accepted are pruned, they don't get a manifest entry and
+	 * their content is not listed.
+	 * @param manifestRoot  the manifest root
+	 * @param folder        the folder below the manifest root
+	 * @return  <code>true</code> if the folder is accepted
+	 */
+	boolean acceptFolder(Path manifestRoot, Path folder) {
+		Path relativePath = getRelativePath(manifestRoot, folder);
+		if (isExcluded(folder, relativePath)) {
+			LOG.debug("excluded folder (pruned with its content): {}", folder);
+			return false;
+		}
+		if (moduleResources == null) {
+			return true;
+		}
+		String vfsPath = toVfsPath(relativePath);
+		for (String resource : moduleResources) {
+			if (isSameOrBelow(vfsPath, resource) || isSameOrBelow(resource, vfsPath)) {
+				// the folder is (part of) a module resource or on the way to one
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a file is listed.
+	 * @param manifestRoot  the manifest root
+	 * @param file          the file below the manifest root
+	 * @param metaSuffix    suffix of VFS file meta files (removed to get the VFS path of the file)
+	 * @return  <code>true</code> if the file is accepted
+	 */
+	boolean acceptFile(Path manifestRoot, Path file, String metaSuffix) {
+		Path relativePath = getRelativePath(manifestRoot, file);
+		if (isExcluded(file, relativePath)) {
+			LOG.debug("excluded file: {}", file);
+			return false;
+		}
+		if ((!includePathMatchers.isEmpty() || !includeNameGlobs.isEmpty()) && !matches(file, relativePath, includePathMatchers, includeNameGlobs)) {
+			return false;
+		}
+		if (moduleResources == null) {
+			return true;
+		}
+		String vfsPath = toVfsPath(relativePath);
+		if (vfsPath.endsWith(metaSuffix)) {
+			vfsPath = vfsPath.substring(0, vfsPath.length() - metaSuffix.length());
+		}
+		for (String resource : moduleResources) {
+			if (isSameOrBelow(vfsPath, resource)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The path relative to the manifest root is only needed for path globs and module resources, it is not computed
+	 * otherwise.
+	 * @param manifestRoot  the manifest root
+	 * @param path          a file or folder below the manifest root
+	 * @return  the path relative to the manifest root, <code>null</code> if the filter doesn't need it
+	 */
+	private Path getRelativePath(Path manifestRoot, Path path) {
+		if (includePathMatchers.isEmpty() && excludePathMatchers.isEmpty() && moduleResources == null) {
+			return null;
+		}
+		return manifestRoot.relativize(path);
+	}
+
+	/**
+	 * @param path          a file or folder below the manifest root
+	 * @param relativePath  the path relative to the manifest root, <code>null</code> if there are no path globs
+	 * @return  <code>true</code> if the file or folder matches an exclude glob
+	 */
+	private boolean isExcluded(Path path, Path relativePath) {
+		return matches(path, relativePath, excludePathMatchers, excludeNameGlobs);
+	}
+
+	private static boolean matches(Path path, Path relativePath, List<PathMatcher> pathMatchers, List<NameGlob> nameGlobs) {
+		for (PathMatcher matcher : pathMatchers) {
+			if (matcher.matches(relativePath)) {
+				return true;
+			}
+		}
+		if (!nameGlobs.isEmpty()) {
+			String pathString = path.toString();
+			int nameStart = pathString.lastIndexOf(path.getFileSystem().getSeparator()) + 1;
+			for (NameGlob glob : nameGlobs) {
+				if (glob.matches(path, pathString, nameStart)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param path      a VFS path relative to the manifest root
+	 * @param parent    another VFS path relative to the manifest root ("" for the root)
+	 * @return  <code>true</code> if <code>path</code> is equal to <code>parent</code> or below it
+	 */
+	private static boolean isSameOrBelow(String path, String parent) {
+		return parent.isEmpty() || path.equals(parent) || (path.startsWith(parent) && path.startsWith(VFS_SEPARATOR, parent.length()));
+	}
+
+	/**
+	 * @param relativePath  path relative to the manifest root
+	 * @return  the path with "/" as separator
+	 */
+	private static String toVfsPath(Path relativePath) {
+		String separator = relativePath.getFileSystem().getSeparator();
+		String path = relativePath.toString();
+		return VFS_SEPARATOR.equals(separator) ? path : path.replace(separator, VFS_SEPARATOR);
+	}
+
+	/**
+	 * Glob matched against the name of a file or folder. On file systems with case sensitive globs (all but Windows),
+	 * ASCII globs consisting of a literal name with at most one "*" (like the default excludes) are matched by
+	 * comparing the name's prefix and suffix in place, all other globs by the file system's path matcher.
+	 */
+	private static final class NameGlob {
+
+		/** Characters with a special meaning in globs besides "*" */
+		private static final String SPECIAL_CHARACTERS = "?[]{}\\";
+
+		/** the file system's matcher, <code>null</code> if the glob is matched in place */
+		private final PathMatcher matcher;
+
+		/** literal before the "*" (or the complete literal name if there is no "*") */
+		private final String prefix;
+
+		/** literal after the "*", <code>null</code> if there is no "*" */
+		private final String suffix;
+
+		private NameGlob(FileSystem fileSystem, String glob, PathMatcher matcher) {
+			int wildcard = glob.indexOf('*');
+			if (VFS_SEPARATOR.equals(fileSystem.getSeparator()) && isSimple(glob, wildcard)) {
+				this.matcher = null;
+				prefix = wildcard >= 0 ? glob.substring(0, wildcard) : glob;
+				suffix = wildcard >= 0 ? glob.substring(wildcard + 1) : null;
+			}
+			else {
+				this.matcher = matcher;
+				prefix = null;
+				suffix = null;
+			}
+		}
+
+		private static boolean isSimple(String glob, int wildcard) {
+			if (wildcard >= 0 && glob.indexOf('*', wildcard + 1) >= 0) {
+				return false;
+			}
+			for (int i = 0; i < glob.length(); i++) {
+				char c = glob.charAt(i);
+				if (c > 0x7F || SPECIAL_CHARACTERS.indexOf(c) >= 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @param path          the file or folder
+		 * @param pathString    the file or folder's path as string
+		 * @param nameStart     start index of the name in <code>pathString</code>
+		 * @return  <code>true</code> if the name of the file or folder matches the glob
+		 */
+		boolean matches(Path path, String pathString, int nameStart) {
+			if (matcher != null) {
+				Path name = path.getFileName();
+				return name != null && matcher.matches(name);
+			}
+			int nameLength = pathString.length() - nameStart;
+			if (suffix == null) {
+				return nameLength == prefix.length() && pathString.startsWith(prefix, nameStart);
+			}
+			return nameLength >= prefix.length() + suffix.length() && pathString.startsWith(prefix, nameStart) && pathString.endsWith(suffix);
+		}
+	}
+
+	/**
+	 * Reads the VFS paths of the module resources declared in the manifest stub (the <code>uri</code> attributes of
+	 * <code>/export/module/resources/resource</code>). Only this part of the stub is looked at, the stub is not parsed
+	 * into a DOM.
+	 * @param inputFactory      StAX factory (must not be used by other threads at the same time)
+	 * @param manifestStubPath  path of the manifest stub file
+	 * @return  the VFS paths of the module resources in the order they are declared
+	 * @throws IOException if the manifest stub can not be read
+	 * @throws XMLStreamException if the manifest stub can not be parsed
+	 */
+	static List<String> readModuleResources(XMLInputFactory inputFactory, String manifestStubPath) throws IOException, XMLStreamException {
+		List<String> resources = new ArrayList<>();
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(manifestStubPath)))) {
+			XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+			try {
+				// depth of the current element and number of elements on the path to the resource nodes matched so far
+				int depth = 0;
+				int matchedDepth = 0;
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						if (depth == matchedDepth && depth < RESOURCE_NODE_PATH.length && RESOURCE_NODE_PATH[depth].equals(reader.getLocalName())) {
+							matchedDepth++;
+							if (matchedDepth == RESOURCE_NODE_PATH.length) {
+								String uri = reader.getAttributeValue(null, RESOURCE_URI_ATTRIBUTE);
+								if (uri != null && !uri.trim().isEmpty()) {
+									resources.add(uri);
+								}
+							}
+						}
+						depth++;
+					}
+					else if (event == XMLStreamConstants.END_ELEMENT) {
+						depth--;
+						if (matchedDepth > depth) {
+							matchedDepth = depth;
+						}
+					}
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+		return resources;
+	}
+}
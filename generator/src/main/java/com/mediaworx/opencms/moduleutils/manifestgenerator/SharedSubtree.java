@@ -0,0 +1,146 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A serialized subtree of a file node (like the <code>properties</code> or <code>accesscontrol</code> node) that is
+ * shared by all fragments containing an identical subtree. File nodes are serialized canonically (see
+ * {@link ManifestWriter#serializeFileNode(org.w3c.dom.Node, org.w3c.dom.Node, java.util.Set)}), so two subtrees are
+ * structurally equal exactly if their serialized XML is equal, and the hash of the XML is used as structural hash.
+ * <br />
+ * <br />
+ * Subtrees are interned in a {@link Table} owned by the {@link FragmentCache}, only fragments that are kept by the
+ * cache are split into shared subtrees (a fragment used for a single manifest entry isn't worth it). The UTF-8
+ * encoding is computed once per subtree, the manifest writer copies it to the output without encoding the XML again.
+ */
+final class SharedSubtree {
+
+	/**
+	 * Interned subtrees by their XML. Subtrees are referenced weakly, a subtree is kept as long as any fragment
+	 * references it, the entries of collected subtrees are removed when the next subtree is interned. The table may be
+	 * used by multiple parser threads.
+	 */
+	static final class Table {
+
+		private final ConcurrentHashMap<String, SubtreeReference> subtrees = new ConcurrentHashMap<>();
+
+		/** references of collected subtrees, their entries are removed from the table */
+		private final ReferenceQueue<SharedSubtree> collected = new ReferenceQueue<>();
+
+		/**
+		 * Returns the shared instance for the given serialized subtree, it is created if no fragment references an
+		 * identical subtree yet.
+		 * @param xml   the serialized subtree (must not contain meta variables)
+		 * @return  the shared subtree
+		 */
+		SharedSubtree intern(String xml) {
+			removeCollected();
+			SubtreeReference reference = subtrees.get(xml);
+			SharedSubtree subtree = reference != null ? reference.get() : null;
+			if (subtree != null) {
+				return subtree;
+			}
+			SharedSubtree created = new SharedSubtree(xml);
+			SubtreeReference createdReference = new SubtreeReference(created, collected);
+			while (true) {
+				reference = subtrees.putIfAbsent(xml, createdReference);
+				if (reference == null) {
+					return created;
+				}
+				// another thread interned the subtree in the meantime, or the old entry wasn't removed yet
+				subtree = reference.get();
+				if (subtree != null) {
+					return subtree;
+				}
+				if (subtrees.replace(xml, reference, createdReference)) {
+					return created;
+				}
+			}
+		}
+
+		/**
+		 * @return  the number of subtrees in the table (including collected subtrees whose entries are not removed yet)
+		 */
+		int size() {
+			return subtrees.size();
+		}
+
+		private void removeCollected() {
+			Reference<? extends SharedSubtree> reference;
+			while ((reference = collected.poll()) != null) {
+				// the entry may have been replaced by a new subtree already
+				subtrees.remove(((SubtreeReference)reference).xml, reference);
+			}
+		}
+	}
+
+	/** Weak reference to an interned subtree, keeps the table key so the entry can be removed once it is collected */
+	private static final class SubtreeReference extends WeakReference<SharedSubtree> {
+
+		final String xml;
+
+		SubtreeReference(SharedSubtree subtree, ReferenceQueue<SharedSubtree> queue) {
+			super(subtree, queue);
+			xml = subtree.xml;
+		}
+	}
+
+	/** the serialized subtree, including its indentation */
+	final String xml;
+
+	/** the UTF-8 encoded subtree */
+	private final byte[] utf8;
+
+	private SharedSubtree(String xml) {
+		this.xml = xml;
+		utf8 = xml.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes the subtree, writers of the manifest get the cached UTF-8 bytes, all others the XML.
+	 * @param out   the writer
+	 * @throws IOException if writing fails
+	 */
+	void writeTo(Writer out) throws IOException {
+		if (out instanceof ManifestWriter.Utf8Writer) {
+			((ManifestWriter.Utf8Writer)out).writeEncoded(utf8);
+		}
+		else {
+			out.write(xml);
+		}
+	}
+}
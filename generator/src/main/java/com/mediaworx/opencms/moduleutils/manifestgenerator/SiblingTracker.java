@@ -0,0 +1,83 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlParseException;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Handles siblings according to OpenCms standard: if multiple siblings are pointing to the same resource, only the
+ * first gets a source node, so the resource is not imported a second time during module import. The file nodes have
+ * to be checked in manifest order, a tracker is used for one manifest only.
+ */
+class SiblingTracker {
+
+	/** Resource Ids of resources with siblings whose first sibling already has been handled */
+	private final UuidIndex handledSiblingResourceIds = new UuidIndex();
+
+	/** Handled resource Ids that aren't UUIDs (like unreplaced meta variables) */
+	private final Set<String> handledOtherResourceIds = new HashSet<>();
+
+	/**
+	 * Checks if the source node has to be removed from the given file node. That's the case if the file has siblings
+	 * and another sibling pointing to the same resource already has been handled.
+	 * @param template      the file node template
+	 * @param resourceId    the file's resource id with meta variables replaced (only used for files with at least two
+	 *                      siblings)
+	 * @return  <code>true</code> if the source node has to be removed, <code>false</code> otherwise
+	 * @throws OpenCmsMetaXmlParseException if the source node has to be removed, but there is no source node
+	 */
+	boolean isSourceRemoved(FragmentTemplate template, String resourceId) throws OpenCmsMetaXmlParseException {
+		// sibling handling only has to be done if there are at least two siblings
+		if (template.numSiblings < 2) {
+			return false;
+		}
+		// if we encounter a resourceId that has not been handled yet, the file keeps its source node
+		if (markHandled(resourceId)) {
+			return false;
+		}
+		if (!template.hasSourcePosition()) {
+			throw new OpenCmsMetaXmlParseException("Can't remove sibling's source node from " + template.metaXmlFilePath + " (source node not found)", null);
+		}
+		return true;
+	}
+
+	/**
+	 * Marks the given resource id as handled.
+	 * @return <code>true</code> if the resource id hasn't been handled before
+	 */
+	private boolean markHandled(String resourceId) {
+		if (UuidIndex.isUuid(resourceId)) {
+			return handledSiblingResourceIds.putIfAbsent(UuidIndex.getMostSignificantBits(resourceId), UuidIndex.getLeastSignificantBits(resourceId), 0) < 0;
+		}
+		return handledOtherResourceIds.add(resourceId);
+	}
+}
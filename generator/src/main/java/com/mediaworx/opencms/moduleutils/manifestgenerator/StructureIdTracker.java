@@ -0,0 +1,109 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detects VFS files and folders sharing the same structure id (usually meta files copied without changing the id),
+ * OpenCms refuses to import modules containing duplicate structure ids. Every duplicate is logged with the meta file
+ * that used the structure id first. The file nodes have to be checked in manifest order, a tracker is used for one
+ * manifest only.
+ */
+class StructureIdTracker {
+
+	private static final Logger LOG = LoggerFactory.getLogger(StructureIdTracker.class);
+
+	/** Structure ids seen so far, the values are indexes into {@link #metaXmlFilePaths} */
+	private final UuidIndex structureIds = new UuidIndex();
+
+	/** Paths of the meta files whose structure ids have been added (references to the templates' paths) */
+	private final List<String> metaXmlFilePaths = new ArrayList<>();
+
+	/** Maximum number of structure ids tracked, further ids are not checked */
+	private final int maxStructureIds;
+
+	/**
+	 * Creates a tracker checking all structure ids.
+	 */
+	StructureIdTracker() {
+		this(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a tracker with limited memory, only the first <code>maxStructureIds</code> structure ids are tracked.
+	 * Later structure ids are still checked against the tracked ones, but not added themselves.
+	 * @param maxStructureIds   maximum number of structure ids tracked
+	 */
+	StructureIdTracker(int maxStructureIds) {
+		this.maxStructureIds = maxStructureIds;
+	}
+
+	/**
+	 * Checks if the given structure id already has been used by another VFS file or folder. Structure ids that aren't
+	 * UUIDs (like unreplaced meta variables) are not checked.
+	 * @param template      the file node template
+	 * @param structureId   the structure id with meta variables replaced, may be null
+	 * @return  <code>true</code> if the structure id is a duplicate, <code>false</code> otherwise
+	 */
+	boolean isDuplicate(FragmentTemplate template, String structureId) {
+		if (structureId == null) {
+			return false;
+		}
+		structureId = structureId.trim();
+		if (!UuidIndex.isUuid(structureId)) {
+			return false;
+		}
+		long mostSigBits = UuidIndex.getMostSignificantBits(structureId);
+		long leastSigBits = UuidIndex.getLeastSignificantBits(structureId);
+		int firstIndex;
+		if (structureIds.size() < maxStructureIds) {
+			firstIndex = structureIds.putIfAbsent(mostSigBits, leastSigBits, metaXmlFilePaths.size());
+			if (firstIndex < 0) {
+				metaXmlFilePaths.add(template.metaXmlFilePath);
+				if (structureIds.size() == maxStructureIds) {
+					LOG.info("Tracking of structure ids stopped after {} ids (memory budget), later ids are only checked against these", maxStructureIds);
+				}
+				return false;
+			}
+		}
+		else {
+			firstIndex = structureIds.get(mostSigBits, leastSigBits);
+			if (firstIndex < 0) {
+				return false;
+			}
+		}
+		LOG.warn("Duplicate structure id {} in {}, it is used by {} as well", structureId, template.metaXmlFilePath, metaXmlFilePaths.get(firstIndex));
+		return true;
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from UUIDs to int values. UUIDs are stored as two longs in a flat array (linear probing),
+ * so an entry takes 20 bytes per slot instead of a String, its byte array and a hash map node (well over 100 bytes
+ * for a UUID string in a HashSet). Values must not be negative.
+ */
+class UuidIndex {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** marks empty slots in the value array */
+	private static final int EMPTY = -1;
+
+	/** the UUIDs, most significant bits at even, least significant bits at odd positions */
+	private long[] keys;
+
+	/** the values, {@link #EMPTY} for empty slots */
+	private int[] values;
+
+	private int size;
+
+	UuidIndex() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Adds a UUID with the given value, if the UUID is not contained yet.
+	 * @param mostSigBits   the UUID's most significant bits
+	 * @param leastSigBits  the UUID's least significant bits
+	 * @param value         the value (not negative)
+	 * @return  the value already stored for the UUID, -1 if the UUID was added
+	 */
+	int putIfAbsent(long mostSigBits, long leastSigBits, int value) {
+		int mask = values.length - 1;
+		int slot = hash(mostSigBits, leastSigBits) & mask;
+		while (values[slot] != EMPTY) {
+			if (keys[2 * slot] == mostSigBits && keys[2 * slot + 1] == leastSigBits) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[2 * slot] = mostSigBits;
+		keys[2 * slot + 1] = leastSigBits;
+		values[slot] = value;
+		size++;
+		// keep the load factor below 3/4
+		if (4 * size > 3 * values.length) {
+			rehash();
+		}
+		return EMPTY;
+	}
+
+	/**
+	 * Increments the value of a UUID, a UUID that is not contained yet is added with the value 1.
+	 * @param mostSigBits   the UUID's most significant bits
+	 * @param leastSigBits  the UUID's least significant bits
+	 * @return  the incremented value
+	 */
+	int increment(long mostSigBits, long leastSigBits) {
+		int mask = values.length - 1;
+		int slot = hash(mostSigBits, leastSigBits) & mask;
+		while (values[slot] != EMPTY) {
+			if (keys[2 * slot] == mostSigBits && keys[2 * slot + 1] == leastSigBits) {
+				return ++values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		putIfAbsent(mostSigBits, leastSigBits, 1);
+		return 1;
+	}
+
+	/**
+	 * Returns the value stored for a UUID.
+	 * @param mostSigBits   the UUID's most significant bits
+	 * @param leastSigBits  the UUID's least significant bits
+	 * @return  the value stored for the UUID, -1 if the UUID is not contained
+	 */
+	int get(long mostSigBits, long leastSigBits) {
+		int mask = values.length - 1;
+		int slot = hash(mostSigBits, leastSigBits) & mask;
+		while (values[slot] != EMPTY) {
+			if (keys[2 * slot] == mostSigBits && keys[2 * slot + 1] == leastSigBits) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return EMPTY;
+	}
+
+	/**
+	 * @return number of UUIDs contained
+	 */
+	int size() {
+		return size;
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(2 * oldValues.length);
+		int mask = values.length - 1;
+		for (int oldSlot = 0; oldSlot < oldValues.length; oldSlot++) {
+			if (oldValues[oldSlot] == EMPTY) {
+				continue;
+			}
+			long mostSigBits = oldKeys[2 * oldSlot];
+			long leastSigBits = oldKeys[2 * oldSlot + 1];
+			int slot = hash(mostSigBits, leastSigBits) & mask;
+			while (values[slot] != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+			keys[2 * slot] = mostSigBits;
+			keys[2 * slot + 1] = leastSigBits;
+			values[slot] = oldValues[oldSlot];
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[2 * capacity];
+		values = new int[capacity];
+		Arrays.fill(values, EMPTY);
+	}
+
+	private static int hash(long mostSigBits, long leastSigBits) {
+		long hash = (mostSigBits ^ Long.rotateLeft(leastSigBits, 32)) * 0x9E3779B97F4A7C15L;
+		return (int)(hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * Checks if the given String is a UUID in the standard format (like <code>c76b8774-7c44-11e3-92bb-210cc9a3bba6</code>).
+	 * @param uuid  the String to check, may be null
+	 * @return  <code>true</code> if the String can be parsed with {@link #getMostSignificantBits(String)} and
+	 *          {@link #getLeastSignificantBits(String)}
+	 */
+	static boolean isUuid(String uuid) {
+		if (uuid == null || uuid.length() != 36) {
+			return false;
+		}
+		for (int i = 0; i < 36; i++) {
+			char c = uuid.charAt(i);
+			if (i == 8 || i == 13 || i == 18 || i == 23) {
+				if (c != '-') {
+					return false;
+				}
+			}
+			else if (hexValue(c) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param uuid  a UUID in the standard format (see {@link #isUuid(String)})
+	 * @return  the UUID's most significant bits
+	 */
+	static long getMostSignificantBits(String uuid) {
+		return parseHex(uuid, 0, 8) << 32 | parseHex(uuid, 9, 13) << 16 | parseHex(uuid, 14, 18);
+	}
+
+	/**
+	 * @param uuid  a UUID in the standard format (see {@link #isUuid(String)})
+	 * @return  the UUID's least significant bits
+	 */
+	static long getLeastSignificantBits(String uuid) {
+		return parseHex(uuid, 19, 23) << 48 | parseHex(uuid, 24, 36);
+	}
+
+	private static long parseHex(String text, int start, int end) {
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			value = value << 4 | hexValue(text.charAt(i));
+		}
+		return value;
+	}
+
+	private static int hexValue(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+}
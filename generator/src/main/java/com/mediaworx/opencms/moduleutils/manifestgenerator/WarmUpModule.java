@@ -0,0 +1,198 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * A small sample module written to a temporary folder, used to warm up the parsers and the code generating manifests
+ * (see {@link OpenCmsModuleManifestGenerator#warmUp()}). The module contains folders, files with CDATA properties,
+ * siblings and a meta file with an unusual layout, so both the fast meta file reader and the DOM parser are used. The
+ * temporary folder is deleted on close.
+ */
+class WarmUpModule implements AutoCloseable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(WarmUpModule.class);
+
+	/** Number of VFS files in the sample module */
+	private static final int NUM_FILES = 100;
+
+	private static final String MODULE_PATH = "system/modules/warmup";
+
+	private static final String MANIFEST_STUB =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+			"<export>\n" +
+			"    <info>\n" +
+			"        <creator>Admin</creator>\n" +
+			"        <createdate>${createdate}</createdate>\n" +
+			"        <export_version>7</export_version>\n" +
+			"    </info>\n" +
+			"    <module>\n" +
+			"        <name>warmup</name>\n" +
+			"        <nicename><![CDATA[Warm-up module]]></nicename>\n" +
+			"        <version>1.0</version>\n" +
+			"        <resources>\n" +
+			"            <resource uri=\"/" + MODULE_PATH + "/\"/>\n" +
+			"        </resources>\n" +
+			"        <parameters/>\n" +
+			"    </module>\n" +
+			"    <files/>\n" +
+			"</export>\n";
+
+	private static final String FOLDER_META_FILE =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+			"<file>\n" +
+			"    <destination>${destination}</destination>\n" +
+			"    <type>folder</type>\n" +
+			"    <uuidstructure>${uuidstructure}</uuidstructure>\n" +
+			"    <datelastmodified>${datelastmodified}</datelastmodified>\n" +
+			"    <userlastmodified>Admin</userlastmodified>\n" +
+			"    <datecreated>${datecreated}</datecreated>\n" +
+			"    <usercreated>Admin</usercreated>\n" +
+			"    <flags>0</flags>\n" +
+			"    <properties/>\n" +
+			"    <relations/>\n" +
+			"    <accesscontrol/>\n" +
+			"</file>\n";
+
+	/** VFS file meta file, the placeholders are the resource id, the title, the sibling count and an extra node */
+	private static final String FILE_META_FILE =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+			"<fileinfo>\n" +
+			"    <file>\n" +
+			"        <source>${source}</source>\n" +
+			"        <destination>${destination}</destination>\n" +
+			"        <type>jsp</type>\n" +
+			"        <uuidstructure>${uuidstructure}</uuidstructure>\n" +
+			"        <uuidresource>%s</uuidresource>\n" +
+			"        <datelastmodified>${datelastmodified}</datelastmodified>\n" +
+			"        <userlastmodified>Admin</userlastmodified>\n" +
+			"        <datecreated>${datecreated}</datecreated>\n" +
+			"        <usercreated>Admin</usercreated>\n" +
+			"        <flags>0</flags>\n" +
+			"        <properties>\n" +
+			"            <property>\n" +
+			"                <name>Title</name>\n" +
+			"                <value><![CDATA[%s]]></value>\n" +
+			"            </property>\n" +
+			"        </properties>\n" +
+			"        <relations/>\n" +
+			"        <accesscontrol>\n" +
+			"            <accessentry>\n" +
+			"                <uuidprincipal>GROUP.Users</uuidprincipal>\n" +
+			"                <flags>36</flags>\n" +
+			"                <permissionset>\n" +
+			"                    <allowed>23</allowed>\n" +
+			"                    <denied>0</denied>\n" +
+			"                </permissionset>\n" +
+			"            </accessentry>\n" +
+			"        </accesscontrol>\n" +
+			"    </file>\n" +
+			"    <siblingcount>%d</siblingcount>%s\n" +
+			"</fileinfo>\n";
+
+	/** the temporary folder containing the module */
+	private final Path manifestRoot;
+
+	private WarmUpModule(Path manifestRoot) {
+		this.manifestRoot = manifestRoot;
+	}
+
+	/**
+	 * Writes the sample module to a new temporary folder.
+	 * @param folderMetaSuffix  file name suffix for VFS folder meta files
+	 * @param fileMetaSuffix    file name suffix for VFS file meta files
+	 * @param manifestStubName  file name of the manifest stub
+	 * @return  the sample module
+	 * @throws IOException if the module can not be written
+	 */
+	static WarmUpModule create(String folderMetaSuffix, String fileMetaSuffix, String manifestStubName) throws IOException {
+		WarmUpModule module = new WarmUpModule(Files.createTempDirectory("manifest-warmup"));
+		try {
+			module.write(folderMetaSuffix, fileMetaSuffix, manifestStubName);
+		}
+		catch (IOException | RuntimeException e) {
+			module.close();
+			throw e;
+		}
+		return module;
+	}
+
+	private void write(String folderMetaSuffix, String fileMetaSuffix, String manifestStubName) throws IOException {
+		write(manifestStubName, MANIFEST_STUB);
+		String folderPath = "";
+		for (String folderName : MODULE_PATH.split("/")) {
+			folderPath = folderPath.isEmpty() ? folderName : folderPath + "/" + folderName;
+			Files.createDirectories(manifestRoot.resolve(folderPath));
+			write(folderPath + folderMetaSuffix, FOLDER_META_FILE);
+		}
+		for (int i = 0; i < NUM_FILES; i++) {
+			// every tenth file has a sibling pointing to the same resource
+			boolean hasSibling = i % 10 < 2;
+			String resourceId = hasSibling ? String.format("00000000-0000-0000-0000-%012d", i / 10) : "${uuidresource}";
+			// the last file's layout is not supported by the fast reader, so the DOM parser is used
+			String extraNode = i == NUM_FILES - 1 ? "\n    <comment/>" : "";
+			String metaFile = String.format(FILE_META_FILE, resourceId, "Title <" + i + "> & more", hasSibling ? 2 : 1, extraNode);
+			write(MODULE_PATH + "/file" + i + ".jsp" + fileMetaSuffix, metaFile);
+		}
+	}
+
+	private void write(String relativePath, String content) throws IOException {
+		Files.write(manifestRoot.resolve(relativePath), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return the folder containing the manifest stub and the meta files
+	 */
+	File getManifestRoot() {
+		return manifestRoot.toFile();
+	}
+
+	/**
+	 * Deletes the temporary folder, failures are only logged.
+	 */
+	@Override
+	public void close() {
+		try (Stream<Path> paths = Files.walk(manifestRoot)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+		catch (IOException e) {
+			LOG.debug("The warm-up module in {} could not be deleted: {}", manifestRoot, e.toString());
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlParseException;
+import com.mediaworx.xmlutils.XmlHelper;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of XML parsers shared by all generators, so parser factories, document builders and XPath instances are
+ * created once per process instead of once per run (and stay warm for the JIT). Parsers are not thread safe, a
+ * borrowed parser set is confined to the borrowing thread until it is released. Idle parsers are reused most recently
+ * released first, parsers exceeding the maximum number of idle parsers are dropped on release.
+ */
+class XmlParserPool {
+
+	/** the idle parsers, the most recently released first */
+	private final ConcurrentLinkedDeque<Parsers> idleParsers = new ConcurrentLinkedDeque<>();
+
+	/** number of idle parsers (the deque's size is not constant time) */
+	private final AtomicInteger numIdleParsers = new AtomicInteger();
+
+	/** maximum number of idle parsers kept */
+	private final int maxIdleParsers;
+
+	/**
+	 * Creates a new pool.
+	 * @param maxIdleParsers    maximum number of idle parsers kept
+	 */
+	XmlParserPool(int maxIdleParsers) {
+		this.maxIdleParsers = maxIdleParsers;
+	}
+
+	/**
+	 * Borrows a parser set, a new one is created if there are no idle parsers. The parser set must be released after
+	 * use and must not be used by other threads until then.
+	 * @return  the parser set
+	 * @throws OpenCmsMetaXmlParseException if a new parser set can not be initialized
+	 */
+	Parsers borrow() throws OpenCmsMetaXmlParseException {
+		Parsers parsers = idleParsers.pollFirst();
+		if (parsers != null) {
+			numIdleParsers.decrementAndGet();
+			return parsers;
+		}
+		try {
+			return new Parsers();
+		}
+		catch (ParserConfigurationException e) {
+			throw new OpenCmsMetaXmlParseException("The XmlHelper could not be initialized", e);
+		}
+	}
+
+	/**
+	 * Returns a borrowed parser set to the pool.
+	 * @param parsers   the parser set, may be <code>null</code> (nothing is done then)
+	 */
+	void release(Parsers parsers) {
+		if (parsers == null) {
+			return;
+		}
+		if (numIdleParsers.incrementAndGet() <= maxIdleParsers) {
+			idleParsers.addFirst(parsers);
+		}
+		else {
+			numIdleParsers.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Creates parser sets until the pool holds at least the given number of idle parsers (limited by the maximum
+	 * number of idle parsers).
+	 * @param numParsers    number of idle parsers
+	 * @throws OpenCmsMetaXmlParseException if a parser set can not be initialized
+	 */
+	void prefill(int numParsers) throws OpenCmsMetaXmlParseException {
+		int numMissing = Math.min(numParsers, maxIdleParsers) - numIdleParsers.get();
+		for (int i = 0; i < numMissing; i++) {
+			try {
+				release(new Parsers());
+			}
+			catch (ParserConfigurationException e) {
+				throw new OpenCmsMetaXmlParseException("The XmlHelper could not be initialized", e);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of idle parsers
+	 */
+	int getNumIdleParsers() {
+		return numIdleParsers.get();
+	}
+
+	/**
+	 * The parsers used by one thread: an XmlHelper for DOM parsing and XPath evaluation (used for the manifest stub and
+	 * for meta files with unusual layouts) and a StAX factory with the read buffers for the fast meta file reader, plus
+	 * the thread's formatter for resource dates.
+	 */
+	static class Parsers {
+
+		/** the XmlHelper (document builder and XPath) */
+		final XmlHelper xmlHelper;
+
+		/** the StAX input factory used by the {@link MetaFileReader} */
+		final XMLInputFactory inputFactory;
+
+		/** the buffers used by the {@link MetaFileReader} */
+		final MetaFileReader.ReadBuffers readBuffers = new MetaFileReader.ReadBuffers();
+
+		/** formatter for the resource dates of the meta files handled by the thread */
+		final ResourceDateFormatter dateFormatter = new ResourceDateFormatter();
+
+		private Parsers() throws ParserConfigurationException {
+			xmlHelper = new XmlHelper();
+			inputFactory = MetaFileReader.createInputFactory();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that the bytes allocated per manifest entry stay within a fixed budget, so GC pressure stays flat for large
+ * modules. The manifest of the test module of {@link ManifestGenerationModesTest} is generated repeatedly on the
+ * calling thread (sequential mode, without fragment cache and fragment store, so every run reads and parses all meta
+ * files) and the allocated bytes are read from the thread's allocation counter.
+ */
+class AllocationBudgetTest {
+
+	/**
+	 * Bytes that may be allocated per manifest entry while its meta file is read, parsed and compiled and its file node
+	 * is written. About 9.5 KB per entry are allocated for the test module, mostly by the JDK's StAX reader when it is
+	 * reset for the next meta file, by the serialized file node kept in the template and by the few meta files parsed
+	 * with the DOM parser. A per meta file read buffer, StAX reader or serializer exceeds the budget (about 37 KB per
+	 * entry were allocated before they were reused), so the budget should only be raised for allocations that are
+	 * really needed.
+	 */
+	private static final long MAX_BYTES_PER_ENTRY = 12 * 1024;
+
+	/** Number of runs before the allocations are measured (warming up the JIT and the parser pool) */
+	private static final int WARM_UP_RUNS = 20;
+
+	/** Number of measured runs */
+	private static final int MEASURED_RUNS = 10;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void uncachedRunsStayWithinTheAllocationBudget() throws Exception {
+		com.sun.management.ThreadMXBean threadBean = getThreadBean();
+		assumeTrue(threadBean != null && threadBean.isThreadAllocatedMemorySupported(), "measuring allocated memory is not supported by this JVM");
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		ManifestGenerationModesTest.writeModule(tempDir);
+		OpenCmsModuleManifestGenerator generator = ManifestGenerationModesTest.createGenerator();
+		long numEntries;
+		try (Stream<ManifestEntry> entries = generator.streamManifestEntries(tempDir.toFile(), null)) {
+			numEntries = entries.count();
+		}
+
+		for (int i = 0; i < WARM_UP_RUNS; i++) {
+			generator.generateManifest(tempDir.toFile(), null);
+		}
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			generator.generateManifest(tempDir.toFile(), null);
+		}
+		long bytesPerEntry = (threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / (MEASURED_RUNS * numEntries);
+
+		assertTrue(bytesPerEntry <= MAX_BYTES_PER_ENTRY, bytesPerEntry + " bytes allocated per manifest entry, the budget is " + MAX_BYTES_PER_ENTRY + " bytes");
+	}
+
+	private static com.sun.management.ThreadMXBean getThreadBean() {
+		java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		return threadBean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean)threadBean : null;
+	}
+}
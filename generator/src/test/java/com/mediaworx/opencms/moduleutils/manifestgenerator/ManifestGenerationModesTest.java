@@ -0,0 +1,314 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Generates the manifest of a fixed module in every mode of the generator (sequential, parallel, with a memory
+ * budget, the fragment cache and the fragment store) and checks that all modes write the same manifest. The module
+ * contains siblings (the source node is only written for the first one), CDATA sections (with and without meta
+ * variables) and a meta file that doesn't follow the standard layout (parsed with the DOM parser).
+ */
+class ManifestGenerationModesTest {
+
+	/** Name of the test module */
+	private static final String MODULE_NAME = "com.mediaworx.opencms.test";
+
+	/** VFS path of the module folder */
+	private static final String MODULE_FOLDER = "system/modules/" + MODULE_NAME;
+
+	private static final int NUM_FOLDERS = 12;
+	private static final int FILES_PER_FOLDER = 40;
+
+	/** Every SIBLING_INTERVAL-th file of a folder has a sibling in the next folder */
+	private static final int SIBLING_INTERVAL = 7;
+
+	/** Memory budget small enough to spill the meta file entries to several sorted runs */
+	private static final long SMALL_MEMORY_BUDGET = 32 * 1024;
+
+	@TempDir
+	static Path tempDir;
+
+	private static Path manifestRoot;
+
+	/** the manifest written in sequential mode, the other modes are compared to it */
+	private static String expectedManifest;
+
+	@BeforeAll
+	static void writeModule() throws Exception {
+		manifestRoot = tempDir.resolve("manifest");
+		writeModule(manifestRoot);
+		expectedManifest = generate(generator -> { });
+	}
+
+	@Test
+	void sequentialManifestContainsAllResources() {
+		// the folders on the way to the module folder, the module folder and the generated folders
+		int numFolders = 3 + NUM_FOLDERS;
+		int numFiles = NUM_FOLDERS * FILES_PER_FOLDER + getNumSiblingPairs();
+		assertEquals(numFolders + numFiles, count(expectedManifest, "<file>"));
+		// only the first sibling of a pair keeps its source node
+		assertEquals(numFiles - getNumSiblingPairs(), count(expectedManifest, "<source>"));
+		assertEquals(numFiles, count(expectedManifest, "<![CDATA[Value & <more>]]>"));
+		assertTrue(expectedManifest.contains("<![CDATA[/" + MODULE_FOLDER + "/folder0/file0.jsp]]>"));
+		assertTrue(expectedManifest.contains("<description><![CDATA[Module used by the tests]]></description>"));
+		assertEquals(0, count(expectedManifest, "${"));
+	}
+
+	@Test
+	void parallelParsingWritesTheSameManifest() throws Exception {
+		assertEquals(expectedManifest, generate(generator -> generator.setParallelism(4)));
+	}
+
+	@Test
+	void memoryBudgetWritesTheSameManifest() throws Exception {
+		assertEquals(expectedManifest, generate(generator -> generator.setMemoryBudget(SMALL_MEMORY_BUDGET)));
+		assertEquals(expectedManifest, generate(generator -> {
+			generator.setMemoryBudget(SMALL_MEMORY_BUDGET);
+			generator.setParallelism(4);
+		}));
+	}
+
+	@Test
+	void fragmentCacheWritesTheSameManifest() throws Exception {
+		OpenCmsModuleManifestGenerator generator = createGenerator();
+		generator.setFragmentCacheSize(64L * 1024 * 1024);
+		generator.setParallelism(4);
+		// the first run fills the cache, the second one takes all fragments from it
+		assertEquals(expectedManifest, generate(generator));
+		assertEquals(expectedManifest, generate(generator));
+	}
+
+	@Test
+	void fragmentStoreWritesTheSameManifest() throws Exception {
+		File storeFile = tempDir.resolve("fragments.store").toFile();
+		for (int run = 0; run < 2; run++) {
+			// every run uses a new generator, the second one reads all fragments from the store
+			OpenCmsModuleManifestGenerator generator = createGenerator();
+			generator.setFragmentStore(storeFile);
+			generator.setParallelism(run == 0 ? 1 : 4);
+			assertEquals(expectedManifest, generate(generator));
+		}
+	}
+
+	/**
+	 * @param settings  settings applied to a new generator (in addition to the ones of {@link #createGenerator()})
+	 * @return  the manifest generated with the settings
+	 */
+	private static String generate(Consumer<OpenCmsModuleManifestGenerator> settings) throws Exception {
+		OpenCmsModuleManifestGenerator generator = createGenerator();
+		settings.accept(generator);
+		return generate(generator);
+	}
+
+	private static String generate(OpenCmsModuleManifestGenerator generator) throws Exception {
+		Path manifest = manifestRoot.resolve("manifest.xml");
+		Files.deleteIfExists(manifest);
+		generator.generateManifest(manifestRoot.toFile(), null);
+		return new String(Files.readAllBytes(manifest), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return  a generator replacing all meta variables, with stable UUIDs so the manifests of different runs can be
+	 *          compared
+	 */
+	static OpenCmsModuleManifestGenerator createGenerator() {
+		OpenCmsModuleManifestGenerator generator = new OpenCmsModuleManifestGenerator();
+		generator.setReplaceDateVariables(true);
+		generator.setReplaceIdVariables(true);
+		generator.setDeterministicIds(true);
+		return generator;
+	}
+
+	private static int count(String text, String part) {
+		int count = 0;
+		for (int index = text.indexOf(part); index >= 0; index = text.indexOf(part, index + part.length())) {
+			count++;
+		}
+		return count;
+	}
+
+	private static int getNumSiblingPairs() {
+		// the files of the last folder have no next folder for their siblings
+		return (NUM_FOLDERS - 1) * ((FILES_PER_FOLDER + SIBLING_INTERVAL - 1) / SIBLING_INTERVAL);
+	}
+
+	/**
+	 * Writes the manifest stub and the meta files of the test module.
+	 * @param manifestRoot  the folder the module is written to
+	 * @throws IOException if a file can not be written
+	 */
+	static void writeModule(Path manifestRoot) throws IOException {
+		Files.createDirectories(manifestRoot.resolve(MODULE_FOLDER));
+		write(manifestRoot.resolve("manifest_stub.xml"), getManifestStub());
+		write(manifestRoot.resolve("system.ocmsfolder.xml"), getFolderMetaFile());
+		write(manifestRoot.resolve("system/modules.ocmsfolder.xml"), getFolderMetaFile());
+		write(manifestRoot.resolve(MODULE_FOLDER + ".ocmsfolder.xml"), getFolderMetaFile());
+		for (int folder = 0; folder < NUM_FOLDERS; folder++) {
+			String folderPath = MODULE_FOLDER + "/folder" + folder;
+			Files.createDirectories(manifestRoot.resolve(folderPath));
+			write(manifestRoot.resolve(folderPath + ".ocmsfolder.xml"), getFolderMetaFile());
+		}
+		for (int folder = 0; folder < NUM_FOLDERS; folder++) {
+			String folderPath = MODULE_FOLDER + "/folder" + folder;
+			for (int file = 0; file < FILES_PER_FOLDER; file++) {
+				boolean hasSibling = file % SIBLING_INTERVAL == 0;
+				String resourceId = "00000000-0000-0000-0000-" + String.format("%06d%06d", folder, file);
+				if (hasSibling && folder + 1 < NUM_FOLDERS) {
+					// the sibling is stored in the next folder, so the pair is not adjacent in the manifest
+					String siblingPath = MODULE_FOLDER + "/folder" + (folder + 1) + "/sibling" + file + ".jsp";
+					write(manifestRoot.resolve(siblingPath + ".ocmsfile.xml"), getFileMetaFile(resourceId, 2, false));
+				}
+				boolean isSibling = hasSibling && folder + 1 < NUM_FOLDERS;
+				String filePath = folderPath + "/file" + file + ".jsp";
+				write(manifestRoot.resolve(filePath + ".ocmsfile.xml"), getFileMetaFile(isSibling ? resourceId : null, isSibling ? 2 : 1, file == 1));
+			}
+		}
+	}
+
+	private static String getManifestStub() {
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+				"\n" +
+				"<export>\n" +
+				"    <info>\n" +
+				"        <creator>Admin</creator>\n" +
+				"        <opencms_version>17.0</opencms_version>\n" +
+				"        <createdate>" + OpenCmsModuleManifestGenerator.META_VAR_CREATEDATE + "</createdate>\n" +
+				"        <infoproject>Offline</infoproject>\n" +
+				"        <export_version>10</export_version>\n" +
+				"    </info>\n" +
+				"    <module>\n" +
+				"        <name>" + MODULE_NAME + "</name>\n" +
+				"        <nicename><![CDATA[Test Module]]></nicename>\n" +
+				"        <class/>\n" +
+				"        <description><![CDATA[Module used by the tests]]></description>\n" +
+				"        <version>1.0</version>\n" +
+				"        <authorname><![CDATA[mediaworx]]></authorname>\n" +
+				"        <authoremail><![CDATA[info@mediaworx.com]]></authoremail>\n" +
+				"        <datecreated/>\n" +
+				"        <userinstalled/>\n" +
+				"        <dateinstalled/>\n" +
+				"        <dependencies/>\n" +
+				"        <exportpoints/>\n" +
+				"        <resources>\n" +
+				"            <resource uri=\"/" + MODULE_FOLDER + "/\"/>\n" +
+				"        </resources>\n" +
+				"        <parameters/>\n" +
+				"    </module>\n" +
+				"    <files/>\n" +
+				"</export>\n";
+	}
+
+	private static String getFolderMetaFile() {
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+				"\n" +
+				"<file>\n" +
+				"    <destination>" + OpenCmsModuleManifestGenerator.META_VAR_DESTINATION + "</destination>\n" +
+				"    <type>folder</type>\n" +
+				"    <uuidstructure>" + OpenCmsModuleManifestGenerator.META_VAR_UUIDSTRUCTURE + "</uuidstructure>\n" +
+				"    <datelastmodified>" + OpenCmsModuleManifestGenerator.META_VAR_DATELASTMODIFIED + "</datelastmodified>\n" +
+				"    <userlastmodified>Admin</userlastmodified>\n" +
+				"    <datecreated>" + OpenCmsModuleManifestGenerator.META_VAR_DATECREATED + "</datecreated>\n" +
+				"    <usercreated>Admin</usercreated>\n" +
+				"    <flags>0</flags>\n" +
+				"    <properties/>\n" +
+				"    <relations/>\n" +
+				getAccessControl("    ") +
+				"</file>\n";
+	}
+
+	/**
+	 * @param resourceId    the resource id shared by siblings, <code>null</code> for a generated one
+	 * @param numSiblings   number of siblings
+	 * @param nonStandard   <code>true</code> to add a comment, so the meta file is parsed with the DOM parser
+	 * @return  the meta file
+	 */
+	private static String getFileMetaFile(String resourceId, int numSiblings, boolean nonStandard) {
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+				"\n" +
+				"<fileinfo>\n" +
+				(nonStandard ? "    <!-- written by hand -->\n" : "") +
+				"    <file>\n" +
+				"        <source>" + OpenCmsModuleManifestGenerator.META_VAR_SOURCE + "</source>\n" +
+				"        <destination>" + OpenCmsModuleManifestGenerator.META_VAR_DESTINATION + "</destination>\n" +
+				"        <type>jsp</type>\n" +
+				"        <uuidstructure>" + OpenCmsModuleManifestGenerator.META_VAR_UUIDSTRUCTURE + "</uuidstructure>\n" +
+				"        <uuidresource>" + (resourceId != null ? resourceId : OpenCmsModuleManifestGenerator.META_VAR_UUIDRESOURCE) + "</uuidresource>\n" +
+				"        <datelastmodified>" + OpenCmsModuleManifestGenerator.META_VAR_DATELASTMODIFIED + "</datelastmodified>\n" +
+				"        <userlastmodified>Admin</userlastmodified>\n" +
+				"        <datecreated>" + OpenCmsModuleManifestGenerator.META_VAR_DATECREATED + "</datecreated>\n" +
+				"        <usercreated>Admin</usercreated>\n" +
+				"        <flags>0</flags>\n" +
+				"        <properties>\n" +
+				"            <property>\n" +
+				"                <name>Title</name>\n" +
+				"                <value><![CDATA[Value & <more>]]></value>\n" +
+				"            </property>\n" +
+				"            <property type=\"shared\">\n" +
+				"                <name>link</name>\n" +
+				"                <value><![CDATA[/" + OpenCmsModuleManifestGenerator.META_VAR_DESTINATION + "]]></value>\n" +
+				"            </property>\n" +
+				"        </properties>\n" +
+				"        <relations/>\n" +
+				getAccessControl("        ") +
+				"    </file>\n" +
+				"    <siblingcount>" + numSiblings + "</siblingcount>\n" +
+				"</fileinfo>\n";
+	}
+
+	private static String getAccessControl(String indent) {
+		return indent + "<accesscontrol>\n" +
+				indent + "    <accessentry>\n" +
+				indent + "        <uuidprincipal>GROUP.Users</uuidprincipal>\n" +
+				indent + "        <flags>32</flags>\n" +
+				indent + "        <permissionset>\n" +
+				indent + "            <allowed>1</allowed>\n" +
+				indent + "            <denied>0</denied>\n" +
+				indent + "        </permissionset>\n" +
+				indent + "    </accessentry>\n" +
+				indent + "</accesscontrol>\n";
+	}
+
+	private static void write(Path path, String content) throws IOException {
+		Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,342 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator.maven;
+
+import com.mediaworx.opencms.moduleutils.manifestgenerator.OpenCmsModuleManifestGenerator;
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlFileWriteException;
+import com.mediaworx.opencms.moduleutils.manifestgenerator.exceptions.OpenCmsMetaXmlParseException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Generates the manifest.xml of an OpenCms module with the {@link OpenCmsModuleManifestGenerator}, but only if its
+ * inputs changed since the last build. The inputs (paths, sizes and modification dates of the meta files, content of
+ * the manifest stub, the real files' dates if they are used and the generator settings) are fingerprinted, the
+ * fingerprint is stored in a state file below the build directory together with the size and modification date of
+ * the generated manifest. If neither the fingerprint nor the manifest changed, generation is skipped.
+ * <br />
+ * <br />
+ * Sample configuration:
+ * <pre>
+ * &lt;plugin&gt;
+ *     &lt;groupId&gt;com.mediaworx.opencms&lt;/groupId&gt;
+ *     &lt;artifactId&gt;opencms-manifestgenerator-maven-plugin&lt;/artifactId&gt;
+ *     &lt;version&gt;1.10&lt;/version&gt;
+ *     &lt;executions&gt;
+ *         &lt;execution&gt;
+ *             &lt;goals&gt;
+ *                 &lt;goal&gt;generate-manifest&lt;/goal&gt;
+ *             &lt;/goals&gt;
+ *             &lt;configuration&gt;
+ *                 &lt;manifestRoot&gt;${project.basedir}/manifest&lt;/manifestRoot&gt;
+ *                 &lt;realFileRoot&gt;${project.basedir}/vfs&lt;/realFileRoot&gt;
+ *                 &lt;moduleVersion&gt;${project.version}&lt;/moduleVersion&gt;
+ *                 &lt;replaceDateVariables&gt;true&lt;/replaceDateVariables&gt;
+ *             &lt;/configuration&gt;
+ *         &lt;/execution&gt;
+ *     &lt;/executions&gt;
+ * &lt;/plugin&gt;
+ * </pre>
+ */
+@Mojo(name = "generate-manifest", defaultPhase = LifecyclePhase.PREPARE_PACKAGE, threadSafe = true)
+public class GenerateManifestMojo extends AbstractMojo {
+
+	/** File name of the module manifest stub file */
+	private static final String FILENAME_MANIFEST_STUB = "manifest_stub.xml";
+
+	/** File name of the generated module manifest */
+	private static final String FILENAME_MANIFEST = "manifest.xml";
+
+	/** Key of the input fingerprint in the state file */
+	private static final String STATE_FINGERPRINT = "fingerprint";
+
+	/** Key of the generated manifest's size and modification date in the state file */
+	private static final String STATE_MANIFEST = "manifest";
+
+	/** Root folder of the manifest meta data (containing manifest_stub.xml), the manifest is generated there */
+	@Parameter(property = "opencms.manifest.root", required = true)
+	private File manifestRoot;
+
+	/** Root folder of the real files, used for the modification dates if date variables are replaced */
+	@Parameter(property = "opencms.manifest.realFileRoot")
+	private File realFileRoot;
+
+	/** Module version replacing the version of the manifest stub, the stub's version is kept if not set */
+	@Parameter(property = "opencms.manifest.moduleVersion")
+	private String moduleVersion;
+
+	/** Flag indicating if date variables should be replaced with generated values */
+	@Parameter(property = "opencms.manifest.replaceDateVariables", defaultValue = "false")
+	private boolean replaceDateVariables;
+
+	/** Flag indicating if UUID variables should be replaced with generated values */
+	@Parameter(property = "opencms.manifest.replaceIdVariables", defaultValue = "false")
+	private boolean replaceIdVariables;
+
+	/** Flag indicating if generated UUIDs are derived from the module name and VFS path instead of being random */
+	@Parameter(property = "opencms.manifest.deterministicIds", defaultValue = "false")
+	private boolean deterministicIds;
+
+	/** Number of threads used to parse the meta files, values lower than 2 disable parallel parsing */
+	@Parameter(property = "opencms.manifest.parallelism", defaultValue = "1")
+	private int parallelism;
+
+	/** Approximate heap budget for generating the manifest in bytes, values lower than 1 disable the budget */
+	@Parameter(property = "opencms.manifest.memoryBudget", defaultValue = "0")
+	private long memoryBudget;
+
+	/**
+	 * Persistent store for parsed meta files, so meta files unchanged since the previous build are not parsed again
+	 * (the file should be kept between builds, like in a CI cache). No store is used if not set.
+	 */
+	@Parameter(property = "opencms.manifest.fragmentStore")
+	private File fragmentStore;
+
+	/**
+	 * File storing the input fingerprint of the last generated manifest, by default a file named after the manifest
+	 * root's path below <code>${project.build.directory}/opencms-manifest</code> (so several executions in one
+	 * project don't share a state file)
+	 */
+	@Parameter(property = "opencms.manifest.stateFile")
+	private File stateFile;
+
+	/** Flag indicating if the manifest is generated even if its inputs are unchanged */
+	@Parameter(property = "opencms.manifest.force", defaultValue = "false")
+	private boolean force;
+
+	/** Flag indicating if the goal is skipped */
+	@Parameter(property = "opencms.manifest.skip", defaultValue = "false")
+	private boolean skip;
+
+	/** The project's build directory, the default state file is stored below it */
+	@Parameter(defaultValue = "${project.build.directory}", readonly = true, required = true)
+	private File buildDirectory;
+
+	/** Version of this plugin, part of the fingerprint since other versions may generate a different manifest */
+	@Parameter(defaultValue = "${plugin.version}", readonly = true)
+	private String pluginVersion;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (skip) {
+			getLog().info("Skipping manifest generation");
+			return;
+		}
+		Path root = manifestRoot.toPath().toAbsolutePath().normalize();
+		if (!Files.isRegularFile(root.resolve(FILENAME_MANIFEST_STUB))) {
+			throw new MojoFailureException("There is no " + FILENAME_MANIFEST_STUB + " in the manifest root " + root);
+		}
+		Path manifest = root.resolve(FILENAME_MANIFEST);
+		Path state = getStateFile(root);
+
+		long start = System.nanoTime();
+		String fingerprint;
+		try {
+			fingerprint = computeFingerprint(root, manifest);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("The inputs of the manifest below " + root + " could not be read", e);
+		}
+
+		Properties previousState = readState(state);
+		if (!force && fingerprint.equals(previousState.getProperty(STATE_FINGERPRINT)) && getManifestState(manifest).equals(previousState.getProperty(STATE_MANIFEST))) {
+			getLog().info("manifest.xml is up to date, inputs unchanged (checked in " + (System.nanoTime() - start) / 1000000 + " ms): " + manifest);
+			return;
+		}
+
+		// a failed run must not leave a state file that would skip the next run
+		deleteState(state);
+		try {
+			createGenerator().generateManifest(root.toFile(), realFileRoot != null ? realFileRoot.getAbsolutePath() : null);
+		}
+		catch (OpenCmsMetaXmlParseException e) {
+			throw new MojoFailureException("The meta files below " + root + " could not be parsed: " + e.getMessage(), e);
+		}
+		catch (OpenCmsMetaXmlFileWriteException e) {
+			throw new MojoExecutionException("The manifest " + manifest + " could not be written", e);
+		}
+		getLog().info("manifest.xml generated in " + (System.nanoTime() - start) / 1000000 + " ms: " + manifest);
+		writeState(state, fingerprint, getManifestState(manifest));
+	}
+
+	/**
+	 * @return  a generator using the configured settings
+	 */
+	private OpenCmsModuleManifestGenerator createGenerator() {
+		OpenCmsModuleManifestGenerator generator = new OpenCmsModuleManifestGenerator();
+		generator.setModuleVersion(moduleVersion);
+		generator.setReplaceDateVariables(replaceDateVariables);
+		generator.setReplaceIdVariables(replaceIdVariables);
+		generator.setDeterministicIds(deterministicIds);
+		generator.setParallelism(parallelism);
+		generator.setMemoryBudget(memoryBudget);
+		generator.setFragmentStore(fragmentStore);
+		return generator;
+	}
+
+	/**
+	 * Computes the fingerprint of the manifest's inputs. The real files are only part of the fingerprint if their
+	 * dates are used, the number of threads, the memory budget and the fragment store are not (they don't change the
+	 * manifest).
+	 * @param root      the manifest root
+	 * @param manifest  path of the manifest (not part of the fingerprint)
+	 * @return  the fingerprint
+	 * @throws IOException if the meta files or real files can not be listed or the stub can not be read
+	 */
+	private String computeFingerprint(Path root, Path manifest) throws IOException {
+		Map<String, Object> settings = new LinkedHashMap<>();
+		settings.put("pluginVersion", pluginVersion);
+		settings.put("manifestRoot", root);
+		settings.put("realFileRoot", realFileRoot != null ? realFileRoot.getAbsolutePath() : null);
+		settings.put("moduleVersion", moduleVersion);
+		settings.put("replaceDateVariables", replaceDateVariables);
+		settings.put("replaceIdVariables", replaceIdVariables);
+		settings.put("deterministicIds", deterministicIds);
+
+		Path stub = root.resolve(FILENAME_MANIFEST_STUB);
+		InputFingerprint fingerprint = new InputFingerprint()
+				.addSettings(settings)
+				.addContent(stub)
+				.addTree(root, new HashSet<>(Arrays.asList(stub, manifest)));
+		if (replaceDateVariables && realFileRoot != null) {
+			fingerprint.addTree(realFileRoot.toPath().toAbsolutePath().normalize(), Collections.emptySet());
+		}
+		return fingerprint.toHexString();
+	}
+
+	/**
+	 * @param root  the manifest root
+	 * @return  the configured state file or the default state file for the manifest root
+	 */
+	private Path getStateFile(Path root) {
+		if (stateFile != null) {
+			return stateFile.toPath();
+		}
+		return buildDirectory.toPath().resolve("opencms-manifest").resolve(InputFingerprint.digest(root.toString()).substring(0, 16) + ".state");
+	}
+
+	/**
+	 * Returns the size and modification date of the manifest, so a manifest that was changed or deleted after it was
+	 * generated is generated again.
+	 * @param manifest  path of the manifest
+	 * @return  "size:lastModified", or "missing" if there is no manifest
+	 */
+	private static String getManifestState(Path manifest) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(manifest, BasicFileAttributes.class);
+			return attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+		}
+		catch (IOException e) {
+			return "missing";
+		}
+	}
+
+	/**
+	 * Reads the state file, a missing or unreadable state file results in empty properties (so the manifest is
+	 * generated).
+	 * @param state path of the state file
+	 * @return  the state
+	 */
+	private Properties readState(Path state) {
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(state)) {
+			properties.load(in);
+		}
+		catch (NoSuchFileException e) {
+			getLog().debug("No state file " + state + ", the manifest is generated");
+		}
+		catch (IOException | IllegalArgumentException e) {
+			getLog().warn("The state file " + state + " could not be read, the manifest is generated", e);
+			properties.clear();
+		}
+		return properties;
+	}
+
+	/**
+	 * Writes the state file (to a temporary file that is moved into place, so an interrupted build doesn't leave a
+	 * partial state file). Failing to write the state only means the next build generates the manifest again.
+	 * @param state         path of the state file
+	 * @param fingerprint   the input fingerprint
+	 * @param manifestState size and modification date of the generated manifest
+	 */
+	private void writeState(Path state, String fingerprint, String manifestState) {
+		Properties properties = new Properties();
+		properties.setProperty(STATE_FINGERPRINT, fingerprint);
+		properties.setProperty(STATE_MANIFEST, manifestState);
+		try {
+			Files.createDirectories(state.toAbsolutePath().getParent());
+			Path tempFile = Files.createTempFile(state.toAbsolutePath().getParent(), state.getFileName().toString(), ".tmp");
+			try {
+				try (OutputStream out = Files.newOutputStream(tempFile)) {
+					properties.store(out, "Inputs of " + manifestRoot);
+				}
+				Files.move(tempFile, state, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally {
+				Files.deleteIfExists(tempFile);
+			}
+		}
+		catch (IOException e) {
+			getLog().warn("The state file " + state + " could not be written, the manifest will be generated again by the next build", e);
+		}
+	}
+
+	/**
+	 * @param state path of the state file to be deleted
+	 * @throws MojoExecutionException if an existing state file can not be deleted
+	 */
+	private static void deleteState(Path state) throws MojoExecutionException {
+		try {
+			Files.deleteIfExists(state);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("The state file " + state + " could not be deleted", e);
+		}
+	}
+}
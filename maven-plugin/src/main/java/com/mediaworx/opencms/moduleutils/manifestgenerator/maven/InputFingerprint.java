@@ -0,0 +1,197 @@
+/*
+ * This file is part of the OpenCms Module Manifest Generator by mediaworx.
+ *
+ * For further information about the OpenCms Module Manifest Generator,
+ * please see the project website at GitHub:
+ * https://github.com/mediaworx/opencms-manifestgenerator
+ *
+ * The OpenCms Module Manifest Generator is used by the OpenCms Plugin for
+ * IntelliJ. For further information see the plugin's project site at GitHub:
+ * https://github.com/mediaworx/opencms-intellijplugin
+ *
+ * Copyright (C) 2012-2014 mediaworx berlin AG (http://www.mediaworx.com)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.mediaworx.opencms.moduleutils.manifestgenerator.maven;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Computes a SHA-256 fingerprint of everything a generated manifest depends on: the generator settings, the content
+ * of the manifest stub and the paths, sizes and modification dates of all meta files (and of the real files, if their
+ * dates are used). The meta files' content is not read, so the fingerprint of a large module is computed from a
+ * single directory scan. Equal fingerprints mean the manifest doesn't have to be generated again.
+ */
+class InputFingerprint {
+
+	/** Digest receiving the inputs */
+	private final MessageDigest digest;
+
+	/**
+	 * Creates a new, empty fingerprint.
+	 */
+	InputFingerprint() {
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			// every Java runtime is required to support SHA-256
+			throw new IllegalStateException("SHA-256 is not supported", e);
+		}
+	}
+
+	/**
+	 * Adds the generator settings to the fingerprint, sorted by name so the fingerprint doesn't depend on the map's
+	 * order.
+	 * @param settings  map containing the setting names as keys and their values (may be null) as values
+	 * @return  this fingerprint
+	 */
+	InputFingerprint addSettings(Map<String, ?> settings) {
+		for (Map.Entry<String, ?> setting : new TreeMap<>(settings).entrySet()) {
+			update("setting", setting.getKey(), String.valueOf(setting.getValue()));
+		}
+		return this;
+	}
+
+	/**
+	 * Adds the content of a file to the fingerprint (used for the manifest stub, a change of its modification date
+	 * alone doesn't change the manifest).
+	 * @param file  the file
+	 * @return  this fingerprint
+	 * @throws IOException if the file can not be read
+	 */
+	InputFingerprint addContent(Path file) throws IOException {
+		byte[] content;
+		try {
+			content = Files.readAllBytes(file);
+		}
+		catch (NoSuchFileException e) {
+			update("missing", file.getFileName().toString());
+			return this;
+		}
+		update("content", file.getFileName().toString(), String.valueOf(content.length));
+		digest.update(content);
+		return this;
+	}
+
+	/**
+	 * Adds the paths (relative to the given root), sizes and modification dates of all files and folders below the
+	 * given root to the fingerprint. The entries are sorted by path, so the fingerprint doesn't depend on the order in
+	 * which the file system lists them.
+	 * @param root          the root folder
+	 * @param excludedPaths paths of files that are ignored (like the manifest, which is the output)
+	 * @return  this fingerprint
+	 * @throws IOException if a folder or the attributes of a file can not be read
+	 */
+	InputFingerprint addTree(Path root, Set<Path> excludedPaths) throws IOException {
+		update("tree", root.getFileName() != null ? root.getFileName().toString() : "");
+		if (!Files.isDirectory(root)) {
+			update("missing");
+			return this;
+		}
+		Map<String, String> entries = new TreeMap<>();
+		Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+				if (!dir.equals(root)) {
+					// renaming or adding an empty folder changes the manifest as well
+					entries.put(relativePath(root, dir), "d");
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				if (!excludedPaths.contains(file)) {
+					entries.put(relativePath(root, file), attributes.size() + ":" + attributes.lastModifiedTime().toMillis());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		for (Map.Entry<String, String> entry : entries.entrySet()) {
+			update(entry.getKey(), entry.getValue());
+		}
+		return this;
+	}
+
+	/**
+	 * @return  the fingerprint as hex string, the fingerprint must not be changed afterwards
+	 */
+	String toHexString() {
+		return toHexString(digest.digest());
+	}
+
+	/**
+	 * Returns the hex representation of the SHA-256 digest of the given string.
+	 * @param value the string
+	 * @return  the digest as hex string
+	 */
+	static String digest(String value) {
+		InputFingerprint fingerprint = new InputFingerprint();
+		fingerprint.update(value);
+		return fingerprint.toHexString();
+	}
+
+	/**
+	 * @param root  the root folder
+	 * @param path  a path below the root
+	 * @return  the path relative to the root, with "/" as separator on every platform
+	 */
+	private static String relativePath(Path root, Path path) {
+		String relativePath = root.relativize(path).toString();
+		return "/".equals(root.getFileSystem().getSeparator()) ? relativePath : relativePath.replace(root.getFileSystem().getSeparator(), "/");
+	}
+
+	/**
+	 * Adds the given values to the digest, each value is terminated by a zero byte so the boundaries between values
+	 * are part of the fingerprint.
+	 * @param values    the values
+	 */
+	private void update(String... values) {
+		for (String value : values) {
+			digest.update(value.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte)0);
+		}
+	}
+
+	/**
+	 * @param bytes the bytes
+	 * @return  the bytes as lower case hex string
+	 */
+	private static String toHexString(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}